@@ -15,3 +15,9 @@ admin.initializeApp();
 export { onTripCreated } from './onTripCreated';
 export { onMaintenanceDue } from './onMaintenanceDue';
 export { scheduledMaintenanceCheck } from './scheduledMaintenanceCheck';
+export { api } from './sync';
+export {
+  onMaintenanceEventWritten,
+  onMaintenanceRuleWritten,
+  onBikeWritten,
+} from './maintenanceIndex';
@@ -0,0 +1,340 @@
+/**
+ * maintenanceIndex.ts
+ * 
+ * Precomputed next-due index for maintenance reminders.
+ * 
+ * One document per (user, bike, rule) in the top-level maintenance_due_index
+ * collection holds when the rule is next due: the odometer reading (dueKm,
+ * with kmRemaining against the bike's current odometer) and the date (dueAt).
+ * Bike and rule names are copied in, so the daily check can query the items
+ * due in its window directly instead of walking users, bikes, rules and the
+ * full maintenance history.
+ * 
+ * Kept current by onTripCreated (odometer) and by the triggers below
+ * (maintenance events, rules and bikes). Every entry carries a shard number
+ * derived from its user id, which the daily check uses to split the work.
+ * 
+ * Existing data can be indexed once with rebuildMaintenanceIndex() from the
+ * functions shell (npm run shell).
+ */
+
+import * as functions from 'firebase-functions';
+import * as admin from 'firebase-admin';
+
+export const DUE_INDEX_COLLECTION = 'maintenance_due_index';
+export const SHARD_COUNT = 16;
+
+const DAY_MS = 1000 * 60 * 60 * 24;
+const MAX_BATCH_WRITES = 500; // Firestore limit per batch
+
+export interface DueIndexEntry {
+  userId: string;
+  bikeId: string;
+  ruleId: string;
+  shard: number;
+  bikeName: string;
+  ruleTitle: string;
+  ruleDescription: string;
+  odometer: number;
+  dueKm: number | null; // Odometer reading the rule is due at; null without an odometer condition
+  kmRemaining: number | null; // dueKm - odometer
+  dueAt: admin.firestore.Timestamp | null; // null without a time condition
+  lastRemindedAt: admin.firestore.Timestamp | null;
+}
+
+export interface DueStatus {
+  isDue: boolean;
+  daysUntilDue: number | null;
+  kmUntilDue: number | null;
+}
+
+/**
+ * Stable shard of a user, so all of a user's entries land in one shard
+ */
+export function shardOf(userId: string): number {
+  let hash = 0;
+  for (let i = 0; i < userId.length; i++) {
+    hash = (hash * 31 + userId.charCodeAt(i)) | 0;
+  }
+  return Math.abs(hash) % SHARD_COUNT;
+}
+
+export function entryId(userId: string, bikeId: string, ruleId: string): string {
+  return `${userId}:${bikeId}:${ruleId}`;
+}
+
+/**
+ * Next due point of a rule for a bike, from the last completion of the rule.
+ * Conditions are OR-ed: the rule is due at the first one reached.
+ */
+export function computeEntry(
+  userId: string,
+  bikeId: string,
+  bike: any,
+  rule: any,
+  history: any[]
+): DueIndexEntry {
+  const lastEvent = history
+    .filter((event: any) => event.ruleId === rule.id)
+    .sort((a: any, b: any) => b.completedAt.toMillis() - a.completedAt.toMillis())[0];
+
+  const baseOdometer = lastEvent?.odometer || 0;
+  const baseTime = lastEvent?.completedAt?.toMillis() || 0;
+  const odometer = bike.odometer || 0;
+
+  let dueKm: number | null = null;
+  let dueAtMs: number | null = null;
+  for (const condition of rule.conditions || []) {
+    if (condition.type === 'odometer') {
+      const km = baseOdometer + condition.value;
+      dueKm = dueKm === null ? km : Math.min(dueKm, km);
+    } else if (condition.type === 'time') {
+      const at = baseTime + condition.value * DAY_MS;
+      dueAtMs = dueAtMs === null ? at : Math.min(dueAtMs, at);
+    }
+  }
+
+  return {
+    userId,
+    bikeId,
+    ruleId: rule.id,
+    shard: shardOf(userId),
+    bikeName: bike.name || '',
+    ruleTitle: rule.title || '',
+    ruleDescription: rule.description || '',
+    odometer,
+    dueKm,
+    kmRemaining: dueKm === null ? null : dueKm - odometer,
+    dueAt: dueAtMs === null ? null : admin.firestore.Timestamp.fromMillis(dueAtMs),
+    lastRemindedAt: null,
+  };
+}
+
+/**
+ * Due status of an entry at a point in time (same semantics as the
+ * per-rule evaluation the app uses)
+ */
+export function statusOf(entry: DueIndexEntry, now: number): DueStatus {
+  const kmUntilDue = entry.kmRemaining;
+  const daysUntilDue =
+    entry.dueAt === null ? null : Math.ceil((entry.dueAt.toMillis() - now) / DAY_MS);
+
+  return {
+    isDue: (kmUntilDue !== null && kmUntilDue <= 0) || (daysUntilDue !== null && daysUntilDue <= 0),
+    daysUntilDue,
+    kmUntilDue,
+  };
+}
+
+/**
+ * Recompute every entry of one bike (all rules, this bike's history)
+ */
+export async function rebuildBikeIndex(
+  db: admin.firestore.Firestore,
+  userId: string,
+  bikeId: string
+): Promise<DueIndexEntry[]> {
+  const userRef = db.collection('users').doc(userId);
+  const [bikeDoc, rulesSnapshot, historySnapshot, existing] = await Promise.all([
+    userRef.collection('bikes').doc(bikeId).get(),
+    userRef.collection('maintenance_rules').get(),
+    userRef.collection('maintenance_events').where('bikeId', '==', bikeId).get(),
+    entriesOfBike(db, userId, bikeId),
+  ]);
+
+  const writes: Array<(batch: admin.firestore.WriteBatch) => void> = [];
+  const entries: DueIndexEntry[] = [];
+  const kept = new Set<string>();
+
+  if (bikeDoc.exists) {
+    const bike = bikeDoc.data();
+    const history = historySnapshot.docs.map(doc => doc.data());
+    for (const ruleDoc of rulesSnapshot.docs) {
+      const rule = { id: ruleDoc.id, ...ruleDoc.data() };
+      const entry = computeEntry(userId, bikeId, bike, rule, history);
+      const id = entryId(userId, bikeId, rule.id);
+      entry.lastRemindedAt = existing.get(id)?.lastRemindedAt || null;
+      entries.push(entry);
+      kept.add(id);
+      writes.push(batch => batch.set(db.collection(DUE_INDEX_COLLECTION).doc(id), entry));
+    }
+  }
+
+  // Rules deleted since, or the bike itself
+  for (const id of existing.keys()) {
+    if (!kept.has(id)) {
+      writes.push(batch => batch.delete(db.collection(DUE_INDEX_COLLECTION).doc(id)));
+    }
+  }
+
+  await commitInChunks(db, writes);
+  return entries;
+}
+
+/**
+ * Apply a new odometer reading to a bike's entries. Builds the bike's
+ * entries first if it has none yet (data from before the index).
+ */
+export async function updateBikeOdometer(
+  db: admin.firestore.Firestore,
+  userId: string,
+  bikeId: string,
+  odometer: number
+): Promise<DueIndexEntry[]> {
+  const existing = await entriesOfBike(db, userId, bikeId);
+  if (existing.size === 0) {
+    return rebuildBikeIndex(db, userId, bikeId);
+  }
+
+  const writes: Array<(batch: admin.firestore.WriteBatch) => void> = [];
+  const entries: DueIndexEntry[] = [];
+  for (const [id, entry] of existing) {
+    entry.odometer = odometer;
+    entry.kmRemaining = entry.dueKm === null ? null : entry.dueKm - odometer;
+    entries.push(entry);
+    writes.push(batch =>
+      batch.update(db.collection(DUE_INDEX_COLLECTION).doc(id), {
+        odometer,
+        kmRemaining: entry.kmRemaining,
+      })
+    );
+  }
+
+  await commitInChunks(db, writes);
+  return entries;
+}
+
+/**
+ * Index all users' bikes (one-off backfill; the triggers keep it current)
+ */
+export async function rebuildMaintenanceIndex(
+  db: admin.firestore.Firestore,
+  concurrency = 8
+): Promise<number> {
+  const userRefs = await db.collection('users').listDocuments();
+  let bikes = 0;
+
+  await mapWithConcurrency(userRefs, concurrency, async userRef => {
+    const bikeRefs = await userRef.collection('bikes').listDocuments();
+    for (const bikeRef of bikeRefs) {
+      await rebuildBikeIndex(db, userRef.id, bikeRef.id);
+      bikes++;
+    }
+  });
+  return bikes;
+}
+
+/**
+ * Run fn over items with at most limit calls in flight
+ */
+export async function mapWithConcurrency<T, R>(
+  items: T[],
+  limit: number,
+  fn: (item: T, index: number) => Promise<R>
+): Promise<R[]> {
+  const results = new Array<R>(items.length);
+  let next = 0;
+
+  const workers = Array.from({ length: Math.min(limit, items.length) }, async () => {
+    while (next < items.length) {
+      const index = next++;
+      results[index] = await fn(items[index], index);
+    }
+  });
+
+  await Promise.all(workers);
+  return results;
+}
+
+// MARK: - Triggers
+
+/**
+ * A maintenance event was logged, edited or deleted: recompute its bike
+ */
+export const onMaintenanceEventWritten = functions.firestore
+  .document('users/{userId}/maintenance_events/{eventId}')
+  .onWrite(async (change, context) => {
+    const { userId } = context.params;
+    const bikeIds = new Set<string>();
+    if (change.before.exists) bikeIds.add(change.before.data()!.bikeId);
+    if (change.after.exists) bikeIds.add(change.after.data()!.bikeId);
+
+    const db = admin.firestore();
+    for (const bikeId of bikeIds) {
+      if (bikeId) await rebuildBikeIndex(db, userId, bikeId);
+    }
+  });
+
+/**
+ * A rule was added, changed or removed: recompute it for every bike
+ */
+export const onMaintenanceRuleWritten = functions.firestore
+  .document('users/{userId}/maintenance_rules/{ruleId}')
+  .onWrite(async (change, context) => {
+    const { userId } = context.params;
+    const db = admin.firestore();
+
+    const bikeRefs = await db.collection('users').doc(userId).collection('bikes').listDocuments();
+    await mapWithConcurrency(bikeRefs, 4, bikeRef => rebuildBikeIndex(db, userId, bikeRef.id));
+  });
+
+/**
+ * A bike was added, renamed, deleted or had its odometer set by hand.
+ * Odometer changes from trips are applied by onTripCreated (it also sets
+ * lastTripAt) and skipped here.
+ */
+export const onBikeWritten = functions.firestore
+  .document('users/{userId}/bikes/{bikeId}')
+  .onWrite(async (change, context) => {
+    const { userId, bikeId } = context.params;
+    const db = admin.firestore();
+    const before = change.before.exists ? change.before.data()! : null;
+    const after = change.after.exists ? change.after.data()! : null;
+
+    if (!after || !before || before.name !== after.name) {
+      await rebuildBikeIndex(db, userId, bikeId);
+      return;
+    }
+
+    const fromTrip = !sameTimestamp(before.lastTripAt, after.lastTripAt);
+    if (before.odometer !== after.odometer && !fromTrip) {
+      await updateBikeOdometer(db, userId, bikeId, after.odometer || 0);
+    }
+  });
+
+// MARK: - Helper Methods
+
+async function entriesOfBike(
+  db: admin.firestore.Firestore,
+  userId: string,
+  bikeId: string
+): Promise<Map<string, DueIndexEntry>> {
+  const snapshot = await db
+    .collection(DUE_INDEX_COLLECTION)
+    .where('userId', '==', userId)
+    .where('bikeId', '==', bikeId)
+    .get();
+
+  const entries = new Map<string, DueIndexEntry>();
+  snapshot.docs.forEach(doc => entries.set(doc.id, doc.data() as DueIndexEntry));
+  return entries;
+}
+
+async function commitInChunks(
+  db: admin.firestore.Firestore,
+  writes: Array<(batch: admin.firestore.WriteBatch) => void>
+): Promise<void> {
+  for (let start = 0; start < writes.length; start += MAX_BATCH_WRITES) {
+    const batch = db.batch();
+    writes.slice(start, start + MAX_BATCH_WRITES).forEach(write => write(batch));
+    await batch.commit();
+  }
+}
+
+function sameTimestamp(
+  a: admin.firestore.Timestamp | undefined,
+  b: admin.firestore.Timestamp | undefined
+): boolean {
+  if (!a || !b) return a === b;
+  return a.isEqual(b);
+}
@@ -2,11 +2,13 @@
  * onTripCreated.ts
  * 
  * Cloud Function triggered when a new trip is created.
- * Updates bike odometer and checks if maintenance is due.
+ * Updates bike odometer and checks if maintenance is due, using the
+ * bike's next-due entries in the maintenance index.
  */
 
 import * as functions from 'firebase-functions';
 import * as admin from 'firebase-admin';
+import { statusOf, updateBikeOdometer } from './maintenanceIndex';
 
 interface Trip {
   id: string;
@@ -48,30 +50,14 @@ export const onTripCreated = functions.firestore
         return;
       }
 
-      // Check maintenance rules
-      const maintenanceRules = await db
-        .collection('users')
-        .doc(userId)
-        .collection('maintenance_rules')
-        .get();
-
-      const maintenanceHistory = await db
-        .collection('users')
-        .doc(userId)
-        .collection('maintenance_events')
-        .where('bikeId', '==', trip.bikeId)
-        .get();
-
-      const history = maintenanceHistory.docs.map(doc => doc.data());
-
-      // Evaluate each rule
-      for (const ruleDoc of maintenanceRules.docs) {
-        const rule = ruleDoc.data();
-        const isDue = evaluateRule(rule, bike.odometer, history);
+      // Move the bike's next-due entries to the new odometer
+      const entries = await updateBikeOdometer(db, userId, trip.bikeId, bike.odometer);
+      const now = Date.now();
 
-        if (isDue) {
+      for (const entry of entries) {
+        if (statusOf(entry, now).isDue) {
           // Send notification
-          await sendMaintenanceNotification(userId, bike, rule);
+          await sendMaintenanceNotification(userId, bike, { id: entry.ruleId, title: entry.ruleTitle });
         }
       }
 
@@ -82,40 +68,6 @@ export const onTripCreated = functions.firestore
     }
   });
 
-// Helper function to evaluate maintenance rules
-function evaluateRule(
-  rule: any,
-  currentOdometer: number,
-  history: any[]
-): boolean {
-  // Find last completion
-  const lastEvent = history
-    .filter(event => event.ruleId === rule.id)
-    .sort((a, b) => b.completedAt.toMillis() - a.completedAt.toMillis())[0];
-
-  const baseOdometer = lastEvent?.odometer || 0;
-  const baseDate = lastEvent?.completedAt?.toDate() || new Date(0);
-
-  // Evaluate conditions
-  for (const condition of rule.conditions) {
-    if (condition.type === 'odometer') {
-      const odometerSinceBase = currentOdometer - baseOdometer;
-      if (odometerSinceBase >= condition.value) {
-        return true;
-      }
-    } else if (condition.type === 'time') {
-      const daysSinceBase = Math.floor(
-        (Date.now() - baseDate.getTime()) / (1000 * 60 * 60 * 24)
-      );
-      if (daysSinceBase >= condition.value) {
-        return true;
-      }
-    }
-  }
-
-  return false;
-}
-
 // Helper function to send FCM notification
 async function sendMaintenanceNotification(
   userId: string,
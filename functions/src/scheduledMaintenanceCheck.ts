@@ -3,93 +3,65 @@
  * 
  * Cloud Function that runs daily to check for maintenance due dates.
  * Scheduled via Firebase Cloud Scheduler.
+ * 
+ * Reads only the maintenance_due_index entries inside the reminder window
+ * (see maintenanceIndex.ts), shard by shard with a bounded number of shards
+ * in flight, so the cost follows the number of reminders rather than the
+ * number of users, bikes and maintenance events.
  */
 
 import * as functions from 'firebase-functions';
 import * as admin from 'firebase-admin';
+import {
+  DUE_INDEX_COLLECTION,
+  SHARD_COUNT,
+  DueIndexEntry,
+  DueStatus,
+  mapWithConcurrency,
+  statusOf,
+} from './maintenanceIndex';
+
+const DAY_MS = 1000 * 60 * 60 * 24;
+const REMINDER_DAYS = 3; // Remind when due within 3 days...
+const REMINDER_KM = 300; // ...or 300 km
+const REMIND_AGAIN_AFTER_MS = 20 * 60 * 60 * 1000; // A retried run does not remind twice
+const PAGE_SIZE = 500;
+const USERS_PER_READ = 100;
+
+export interface Reminder {
+  entry: DueIndexEntry;
+  status: DueStatus;
+}
+
+/**
+ * Delivers one reminder; resolves false if nothing was sent
+ */
+export type ReminderSender = (userId: string, user: any, reminder: Reminder) => Promise<boolean>;
 
-export const scheduledMaintenanceCheck = functions.pubsub
-  .schedule('0 9 * * *') // Run daily at 9 AM UTC
+export interface MaintenanceCheckOptions {
+  shardConcurrency?: number;
+  sendConcurrency?: number;
+}
+
+export interface MaintenanceCheckResult {
+  entriesInWindow: number;
+  notificationsSent: number;
+  usersNotified: number;
+}
+
+export const scheduledMaintenanceCheck = functions
+  .runWith({ timeoutSeconds: 540, memory: '512MB' })
+  .pubsub.schedule('0 9 * * *') // Run daily at 9 AM UTC
   .timeZone('Asia/Kolkata') // IST
   .onRun(async (context) => {
     const db = admin.firestore();
 
     try {
-      // Get all users
-      const usersSnapshot = await db.collection('users').get();
-
-      let notificationsSent = 0;
-      let usersProcessed = 0;
-
-      for (const userDoc of usersSnapshot.docs) {
-        const userId = userDoc.id;
-        const user = userDoc.data();
-
-        // Skip users without FCM tokens
-        if (!user.fcmTokens || user.fcmTokens.length === 0) {
-          continue;
-        }
-
-        // Get user's bikes
-        const bikesSnapshot = await db
-          .collection('users')
-          .doc(userId)
-          .collection('bikes')
-          .get();
-
-        for (const bikeDoc of bikesSnapshot.docs) {
-          const bike = bikeDoc.data();
-          const bikeId = bikeDoc.id;
-
-          // Get maintenance rules
-          const rulesSnapshot = await db
-            .collection('users')
-            .doc(userId)
-            .collection('maintenance_rules')
-            .get();
-
-          // Get maintenance history
-          const historySnapshot = await db
-            .collection('users')
-            .doc(userId)
-            .collection('maintenance_events')
-            .where('bikeId', '==', bikeId)
-            .get();
-
-          const history = historySnapshot.docs.map((doc: any) => doc.data());
-
-          // Evaluate each rule
-          for (const ruleDoc of rulesSnapshot.docs) {
-            const rule = ruleDoc.data();
-
-            // Check if maintenance is due
-            const { isDue, daysUntilDue, kmUntilDue } = evaluateMaintenanceRule(
-              rule,
-              bike.odometer,
-              history
-            );
-
-            // Send notification if due soon (within 3 days or 300 km)
-            if (
-              isDue ||
-              (daysUntilDue !== null && daysUntilDue <= 3) ||
-              (kmUntilDue !== null && kmUntilDue <= 300)
-            ) {
-              await sendReminderNotification(userId, bike, rule, {
-                isDue,
-                daysUntilDue,
-                kmUntilDue,
-              });
-              notificationsSent++;
-            }
-          }
-        }
-
-        usersProcessed++;
-      }
+      const result = await runMaintenanceCheck(db, Date.now(), sendReminderNotification);
 
       console.log(
-        `Scheduled maintenance check complete: ${usersProcessed} users, ${notificationsSent} notifications sent`
+        `Scheduled maintenance check complete: ${result.entriesInWindow} due entries, ` +
+          `${result.notificationsSent} notifications sent to ${result.usersNotified} users`
       );
     } catch (error) {
       console.error('Error in scheduled maintenance check:', error);
@@ -97,70 +69,129 @@ export const scheduledMaintenanceCheck = functions.pubsub
     }
   });
 
-// Helper function to evaluate maintenance rules
-function evaluateMaintenanceRule(
-  rule: any,
-  currentOdometer: number,
-  history: any[]
-): { isDue: boolean; daysUntilDue: number | null; kmUntilDue: number | null } {
-  const lastEvent = history
-    .filter((event: any) => event.ruleId === rule.id)
-    .sort((a: any, b: any) => b.completedAt.toMillis() - a.completedAt.toMillis())[0];
-
-  const baseOdometer = lastEvent?.odometer || 0;
-  const baseDate = lastEvent?.completedAt?.toDate() || new Date(0);
-
-  let isDue = false;
-  let daysUntilDue: number | null = null;
-  let kmUntilDue: number | null = null;
-
-  for (const condition of rule.conditions) {
-    if (condition.type === 'odometer') {
-      const odometerSinceBase = currentOdometer - baseOdometer;
-      kmUntilDue = condition.value - odometerSinceBase;
-
-      if (odometerSinceBase >= condition.value) {
-        isDue = true;
+/**
+ * Send the reminders due at now across all shards
+ */
+export async function runMaintenanceCheck(
+  db: admin.firestore.Firestore,
+  now: number,
+  send: ReminderSender,
+  options: MaintenanceCheckOptions = {}
+): Promise<MaintenanceCheckResult> {
+  const shards = Array.from({ length: SHARD_COUNT }, (_, shard) => shard);
+  const results = await mapWithConcurrency(shards, options.shardConcurrency || 4, shard =>
+    checkShard(db, shard, now, send, options.sendConcurrency || 10)
+  );
+
+  return results.reduce(
+    (total, result) => ({
+      entriesInWindow: total.entriesInWindow + result.entriesInWindow,
+      notificationsSent: total.notificationsSent + result.notificationsSent,
+      usersNotified: total.usersNotified + result.usersNotified,
+    }),
+    { entriesInWindow: 0, notificationsSent: 0, usersNotified: 0 }
+  );
+}
+
+// MARK: - Helper Methods
+
+async function checkShard(
+  db: admin.firestore.Firestore,
+  shard: number,
+  now: number,
+  send: ReminderSender,
+  sendConcurrency: number
+): Promise<MaintenanceCheckResult> {
+  const index = db.collection(DUE_INDEX_COLLECTION).where('shard', '==', shard);
+  const windowEnd = admin.firestore.Timestamp.fromMillis(now + REMINDER_DAYS * DAY_MS);
+
+  // Due by date or by distance; an entry can match both
+  const inWindow = new Map<string, admin.firestore.QueryDocumentSnapshot>();
+  await collectPages(index.where('dueAt', '<=', windowEnd).orderBy('dueAt'), inWindow);
+  await collectPages(index.where('kmRemaining', '<=', REMINDER_KM).orderBy('kmRemaining'), inWindow);
+
+  // Group by user, leaving out entries a run today already reminded about
+  const byUser = new Map<string, admin.firestore.QueryDocumentSnapshot[]>();
+  for (const doc of inWindow.values()) {
+    const entry = doc.data() as DueIndexEntry;
+    if (entry.lastRemindedAt && now - entry.lastRemindedAt.toMillis() < REMIND_AGAIN_AFTER_MS) {
+      continue;
+    }
+    const docs = byUser.get(entry.userId) || [];
+    docs.push(doc);
+    byUser.set(entry.userId, docs);
+  }
+
+  let notificationsSent = 0;
+  let usersNotified = 0;
+  const userIds = Array.from(byUser.keys());
+
+  for (let start = 0; start < userIds.length; start += USERS_PER_READ) {
+    const chunk = userIds.slice(start, start + USERS_PER_READ);
+    const userDocs = await db.getAll(...chunk.map(userId => db.collection('users').doc(userId)));
+
+    const reminded: admin.firestore.DocumentReference[] = [];
+    await mapWithConcurrency(userDocs, sendConcurrency, async userDoc => {
+      const user = userDoc.data();
+
+      // Skip users without FCM tokens
+      if (!user?.fcmTokens || user.fcmTokens.length === 0) {
+        return;
       }
-    } else if (condition.type === 'time') {
-      const daysSinceBase = Math.floor(
-        (Date.now() - baseDate.getTime()) / (1000 * 60 * 60 * 24)
-      );
-      daysUntilDue = condition.value - daysSinceBase;
 
-      if (daysSinceBase >= condition.value) {
-        isDue = true;
+      let sentToUser = 0;
+      for (const doc of byUser.get(userDoc.id)!) {
+        const entry = doc.data() as DueIndexEntry;
+        if (await send(userDoc.id, user, { entry, status: statusOf(entry, now) })) {
+          reminded.push(doc.ref);
+          sentToUser++;
+        }
       }
+      notificationsSent += sentToUser;
+      if (sentToUser > 0) usersNotified++;
+    });
+
+    const remindedAt = admin.firestore.Timestamp.fromMillis(now);
+    for (let i = 0; i < reminded.length; i += PAGE_SIZE) {
+      const batch = db.batch();
+      reminded.slice(i, i + PAGE_SIZE).forEach(ref => batch.update(ref, { lastRemindedAt: remindedAt }));
+      await batch.commit();
     }
   }
 
-  return { isDue, daysUntilDue, kmUntilDue };
+  return { entriesInWindow: inWindow.size, notificationsSent, usersNotified };
+}
+
+async function collectPages(
+  query: admin.firestore.Query,
+  into: Map<string, admin.firestore.QueryDocumentSnapshot>
+): Promise<void> {
+  let last: admin.firestore.QueryDocumentSnapshot | undefined;
+  for (;;) {
+    const page = await (last ? query.startAfter(last) : query).limit(PAGE_SIZE).get();
+    page.docs.forEach(doc => into.set(doc.id, doc));
+    if (page.size < PAGE_SIZE) return;
+    last = page.docs[page.docs.length - 1];
+  }
 }
 
 // Helper function to send reminder notification
 async function sendReminderNotification(
   userId: string,
-  bike: any,
-  rule: any,
-  status: { isDue: boolean; daysUntilDue: number | null; kmUntilDue: number | null }
-): Promise<void> {
+  user: any,
+  reminder: Reminder
+): Promise<boolean> {
   const db = admin.firestore();
-
-  const userDoc = await db.collection('users').doc(userId).get();
-  const user = userDoc.data();
-
-  if (!user?.fcmTokens || user.fcmTokens.length === 0) {
-    return;
-  }
+  const { entry, status } = reminder;
 
   // Build message body
-  let body = `${bike.name}: ${rule.description}`;
+  let body = `${entry.bikeName}: ${entry.ruleDescription}`;
   if (status.isDue) {
     body = `⚠️ NOW: ${body}`;
-  } else if (status.daysUntilDue !== null && status.daysUntilDue <= 3) {
+  } else if (status.daysUntilDue !== null && status.daysUntilDue <= REMINDER_DAYS) {
     body = `📅 In ${status.daysUntilDue} days: ${body}`;
-  } else if (status.kmUntilDue !== null && status.kmUntilDue <= 300) {
-    body = `📍 In ${status.kmUntilDue} km: ${body}`;
+  } else if (status.kmUntilDue !== null && status.kmUntilDue <= REMINDER_KM) {
+    body = `📍 In ${Math.round(status.kmUntilDue)} km: ${body}`;
   }
 
   const message = {
@@ -170,8 +201,8 @@ async function sendReminderNotification(
     },
     data: {
       type: 'maintenance_reminder',
-      ruleId: rule.id,
-      bikeId: bike.id,
+      ruleId: entry.ruleId,
+      bikeId: entry.bikeId,
     },
     tokens: user.fcmTokens,
   };
@@ -196,7 +227,9 @@ async function sendReminderNotification(
           fcmTokens: admin.firestore.FieldValue.arrayRemove(...tokensToRemove),
         });
     }
+    return response.successCount > 0;
   } catch (error) {
     console.error('Error sending reminder:', error);
+    return false;
   }
 }
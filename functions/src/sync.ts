@@ -0,0 +1,158 @@
+/**
+ * sync.ts
+ * 
+ * HTTPS function behind POST /api/sync (api/openapi.yaml): applies a batch
+ * of writes from the device outbox (SyncOutbox / HttpSyncEndpoint) to
+ * users/{uid}/{collection}/{id}, authenticated by the caller's Firebase ID
+ * token.
+ * 
+ * Writes are last-write-wins on updatedAt, the local modification time the
+ * app also compares on pull: a write older than the stored document is
+ * skipped, so retried or reordered batches are harmless. Sets merge into
+ * the document, so fields only the server writes (a bike's odometer and
+ * lastTripAt from onTripCreated) survive an upload. Other /api paths of the
+ * spec are not served here.
+ */
+
+import * as functions from 'firebase-functions';
+import * as admin from 'firebase-admin';
+
+const COLLECTIONS = ['bikes', 'trips', 'maintenance_events', 'maintenance_rules'];
+const MAX_WRITES = 500; // Also the Firestore limit per transaction
+const LOCAL_ONLY_FIELDS = ['_status', '_changed']; // WatermelonDB bookkeeping
+
+export interface SyncWrite {
+  collection: string;
+  id: string;
+  op: 'set' | 'delete';
+  updatedAt: number; // Unix millis
+  data?: { [field: string]: any };
+}
+
+export interface SyncResult {
+  applied: number;
+  skipped: number; // Older than what is stored
+}
+
+export const api = functions.https.onRequest(async (req, res) => {
+  if (req.path !== '/sync') {
+    res.status(404).json({ error: 'not_found', message: `No route ${req.path}` });
+    return;
+  }
+  if (req.method !== 'POST') {
+    res.set('Allow', 'POST').status(405).json({ error: 'method_not_allowed', message: 'Use POST' });
+    return;
+  }
+
+  const uid = await authenticate(req.get('Authorization'));
+  if (!uid) {
+    res.status(401).json({ error: 'unauthorized', message: 'Invalid or missing Firebase Auth token' });
+    return;
+  }
+
+  // The functions framework inflates gzip bodies before parsing JSON
+  const problem = validateBatch(req.body);
+  if (problem) {
+    res.status(400).json({ error: 'invalid_batch', message: problem });
+    return;
+  }
+
+  try {
+    const result = await applySyncWrites(admin.firestore(), uid, req.body.writes);
+    res.status(200).json({
+      success: true,
+      message: `Applied ${result.applied} writes, skipped ${result.skipped} older ones`,
+    });
+  } catch (error) {
+    console.error(`Error applying sync batch for ${uid}:`, error);
+    res.status(500).json({ error: 'internal', message: 'Batch not applied; retry later' });
+  }
+});
+
+/**
+ * Apply a validated batch in one transaction, so it is stored entirely or
+ * not at all and the device can acknowledge it as a whole
+ */
+export async function applySyncWrites(
+  db: admin.firestore.Firestore,
+  uid: string,
+  writes: SyncWrite[]
+): Promise<SyncResult> {
+  // At most one write per record, the newest
+  const latest = new Map<string, SyncWrite>();
+  for (const write of writes) {
+    const key = `${write.collection}/${write.id}`;
+    const seen = latest.get(key);
+    if (!seen || write.updatedAt >= seen.updatedAt) latest.set(key, write);
+  }
+  const unique = Array.from(latest.values());
+  if (unique.length === 0) return { applied: 0, skipped: 0 };
+
+  const userRef = db.collection('users').doc(uid);
+  const refs = unique.map(write => userRef.collection(write.collection).doc(write.id));
+
+  return db.runTransaction(async transaction => {
+    const current = await transaction.getAll(...refs);
+    let applied = 0;
+
+    unique.forEach((write, i) => {
+      const stored = current[i].exists ? current[i].get('updatedAt') : undefined;
+      if (stored instanceof admin.firestore.Timestamp && stored.toMillis() > write.updatedAt) {
+        return; // A newer write already landed
+      }
+
+      if (write.op === 'delete') {
+        transaction.delete(refs[i]);
+      } else {
+        transaction.set(refs[i], toDocument(write), { merge: true });
+      }
+      applied++;
+    });
+
+    return { applied, skipped: unique.length - applied };
+  });
+}
+
+// MARK: - Helper Methods
+
+async function authenticate(header: string | undefined): Promise<string | null> {
+  const match = /^Bearer (.+)$/.exec(header || '');
+  if (!match) return null;
+
+  try {
+    const token = await admin.auth().verifyIdToken(match[1]);
+    return token.uid;
+  } catch (error) {
+    return null; // Expired tokens are refreshed by the app and retried
+  }
+}
+
+/**
+ * Reason the batch can never be applied, or null if it is well-formed
+ */
+function validateBatch(body: any): string | null {
+  if (!body || !Array.isArray(body.writes)) return 'Body must be { writes: [...] }';
+  if (body.writes.length > MAX_WRITES) return `At most ${MAX_WRITES} writes per batch`;
+
+  for (let i = 0; i < body.writes.length; i++) {
+    const write = body.writes[i];
+    if (!write || !COLLECTIONS.includes(write.collection)) return `writes[${i}]: unknown collection`;
+    if (typeof write.id !== 'string' || write.id === '' || write.id.includes('/')) {
+      return `writes[${i}]: invalid id`;
+    }
+    if (write.op !== 'set' && write.op !== 'delete') return `writes[${i}]: op must be set or delete`;
+    if (!Number.isSafeInteger(write.updatedAt)) return `writes[${i}]: updatedAt must be Unix millis`;
+    if (write.op === 'set' && (typeof write.data !== 'object' || write.data === null || Array.isArray(write.data))) {
+      return `writes[${i}]: set needs a data object`;
+    }
+  }
+  return null;
+}
+
+function toDocument(write: SyncWrite): { [field: string]: any } {
+  const document: { [field: string]: any } = { ...write.data };
+  LOCAL_ONLY_FIELDS.forEach(field => delete document[field]);
+  document.id = write.id;
+  document.updatedAt = admin.firestore.Timestamp.fromMillis(write.updatedAt);
+  return document;
+}
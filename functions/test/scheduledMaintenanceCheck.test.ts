@@ -0,0 +1,198 @@
+/**
+ * scheduledMaintenanceCheck.test.ts
+ * 
+ * Runs the indexed daily check against the Firestore emulator over a large
+ * synthetic dataset and compares its reminders with the per-user scan it
+ * replaced. Run with npm test (starts the emulator via emulators:exec).
+ */
+
+import * as admin from 'firebase-admin';
+import { rebuildBikeIndex, rebuildMaintenanceIndex, updateBikeOdometer } from '../src/maintenanceIndex';
+import { Reminder, runMaintenanceCheck } from '../src/scheduledMaintenanceCheck';
+
+const USERS = 1500;
+const BIKES_PER_USER = 2;
+const DAY_MS = 1000 * 60 * 60 * 24;
+const NOW = Date.UTC(2024, 5, 1, 3, 30); // 9 AM IST
+
+const RULES = [
+  { id: 'oil', title: 'Engine oil', description: 'Change engine oil', conditions: [{ type: 'odometer', value: 3000 }, { type: 'time', value: 180 }] },
+  { id: 'chain', title: 'Chain', description: 'Lube the chain', conditions: [{ type: 'odometer', value: 500 }] },
+  { id: 'tyres', title: 'Tyres', description: 'Inspect tyres', conditions: [{ type: 'odometer', value: 10000 }] },
+  { id: 'service', title: 'Service', description: 'Yearly service', conditions: [{ type: 'time', value: 365 }] },
+];
+
+interface SeededBike {
+  userId: string;
+  bikeId: string;
+  odometer: number;
+  history: any[];
+  notifiable: boolean;
+}
+
+let db: admin.firestore.Firestore;
+let bikes: SeededBike[] = [];
+
+beforeAll(async () => {
+  if (!process.env.FIRESTORE_EMULATOR_HOST) {
+    throw new Error('FIRESTORE_EMULATOR_HOST is not set; run through npm test');
+  }
+  admin.initializeApp({ projectId: 'demo-ridecare' });
+  db = admin.firestore();
+  bikes = await seed(db);
+}, 600000);
+
+afterAll(async () => {
+  await admin.app().delete();
+});
+
+test('indexed check sends the same reminders as a full scan', async () => {
+  let started = Date.now();
+  const indexed = await rebuildMaintenanceIndex(db);
+  console.log(`Indexed ${indexed} bikes in ${Date.now() - started} ms`);
+  expect(indexed).toBe(USERS * BIKES_PER_USER);
+
+  const sent: string[] = [];
+  started = Date.now();
+  const result = await runMaintenanceCheck(db, NOW, recordTo(sent));
+  console.log(
+    `Checked ${result.entriesInWindow} due entries of ${USERS * BIKES_PER_USER * RULES.length} ` +
+      `in ${Date.now() - started} ms: ${result.notificationsSent} reminders`
+  );
+
+  const expected = fullScan(bikes, NOW);
+  expect(expected.length).toBeGreaterThan(0);
+  expect(sent.sort()).toEqual(expected.sort());
+  expect(result.notificationsSent).toBe(expected.length);
+}, 600000);
+
+test('a retried run does not remind twice', async () => {
+  const sent: string[] = [];
+  await runMaintenanceCheck(db, NOW + 60 * 60 * 1000, recordTo(sent));
+  expect(sent).toEqual([]);
+}, 120000);
+
+test('trips and completed maintenance move entries in and out of the window', async () => {
+  // A notifiable bike whose chain is not due within 300 km
+  const bike = bikes.find(candidate => candidate.notifiable && chainKmLeft(candidate) > 300)!;
+  const odometer = bike.odometer + chainKmLeft(bike) - 100;
+  await db.collection('users').doc(bike.userId).collection('bikes').doc(bike.bikeId).update({ odometer });
+  await updateBikeOdometer(db, bike.userId, bike.bikeId, odometer);
+
+  const nextDay = NOW + DAY_MS;
+  const sent: string[] = [];
+  await runMaintenanceCheck(db, nextDay, recordTo(sent));
+  expect(sent).toContain(`${bike.userId}:${bike.bikeId}:chain`);
+
+  // The chain is done: no reminder for it the day after
+  await db.collection('users').doc(bike.userId).collection('maintenance_events').add({
+    bikeId: bike.bikeId,
+    ruleId: 'chain',
+    odometer,
+    completedAt: admin.firestore.Timestamp.fromMillis(nextDay),
+  });
+  await rebuildBikeIndex(db, bike.userId, bike.bikeId);
+
+  const after: string[] = [];
+  await runMaintenanceCheck(db, nextDay + DAY_MS, recordTo(after));
+  expect(after).not.toContain(`${bike.userId}:${bike.bikeId}:chain`);
+}, 120000);
+
+// MARK: - Helper Methods
+
+function recordTo(sent: string[]) {
+  return async (userId: string, user: any, reminder: Reminder): Promise<boolean> => {
+    sent.push(`${userId}:${reminder.entry.bikeId}:${reminder.entry.ruleId}`);
+    return true;
+  };
+}
+
+/**
+ * Deterministic users, bikes and maintenance history
+ */
+async function seed(db: admin.firestore.Firestore): Promise<SeededBike[]> {
+  const random = mulberry32(25);
+  const writer = db.bulkWriter();
+  const seeded: SeededBike[] = [];
+
+  for (let u = 0; u < USERS; u++) {
+    const userId = `user-${u}`;
+    const userRef = db.collection('users').doc(userId);
+    const notifiable = random() < 0.8;
+    writer.set(userRef, { fcmTokens: notifiable ? [`token-${u}`] : [] });
+    RULES.forEach(rule => writer.set(userRef.collection('maintenance_rules').doc(rule.id), rule));
+
+    for (let b = 0; b < BIKES_PER_USER; b++) {
+      const bikeId = `bike-${b}`;
+      const odometer = Math.round(random() * 30000);
+      const history: any[] = [];
+
+      for (const rule of RULES) {
+        if (random() < 0.15) continue; // Never done
+        const event = {
+          bikeId,
+          ruleId: rule.id,
+          odometer: Math.max(0, odometer - Math.round(random() * 3500)),
+          completedAt: admin.firestore.Timestamp.fromMillis(NOW - Math.round(random() * 400) * DAY_MS),
+        };
+        history.push(event);
+        writer.set(userRef.collection('maintenance_events').doc(), event);
+      }
+
+      writer.set(userRef.collection('bikes').doc(bikeId), { id: bikeId, name: `Bike ${b}`, odometer });
+      seeded.push({ userId, bikeId, odometer, history, notifiable });
+    }
+  }
+
+  await writer.close();
+  return seeded;
+}
+
+/**
+ * Reminders the pre-index check would have sent: every rule of every bike
+ * of every user with tokens, due now, within 3 days or within 300 km
+ */
+function fullScan(seeded: SeededBike[], now: number): string[] {
+  const reminders: string[] = [];
+  for (const bike of seeded) {
+    if (!bike.notifiable) continue;
+    for (const rule of RULES) {
+      const lastEvent = bike.history.filter(event => event.ruleId === rule.id)[0];
+      const baseOdometer = lastEvent?.odometer || 0;
+      const baseDate = lastEvent?.completedAt?.toMillis() || 0;
+
+      let isDue = false;
+      let daysUntilDue: number | null = null;
+      let kmUntilDue: number | null = null;
+      for (const condition of rule.conditions) {
+        if (condition.type === 'odometer') {
+          kmUntilDue = condition.value - (bike.odometer - baseOdometer);
+          isDue = isDue || kmUntilDue <= 0;
+        } else {
+          const daysSinceBase = Math.floor((now - baseDate) / DAY_MS);
+          daysUntilDue = condition.value - daysSinceBase;
+          isDue = isDue || daysSinceBase >= condition.value;
+        }
+      }
+
+      if (isDue || (daysUntilDue !== null && daysUntilDue <= 3) || (kmUntilDue !== null && kmUntilDue <= 300)) {
+        reminders.push(`${bike.userId}:${bike.bikeId}:${rule.id}`);
+      }
+    }
+  }
+  return reminders;
+}
+
+function chainKmLeft(bike: SeededBike): number {
+  const lastEvent = bike.history.filter(event => event.ruleId === 'chain')[0];
+  return 500 - (bike.odometer - (lastEvent?.odometer || 0));
+}
+
+function mulberry32(seed: number): () => number {
+  return () => {
+    seed = (seed + 0x6d2b79f5) | 0;
+    let t = Math.imul(seed ^ (seed >>> 15), 1 | seed);
+    t = (t + Math.imul(t ^ (t >>> 7), 61 | t)) ^ t;
+    return ((t ^ (t >>> 14)) >>> 0) / 4294967296;
+  };
+}
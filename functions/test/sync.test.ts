@@ -0,0 +1,104 @@
+/**
+ * sync.test.ts
+ * 
+ * Applies outbox batches against the Firestore emulator: documents land
+ * under the user, server-maintained fields survive uploads, older writes
+ * lose to newer ones, and deletes follow the same last-write-wins rule.
+ * Run with npm test.
+ */
+
+import * as admin from 'firebase-admin';
+import { applySyncWrites, SyncWrite } from '../src/sync';
+
+const UID = 'sync-test-user';
+
+let db: admin.firestore.Firestore;
+
+beforeAll(() => {
+  if (!process.env.FIRESTORE_EMULATOR_HOST) {
+    throw new Error('FIRESTORE_EMULATOR_HOST is not set; run through npm test');
+  }
+  admin.initializeApp({ projectId: 'demo-ridecare' });
+  db = admin.firestore();
+});
+
+afterAll(async () => {
+  // Other suites list every user
+  await db.recursiveDelete(db.collection('users').doc(UID));
+  await admin.app().delete();
+});
+
+test('writes land under the user with their local time', async () => {
+  const result = await applySyncWrites(db, UID, [
+    set('bikes', 'b1', 1000, { name: 'Pulsar', odometer_km: 1200, _status: 'updated', _changed: 'name' }),
+    set('trips', 't1', 1000, { bike_id: 'b1', distance_km: 12.5 }),
+  ]);
+  expect(result).toEqual({ applied: 2, skipped: 0 });
+
+  const bike = (await doc('bikes', 'b1').get()).data()!;
+  expect(bike.name).toBe('Pulsar');
+  expect(bike.id).toBe('b1');
+  expect(bike.updatedAt.toMillis()).toBe(1000);
+  expect(bike._status).toBeUndefined(); // Local bookkeeping stays on the device
+  expect(bike._changed).toBeUndefined();
+});
+
+test('fields the server maintains survive a device upload', async () => {
+  // As onTripCreated leaves a bike after a trip
+  const lastTripAt = admin.firestore.Timestamp.fromMillis(1500);
+  await doc('bikes', 'b3').set({
+    id: 'b3',
+    name: 'Classic',
+    odometer: 812.4,
+    lastTripAt,
+    updatedAt: admin.firestore.Timestamp.fromMillis(1500),
+  });
+
+  await applySyncWrites(db, UID, [set('bikes', 'b3', 2000, { name: 'Classic 350', odometer_km: 800 })]);
+
+  const bike = (await doc('bikes', 'b3').get()).data()!;
+  expect(bike.name).toBe('Classic 350');
+  expect(bike.odometer).toBe(812.4);
+  expect(bike.lastTripAt.isEqual(lastTripAt)).toBe(true);
+  expect(bike.updatedAt.toMillis()).toBe(2000);
+});
+
+test('an older write does not overwrite a newer one', async () => {
+  await applySyncWrites(db, UID, [set('bikes', 'b2', 2000, { name: 'New' })]);
+  const result = await applySyncWrites(db, UID, [set('bikes', 'b2', 1500, { name: 'Old' })]);
+
+  expect(result).toEqual({ applied: 0, skipped: 1 });
+  expect((await doc('bikes', 'b2').get()).get('name')).toBe('New');
+});
+
+test('the newest write of a record in one batch wins', async () => {
+  await applySyncWrites(db, UID, [
+    set('maintenance_events', 'm1', 3000, { notes: 'second' }),
+    set('maintenance_events', 'm1', 2000, { notes: 'first' }),
+  ]);
+  expect((await doc('maintenance_events', 'm1').get()).get('notes')).toBe('second');
+});
+
+test('deletes follow last-write-wins too', async () => {
+  await applySyncWrites(db, UID, [set('trips', 't2', 5000, { distance_km: 3 })]);
+
+  await applySyncWrites(db, UID, [remove('trips', 't2', 4000)]); // Made before the last edit
+  expect((await doc('trips', 't2').get()).exists).toBe(true);
+
+  await applySyncWrites(db, UID, [remove('trips', 't2', 6000)]);
+  expect((await doc('trips', 't2').get()).exists).toBe(false);
+});
+
+// MARK: - Helper Methods
+
+function set(collection: string, id: string, updatedAt: number, data: object): SyncWrite {
+  return { collection, id, op: 'set', updatedAt, data };
+}
+
+function remove(collection: string, id: string, updatedAt: number): SyncWrite {
+  return { collection, id, op: 'delete', updatedAt };
+}
+
+function doc(collection: string, id: string): admin.firestore.DocumentReference {
+  return db.collection('users').doc(UID).collection(collection).doc(id);
+}
@@ -0,0 +1,95 @@
+package com.ridecare;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+import android.os.Handler;
+
+import com.ridecare.engine.MotionSource;
+
+/**
+ * AccelerometerMotionSource.java
+ * 
+ * Motion hint from accelerometer vibration, standing in for activity
+ * recognition (which would need Play Services). Samples are batched in
+ * the sensor hub so the CPU wakes about once per window; the spread of the
+ * acceleration magnitude over a window maps to a riding confidence.
+ */
+public class AccelerometerMotionSource implements MotionSource, SensorEventListener {
+    
+    private static final int SAMPLING_PERIOD_US = 200000;    // 5 Hz
+    private static final int MAX_REPORT_LATENCY_US = 5000000; // Deliver in 5 s batches
+    private static final long WINDOW_NANOS = 5000000000L;     // 5 seconds
+    private static final double STILL_STDDEV = 0.15;          // m/s^2, phone at rest
+    private static final double RIDING_STDDEV = 1.5;          // m/s^2, engine and road vibration
+    
+    private final SensorManager sensorManager;
+    private final Handler handler;
+    private Sink sink;
+    
+    private long windowStart = -1;
+    private int count;
+    private double sum;
+    private double sumOfSquares;
+    
+    public AccelerometerMotionSource(SensorManager sensorManager, Handler handler) {
+        this.sensorManager = sensorManager;
+        this.handler = handler;
+    }
+    
+    @Override
+    public void start(Sink sink) {
+        Sensor accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
+        if (accelerometer == null) return; // No hint; auto-start never triggers
+        
+        this.sink = sink;
+        resetWindow(-1);
+        sensorManager.registerListener(this, accelerometer, SAMPLING_PERIOD_US, MAX_REPORT_LATENCY_US, handler);
+    }
+    
+    @Override
+    public void stop() {
+        sensorManager.unregisterListener(this);
+        sink = null;
+    }
+    
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        if (sink == null) return;
+        
+        float x = event.values[0];
+        float y = event.values[1];
+        float z = event.values[2];
+        double magnitude = Math.sqrt(x * x + y * y + z * z);
+        
+        if (windowStart < 0) {
+            windowStart = event.timestamp;
+        }
+        count++;
+        sum += magnitude;
+        sumOfSquares += magnitude * magnitude;
+        
+        if (event.timestamp - windowStart >= WINDOW_NANOS) {
+            double mean = sum / count;
+            double stddev = Math.sqrt(Math.max(0, sumOfSquares / count - mean * mean));
+            double confidence = (stddev - STILL_STDDEV) / (RIDING_STDDEV - STILL_STDDEV);
+            
+            // Sensor timestamps share the SystemClock.elapsedRealtime() base
+            sink.onMotion((float) Math.max(0, Math.min(1, confidence)), event.timestamp / 1000000);
+            resetWindow(event.timestamp);
+        }
+    }
+    
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+    
+    // MARK: - Helper Methods
+    
+    private void resetWindow(long start) {
+        windowStart = start;
+        count = 0;
+        sum = 0;
+        sumOfSquares = 0;
+    }
+}
@@ -0,0 +1,95 @@
+package com.ridecare;
+
+import android.location.Location;
+import android.location.LocationListener;
+import android.location.LocationManager;
+import android.os.Bundle;
+import android.os.Looper;
+
+import com.ridecare.engine.FixRingBuffer;
+import com.ridecare.engine.LocationSource;
+
+/**
+ * AndroidLocationSource.java
+ * 
+ * LocationSource backed by the platform LocationManager. Each provider has
+ * its own listener, so re-registering GPS at a new interval never touches
+ * the network registration. Fixes are delivered on the given looper.
+ */
+public class AndroidLocationSource implements LocationSource {
+    
+    private final LocationManager locationManager;
+    private final Looper looper;
+    private final ProviderListener gpsListener = new ProviderListener(FixRingBuffer.PROVIDER_GPS);
+    private final ProviderListener networkListener = new ProviderListener(FixRingBuffer.PROVIDER_NETWORK);
+    
+    public AndroidLocationSource(LocationManager locationManager, Looper looper) {
+        this.locationManager = locationManager;
+        this.looper = looper;
+    }
+    
+    @Override
+    public void requestUpdates(byte provider, long intervalMillis, Sink sink) throws SecurityException {
+        ProviderListener listener = listenerFor(provider);
+        listener.sink = sink;
+        locationManager.requestLocationUpdates(
+            providerName(provider),
+            intervalMillis,
+            0,    // 0 meters
+            listener,
+            looper
+        );
+    }
+    
+    @Override
+    public void removeUpdates() {
+        locationManager.removeUpdates(gpsListener);
+        locationManager.removeUpdates(networkListener);
+    }
+    
+    // MARK: - Helper Methods
+    
+    private ProviderListener listenerFor(byte provider) {
+        if (provider == FixRingBuffer.PROVIDER_GPS) return gpsListener;
+        if (provider == FixRingBuffer.PROVIDER_NETWORK) return networkListener;
+        throw new IllegalArgumentException("Unsupported provider " + provider);
+    }
+    
+    private static String providerName(byte provider) {
+        return provider == FixRingBuffer.PROVIDER_GPS ? LocationManager.GPS_PROVIDER : LocationManager.NETWORK_PROVIDER;
+    }
+    
+    private static final class ProviderListener implements LocationListener {
+        
+        private final byte provider;
+        private volatile Sink sink;
+        
+        ProviderListener(byte provider) {
+            this.provider = provider;
+        }
+        
+        @Override
+        public void onLocationChanged(Location location) {
+            Sink current = sink;
+            if (current == null) return;
+            
+            current.onLocation(
+                location.getLatitude(),
+                location.getLongitude(),
+                location.getSpeed(),
+                location.getAccuracy(),
+                location.getTime(),
+                provider
+            );
+        }
+        
+        @Override
+        public void onStatusChanged(String provider, int status, Bundle extras) {}
+        
+        @Override
+        public void onProviderEnabled(String provider) {}
+        
+        @Override
+        public void onProviderDisabled(String provider) {}
+    }
+}
@@ -0,0 +1,278 @@
+package com.ridecare;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.ridecare.engine.ExportWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * DataExportModule.java
+ * 
+ * React Native module for exporting trips and maintenance records (GDPR data
+ * portability). Rows are streamed from the local SQLite database through an
+ * ExportWriter straight into a file on a background thread, so neither the
+ * JS thread nor the heap ever holds the whole history. Progress is reported
+ * as onExportProgress events.
+ */
+public class DataExportModule extends ReactContextBaseJavaModule {
+    
+    private static final String TAG = "DataExportModule";
+    private static final String EXPORT_DIR = "exports";
+    private static final int PROGRESS_ROWS = 500;          // Rows between progress checks
+    private static final long PROGRESS_INTERVAL = 250;     // Milliseconds between events
+    
+    private static final String TRIP_COLUMNS =
+        "id, bike_id, start_time, end_time, start_lat, start_lng, end_lat, end_lng, " +
+        "distance_km, avg_speed_kmh, max_speed_kmh";
+    // Arguments are bound as text; the casts keep the comparisons numeric
+    private static final String TRIP_RANGE =
+        " FROM trips WHERE start_time BETWEEN CAST(? AS INTEGER) AND CAST(? AS INTEGER)";
+    
+    // Completed records are dated by completion, pending ones by due date
+    private static final String MAINTENANCE_DATE = "COALESCE(completed_at, date_due, created_at)";
+    private static final String MAINTENANCE_COLUMNS =
+        "id, bike_id, type, completed, date_due, completed_at, km_due_at, completed_km, cost, notes, receipt_urls";
+    private static final String MAINTENANCE_RANGE =
+        " FROM maintenance_events WHERE " + MAINTENANCE_DATE + " BETWEEN CAST(? AS INTEGER) AND CAST(? AS INTEGER)";
+    
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean exporting = new AtomicBoolean(false);
+    
+    // Owned by the export thread
+    private long rowsDone;
+    private long rowsTotal;
+    private long lastProgressTime;
+    
+    public DataExportModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+    }
+    
+    @Override
+    public String getName() {
+        return "DataExportModule";
+    }
+    
+    /**
+     * Export to a file; resolves with { filePath, rows, bytes } once written.
+     * options: { format: 'csv' | 'json' | 'gpx', includeTrips, includeMaintenance,
+     * startTime?, endTime? } with times in epoch millis.
+     */
+    @ReactMethod
+    public void exportData(ReadableMap options, final Promise promise) {
+        final ExportWriter.Format format;
+        try {
+            format = ExportWriter.Format.valueOf(options.getString("format").toUpperCase(Locale.ROOT));
+        } catch (Exception e) {
+            promise.reject("ERROR", "Unknown export format");
+            return;
+        }
+        
+        if (!exporting.compareAndSet(false, true)) {
+            promise.reject("ERROR", "An export is already running");
+            return;
+        }
+        
+        final boolean includeTrips = !options.hasKey("includeTrips") || options.getBoolean("includeTrips");
+        final boolean includeMaintenance = format != ExportWriter.Format.GPX
+            && (!options.hasKey("includeMaintenance") || options.getBoolean("includeMaintenance"));
+        final long startTime = options.hasKey("startTime") && !options.isNull("startTime")
+            ? (long) options.getDouble("startTime")
+            : 0;
+        final long endTime = options.hasKey("endTime") && !options.isNull("endTime")
+            ? (long) options.getDouble("endTime")
+            : Long.MAX_VALUE;
+        
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    runExport(format, includeTrips, includeMaintenance, startTime, endTime, promise);
+                } finally {
+                    exporting.set(false);
+                }
+            }
+        });
+    }
+    
+    // MARK: - Helper Methods
+    
+    private void runExport(
+        ExportWriter.Format format,
+        boolean includeTrips,
+        boolean includeMaintenance,
+        long startTime,
+        long endTime,
+        Promise promise
+    ) {
+        ReactApplicationContext context = getReactApplicationContext();
+        File dir = new File(context.getCacheDir(), EXPORT_DIR);
+        dir.mkdirs();
+        long now = System.currentTimeMillis();
+        File file = new File(dir, "ridecare_export_" + now + "." + format.name().toLowerCase(Locale.ROOT));
+        File partial = new File(dir, file.getName() + ".part");
+        String[] range = new String[] {Long.toString(startTime), Long.toString(endTime)};
+        
+        SQLiteDatabase db = null;
+        try {
+            db = TripStore.openReadOnly(getReactApplicationContext());
+            boolean hasTrips = includeTrips && db != null && TripStore.hasTable(db, "trips");
+            boolean hasMaintenance = includeMaintenance && db != null && TripStore.hasTable(db, "maintenance_events");
+            
+            rowsDone = 0;
+            rowsTotal = (hasTrips ? count(db, TRIP_RANGE, range) : 0)
+                + (hasMaintenance ? count(db, MAINTENANCE_RANGE, range) : 0);
+            lastProgressTime = 0;
+            emitProgress(true);
+            
+            long rows;
+            try (ExportWriter writer = ExportWriter.open(partial, format)) {
+                writer.begin(now);
+                if (includeTrips) {
+                    writer.beginTrips();
+                    if (hasTrips) {
+                        // CSV has no column for the path, so it is not read at all
+                        boolean withPath = format != ExportWriter.Format.CSV;
+                        exportTrips(db, writer, range, withPath);
+                    }
+                    writer.endTrips();
+                }
+                if (includeMaintenance) {
+                    writer.beginMaintenance();
+                    if (hasMaintenance) {
+                        exportMaintenance(db, writer, range);
+                    }
+                    writer.endMaintenance();
+                }
+                writer.finish();
+                rows = writer.getRowCount();
+            }
+            
+            if (!partial.renameTo(file)) {
+                throw new IOException("Cannot move export into place");
+            }
+            emitProgress(true);
+            
+            WritableMap result = new WritableNativeMap();
+            result.putString("filePath", file.getAbsolutePath());
+            result.putDouble("rows", rows);
+            result.putDouble("bytes", file.length());
+            promise.resolve(result);
+        } catch (IOException | SQLiteException e) {
+            Log.w(TAG, "Export failed", e);
+            partial.delete();
+            promise.reject("EXPORT_ERROR", e.getMessage());
+        } catch (RuntimeException e) {
+            // Bad data must not leave the export spinning or a .part file behind
+            Log.e(TAG, "Export failed", e);
+            partial.delete();
+            promise.reject("EXPORT_ERROR", e.getMessage());
+        } finally {
+            if (db != null) {
+                db.close();
+            }
+        }
+    }
+    
+    private void exportTrips(SQLiteDatabase db, ExportWriter writer, String[] range, boolean withPath)
+        throws IOException {
+        String sql = "SELECT " + TRIP_COLUMNS + (withPath ? ", path" : ", NULL") + TRIP_RANGE + " ORDER BY start_time";
+        ExportWriter.TripRow row = new ExportWriter.TripRow();
+        
+        try (Cursor cursor = db.rawQuery(sql, range)) {
+            while (cursor.moveToNext()) {
+                row.id = cursor.getString(0);
+                row.bikeId = cursor.getString(1);
+                row.startTime = cursor.getLong(2);
+                row.endTime = cursor.getLong(3);
+                row.startLat = getDouble(cursor, 4);
+                row.startLng = getDouble(cursor, 5);
+                row.endLat = getDouble(cursor, 6);
+                row.endLng = getDouble(cursor, 7);
+                row.distanceKm = cursor.getDouble(8);
+                row.avgSpeedKmh = getDouble(cursor, 9);
+                row.maxSpeedKmh = getDouble(cursor, 10);
+                row.path = cursor.isNull(11) ? null : cursor.getString(11);
+                writer.writeTrip(row);
+                rowDone();
+            }
+        }
+    }
+    
+    private void exportMaintenance(SQLiteDatabase db, ExportWriter writer, String[] range) throws IOException {
+        String sql = "SELECT " + MAINTENANCE_COLUMNS + MAINTENANCE_RANGE + " ORDER BY " + MAINTENANCE_DATE;
+        ExportWriter.MaintenanceRow row = new ExportWriter.MaintenanceRow();
+        
+        try (Cursor cursor = db.rawQuery(sql, range)) {
+            while (cursor.moveToNext()) {
+                row.id = cursor.getString(0);
+                row.bikeId = cursor.getString(1);
+                row.type = cursor.getString(2);
+                row.completed = cursor.getInt(3) != 0;
+                row.dateDue = getTime(cursor, 4);
+                row.completedAt = getTime(cursor, 5);
+                row.kmDueAt = getDouble(cursor, 6);
+                row.completedKm = getDouble(cursor, 7);
+                row.cost = getDouble(cursor, 8);
+                row.notes = cursor.isNull(9) ? null : cursor.getString(9);
+                row.receiptUrls = cursor.isNull(10) ? null : cursor.getString(10);
+                writer.writeMaintenance(row);
+                rowDone();
+            }
+        }
+    }
+    
+    private void rowDone() {
+        rowsDone++;
+        if (rowsDone % PROGRESS_ROWS == 0) {
+            emitProgress(false);
+        }
+    }
+    
+    private void emitProgress(boolean force) {
+        long now = SystemClock.elapsedRealtime();
+        if (!force && now - lastProgressTime < PROGRESS_INTERVAL) return;
+        lastProgressTime = now;
+        
+        ReactApplicationContext reactContext = getReactApplicationContext();
+        if (!reactContext.hasActiveReactInstance()) return;
+        
+        WritableMap event = new WritableNativeMap();
+        event.putDouble("done", rowsDone);
+        event.putDouble("total", rowsTotal);
+        reactContext
+            .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+            .emit("onExportProgress", event);
+    }
+    
+    private static long count(SQLiteDatabase db, String range, String[] args) {
+        try (Cursor cursor = db.rawQuery("SELECT COUNT(*)" + range, args)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+    
+    private static double getDouble(Cursor cursor, int column) {
+        return cursor.isNull(column) ? Double.NaN : cursor.getDouble(column);
+    }
+    
+    private static long getTime(Cursor cursor, int column) {
+        return cursor.isNull(column) ? ExportWriter.NO_TIME : cursor.getLong(column);
+    }
+}
@@ -1,22 +1,44 @@
 package com.ridecare;
 
 import android.Manifest;
+import android.content.BroadcastReceiver;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
 import android.os.IBinder;
+import android.util.Base64;
 import androidx.core.content.ContextCompat;
 
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.bridge.WritableNativeMap;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableNativeArray;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.ridecare.engine.Breadcrumb;
+import com.ridecare.engine.GpsScheduler;
+import com.ridecare.engine.LatencyHistogram;
+import com.ridecare.engine.RideSegmenter;
+import com.ridecare.engine.MotionDetector;
+import com.ridecare.engine.TrackBuffer;
+import com.ridecare.engine.TripEngine;
+import com.ridecare.engine.TrackingMetrics;
+import com.ridecare.engine.TripSnapshot;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * LocationModule.java
@@ -25,25 +47,89 @@ import com.facebook.react.bridge.WritableNativeArray;
  */
 public class LocationModule extends ReactContextBaseJavaModule {
     
-    private LocationService locationService;
-    private boolean isBound = false;
+    // Upper bound for a single page of trip points
+    private static final int MAX_PAGE_SIZE = 1000;
+    // Fields per point in the packed format: latitude, longitude, speed (km/h), timestamp
+    private static final int PACKED_STRIDE = 4;
+    // Rough serialized size of a bridge number (digits, sign, decimal point)
+    private static final int NUMBER_PAYLOAD_BYTES = 18;
+    // Breadcrumb points carried by each onTripProgress event
+    private static final int PROGRESS_POINTS = 10;
+    
+    // Unreleased finished trips kept for paging; older ones are dropped
+    private static final int MAX_FINISHED_TRIPS = 2;
+    
+    // Set on the main thread by the connection, read on the bridge thread
+    private volatile LocationService locationService;
+    private volatile boolean isBound = false;
+    
+    // Finished trips whose points JS has not released yet, oldest handle first
+    private final LinkedHashMap<Integer, TrackBuffer> finishedTrips = new LinkedHashMap<>();
+    private int nextTripHandle = 1;
     
     private ServiceConnection connection = new ServiceConnection() {
         @Override
         public void onServiceConnected(ComponentName name, IBinder service) {
             LocationService.LocalBinder binder = (LocationService.LocalBinder) service;
             locationService = binder.getService();
+            locationService.setProgressListener(progressListener, progressInterval);
             isBound = true;
         }
         
         @Override
         public void onServiceDisconnected(ComponentName name) {
+            locationService = null;
             isBound = false;
         }
     };
     
+    private volatile long progressInterval = 1000;
+    
+    // Throttled live state while riding; runs on the service's processing thread
+    private final LocationService.ProgressListener progressListener = new LocationService.ProgressListener() {
+        @Override
+        public void onTripProgress(TripSnapshot snapshot) {
+            ReactApplicationContext reactContext = getReactApplicationContext();
+            if (!reactContext.hasActiveReactInstance()) return;
+            
+            WritableMap event = toLiveTrip(snapshot, PROGRESS_POINTS);
+            recordPayload(event);
+            reactContext
+                .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit("onTripProgress", event);
+        }
+    };
+    
+    // Trips stored natively by LocationService; forwarded to JS as onTripSaved
+    private final BroadcastReceiver tripSavedReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            ReactApplicationContext reactContext = getReactApplicationContext();
+            if (!reactContext.hasActiveReactInstance()) return; // JS reads the trips table on next start
+            
+            WritableMap event = new WritableNativeMap();
+            event.putString("id", intent.getStringExtra("id"));
+            event.putString("bikeId", intent.getStringExtra("bikeId"));
+            event.putDouble("startTime", intent.getLongExtra("startTime", 0));
+            event.putDouble("endTime", intent.getLongExtra("endTime", 0));
+            event.putDouble("distance", intent.getDoubleExtra("distance", 0)); // km
+            event.putDouble("avgSpeed", intent.getDoubleExtra("avgSpeed", 0)); // km/h
+            event.putDouble("maxSpeed", intent.getDoubleExtra("maxSpeed", 0)); // km/h
+            recordPayload(event);
+            reactContext
+                .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit("onTripSaved", event);
+        }
+    };
+    
     public LocationModule(ReactApplicationContext reactContext) {
         super(reactContext);
+        ContextCompat.registerReceiver(
+            reactContext,
+            tripSavedReceiver,
+            new IntentFilter(LocationService.TRIP_SAVED_ACTION),
+            ContextCompat.RECEIVER_NOT_EXPORTED
+        );
     }
     
     @Override
@@ -119,25 +205,46 @@ public class LocationModule extends ReactContextBaseJavaModule {
                 result.putDouble("endTime", trip.endTime);
                 result.putDouble("distance", trip.distance / 1000); // Convert to km
                 result.putDouble("duration", trip.duration / 1000); // Convert to seconds
+                result.putDouble("movingTime", trip.stats.getMovingTime() / 1000); // Convert to seconds
+                result.putDouble("avgSpeed", trip.stats.getAverageSpeed() * 3.6); // Convert to km/h
+                result.putDouble("maxSpeed", trip.stats.getMaxSpeed() * 3.6); // Convert to km/h
                 
-                WritableArray locations = new WritableNativeArray();
-                for (android.location.Location loc : trip.locations) {
-                    WritableMap locMap = new WritableNativeMap();
-                    locMap.putDouble("latitude", loc.getLatitude());
-                    locMap.putDouble("longitude", loc.getLongitude());
-                    locMap.putDouble("speed", loc.getSpeed() * 3.6); // Convert to km/h
-                    locMap.putDouble("timestamp", loc.getTime());
-                    locations.pushMap(locMap);
+                if (trip.stats.getPointCount() > 0) {
+                    WritableMap bounds = new WritableNativeMap();
+                    bounds.putDouble("minLatitude", trip.stats.getMinLatitude());
+                    bounds.putDouble("maxLatitude", trip.stats.getMaxLatitude());
+                    bounds.putDouble("minLongitude", trip.stats.getMinLongitude());
+                    bounds.putDouble("maxLongitude", trip.stats.getMaxLongitude());
+                    result.putMap("bounds", bounds);
+                }
+                result.putString("path", trip.path);
+                result.putArray("segments", toSegments(trip.segments));
+                result.putDouble("pausedTime", trip.segments.getTotalTime(RideSegmenter.PAUSED) / 1000); // Convert to seconds
+                result.putDouble("excludedGapDistance", trip.segments.getExcludedDistance() / 1000); // Convert to km
+                if (trip.tripId != null) {
+                    result.putString("tripId", trip.tripId); // Already queued for the trips table
                 }
-                result.putArray("locations", locations);
                 
+                // Points stay native; JS pages through them with the handle
+                int handle = nextTripHandle++;
+                finishedTrips.put(handle, trip.track);
+                Iterator<Integer> oldest = finishedTrips.keySet().iterator();
+                while (finishedTrips.size() > MAX_FINISHED_TRIPS) {
+                    oldest.next();
+                    oldest.remove(); // Never released; its handle now reads as invalid
+                }
+                result.putInt("tripHandle", handle);
+                result.putInt("pointCount", trip.track.size());
+                
+                recordPayload(result);
                 promise.resolve(result);
                 
-                // Unbind service
+                // Unbind service; it stops itself and the next ride binds a new one
                 if (isBound) {
                     getReactApplicationContext().unbindService(connection);
                     isBound = false;
                 }
+                locationService = null;
             } else {
                 promise.reject("NOT_TRACKING", "Tracking is not active");
             }
@@ -164,4 +271,418 @@ public class LocationModule extends ReactContextBaseJavaModule {
             promise.reject("ERROR", e.getMessage());
         }
     }
+    
+    /**
+     * Set the minimum interval between tracking notification updates
+     */
+    @ReactMethod
+    public void setNotificationInterval(double intervalMillis, Promise promise) {
+        if (locationService != null) {
+            locationService.setNotificationInterval((long) intervalMillis);
+            
+            WritableMap result = new WritableNativeMap();
+            result.putDouble("notificationInterval", intervalMillis);
+            promise.resolve(result);
+        } else {
+            promise.reject("SERVICE_ERROR", "Location service not ready");
+        }
+    }
+    
+    /**
+     * Keep one trip through long stops (tours) instead of auto-stopping
+     */
+    @ReactMethod
+    public void setAutoStopEnabled(boolean enabled, Promise promise) {
+        if (locationService != null) {
+            locationService.setAutoStopEnabled(enabled);
+            promise.resolve(enabled);
+        } else {
+            promise.reject("SERVICE_ERROR", "Location service not ready");
+        }
+    }
+    
+    /**
+     * "interpolate" counts the straight line across GPS gaps, "exclude" drops it
+     */
+    @ReactMethod
+    public void setGapPolicy(String policy, Promise promise) {
+        if (locationService == null) {
+            promise.reject("SERVICE_ERROR", "Location service not ready");
+            return;
+        }
+        
+        if ("interpolate".equals(policy)) {
+            locationService.setGapPolicy(RideSegmenter.GapPolicy.INTERPOLATE);
+        } else if ("exclude".equals(policy)) {
+            locationService.setGapPolicy(RideSegmenter.GapPolicy.EXCLUDE);
+        } else {
+            promise.reject("INVALID_POLICY", "Unknown gap policy " + policy);
+            return;
+        }
+        promise.resolve(policy);
+    }
+    
+    /**
+     * Bike whose odometer (in MaintenanceModule) advances while riding
+     */
+    @ReactMethod
+    public void setActiveBike(String bikeId, Promise promise) {
+        if (locationService != null) {
+            locationService.setActiveBike(bikeId);
+            promise.resolve(true);
+        } else {
+            promise.reject("SERVICE_ERROR", "Location service not ready");
+        }
+    }
+    
+    /**
+     * Pending km-based maintenance events of a bike:
+     * [{ id, kmDueAt, title?, body? }] (rows of maintenance_events).
+     * odometerKm is the bike's current bikes.odometer_km; thresholds at or
+     * below it count as already passed.
+     */
+    @ReactMethod
+    public void setMaintenanceThresholds(String bikeId, double odometerKm, ReadableArray events, Promise promise) {
+        if (locationService == null) {
+            promise.reject("SERVICE_ERROR", "Location service not ready");
+            return;
+        }
+        if (Double.isNaN(odometerKm) || odometerKm < 0) {
+            promise.reject("ERROR", "Unknown odometer for bike " + bikeId);
+            return;
+        }
+        
+        try {
+            int count = events.size();
+            String[] ids = new String[count];
+            double[] kmDueAt = new double[count];
+            String[] titles = new String[count];
+            String[] bodies = new String[count];
+            for (int i = 0; i < count; i++) {
+                ReadableMap event = events.getMap(i);
+                ids[i] = event.getString("id");
+                kmDueAt[i] = event.hasKey("kmDueAt") && !event.isNull("kmDueAt")
+                    ? event.getDouble("kmDueAt")
+                    : Double.NaN;
+                titles[i] = event.hasKey("title") ? event.getString("title") : "Maintenance Due";
+                bodies[i] = event.hasKey("body")
+                    ? event.getString("body")
+                    : String.format("Your bike has reached %.0f km", kmDueAt[i]);
+            }
+            
+            locationService.setMaintenanceTriggers(bikeId, odometerKm, ids, kmDueAt, titles, bodies);
+            promise.resolve(count);
+        } catch (Exception e) {
+            promise.reject("ERROR", e.getMessage());
+        }
+    }
+    
+    /**
+     * Current ride state from the service's published snapshot
+     */
+    @ReactMethod
+    public void getTrackingState(Promise promise) {
+        TripSnapshot snapshot = locationService != null ? locationService.getSnapshot() : TripSnapshot.IDLE;
+        
+        WritableMap result = new WritableNativeMap();
+        result.putBoolean("isTracking", snapshot.isTracking);
+        result.putDouble("startTime", snapshot.startTime);
+        result.putInt("pointCount", snapshot.pointCount);
+        result.putDouble("distance", snapshot.distance / 1000); // Convert to km
+        result.putDouble("speed", snapshot.currentSpeed * 3.6); // Convert to km/h
+        result.putDouble("maxSpeed", snapshot.maxSpeed * 3.6); // Convert to km/h
+        result.putDouble("lastFixTime", snapshot.lastFixTime);
+        result.putDouble("rejectedFixes", snapshot.rejectedFixCount);
+        
+        if (locationService != null) {
+            TrackingNotificationPublisher publisher = locationService.getNotificationPublisher();
+            result.putDouble("notificationsPosted", publisher.getPostedCount());
+            result.putDouble("notificationsSuppressed", publisher.getSuppressedCount());
+            
+            GpsScheduler scheduler = locationService.getGpsScheduler();
+            result.putString("gpsBand", scheduler.getBand().name());
+            result.putDouble("gpsInterval", scheduler.getIntervalMillis());
+            result.putInt("gpsBandSwitches", scheduler.getSwitchCount());
+            
+            MotionDetector.Stats motion = locationService.getMotionStats();
+            result.putString("autoStartState", motion.state.name());
+            result.putInt("autoStarts", motion.confirmedCount);
+            result.putInt("falseStarts", motion.falseStartCount);
+            result.putDouble("falseStartRate", motion.falseStartRate);
+            result.putDouble("decisionLatency", motion.averageDecisionLatency);
+            result.putDouble("maxDecisionLatency", motion.maxDecisionLatency);
+            result.putDouble("autoStartGpsTime", motion.gpsOnTime);
+        }
+        recordPayload(result);
+        promise.resolve(result);
+    }
+    
+    /**
+     * Live ride state without stopping the trip: current statistics and up
+     * to maxPoints of the most recent points. Constant cost however long the
+     * ride is, so it can be polled at 1 Hz.
+     */
+    @ReactMethod
+    public void getLiveTrip(int maxPoints, Promise promise) {
+        TripSnapshot snapshot = locationService != null ? locationService.getSnapshot() : TripSnapshot.IDLE;
+        WritableMap result = toLiveTrip(snapshot, Math.max(0, Math.min(maxPoints, TripEngine.RECENT_POINTS)));
+        recordPayload(result);
+        promise.resolve(result);
+    }
+    
+    /**
+     * Minimum time between two onTripProgress events
+     */
+    @ReactMethod
+    public void setTripProgressInterval(double intervalMillis, Promise promise) {
+        progressInterval = (long) intervalMillis;
+        if (locationService != null) {
+            locationService.setProgressListener(progressListener, progressInterval);
+        }
+        promise.resolve(intervalMillis);
+    }
+    
+    /**
+     * Recording metrics: counters, latency histograms and battery proxies.
+     * The same values are dumped as JSON to metricsFile every minute.
+     */
+    @ReactMethod
+    public void getTrackingMetrics(Promise promise) {
+        if (locationService == null) {
+            promise.reject("SERVICE_ERROR", "Location service not ready");
+            return;
+        }
+        
+        TrackingMetrics metrics = locationService.getMetrics();
+        WritableMap result = new WritableNativeMap();
+        result.putDouble("fixesReceived", metrics.getFixesReceived());
+        result.putDouble("providerSwitches", metrics.getProviderSwitches());
+        result.putDouble("rejectedFixes", metrics.getRejectedFixes());
+        result.putDouble("droppedFixes", metrics.getDroppedFixes());
+        result.putDouble("wakeups", metrics.getWakeups());
+        result.putDouble("gpsRegistrations", metrics.getGpsRegistrations());
+        result.putDouble("notificationsPosted", metrics.getNotificationsPosted());
+        result.putDouble("notificationsSuppressed", metrics.getNotificationsSuppressed());
+        result.putDouble("bridgeBytes", metrics.getBridgeBytes());
+        result.putMap("fixIntervalMillis", toMap(metrics.getFixInterval()));
+        result.putMap("handoffMicros", toMap(metrics.getHandoffDelay()));
+        result.putMap("processingMicros", toMap(metrics.getProcessingTime()));
+        result.putMap("bridgePayloadBytes", toMap(metrics.getBridgePayload()));
+        result.putString("metricsFile", locationService.getMetricsFile().getAbsolutePath());
+        promise.resolve(result);
+    }
+    
+    /**
+     * Read one page of a finished trip as an array of point maps
+     */
+    @ReactMethod
+    public void readTripPoints(int handle, int offset, int limit, Promise promise) {
+        TrackBuffer track = finishedTrips.get(handle);
+        if (track == null) {
+            promise.reject("INVALID_HANDLE", "Unknown or released trip handle");
+            return;
+        }
+        
+        if (offset < 0 || limit < 0) {
+            promise.reject("INVALID_RANGE", "Offset and limit must be non-negative");
+            return;
+        }
+        int start = Math.min(offset, track.size());
+        int end = Math.min(track.size(), start + Math.min(limit, MAX_PAGE_SIZE));
+        
+        WritableArray points = new WritableNativeArray();
+        for (int i = start; i < end; i++) {
+            WritableMap locMap = new WritableNativeMap();
+            locMap.putDouble("latitude", track.getLatitude(i));
+            locMap.putDouble("longitude", track.getLongitude(i));
+            locMap.putDouble("speed", track.getSpeed(i) * 3.6); // Convert to km/h
+            locMap.putDouble("timestamp", track.getTime(i));
+            points.pushMap(locMap);
+        }
+        
+        WritableMap result = new WritableNativeMap();
+        result.putInt("offset", start);
+        result.putInt("count", end - start);
+        result.putInt("total", track.size());
+        result.putArray("points", points);
+        recordPayload(result);
+        promise.resolve(result);
+    }
+    
+    /**
+     * Read one page of a finished trip as a base64 typed-array payload.
+     * Decodes on the JS side to a Float64Array (little-endian) holding
+     * [latitude, longitude, speed km/h, timestamp] for each point.
+     */
+    @ReactMethod
+    public void readTripPointsPacked(int handle, int offset, int limit, Promise promise) {
+        TrackBuffer track = finishedTrips.get(handle);
+        if (track == null) {
+            promise.reject("INVALID_HANDLE", "Unknown or released trip handle");
+            return;
+        }
+        
+        if (offset < 0 || limit < 0) {
+            promise.reject("INVALID_RANGE", "Offset and limit must be non-negative");
+            return;
+        }
+        int start = Math.min(offset, track.size());
+        int end = Math.min(track.size(), start + Math.min(limit, MAX_PAGE_SIZE));
+        
+        ByteBuffer packed = ByteBuffer.allocate((end - start) * PACKED_STRIDE * 8)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = start; i < end; i++) {
+            packed.putDouble(track.getLatitude(i));
+            packed.putDouble(track.getLongitude(i));
+            packed.putDouble(track.getSpeed(i) * 3.6); // Convert to km/h
+            packed.putDouble(track.getTime(i));
+        }
+        
+        WritableMap result = new WritableNativeMap();
+        result.putInt("offset", start);
+        result.putInt("count", end - start);
+        result.putInt("total", track.size());
+        result.putInt("stride", PACKED_STRIDE);
+        result.putString("data", Base64.encodeToString(packed.array(), Base64.NO_WRAP));
+        recordPayload(result);
+        promise.resolve(result);
+    }
+    
+    /**
+     * Free the native points of a finished trip
+     */
+    @ReactMethod
+    public void releaseTrip(int handle, Promise promise) {
+        WritableMap result = new WritableNativeMap();
+        result.putBoolean("released", finishedTrips.remove(handle) != null);
+        promise.resolve(result);
+    }
+    
+    // MARK: - Helper Methods
+    
+    private static WritableMap toLiveTrip(TripSnapshot snapshot, int maxPoints) {
+        WritableMap result = new WritableNativeMap();
+        result.putBoolean("isTracking", snapshot.isTracking);
+        result.putDouble("startTime", snapshot.startTime);
+        result.putInt("pointCount", snapshot.pointCount);
+        result.putDouble("distance", snapshot.distance / 1000); // Convert to km
+        result.putDouble("speed", snapshot.currentSpeed * 3.6); // Convert to km/h
+        result.putDouble("avgSpeed", snapshot.averageSpeed * 3.6); // Convert to km/h
+        result.putDouble("maxSpeed", snapshot.maxSpeed * 3.6); // Convert to km/h
+        result.putDouble("movingTime", snapshot.movingTime / 1000); // Convert to seconds
+        result.putDouble("lastFixTime", snapshot.lastFixTime);
+        
+        Breadcrumb breadcrumb = snapshot.breadcrumb;
+        WritableArray points = new WritableNativeArray();
+        for (int i = Math.max(0, breadcrumb.size() - maxPoints); i < breadcrumb.size(); i++) {
+            WritableMap point = new WritableNativeMap();
+            point.putDouble("latitude", breadcrumb.getLatitude(i));
+            point.putDouble("longitude", breadcrumb.getLongitude(i));
+            point.putDouble("speed", breadcrumb.getSpeed(i) * 3.6); // Convert to km/h
+            point.putDouble("timestamp", breadcrumb.getTime(i));
+            points.pushMap(point);
+        }
+        result.putArray("recent", points);
+        return result;
+    }
+    
+    /**
+     * Segments as index ranges into the trip's points (readTripPoints)
+     */
+    private static WritableArray toSegments(RideSegmenter segments) {
+        WritableArray result = new WritableNativeArray();
+        for (int i = 0; i < segments.getSegmentCount(); i++) {
+            WritableMap segment = new WritableNativeMap();
+            segment.putString("type", segmentType(segments.getType(i)));
+            segment.putInt("startIndex", segments.getStartIndex(i));
+            segment.putInt("endIndex", segments.getEndIndex(i));
+            segment.putDouble("startTime", segments.getStartTime(i));
+            segment.putDouble("endTime", segments.getEndTime(i));
+            segment.putDouble("distance", segments.getDistance(i) / 1000); // Convert to km
+            result.pushMap(segment);
+        }
+        return result;
+    }
+    
+    private static String segmentType(byte type) {
+        switch (type) {
+            case RideSegmenter.PAUSED:
+                return "paused";
+            case RideSegmenter.GAP:
+                return "gap";
+            default:
+                return "moving";
+        }
+    }
+    
+    private static WritableMap toMap(LatencyHistogram histogram) {
+        WritableMap map = new WritableNativeMap();
+        map.putDouble("count", histogram.getCount());
+        map.putDouble("mean", histogram.getMean());
+        map.putDouble("p50", histogram.getValueAtPercentile(50));
+        map.putDouble("p90", histogram.getValueAtPercentile(90));
+        map.putDouble("p99", histogram.getValueAtPercentile(99));
+        map.putDouble("max", histogram.getMax());
+        return map;
+    }
+    
+    private void recordPayload(ReadableMap payload) {
+        if (locationService != null) {
+            locationService.getMetrics().recordBridgePayload(payloadSize(payload));
+        }
+    }
+    
+    /**
+     * Approximate JSON size of a bridge payload
+     */
+    private static long payloadSize(ReadableMap map) {
+        long size = 2;
+        ReadableMapKeySetIterator keys = map.keySetIterator();
+        while (keys.hasNextKey()) {
+            String key = keys.nextKey();
+            size += key.length() + 4; // Quotes, colon, comma
+            switch (map.getType(key)) {
+                case String:
+                    size += map.getString(key).length() + 2;
+                    break;
+                case Number:
+                    size += NUMBER_PAYLOAD_BYTES;
+                    break;
+                case Boolean:
+                    size += 5;
+                    break;
+                case Map:
+                    size += payloadSize(map.getMap(key));
+                    break;
+                case Array:
+                    size += payloadSize(map.getArray(key));
+                    break;
+                default:
+                    size += 4; // null
+                    break;
+            }
+        }
+        return size;
+    }
+    
+    private static long payloadSize(ReadableArray array) {
+        long size = 2;
+        for (int i = 0; i < array.size(); i++) {
+            switch (array.getType(i)) {
+                case String:
+                    size += array.getString(i).length() + 3;
+                    break;
+                case Number:
+                    size += NUMBER_PAYLOAD_BYTES + 1;
+                    break;
+                case Map:
+                    size += payloadSize(array.getMap(i)) + 1;
+                    break;
+                default:
+                    size += 6;
+                    break;
+            }
+        }
+        return size;
+    }
 }
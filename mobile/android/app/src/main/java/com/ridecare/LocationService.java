@@ -1,49 +1,242 @@
 package com.ridecare;
 
-import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
-import android.location.Location;
-import android.location.LocationListener;
+import android.hardware.SensorManager;
 import android.location.LocationManager;
 import android.os.Binder;
 import android.os.Build;
-import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
-import androidx.core.app.NotificationCompat;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
 
-import java.util.ArrayList;
-import java.util.List;
+import com.ridecare.engine.FixRingBuffer;
+import com.ridecare.engine.GpsScheduler;
+import com.ridecare.engine.LocationSource;
+import com.ridecare.engine.MaintenanceEvaluator;
+import com.ridecare.engine.MotionDetector;
+import com.ridecare.engine.OdometerTriggerIndex;
+import com.ridecare.engine.RideSegmenter;
+import com.ridecare.engine.SyncOutbox;
+import com.ridecare.engine.TrackBuffer;
+import com.ridecare.engine.TrackCodec;
+import com.ridecare.engine.TrackJournal;
+import com.ridecare.engine.TrackingMetrics;
+import com.ridecare.engine.TripAccumulator;
+import com.ridecare.engine.TripEngine;
+import com.ridecare.engine.TripRecord;
+import com.ridecare.engine.TripSnapshot;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * LocationService.java
  * 
  * Foreground service for background location tracking
+ * 
+ * Threading: fixes arrive on a dedicated location looper and are handed to
+ * the processing thread through a FixRingBuffer. All trip state is owned by
+ * the processing thread (the single writer); other threads only read the
+ * TripSnapshot the engine publishes, and requests such as stopTracking()
+ * are run on the processing thread instead of touching state directly.
+ * 
+ * Trip logic lives in the platform-independent TripEngine; this service only
+ * adapts Android location, journaling and notification APIs to it. Auto-start
+ * is decided by a MotionDetector fed from low-power motion hints, so GPS is
+ * only switched on once the phone looks like it is riding. Fixes come from a
+ * LocationSource, so tests can swap the platform for a replayed trace.
  */
-public class LocationService extends Service implements LocationListener {
+public class LocationService extends Service {
     
     private static final String CHANNEL_ID = "location_tracking";
     private static final int NOTIFICATION_ID = 1001;
+    private static final String TAG = "LocationService";
+    private static final String JOURNAL_FILE = "active_trip.journal";
+    private static final String TRIPS_DIR = "trips";
+    private static final long TRIP_FILE_RETENTION = 7L * 24 * 60 * 60 * 1000; // 7 days for trips never stored
+    private static final String METRICS_FILE = "tracking_metrics.json";
+    static final String TRIP_SAVED_ACTION = "com.ridecare.TRIP_SAVED";
+    private static final double PATH_TOLERANCE_METERS = 5.0; // Simplification for trips.path
+    
+    private static final int FIX_BUFFER_CAPACITY = 256;
+    private static final int DRAIN_BATCH_SIZE = 64;
+    private static final long DEFAULT_NOTIFICATION_INTERVAL = 5000; // 5 seconds
+    private static final long AUTO_START_GPS_INTERVAL = 1000;       // 1 second while confirming
+    private static final long MOTION_TICK_INTERVAL = 5000;          // 5 seconds
+    private static final long METRICS_DUMP_INTERVAL = 60000;        // 1 minute
+    private static final long DEFAULT_PROGRESS_INTERVAL = 1000;     // 1 second
+    private static final long PROCESSING_TIMEOUT = 10000;           // 10 seconds for a bridge call
     
-    private LocationManager locationManager;
+    private LocationSource locationSource;
+    static LocationSource sourceOverride; // Set before start to replay a trace
     private final IBinder binder = new LocalBinder();
-    private boolean isTracking = false;
     
-    private List<Location> locations = new ArrayList<>();
-    private long startTime;
-    private Location lastLocation;
+    private HandlerThread locationThread;
+    private HandlerThread processingThread;
+    private Handler processingHandler;
+    private final FixRingBuffer fixBuffer = new FixRingBuffer(FIX_BUFFER_CAPACITY);
+    private final AtomicBoolean drainScheduled = new AtomicBoolean(false);
+    private volatile long drainRequestedAt; // System.nanoTime() of the pending drain post
+    private TrackingMetrics metrics;
+    private volatile ProgressListener progressListener;
+    private volatile long progressInterval = DEFAULT_PROGRESS_INTERVAL;
+    private long lastProgressTime = 0;       // processing thread
+    private boolean progressScheduled = false;
+    private TrackingNotificationPublisher notificationPublisher;
+    
+    /**
+     * Runs on the location source's thread: hand the fix over and return immediately
+     */
+    private final LocationSource.Sink fixSink = new LocationSource.Sink() {
+        @Override
+        public void onLocation(double latitude, double longitude, float speed, float accuracy, long time, byte provider) {
+            metrics.recordFixArrival(provider, SystemClock.elapsedRealtime());
+            fixBuffer.offer(latitude, longitude, speed, accuracy, time, provider);
+            
+            if (drainScheduled.compareAndSet(false, true)) {
+                drainRequestedAt = System.nanoTime();
+                processingHandler.post(drainTask);
+            }
+        }
+    };
+    
+    // Owned by the processing thread
+    private final TripEngine engine = new TripEngine(new TripEngine.Listener() {
+        @Override
+        public void onFixRecorded(double latitude, double longitude, float speed, float accuracy, long time) {
+            appendToJournal(latitude, longitude, speed, accuracy, time);
+            
+            // One comparison per fix; thresholds are only walked once reached
+            double odometerKm = creditedOdometerKm + (engine.getStats().getDistance() - creditedDistance) / 1000;
+            if (odometerKm >= nextTriggerKm) {
+                fireOdometerTriggers(odometerKm);
+            }
+        }
+        
+        @Override
+        public void onGpsIntervalChanged(long intervalMillis) {
+            applyGpsInterval(intervalMillis);
+        }
+        
+        @Override
+        public void onAutoStop() {
+            finishTrip();
+            sendBroadcast(new Intent("com.ridecare.TRIP_AUTO_STOPPED"));
+        }
+    });
+    private final MotionDetector motionDetector = new MotionDetector(new MotionDetector.Listener() {
+        @Override
+        public void onGpsRequested(boolean enabled) {
+            if (enabled) {
+                requestConfirmationUpdates();
+            } else if (!engine.isTracking()) {
+                locationSource.removeUpdates();
+            }
+        }
+        
+        @Override
+        public void onRideConfirmed() {
+            try {
+                beginTrip();
+                sendBroadcast(new Intent("com.ridecare.TRIP_AUTO_STARTED"));
+            } catch (SecurityException e) {
+                Log.w(TAG, "Cannot auto-start without location permission", e);
+                motionDetector.onTripEnded(SystemClock.elapsedRealtime());
+            }
+        }
+        
+        @Override
+        public void onStateChanged(MotionDetector.State state) {
+            // Every metric moves with a transition, so this keeps the copy current
+            motionStats = motionDetector.stats();
+            
+            // Timeouts only matter while a suspicion is open
+            processingHandler.removeCallbacks(motionTickTask);
+            if (state == MotionDetector.State.SUSPECT || state == MotionDetector.State.CONFIRMING) {
+                processingHandler.postDelayed(motionTickTask, MOTION_TICK_INTERVAL);
+            }
+        }
+    });
+    private volatile MotionDetector.Stats motionStats = motionDetector.stats(); // Read off-thread by the bridge
+    private TrackJournal journal;
+    private String activeBikeId;
+    // Process-wide like the evaluator they were credited to, so a service
+    // restarted in the same process does not credit the trip twice
+    private static long creditedTripStart;   // start time of the trip below
+    private static double creditedDistance;  // meters of that trip already added to the bike's odometer
+    private double creditedOdometerKm; // the active bike's odometer as of the last credit
+    private final Map<String, MaintenanceTriggers> maintenanceTriggers = new HashMap<>();
+    private MaintenanceTriggers activeTriggers;
+    private double nextTriggerKm = Double.POSITIVE_INFINITY;
+    private NotificationHelper notificationHelper;
+    private TripStore tripStore;
+    
+    private final Runnable drainTask = new Runnable() {
+        @Override
+        public void run() {
+            drainFixes();
+        }
+    };
+    
+    private final Runnable motionTickTask = new Runnable() {
+        @Override
+        public void run() {
+            motionDetector.tick(SystemClock.elapsedRealtime());
+            if (motionDetector.getState() == MotionDetector.State.SUSPECT
+                || motionDetector.getState() == MotionDetector.State.CONFIRMING) {
+                processingHandler.postDelayed(this, MOTION_TICK_INTERVAL);
+            }
+        }
+    };
+    
+    private final Runnable metricsDumpTask = new Runnable() {
+        @Override
+        public void run() {
+            dumpMetrics();
+            processingHandler.postDelayed(this, METRICS_DUMP_INTERVAL);
+        }
+    };
     
-    // Configuration
-    private static final float AUTO_START_SPEED_THRESHOLD = 10f / 3.6f; // 10 km/h in m/s
-    private static final long AUTO_START_DURATION = 30000; // 30 seconds
-    private static final long AUTO_STOP_DURATION = 600000; // 10 minutes
+    private final Runnable progressTask = new Runnable() {
+        @Override
+        public void run() {
+            progressScheduled = false;
+            emitProgress();
+        }
+    };
     
-    private long highSpeedStartTime = 0;
-    private long stationaryStartTime = 0;
+    private final FixRingBuffer.Consumer fixConsumer = new FixRingBuffer.Consumer() {
+        @Override
+        public void onFix(double latitude, double longitude, float speed, float accuracy, long time, byte provider) {
+            processFix(latitude, longitude, speed, accuracy, time, provider);
+        }
+    };
+    
+    /**
+     * Receives throttled ride progress on the processing thread
+     */
+    public interface ProgressListener {
+        void onTripProgress(TripSnapshot snapshot);
+    }
     
     public class LocalBinder extends Binder {
         LocationService getService() {
@@ -54,16 +247,84 @@ public class LocationService extends Service implements LocationListener {
     @Override
     public void onCreate() {
         super.onCreate();
-        locationManager = (LocationManager) getSystemService(Context.LOCATION_SERVICE);
         createNotificationChannel();
+        
+        locationThread = new HandlerThread("RideCare-Location", Process.THREAD_PRIORITY_FOREGROUND);
+        locationThread.start();
+        locationSource = sourceOverride != null
+            ? sourceOverride
+            : new AndroidLocationSource((LocationManager) getSystemService(Context.LOCATION_SERVICE), locationThread.getLooper());
+        processingThread = new HandlerThread("RideCare-TripProcessing", Process.THREAD_PRIORITY_BACKGROUND);
+        processingThread.start();
+        processingHandler = new Handler(processingThread.getLooper());
+        metrics = new TrackingMetrics(SystemClock.elapsedRealtime());
+        processingHandler.postDelayed(metricsDumpTask, METRICS_DUMP_INTERVAL);
+        motionDetector.addSource(new AccelerometerMotionSource(
+            (SensorManager) getSystemService(Context.SENSOR_SERVICE),
+            processingHandler
+        ));
+        
+        notificationHelper = new NotificationHelper(this);
+        tripStore = new TripStore(this, new TripStore.Listener() {
+            @Override
+            public void onTripSaved(TripStore.Trip trip) {
+                pruneTripFiles(trip.startTime);
+                broadcastTripSaved(trip);
+                TripRollupCache.get(LocationService.this).onTripSaved(trip);
+                TripTileIndexer.get(LocationService.this).onTripSaved(trip);
+                // Uploaded with the next outbox batch, even if JS is not running
+                OutboxUploader.get(LocationService.this)
+                    .enqueue("trips", trip.id, SyncOutbox.OP_SET, trip.toJson(), trip.endTime);
+            }
+        });
+        notificationPublisher = new TrackingNotificationPublisher(
+            this,
+            processingHandler,
+            CHANNEL_ID,
+            NOTIFICATION_ID,
+            DEFAULT_NOTIFICATION_INTERVAL
+        );
     }
     
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
-        startForeground(NOTIFICATION_ID, buildNotification("Tracking your ride..."));
+        startForeground(NOTIFICATION_ID, notificationPublisher.build("Tracking your ride..."));
+        
+        // Restarted after the process was killed mid-ride: pick the trip back up
+        processingHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!engine.isTracking() && getJournalFile().exists()) {
+                    try {
+                        resumeTracking();
+                    } catch (SecurityException e) {
+                        Log.w(TAG, "Cannot resume trip without location permission", e);
+                    }
+                }
+            }
+        });
         return START_STICKY;
     }
     
+    @Override
+    public void onDestroy() {
+        locationSource.removeUpdates();
+        processingHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                motionDetector.setEnabled(false, SystemClock.elapsedRealtime());
+                processingHandler.removeCallbacks(motionTickTask);
+                processingHandler.removeCallbacks(metricsDumpTask);
+                dumpMetrics();
+                closeJournal();
+            }
+        });
+        processingThread.quitSafely();
+        locationThread.quitSafely();
+        tripStore.shutdown();
+        super.onDestroy();
+    }
+    
     @Override
     public IBinder onBind(Intent intent) {
         return binder;
@@ -73,169 +334,558 @@ public class LocationService extends Service implements LocationListener {
      * Start location tracking
      */
     public void startTracking() throws SecurityException {
-        isTracking = true;
-        locations.clear();
-        startTime = System.currentTimeMillis();
-        
-        // Request location updates
-        locationManager.requestLocationUpdates(
-            LocationManager.GPS_PROVIDER,
-            1000, // 1 second
-            0,    // 0 meters
-            this
-        );
-        
-        // Also request network location as fallback
-        locationManager.requestLocationUpdates(
-            LocationManager.NETWORK_PROVIDER,
-            5000, // 5 seconds
-            0,
-            this
-        );
-        
-        updateNotification("Tracking active - " + locations.size() + " points");
+        runOnProcessingThread(new Callable<Void>() {
+            @Override
+            public Void call() {
+                beginTrip();
+                return null;
+            }
+        });
     }
     
     /**
      * Stop location tracking
      */
     public TripSummary stopTracking() {
-        isTracking = false;
-        locationManager.removeUpdates(this);
+        return runOnProcessingThread(new Callable<TripSummary>() {
+            @Override
+            public TripSummary call() {
+                return finishTrip();
+            }
+        });
+    }
+    
+    /**
+     * Minimum time between two tracking notification updates
+     */
+    public void setNotificationInterval(long intervalMillis) {
+        notificationPublisher.setMinInterval(intervalMillis);
+    }
+    
+    public TrackingNotificationPublisher getNotificationPublisher() {
+        return notificationPublisher;
+    }
+    
+    /**
+     * Bike whose odometer advances while riding; null to stop crediting
+     */
+    public void setActiveBike(final String bikeId) {
+        processingHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                creditOdometer(); // Distance so far belongs to the previous bike
+                activeBikeId = bikeId;
+                selectActiveBike();
+                recordBikeInJournal();
+            }
+        });
+    }
+    
+    /**
+     * Replace a bike's pending km-based maintenance events. Reminders fire
+     * natively as the ridden distance crosses each km_due_at, counted from
+     * odometerKm (the stored odometer) or the distance already credited this
+     * process, whichever is further.
+     */
+    public void setMaintenanceTriggers(
+        final String bikeId,
+        final double odometerKm,
+        final String[] maintenanceIds,
+        final double[] kmDueAt,
+        final String[] titles,
+        final String[] bodies
+    ) {
+        processingHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // The evaluator starts empty in every process and is credited live
+                // while riding, so it may be behind or ahead of the stored odometer
+                MaintenanceEvaluator evaluator = MaintenanceModule.getEvaluator();
+                double currentKm = Math.max(evaluator.getOdometer(bikeId), odometerKm);
+                evaluator.setOdometer(bikeId, currentKm);
+                
+                MaintenanceTriggers triggers = new MaintenanceTriggers(maintenanceIds, kmDueAt, titles, bodies);
+                triggers.index.skipTo(currentKm);
+                maintenanceTriggers.put(bikeId, triggers);
+                if (bikeId.equals(activeBikeId)) {
+                    selectActiveBike();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Off for tours: long stops then become paused segments of one trip
+     */
+    public void setAutoStopEnabled(final boolean enabled) {
+        processingHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                engine.setAutoStopEnabled(enabled);
+            }
+        });
+    }
+    
+    /**
+     * Whether distance across GPS gaps (tunnels) is interpolated or excluded
+     */
+    public void setGapPolicy(final RideSegmenter.GapPolicy policy) {
+        processingHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                engine.setGapPolicy(policy);
+            }
+        });
+    }
+    
+    public GpsScheduler getGpsScheduler() {
+        return engine.getScheduler();
+    }
+    
+    /**
+     * Receive the published snapshot at most once per interval while riding;
+     * null to stop. The last update inside an interval is delivered when it ends.
+     */
+    public void setProgressListener(ProgressListener listener, long intervalMillis) {
+        progressInterval = intervalMillis;
+        progressListener = listener;
+    }
+    
+    /**
+     * Recording metrics with external counters refreshed; safe to call from any thread
+     */
+    public TrackingMetrics getMetrics() {
+        metrics.updateExternalCounts(
+            fixBuffer.getDroppedCount(),
+            notificationPublisher.getPostedCount(),
+            notificationPublisher.getSuppressedCount()
+        );
+        return metrics;
+    }
+    
+    public File getMetricsFile() {
+        return new File(getFilesDir(), METRICS_FILE);
+    }
+    
+    /**
+     * Latest published view of the ride; safe to call from any thread
+     */
+    public TripSnapshot getSnapshot() {
+        return engine.getPublished();
+    }
+    
+    /**
+     * Enable auto-start monitoring. Only motion sensors run until the
+     * detector suspects a ride; GPS is then used briefly to confirm it.
+     */
+    public void enableAutoStart(final boolean enable) {
+        processingHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                motionDetector.setEnabled(enable, SystemClock.elapsedRealtime());
+            }
+        });
+    }
+    
+    /**
+     * Auto-start state and decision metrics (false starts, latency, GPS time)
+     * as of the detector's last state change; never blocks
+     */
+    public MotionDetector.Stats getMotionStats() {
+        return motionStats;
+    }
+    
+    // MARK: - Trip Processing (processing thread)
+    
+    private void beginTrip() throws SecurityException {
+        engine.startTrip(System.currentTimeMillis(), SystemClock.elapsedRealtime());
+        motionDetector.onTripStarted(SystemClock.elapsedRealtime());
+        creditedTripStart = engine.getStartTime();
+        creditedDistance = 0;
+        selectActiveBike();
+        openJournal();
         
-        // Calculate trip summary
-        long endTime = System.currentTimeMillis();
-        double distance = calculateTotalDistance();
-        long duration = endTime - startTime;
+        requestTrackingUpdates();
+        updateNotification("Tracking active - " + engine.getTrack().size() + " points");
+        publishSnapshot();
+    }
+    
+    /**
+     * Rebuild the in-progress trip from the journal and keep tracking
+     */
+    private void resumeTracking() throws SecurityException {
+        try {
+            journal = TrackJournal.resume(getJournalFile(), engine.getTrack());
+        } catch (IOException e) {
+            Log.w(TAG, "Discarding unreadable trip journal", e);
+            TrackJournal.discard(getJournalFile());
+            engine.getTrack().clear();
+            engine.getStats().reset();
+            return;
+        }
+        
+        requestTrackingUpdates();
+        engine.resumeTrip(journal.getStartTime(), SystemClock.elapsedRealtime());
+        motionDetector.onTripStarted(SystemClock.elapsedRealtime());
+        if (creditedTripStart != journal.getStartTime()) {
+            // New process: the evaluator was seeded from the stored odometer,
+            // which has none of this trip, so credit it from the start
+            creditedTripStart = journal.getStartTime();
+            creditedDistance = 0;
+        }
+        if (journal.getBikeId() != null) {
+            activeBikeId = journal.getBikeId(); // The process restarted without one
+        } else {
+            recordBikeInJournal();
+        }
+        selectActiveBike();
+        updateNotification("Tracking resumed - " + engine.getTrack().size() + " points");
+        publishSnapshot();
+    }
+    
+    private TripSummary finishTrip() {
+        locationSource.removeUpdates();
         
+        // Calculate trip summary (the record owns the finished track and stats)
+        creditOdometer();
+        TripRecord record = engine.finishTrip(System.currentTimeMillis());
         TripSummary summary = new TripSummary(
-            startTime,
-            endTime,
-            distance,
-            duration,
-            new ArrayList<>(locations)
+            record.startTime,
+            record.endTime,
+            record.getDuration(),
+            record.track,
+            record.stats
         );
+        summary.segments = record.segments;
+        summary.tripFile = sealJournal(record.startTime);
+        summary.path = TrackCodec.encode(summary.track, PATH_TOLERANCE_METERS);
+        summary.tripId = saveTrip(summary);
+        motionDetector.onTripEnded(SystemClock.elapsedRealtime());
         
-        // Reset state
-        locations.clear();
-        highSpeedStartTime = 0;
-        stationaryStartTime = 0;
-        lastLocation = null;
-        
+        notificationPublisher.cancelPending();
+        processingHandler.removeCallbacks(progressTask);
+        progressScheduled = false;
         stopForeground(true);
         stopSelf();
         
         return summary;
     }
     
+    private void drainFixes() {
+        metrics.recordHandoff(System.nanoTime() - drainRequestedAt);
+        drainScheduled.set(false);
+        int drained = fixBuffer.drain(fixConsumer, DRAIN_BATCH_SIZE);
+        
+        // More fixes than one batch: yield the looper and continue
+        if (!fixBuffer.isEmpty() && drainScheduled.compareAndSet(false, true)) {
+            drainRequestedAt = System.nanoTime();
+            processingHandler.post(drainTask);
+        }
+        
+        if (drained > 0 && engine.isTracking()) {
+            // Only the distance is shown, so the text changes at most every 100 m
+            updateNotification(String.format("Tracking - %.1f km", engine.getStats().getDistance() / 1000));
+            creditOdometer();
+            publishSnapshot();
+        }
+    }
+    
+    private void processFix(double latitude, double longitude, float speed, float accuracy, long time, byte provider) {
+        long started = System.nanoTime();
+        long now = SystemClock.elapsedRealtime();
+        boolean tracking = engine.isTracking();
+        boolean recorded = engine.onFix(latitude, longitude, speed, accuracy, time, provider, now);
+        
+        if (tracking && !recorded) {
+            metrics.countRejectedFix();
+        } else if (!tracking && provider == FixRingBuffer.PROVIDER_GPS) {
+            motionDetector.onFix(speed, now); // Confirming a suspected ride
+        }
+        metrics.recordProcessing(System.nanoTime() - started);
+    }
+    
+    private void publishSnapshot() {
+        engine.publish();
+        scheduleProgress();
+    }
+    
     /**
-     * Enable auto-start monitoring
+     * Deliver progress now if the interval has passed, otherwise once it does
      */
-    public void enableAutoStart(boolean enable) throws SecurityException {
-        if (enable) {
-            // Request location updates for auto-start detection
-            locationManager.requestLocationUpdates(
-                LocationManager.GPS_PROVIDER,
-                30000, // 30 seconds
-                100,   // 100 meters
-                this
-            );
+    private void scheduleProgress() {
+        if (progressListener == null || progressScheduled) return;
+        
+        long wait = lastProgressTime + progressInterval - SystemClock.elapsedRealtime();
+        if (wait <= 0) {
+            emitProgress();
         } else {
-            if (!isTracking) {
-                locationManager.removeUpdates(this);
-            }
+            progressScheduled = true;
+            processingHandler.postDelayed(progressTask, wait);
         }
     }
     
-    // MARK: - LocationListener
+    private void emitProgress() {
+        ProgressListener listener = progressListener;
+        if (listener == null || !engine.isTracking()) return;
+        
+        lastProgressTime = SystemClock.elapsedRealtime();
+        listener.onTripProgress(engine.getPublished());
+    }
     
-    @Override
-    public void onLocationChanged(Location location) {
-        if (isTracking) {
-            locations.add(location);
-            
-            // Update notification
-            updateNotification("Tracking - " + locations.size() + " points, " +
-                String.format("%.1f km", calculateTotalDistance() / 1000));
-            
-            // Adjust update interval based on speed
-            adjustUpdateInterval(location.getSpeed());
+    /**
+     * Advance the active bike's odometer by the distance ridden since the
+     * last credit, so maintenance results stay current during the ride
+     */
+    private void creditOdometer() {
+        String bikeId = activeBikeId;
+        double distance = engine.getStats().getDistance();
+        if (bikeId != null && distance > creditedDistance) {
+            MaintenanceModule.getEvaluator().addDistance(bikeId, (distance - creditedDistance) / 1000); // Convert to km
+            creditedOdometerKm = MaintenanceModule.getEvaluator().getOdometer(bikeId);
+        }
+        creditedDistance = distance;
+    }
+    
+    /**
+     * Queue the trip for the trips table; returns its id, or null when it
+     * cannot be stored natively (no bike selected or no fixes)
+     */
+    private String saveTrip(TripSummary summary) {
+        TrackBuffer track = summary.track;
+        if (activeBikeId == null || track.isEmpty()) return null;
+        
+        int last = track.size() - 1;
+        TripStore.Trip trip = new TripStore.Trip(
+            UUID.randomUUID().toString(),
+            activeBikeId,
+            summary.startTime,
+            summary.endTime,
+            track.getLatitude(0),
+            track.getLongitude(0),
+            track.getLatitude(last),
+            track.getLongitude(last),
+            summary.distance / 1000, // Convert to km
+            summary.stats.getAverageSpeed() * 3.6, // Convert to km/h
+            summary.stats.getMaxSpeed() * 3.6, // Convert to km/h
+            summary.path
+        );
+        tripStore.save(trip);
+        return trip.id;
+    }
+    
+    /**
+     * Runs on the store thread once the trip is committed
+     */
+    private void broadcastTripSaved(TripStore.Trip trip) {
+        Intent intent = new Intent(TRIP_SAVED_ACTION);
+        intent.setPackage(getPackageName());
+        intent.putExtra("id", trip.id);
+        intent.putExtra("bikeId", trip.bikeId);
+        intent.putExtra("startTime", trip.startTime);
+        intent.putExtra("endTime", trip.endTime);
+        intent.putExtra("distance", trip.distanceKm);
+        intent.putExtra("avgSpeed", trip.avgSpeedKmh);
+        intent.putExtra("maxSpeed", trip.maxSpeedKmh);
+        sendBroadcast(intent);
+    }
+    
+    private void selectActiveBike() {
+        String bikeId = activeBikeId;
+        creditedOdometerKm = bikeId != null ? MaintenanceModule.getEvaluator().getOdometer(bikeId) : 0;
+        activeTriggers = bikeId != null ? maintenanceTriggers.get(bikeId) : null;
+        nextTriggerKm = activeTriggers != null
+            ? activeTriggers.index.getNextThreshold()
+            : Double.POSITIVE_INFINITY;
+    }
+    
+    private void fireOdometerTriggers(double odometerKm) {
+        int source;
+        while ((source = activeTriggers.index.poll(odometerKm)) >= 0) {
+            String maintenanceId = activeTriggers.maintenanceIds[source];
+            notificationHelper.showMaintenanceReminder(
+                maintenanceId.hashCode(),
+                activeTriggers.titles[source],
+                activeTriggers.bodies[source],
+                maintenanceId,
+                false
+            );
             
-            // Check for auto-stop
-            if (location.getSpeed() < 1.0f) { // Less than 3.6 km/h
-                if (stationaryStartTime == 0) {
-                    stationaryStartTime = System.currentTimeMillis();
-                } else if (System.currentTimeMillis() - stationaryStartTime > AUTO_STOP_DURATION) {
-                    // Auto-stop
-                    stopTracking();
-                    sendBroadcast(new Intent("com.ridecare.TRIP_AUTO_STOPPED"));
-                }
-            } else {
-                stationaryStartTime = 0;
+            // Lets JS mark maintenance_events.notified
+            Intent intent = new Intent("com.ridecare.MAINTENANCE_THRESHOLD_CROSSED");
+            intent.putExtra("maintenanceId", maintenanceId);
+            intent.putExtra("odometerKm", odometerKm);
+            sendBroadcast(intent);
+        }
+        nextTriggerKm = activeTriggers.index.getNextThreshold();
+    }
+    
+    // MARK: - Helper Methods
+    
+    /**
+     * Run a task on the processing thread and wait for its result.
+     * Runs inline when already on that thread (e.g. auto-stop). Throws
+     * IllegalStateException once the service is destroyed (its looper has
+     * quit) or when the task does not finish within PROCESSING_TIMEOUT.
+     */
+    private <T> T runOnProcessingThread(Callable<T> task) {
+        if (Looper.myLooper() == processingHandler.getLooper()) {
+            try {
+                return task.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
             }
-        } else {
-            // Check for auto-start
-            if (location.getSpeed() > AUTO_START_SPEED_THRESHOLD) {
-                if (highSpeedStartTime == 0) {
-                    highSpeedStartTime = System.currentTimeMillis();
-                } else if (System.currentTimeMillis() - highSpeedStartTime > AUTO_START_DURATION) {
-                    // Auto-start
-                    startTracking();
-                    sendBroadcast(new Intent("com.ridecare.TRIP_AUTO_STARTED"));
-                    highSpeedStartTime = 0;
-                }
-            } else {
-                highSpeedStartTime = 0;
+        }
+        
+        FutureTask<T> future = new FutureTask<>(task);
+        if (!processingHandler.post(future)) {
+            throw new IllegalStateException("Location service is destroyed");
+        }
+        try {
+            return future.get(PROCESSING_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(false); // Don't run it late if it has not started
+            throw new IllegalStateException("Trip processor did not answer within " + PROCESSING_TIMEOUT + " ms", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the trip processor", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw new IllegalStateException(e.getCause());
         }
+    }
+    
+    private void requestTrackingUpdates() throws SecurityException {
+        metrics.countGpsRegistration();
+        // Request location updates at the scheduler's current band
+        locationSource.requestUpdates(FixRingBuffer.PROVIDER_GPS, engine.getScheduler().getIntervalMillis(), fixSink);
         
-        lastLocation = location;
+        // Also request network location as fallback
+        locationSource.requestUpdates(FixRingBuffer.PROVIDER_NETWORK, 5000, fixSink); // 5 seconds
     }
     
-    @Override
-    public void onStatusChanged(String provider, int status, Bundle extras) {}
+    private void requestConfirmationUpdates() {
+        metrics.countGpsRegistration();
+        try {
+            locationSource.requestUpdates(FixRingBuffer.PROVIDER_GPS, AUTO_START_GPS_INTERVAL, fixSink);
+        } catch (SecurityException e) {
+            Log.w(TAG, "Cannot confirm auto-start without location permission", e);
+        }
+    }
     
-    @Override
-    public void onProviderEnabled(String provider) {}
+    private File getJournalFile() {
+        return new File(getNoBackupFilesDir(), JOURNAL_FILE);
+    }
     
-    @Override
-    public void onProviderDisabled(String provider) {}
+    private void openJournal() {
+        closeJournal();
+        try {
+            journal = TrackJournal.create(getJournalFile(), engine.getStartTime(), activeBikeId);
+        } catch (IOException | IllegalArgumentException e) {
+            // Keep tracking in memory; only crash recovery is lost
+            Log.w(TAG, "Cannot open trip journal", e);
+            journal = null;
+        }
+    }
     
-    // MARK: - Helper Methods
+    /**
+     * Keep the journal's bike current, so a resumed trip is saved for it
+     */
+    private void recordBikeInJournal() {
+        if (journal == null) return;
+        
+        try {
+            journal.setBikeId(activeBikeId);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Cannot record the active bike in the trip journal", e);
+        }
+    }
     
-    private double calculateTotalDistance() {
-        if (locations.size() < 2) return 0;
+    private void appendToJournal(double latitude, double longitude, float speed, float accuracy, long time) {
+        if (journal == null) return;
         
-        double totalDistance = 0;
-        for (int i = 1; i < locations.size(); i++) {
-            totalDistance += locations.get(i - 1).distanceTo(locations.get(i));
+        try {
+            journal.append(latitude, longitude, speed, accuracy, time);
+        } catch (IOException e) {
+            Log.w(TAG, "Trip journal write failed, continuing in memory", e);
+            closeJournal();
         }
-        return totalDistance;
     }
     
-    private void adjustUpdateInterval(float speed) {
+    private File sealJournal(long startTime) {
+        if (journal == null) return null;
+        
+        File tripFile = new File(new File(getFilesDir(), TRIPS_DIR), startTime + ".trk");
         try {
-            locationManager.removeUpdates(this);
-            
-            long interval;
-            float kmh = speed * 3.6f;
-            
-            if (kmh > 20) {
-                interval = 1000; // 1 second
-            } else if (kmh > 10) {
-                interval = 5000; // 5 seconds
-            } else {
-                interval = 30000; // 30 seconds
+            return journal.seal(tripFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot seal trip journal", e);
+            return null;
+        } finally {
+            journal = null;
+        }
+    }
+    
+    /**
+     * A sealed journal is only a fallback until its trip is in the trips
+     * table; drop it then, along with files of trips that never got there
+     * within TRIP_FILE_RETENTION
+     */
+    private void pruneTripFiles(long storedStartTime) {
+        File[] files = new File(getFilesDir(), TRIPS_DIR).listFiles();
+        if (files == null) return;
+        
+        String stored = storedStartTime + ".trk";
+        long cutoff = System.currentTimeMillis() - TRIP_FILE_RETENTION;
+        for (File file : files) {
+            if ((file.getName().equals(stored) || file.lastModified() < cutoff) && !file.delete()) {
+                Log.w(TAG, "Cannot delete trip file " + file);
             }
-            
-            locationManager.requestLocationUpdates(
-                LocationManager.GPS_PROVIDER,
-                interval,
-                0,
-                this
-            );
+        }
+    }
+    
+    private void closeJournal() {
+        if (journal == null) return;
+        
+        try {
+            journal.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot close trip journal", e);
+        }
+        journal = null;
+    }
+    
+    /**
+     * Re-register only the GPS provider; requesting it again replaces the
+     * old request, so the network registration is kept
+     */
+    private void applyGpsInterval(long intervalMillis) {
+        metrics.countGpsRegistration();
+        try {
+            locationSource.requestUpdates(FixRingBuffer.PROVIDER_GPS, intervalMillis, fixSink);
         } catch (SecurityException e) {
-            e.printStackTrace();
+            Log.w(TAG, "Cannot change GPS interval without location permission", e);
+        }
+    }
+    
+    /**
+     * Overwrite the metrics file; written to a temp file and renamed so a
+     * reader never sees a partial dump
+     */
+    private void dumpMetrics() {
+        File file = getMetricsFile();
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(getMetrics().toJson(SystemClock.elapsedRealtime()).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write tracking metrics", e);
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            Log.w(TAG, "Cannot replace tracking metrics file");
         }
     }
     
@@ -253,27 +903,24 @@ public class LocationService extends Service implements LocationListener {
         }
     }
     
-    private Notification buildNotification(String text) {
-        Intent notificationIntent = new Intent(this, MainActivity.class);
-        PendingIntent pendingIntent = PendingIntent.getActivity(
-            this,
-            0,
-            notificationIntent,
-            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
-        
-        return new NotificationCompat.Builder(this, CHANNEL_ID)
-            .setContentTitle("RideCare")
-            .setContentText(text)
-            .setSmallIcon(R.drawable.ic_notification)
-            .setContentIntent(pendingIntent)
-            .setOngoing(true)
-            .build();
+    private void updateNotification(String text) {
+        notificationPublisher.publish(text);
     }
     
-    private void updateNotification(String text) {
-        NotificationManager manager = (NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE);
-        manager.notify(NOTIFICATION_ID, buildNotification(text));
+    // MARK: - MaintenanceTriggers Class
+    
+    private static class MaintenanceTriggers {
+        final OdometerTriggerIndex index;
+        final String[] maintenanceIds;
+        final String[] titles;
+        final String[] bodies;
+        
+        MaintenanceTriggers(String[] maintenanceIds, double[] kmDueAt, String[] titles, String[] bodies) {
+            this.index = new OdometerTriggerIndex(kmDueAt);
+            this.maintenanceIds = maintenanceIds;
+            this.titles = titles;
+            this.bodies = bodies;
+        }
     }
     
     // MARK: - TripSummary Class
@@ -283,14 +930,20 @@ public class LocationService extends Service implements LocationListener {
         public long endTime;
         public double distance;
         public long duration;
-        public List<Location> locations;
+        public TrackBuffer track;
+        public TripAccumulator stats;
+        public File tripFile; // Sealed journal until the trip is stored, null if journaling was unavailable
+        public String path;   // Simplified, encoded polyline for trips.path
+        public String tripId; // Row id in the trips table, null if not stored natively
+        public RideSegmenter segments;
         
-        public TripSummary(long startTime, long endTime, double distance, long duration, List<Location> locations) {
+        public TripSummary(long startTime, long endTime, long duration, TrackBuffer track, TripAccumulator stats) {
             this.startTime = startTime;
             this.endTime = endTime;
-            this.distance = distance;
+            this.distance = stats.getDistance();
             this.duration = duration;
-            this.locations = locations;
+            this.track = track;
+            this.stats = stats;
         }
     }
 }
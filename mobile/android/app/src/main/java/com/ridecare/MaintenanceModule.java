@@ -0,0 +1,202 @@
+package com.ridecare;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeArray;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.ridecare.engine.MaintenanceEvaluator;
+
+import java.time.Instant;
+
+/**
+ * MaintenanceModule.java
+ * 
+ * React Native module for the native maintenance evaluator. JS loads rules,
+ * odometers and completed events once; odometers then advance natively as
+ * LocationService records trips, and evaluateDue() answers in O(rules).
+ */
+public class MaintenanceModule extends ReactContextBaseJavaModule {
+    
+    // Shared with LocationService, which advances odometers while riding
+    private static final MaintenanceEvaluator evaluator = new MaintenanceEvaluator();
+    
+    public MaintenanceModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+    }
+    
+    @Override
+    public String getName() {
+        return "MaintenanceModule";
+    }
+    
+    static MaintenanceEvaluator getEvaluator() {
+        return evaluator;
+    }
+    
+    /**
+     * Replace all rules (MaintenanceRule[] from MaintenanceEngine.ts).
+     * Completion history is cleared and must be recorded again.
+     */
+    @ReactMethod
+    public void setRules(ReadableArray rules, Promise promise) {
+        try {
+            synchronized (evaluator) {
+                evaluator.clearRules();
+                for (int i = 0; i < rules.size(); i++) {
+                    ReadableMap rule = rules.getMap(i);
+                    evaluator.addRule(rule.getString("id"), rule.getInt("priority"));
+                    
+                    ReadableArray conditions = rule.getArray("conditions");
+                    for (int c = 0; c < conditions.size(); c++) {
+                        ReadableMap condition = conditions.getMap(c);
+                        evaluator.addCondition(
+                            conditionType(condition.getString("type")),
+                            operator(condition.getString("operator")),
+                            condition.getDouble("value"),
+                            condition.hasKey("logic") && !condition.isNull("logic")
+                                ? logic(condition.getString("logic"))
+                                : MaintenanceEvaluator.LOGIC_NONE
+                        );
+                    }
+                }
+            }
+            promise.resolve(evaluator.getRuleCount());
+        } catch (Exception e) {
+            promise.reject("ERROR", e.getMessage());
+        }
+    }
+    
+    @ReactMethod
+    public void setOdometer(String bikeId, double odometerKm, Promise promise) {
+        evaluator.setOdometer(bikeId, odometerKm);
+        promise.resolve(null);
+    }
+    
+    /**
+     * Record completed events (MaintenanceEvent[]); order does not matter
+     */
+    @ReactMethod
+    public void recordCompletions(ReadableArray events, Promise promise) {
+        try {
+            for (int i = 0; i < events.size(); i++) {
+                ReadableMap event = events.getMap(i);
+                evaluator.recordCompletion(
+                    event.getString("bikeId"),
+                    event.getString("ruleId"),
+                    event.getDouble("odometer"),
+                    completedAt(event)
+                );
+            }
+            promise.resolve(events.size());
+        } catch (Exception e) {
+            promise.reject("ERROR", e.getMessage());
+        }
+    }
+    
+    /**
+     * Due and upcoming items per bike: { [bikeId]: MaintenanceDue-like[] }
+     */
+    @ReactMethod
+    public void evaluateDue(ReadableArray bikeIds, Promise promise) {
+        try {
+            long now = System.currentTimeMillis();
+            MaintenanceEvaluator.Result due = new MaintenanceEvaluator.Result();
+            WritableMap result = new WritableNativeMap();
+            
+            for (int b = 0; b < bikeIds.size(); b++) {
+                String bikeId = bikeIds.getString(b);
+                WritableArray items = new WritableNativeArray();
+                
+                synchronized (evaluator) {
+                    evaluator.evaluate(bikeId, now, due);
+                    for (int i = 0; i < due.count; i++) {
+                        items.pushMap(toMap(due, i));
+                    }
+                }
+                result.putArray(bikeId, items);
+            }
+            
+            promise.resolve(result);
+        } catch (Exception e) {
+            promise.reject("ERROR", e.getMessage());
+        }
+    }
+    
+    @ReactMethod
+    public void getOdometer(String bikeId, Promise promise) {
+        promise.resolve(evaluator.getOdometer(bikeId));
+    }
+    
+    // MARK: - Helper Methods
+    
+    private static WritableMap toMap(MaintenanceEvaluator.Result due, int i) {
+        WritableMap item = new WritableNativeMap();
+        item.putString("ruleId", evaluator.getRuleId(due.rule[i]));
+        item.putString("status", statusName(due.status[i]));
+        item.putInt("priority", due.priority[i]);
+        
+        if (Double.isNaN(due.kmUntilDue[i])) {
+            item.putNull("kmUntilDue");
+        } else {
+            item.putDouble("kmUntilDue", due.kmUntilDue[i]);
+        }
+        if (Double.isNaN(due.daysUntilDue[i])) {
+            item.putNull("daysUntilDue");
+        } else {
+            item.putDouble("daysUntilDue", due.daysUntilDue[i]);
+        }
+        
+        if (due.lastCompletedAt[i] > 0) {
+            WritableMap last = new WritableNativeMap();
+            last.putDouble("completedAt", due.lastCompletedAt[i]);
+            last.putDouble("odometer", due.lastOdometer[i]);
+            item.putMap("lastCompleted", last);
+        }
+        return item;
+    }
+    
+    private static long completedAt(ReadableMap event) {
+        // MaintenanceEngine.ts uses ISO strings; SQLite rows carry epoch millis
+        if (event.getType("completedAt") == ReadableType.Number) {
+            return (long) event.getDouble("completedAt");
+        }
+        return Instant.parse(event.getString("completedAt")).toEpochMilli();
+    }
+    
+    private static String statusName(int status) {
+        switch (status) {
+            case MaintenanceEvaluator.STATUS_OVERDUE:
+                return "overdue";
+            case MaintenanceEvaluator.STATUS_DUE:
+                return "due";
+            default:
+                return "upcoming";
+        }
+    }
+    
+    private static int conditionType(String type) {
+        if ("odometer".equals(type)) return MaintenanceEvaluator.CONDITION_ODOMETER;
+        if ("time".equals(type)) return MaintenanceEvaluator.CONDITION_TIME;
+        throw new IllegalArgumentException("Unknown condition type " + type);
+    }
+    
+    private static int operator(String operator) {
+        if ("gte".equals(operator)) return MaintenanceEvaluator.OPERATOR_GTE;
+        if ("lte".equals(operator)) return MaintenanceEvaluator.OPERATOR_LTE;
+        if ("eq".equals(operator)) return MaintenanceEvaluator.OPERATOR_EQ;
+        throw new IllegalArgumentException("Unknown condition operator " + operator);
+    }
+    
+    private static int logic(String logic) {
+        if ("AND".equals(logic)) return MaintenanceEvaluator.LOGIC_AND;
+        if ("OR".equals(logic)) return MaintenanceEvaluator.LOGIC_OR;
+        return MaintenanceEvaluator.LOGIC_NONE;
+    }
+}
@@ -0,0 +1,304 @@
+package com.ridecare;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.service.notification.StatusBarNotification;
+import androidx.core.app.NotificationCompat;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * MaintenanceReminderDispatcher.java
+ * 
+ * Posts batches of maintenance reminders as one notification group per
+ * bike. Reminders already showing the same content are skipped, changed
+ * ones are updated in place, and posts are spaced out so a burst of due
+ * items never exceeds the rate at which the system accepts notify() calls.
+ * Reminders the user swiped away or opened are no longer showing and are
+ * posted again by the next batch that contains them.
+ */
+public class MaintenanceReminderDispatcher {
+    
+    public static final String RESULT_POSTED = "posted";
+    public static final String RESULT_QUEUED = "queued";
+    public static final String RESULT_UPDATED = "updated";
+    public static final String RESULT_DUPLICATE = "duplicate";
+    public static final String RESULT_INVALID = "invalid";
+    
+    private static final int MAX_POSTS_PER_SECOND = 5; // NotificationManager drops updates above this
+    private static final long POST_SPACING = 1000 / MAX_POSTS_PER_SECOND;
+    private static final String GROUP_PREFIX = "maintenance_";
+    
+    /**
+     * One reminder of a batch
+     */
+    public static class Reminder {
+        public final String maintenanceId;
+        public final String bikeId;
+        public final String title;
+        public final String body;
+        public final boolean isOverdue;
+        
+        public Reminder(String maintenanceId, String bikeId, String title, String body, boolean isOverdue) {
+            this.maintenanceId = maintenanceId;
+            this.bikeId = bikeId;
+            this.title = title;
+            this.body = body;
+            this.isOverdue = isOverdue;
+        }
+        
+        boolean sameContent(Reminder other) {
+            return other != null
+                && bikeId.equals(other.bikeId)
+                && title.equals(other.title)
+                && body.equals(other.body)
+                && isOverdue == other.isOverdue;
+        }
+    }
+    
+    private final NotificationHelper notificationHelper;
+    private final NotificationManager notificationManager;
+    private final Handler handler;
+    
+    // Reminders currently shown (or queued), per bike, in posting order
+    private final Map<String, Map<String, Reminder>> activeByBike = new LinkedHashMap<>();
+    // Posts waiting for the rate cap, keyed by notification id so newer content replaces older
+    private final LinkedHashMap<Integer, Notification> pending = new LinkedHashMap<>();
+    private long nextPostTime = 0;
+    private boolean flushScheduled = false;
+    
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+    
+    public MaintenanceReminderDispatcher(
+        NotificationHelper notificationHelper,
+        NotificationManager notificationManager,
+        Handler handler
+    ) {
+        this.notificationHelper = notificationHelper;
+        this.notificationManager = notificationManager;
+        this.handler = handler;
+    }
+    
+    /**
+     * Dispatch a batch; returns one result per reminder, in input order
+     */
+    public synchronized String[] dispatch(Reminder[] reminders) {
+        String[] results = new String[reminders.length];
+        Map<String, Boolean> touchedBikes = new LinkedHashMap<>();
+        forgetDismissed();
+        
+        for (int i = 0; i < reminders.length; i++) {
+            Reminder reminder = reminders[i];
+            if (reminder == null || isEmpty(reminder.maintenanceId) || isEmpty(reminder.bikeId)) {
+                results[i] = RESULT_INVALID;
+                continue;
+            }
+            
+            Reminder shown = findActive(reminder.maintenanceId);
+            if (reminder.sameContent(shown)) {
+                results[i] = RESULT_DUPLICATE;
+                continue;
+            }
+            if (shown != null && !shown.bikeId.equals(reminder.bikeId)) {
+                remove(shown); // Moved to another bike's group
+                touchedBikes.put(shown.bikeId, true);
+            }
+            
+            bikeReminders(reminder.bikeId).put(reminder.maintenanceId, reminder);
+            touchedBikes.put(reminder.bikeId, true);
+            
+            Notification notification = notificationHelper.buildMaintenanceReminder(
+                notificationId(reminder.maintenanceId),
+                reminder.title,
+                reminder.body,
+                reminder.maintenanceId,
+                reminder.isOverdue
+            )
+                .setGroup(GROUP_PREFIX + reminder.bikeId)
+                .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY)
+                .build();
+            boolean postedNow = enqueue(notificationId(reminder.maintenanceId), notification);
+            
+            if (shown != null) {
+                results[i] = RESULT_UPDATED;
+            } else {
+                results[i] = postedNow ? RESULT_POSTED : RESULT_QUEUED;
+            }
+        }
+        
+        // One summary per bike, posted after its children
+        for (String bikeId : touchedBikes.keySet()) {
+            postSummary(bikeId);
+        }
+        return results;
+    }
+    
+    /**
+     * Forget a reminder (e.g. after cancelNotification) so it can be shown again
+     */
+    public synchronized void forget(int notificationId) {
+        pending.remove(notificationId);
+        for (Map<String, Reminder> reminders : activeByBike.values()) {
+            Iterator<Reminder> it = reminders.values().iterator();
+            while (it.hasNext()) {
+                if (notificationId(it.next().maintenanceId) == notificationId) {
+                    it.remove();
+                }
+            }
+        }
+    }
+    
+    public synchronized void forgetAll() {
+        pending.clear();
+        activeByBike.clear();
+        handler.removeCallbacks(flushTask);
+        flushScheduled = false;
+    }
+    
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+    
+    static int notificationId(String maintenanceId) {
+        return maintenanceId.hashCode();
+    }
+    
+    // MARK: - Helper Methods
+    
+    /**
+     * Drop reminders that are neither queued nor showing any more. They are
+     * auto-cancel, so a tap or a swipe removes them without cancelNotification.
+     */
+    private void forgetDismissed() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
+            // No way to list shown notifications: show every batch again
+            activeByBike.clear();
+            return;
+        }
+        
+        Set<Integer> shown = new HashSet<>();
+        for (StatusBarNotification notification : notificationManager.getActiveNotifications()) {
+            shown.add(notification.getId());
+        }
+        
+        Iterator<Map<String, Reminder>> bikes = activeByBike.values().iterator();
+        while (bikes.hasNext()) {
+            Map<String, Reminder> reminders = bikes.next();
+            Iterator<Reminder> it = reminders.values().iterator();
+            while (it.hasNext()) {
+                int id = notificationId(it.next().maintenanceId);
+                if (!shown.contains(id) && !pending.containsKey(id)) {
+                    it.remove();
+                }
+            }
+            if (reminders.isEmpty()) {
+                bikes.remove();
+            }
+        }
+    }
+    
+    private void postSummary(String bikeId) {
+        Map<String, Reminder> reminders = activeByBike.get(bikeId);
+        int summaryId = notificationId(GROUP_PREFIX + bikeId);
+        if (reminders == null || reminders.size() < 2) {
+            // A single reminder needs no summary
+            pending.remove(summaryId);
+            notificationManager.cancel(summaryId);
+            return;
+        }
+        
+        boolean anyOverdue = false;
+        String[] lines = new String[reminders.size()];
+        int i = 0;
+        for (Reminder reminder : reminders.values()) {
+            anyOverdue |= reminder.isOverdue;
+            lines[i++] = reminder.title;
+        }
+        
+        Notification summary = notificationHelper.buildMaintenanceSummary(
+            summaryId,
+            GROUP_PREFIX + bikeId,
+            lines,
+            anyOverdue
+        );
+        enqueue(summaryId, summary);
+    }
+    
+    /**
+     * Post now if the rate cap allows, otherwise queue. Returns true if posted.
+     */
+    private boolean enqueue(int notificationId, Notification notification) {
+        long now = SystemClock.elapsedRealtime();
+        if (pending.isEmpty() && now >= nextPostTime) {
+            notificationManager.notify(notificationId, notification);
+            nextPostTime = now + POST_SPACING;
+            return true;
+        }
+        
+        pending.put(notificationId, notification);
+        scheduleFlush(now);
+        return false;
+    }
+    
+    private synchronized void flush() {
+        flushScheduled = false;
+        long now = SystemClock.elapsedRealtime();
+        if (now >= nextPostTime && !pending.isEmpty()) {
+            Iterator<Map.Entry<Integer, Notification>> it = pending.entrySet().iterator();
+            Map.Entry<Integer, Notification> next = it.next();
+            it.remove();
+            notificationManager.notify(next.getKey(), next.getValue());
+            nextPostTime = now + POST_SPACING;
+        }
+        if (!pending.isEmpty()) {
+            scheduleFlush(now);
+        }
+    }
+    
+    private void scheduleFlush(long now) {
+        if (flushScheduled) return;
+        
+        flushScheduled = true;
+        handler.postDelayed(flushTask, Math.max(0, nextPostTime - now));
+    }
+    
+    private Reminder findActive(String maintenanceId) {
+        for (Map<String, Reminder> reminders : activeByBike.values()) {
+            Reminder reminder = reminders.get(maintenanceId);
+            if (reminder != null) return reminder;
+        }
+        return null;
+    }
+    
+    private void remove(Reminder reminder) {
+        Map<String, Reminder> reminders = activeByBike.get(reminder.bikeId);
+        if (reminders != null) {
+            reminders.remove(reminder.maintenanceId);
+        }
+    }
+    
+    private Map<String, Reminder> bikeReminders(String bikeId) {
+        Map<String, Reminder> reminders = activeByBike.get(bikeId);
+        if (reminders == null) {
+            reminders = new LinkedHashMap<>();
+            activeByBike.put(bikeId, reminders);
+        }
+        return reminders;
+    }
+    
+    private static boolean isEmpty(String value) {
+        return value == null || value.isEmpty();
+    }
+}
@@ -1,11 +1,14 @@
 package com.ridecare;
 
+import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
 import androidx.core.app.NotificationCompat;
 
 /**
@@ -20,10 +23,16 @@ public class NotificationHelper {
     
     private Context context;
     private NotificationManager notificationManager;
+    private MaintenanceReminderDispatcher reminderDispatcher;
     
     public NotificationHelper(Context context) {
         this.context = context;
         this.notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        this.reminderDispatcher = new MaintenanceReminderDispatcher(
+            this,
+            notificationManager,
+            new Handler(Looper.getMainLooper())
+        );
         createNotificationChannels();
     }
     
@@ -65,6 +74,34 @@ public class NotificationHelper {
         String body,
         String maintenanceId,
         boolean isOverdue
+    ) {
+        NotificationCompat.Builder builder = buildMaintenanceReminder(
+            notificationId,
+            title,
+            body,
+            maintenanceId,
+            isOverdue
+        );
+        notificationManager.notify(notificationId, builder.build());
+    }
+    
+    /**
+     * Show a batch of maintenance reminders grouped per bike.
+     * Returns one MaintenanceReminderDispatcher.RESULT_* per reminder.
+     */
+    public String[] showMaintenanceReminders(MaintenanceReminderDispatcher.Reminder[] reminders) {
+        return reminderDispatcher.dispatch(reminders);
+    }
+    
+    /**
+     * Builder for a single maintenance reminder
+     */
+    NotificationCompat.Builder buildMaintenanceReminder(
+        int notificationId,
+        String title,
+        String body,
+        String maintenanceId,
+        boolean isOverdue
     ) {
         Intent intent = new Intent(context, MainActivity.class);
         intent.putExtra("maintenanceId", maintenanceId);
@@ -93,7 +130,42 @@ public class NotificationHelper {
             builder.setColor(0xFFFF9800); // Orange
         }
         
-        notificationManager.notify(notificationId, builder.build());
+        return builder;
+    }
+    
+    /**
+     * Group summary listing the titles of a bike's reminders
+     */
+    Notification buildMaintenanceSummary(int notificationId, String group, String[] lines, boolean isOverdue) {
+        Intent intent = new Intent(context, MainActivity.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+            context,
+            notificationId,
+            intent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+        
+        String title = lines.length + " maintenance items due";
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle().setBigContentTitle(title);
+        for (String line : lines) {
+            style.addLine(line);
+        }
+        
+        return new NotificationCompat.Builder(context, MAINTENANCE_CHANNEL_ID)
+            .setSmallIcon(R.drawable.ic_notification)
+            .setContentTitle(title)
+            .setContentText(lines[0])
+            .setStyle(style)
+            .setPriority(NotificationCompat.PRIORITY_HIGH)
+            .setContentIntent(pendingIntent)
+            .setGroup(group)
+            .setGroupSummary(true)
+            .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY)
+            .setColor(isOverdue ? 0xFFE53935 : 0xFFFF9800) // Red / Orange
+            .setAutoCancel(true)
+            .build();
     }
     
     /**
@@ -123,6 +195,7 @@ public class NotificationHelper {
      * Cancel notification
      */
     public void cancelNotification(int notificationId) {
+        reminderDispatcher.forget(notificationId);
         notificationManager.cancel(notificationId);
     }
     
@@ -130,6 +203,7 @@ public class NotificationHelper {
      * Cancel all notifications
      */
     public void cancelAllNotifications() {
+        reminderDispatcher.forgetAll();
         notificationManager.cancelAll();
     }
     
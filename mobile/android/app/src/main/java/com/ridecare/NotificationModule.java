@@ -4,8 +4,11 @@ import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
 import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeArray;
 import com.facebook.react.bridge.WritableNativeMap;
 
 /**
@@ -73,6 +76,48 @@ public class NotificationModule extends ReactContextBaseJavaModule {
         }
     }
     
+    /**
+     * Show many reminders in one call: [{ maintenanceId, bikeId, title, body, isOverdue }].
+     * Resolves with [{ maintenanceId, status, id }] in input order.
+     */
+    @ReactMethod
+    public void showMaintenanceReminders(ReadableArray items, Promise promise) {
+        try {
+            MaintenanceReminderDispatcher.Reminder[] reminders = new MaintenanceReminderDispatcher.Reminder[items.size()];
+            for (int i = 0; i < items.size(); i++) {
+                ReadableMap item = items.getMap(i);
+                if (!item.hasKey("maintenanceId") || !item.hasKey("bikeId")) {
+                    continue; // Reported as invalid
+                }
+                reminders[i] = new MaintenanceReminderDispatcher.Reminder(
+                    item.getString("maintenanceId"),
+                    item.getString("bikeId"),
+                    item.hasKey("title") ? item.getString("title") : "Maintenance Due",
+                    item.hasKey("body") ? item.getString("body") : "",
+                    item.hasKey("isOverdue") && item.getBoolean("isOverdue")
+                );
+            }
+            
+            String[] statuses = notificationHelper.showMaintenanceReminders(reminders);
+            
+            WritableArray results = new WritableNativeArray();
+            for (int i = 0; i < reminders.length; i++) {
+                WritableMap result = new WritableNativeMap();
+                if (reminders[i] != null) {
+                    result.putString("maintenanceId", reminders[i].maintenanceId);
+                    result.putInt("id", MaintenanceReminderDispatcher.notificationId(reminders[i].maintenanceId));
+                } else {
+                    result.putNull("maintenanceId");
+                }
+                result.putString("status", statuses[i]);
+                results.pushMap(result);
+            }
+            promise.resolve(results);
+        } catch (Exception e) {
+            promise.reject("ERROR", e.getMessage());
+        }
+    }
+    
     @ReactMethod
     public void cancelNotification(int notificationId, Promise promise) {
         try {
@@ -0,0 +1,327 @@
+package com.ridecare;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import com.ridecare.engine.HttpSyncEndpoint;
+import com.ridecare.engine.SyncOutbox;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OutboxUploader.java
+ * 
+ * Process-wide owner of the SyncOutbox. LocationService enqueues trips it
+ * stores natively and SyncOutboxModule enqueues the JS writes; uploads run
+ * on one background thread in size-bounded batches, and every row of an
+ * uploaded batch gets its synced flag set in one transaction per batch.
+ * 
+ * Enqueues are debounced by FLUSH_DELAY, so a burst of edits (or a week of
+ * offline changes replayed at once) becomes a few batches, not a round trip
+ * per row. Failed uploads are retried at the outbox's backoff time.
+ */
+public class OutboxUploader {
+    
+    private static final String TAG = "OutboxUploader";
+    private static final String OUTBOX_FILE = "sync_outbox.log";
+    private static final long FLUSH_DELAY = 2000; // 2 seconds
+    
+    // Tables with a synced column (database/schema.sql)
+    private static final String[] SYNCED_TABLES = {"bikes", "trips", "maintenance_events", "maintenance_rules"};
+    
+    /**
+     * Called on the upload thread whenever the outbox changed
+     */
+    public interface Listener {
+        void onStateChanged(OutboxUploader uploader);
+    }
+    
+    private static OutboxUploader instance;
+    
+    private final Context context;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private volatile Listener listener;
+    
+    // Owned by the executor thread
+    private SyncOutbox outbox;
+    private HttpSyncEndpoint endpoint;
+    private SQLiteDatabase database;
+    private ScheduledFuture<?> scheduledFlush;
+    private long scheduledAt = Long.MAX_VALUE;
+    
+    // Published for getState() on other threads
+    private volatile int pendingCount;
+    private volatile long retryAt;
+    private volatile long lastSuccessTime;
+    private volatile long uploadedCount;
+    private volatile long batchCount;
+    private volatile long coalescedCount;
+    private volatile long rejectedCount;
+    
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            scheduledFlush = null;
+            scheduledAt = Long.MAX_VALUE;
+            flushNow();
+        }
+    };
+    
+    private OutboxUploader(Context context) {
+        this.context = context.getApplicationContext();
+    }
+    
+    public static synchronized OutboxUploader get(Context context) {
+        if (instance == null) {
+            instance = new OutboxUploader(context);
+        }
+        return instance;
+    }
+    
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * Where batches are uploaded and with which ID token. Uploads wait until
+     * this has been called once.
+     */
+    public void configure(final URL url, final String token) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (endpoint == null || !url.toString().equals(endpoint.getUrl().toString())) {
+                    endpoint = new HttpSyncEndpoint(url);
+                }
+                endpoint.setToken(token);
+                scheduleFlush(FLUSH_DELAY);
+            }
+        });
+    }
+    
+    /**
+     * Queue a record write (data is the row as a JSON object, null for a delete)
+     */
+    public void enqueue(final String collection, final String id, final byte op, final String data, final long updatedAt) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    open().enqueue(collection, id, op, data, updatedAt);
+                } catch (IOException e) {
+                    Log.w(TAG, "Cannot queue " + collection + "/" + id, e);
+                    return;
+                }
+                publishState();
+                scheduleFlush(FLUSH_DELAY);
+            }
+        });
+    }
+    
+    /**
+     * Connectivity changed; coming online retries at once instead of waiting out the backoff
+     */
+    public void setOnline(final boolean online) {
+        if (!online) return;
+        
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (outbox != null) {
+                    outbox.resetBackoff();
+                }
+                scheduleFlush(0);
+            }
+        });
+    }
+    
+    /**
+     * Forget all pending writes, e.g. when the user logs out
+     */
+    public void clear() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    open().clear();
+                } catch (IOException e) {
+                    Log.w(TAG, "Cannot clear the sync outbox", e);
+                }
+                publishState();
+            }
+        });
+    }
+    
+    /**
+     * Upload now (subject to backoff)
+     */
+    public void flush() {
+        executor.execute(flushTask);
+    }
+    
+    public int getPendingCount() {
+        return pendingCount;
+    }
+    
+    public long getRetryAt() {
+        return retryAt;
+    }
+    
+    public long getLastSuccessTime() {
+        return lastSuccessTime;
+    }
+    
+    public long getUploadedCount() {
+        return uploadedCount;
+    }
+    
+    public long getBatchCount() {
+        return batchCount;
+    }
+    
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+    
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+    
+    // MARK: - Helper Methods
+    
+    private SyncOutbox open() throws IOException {
+        if (outbox == null) {
+            outbox = SyncOutbox.open(new File(context.getNoBackupFilesDir(), OUTBOX_FILE));
+        }
+        return outbox;
+    }
+    
+    private void flushNow() {
+        if (endpoint == null) return; // Not configured yet
+        
+        List<SyncOutbox.Entry> acknowledged = new ArrayList<>();
+        try {
+            SyncOutbox box = open();
+            box.flush(endpoint, System.currentTimeMillis(), acknowledged);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write the sync outbox", e);
+        }
+        
+        if (!acknowledged.isEmpty()) {
+            markSynced(acknowledged);
+        }
+        publishState();
+        
+        if (outbox != null && outbox.getPendingCount() > 0 && outbox.getRetryAt() > 0) {
+            scheduleFlush(outbox.getRetryAt() - System.currentTimeMillis());
+        }
+    }
+    
+    /**
+     * Run a flush after delay, unless one is already due sooner
+     */
+    private void scheduleFlush(long delay) {
+        long at = System.currentTimeMillis() + Math.max(0, delay);
+        if (scheduledFlush != null) {
+            if (scheduledAt <= at) return;
+            scheduledFlush.cancel(false);
+        }
+        scheduledAt = at;
+        scheduledFlush = executor.schedule(flushTask, Math.max(0, delay), TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Flip the synced flag of every uploaded row in one transaction. Rows
+     * written again since the upload are still pending and stay unsynced.
+     */
+    private void markSynced(List<SyncOutbox.Entry> acknowledged) {
+        Map<String, List<String>> idsByTable = new LinkedHashMap<>();
+        for (SyncOutbox.Entry entry : acknowledged) {
+            if (entry.op != SyncOutbox.OP_SET || !isSyncedTable(entry.collection)) continue;
+            if (outbox.isPending(entry.collection, entry.id)) continue;
+            
+            List<String> ids = idsByTable.get(entry.collection);
+            if (ids == null) {
+                ids = new ArrayList<>();
+                idsByTable.put(entry.collection, ids);
+            }
+            ids.add(entry.id);
+        }
+        if (idsByTable.isEmpty()) return;
+        
+        try {
+            SQLiteDatabase db = openDatabase();
+            if (db == null) return;
+            
+            db.beginTransaction();
+            try {
+                for (Map.Entry<String, List<String>> table : idsByTable.entrySet()) {
+                    List<String> ids = table.getValue();
+                    // Stay below SQLite's bound-parameter limit
+                    for (int start = 0; start < ids.size(); start += 500) {
+                        List<String> chunk = ids.subList(start, Math.min(ids.size(), start + 500));
+                        StringBuilder sql = new StringBuilder("UPDATE ")
+                            .append(table.getKey())
+                            .append(" SET synced = 1 WHERE id IN (");
+                        for (int i = 0; i < chunk.size(); i++) {
+                            sql.append(i == 0 ? "?" : ",?");
+                        }
+                        sql.append(')');
+                        db.execSQL(sql.toString(), chunk.toArray());
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } catch (SQLiteException e) {
+            // Uploads are idempotent; an unflipped row is only pushed again later
+            Log.w(TAG, "Cannot mark " + acknowledged.size() + " rows synced", e);
+        }
+    }
+    
+    private static boolean isSyncedTable(String collection) {
+        for (String table : SYNCED_TABLES) {
+            if (table.equals(collection)) return true;
+        }
+        return false;
+    }
+    
+    private SQLiteDatabase openDatabase() {
+        if (database == null) {
+            File file = context.getDatabasePath(TripStore.DATABASE_NAME);
+            if (!file.exists()) return null;
+            database = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        }
+        return database;
+    }
+    
+    private void publishState() {
+        if (outbox != null) {
+            pendingCount = outbox.getPendingCount();
+            retryAt = outbox.getRetryAt();
+            lastSuccessTime = outbox.getLastSuccessTime();
+            uploadedCount = outbox.getUploadedCount();
+            batchCount = outbox.getBatchCount();
+            coalescedCount = outbox.getCoalescedCount();
+            rejectedCount = outbox.getRejectedCount();
+        }
+        
+        Listener current = listener;
+        if (current != null) {
+            current.onStateChanged(this);
+        }
+    }
+}
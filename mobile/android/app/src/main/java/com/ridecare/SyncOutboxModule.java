@@ -0,0 +1,142 @@
+package com.ridecare;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.ridecare.engine.SyncOutbox;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+/**
+ * SyncOutboxModule.java
+ * 
+ * React Native module for the native sync outbox. JS only enqueues record
+ * writes and observes state (onSyncState events); coalescing, batching,
+ * retries and the synced flag are handled by OutboxUploader.
+ */
+public class SyncOutboxModule extends ReactContextBaseJavaModule {
+    
+    private final OutboxUploader uploader;
+    
+    private final OutboxUploader.Listener stateListener = new OutboxUploader.Listener() {
+        @Override
+        public void onStateChanged(OutboxUploader uploader) {
+            ReactApplicationContext reactContext = getReactApplicationContext();
+            if (!reactContext.hasActiveReactInstance()) return;
+            
+            reactContext
+                .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+                .emit("onSyncState", toState(uploader));
+        }
+    };
+    
+    public SyncOutboxModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        uploader = OutboxUploader.get(reactContext);
+        uploader.setListener(stateListener);
+    }
+    
+    @Override
+    public String getName() {
+        return "SyncOutboxModule";
+    }
+    
+    /**
+     * Batch sync endpoint and the current Firebase ID token
+     */
+    @ReactMethod
+    public void configure(String url, String token, Promise promise) {
+        try {
+            uploader.configure(new URL(url), token);
+            promise.resolve(null);
+        } catch (MalformedURLException e) {
+            promise.reject("ERROR", "Invalid sync URL: " + url);
+        }
+    }
+    
+    /**
+     * Queue one write; data is the record serialized as a JSON object
+     * (ignored for deletes)
+     */
+    @ReactMethod
+    public void enqueue(String collection, String id, String op, String data, double updatedAt, Promise promise) {
+        try {
+            uploader.enqueue(collection, id, op(op), data, (long) updatedAt);
+            promise.resolve(null);
+        } catch (Exception e) {
+            promise.reject("ERROR", e.getMessage());
+        }
+    }
+    
+    /**
+     * Queue many writes in one bridge call: [{ collection, id, op, data, updatedAt }]
+     */
+    @ReactMethod
+    public void enqueueAll(ReadableArray writes, Promise promise) {
+        try {
+            for (int i = 0; i < writes.size(); i++) {
+                ReadableMap write = writes.getMap(i);
+                uploader.enqueue(
+                    write.getString("collection"),
+                    write.getString("id"),
+                    op(write.getString("op")),
+                    write.hasKey("data") && !write.isNull("data") ? write.getString("data") : null,
+                    (long) write.getDouble("updatedAt")
+                );
+            }
+            promise.resolve(writes.size());
+        } catch (Exception e) {
+            promise.reject("ERROR", e.getMessage());
+        }
+    }
+    
+    @ReactMethod
+    public void flush(Promise promise) {
+        uploader.flush();
+        promise.resolve(null);
+    }
+    
+    @ReactMethod
+    public void setOnline(boolean online, Promise promise) {
+        uploader.setOnline(online);
+        promise.resolve(null);
+    }
+    
+    @ReactMethod
+    public void clear(Promise promise) {
+        uploader.clear();
+        promise.resolve(null);
+    }
+    
+    @ReactMethod
+    public void getState(Promise promise) {
+        promise.resolve(toState(uploader));
+    }
+    
+    // MARK: - Helper Methods
+    
+    private static byte op(String op) {
+        if ("set".equals(op)) return SyncOutbox.OP_SET;
+        if ("delete".equals(op)) return SyncOutbox.OP_DELETE;
+        throw new IllegalArgumentException("Unknown op: " + op);
+    }
+    
+    private static WritableMap toState(OutboxUploader uploader) {
+        WritableMap state = new WritableNativeMap();
+        state.putInt("pendingChanges", uploader.getPendingCount());
+        state.putDouble("retryAt", uploader.getRetryAt());
+        state.putDouble("lastSyncAt", uploader.getLastSuccessTime());
+        state.putDouble("uploaded", uploader.getUploadedCount());
+        state.putDouble("batches", uploader.getBatchCount());
+        state.putDouble("coalesced", uploader.getCoalescedCount());
+        state.putDouble("rejected", uploader.getRejectedCount());
+        return state;
+    }
+}
@@ -0,0 +1,153 @@
+package com.ridecare;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.SystemClock;
+import androidx.core.app.NotificationCompat;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TrackingNotificationPublisher.java
+ * 
+ * Posts the ongoing tracking notification without rebuilding it per fix.
+ * One builder and one PendingIntent are reused, unchanged text is never
+ * re-posted, and updates inside the minimum interval are coalesced so only
+ * the latest text is posted when the interval expires.
+ */
+public class TrackingNotificationPublisher {
+    
+    private final NotificationManager notificationManager;
+    private final Handler handler;
+    private final int notificationId;
+    private final NotificationCompat.Builder builder;
+    
+    private long minInterval;
+    private long lastPostTime = 0;
+    private String lastPostedText;
+    private String pendingText;
+    private boolean flushScheduled = false;
+    
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicLong posted = new AtomicLong();
+    
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            flushPending();
+        }
+    };
+    
+    public TrackingNotificationPublisher(
+        Context context,
+        Handler handler,
+        String channelId,
+        int notificationId,
+        long minInterval
+    ) {
+        this.notificationManager = (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+        this.handler = handler;
+        this.notificationId = notificationId;
+        this.minInterval = minInterval;
+        
+        Intent notificationIntent = new Intent(context, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(
+            context,
+            0,
+            notificationIntent,
+            PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+        
+        this.builder = new NotificationCompat.Builder(context, channelId)
+            .setContentTitle("RideCare")
+            .setSmallIcon(R.drawable.ic_notification)
+            .setContentIntent(pendingIntent)
+            .setOngoing(true)
+            .setOnlyAlertOnce(true);
+    }
+    
+    /**
+     * Build the notification for startForeground; counts as a post
+     */
+    public synchronized Notification build(String text) {
+        lastPostedText = text;
+        lastPostTime = SystemClock.elapsedRealtime();
+        requested.incrementAndGet();
+        posted.incrementAndGet();
+        return builder.setContentText(text).build();
+    }
+    
+    /**
+     * Request the notification to show the given text
+     */
+    public synchronized void publish(String text) {
+        requested.incrementAndGet();
+        
+        if (text.equals(lastPostedText)) {
+            pendingText = null; // An older coalesced update is now stale
+            return;
+        }
+        
+        long now = SystemClock.elapsedRealtime();
+        long wait = lastPostTime + minInterval - now;
+        if (wait <= 0 && !flushScheduled) {
+            post(text, now);
+            return;
+        }
+        
+        pendingText = text;
+        if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(flushTask, Math.max(0, wait));
+        }
+    }
+    
+    /**
+     * Drop any coalesced update that has not been posted yet
+     */
+    public synchronized void cancelPending() {
+        handler.removeCallbacks(flushTask);
+        flushScheduled = false;
+        pendingText = null;
+    }
+    
+    public synchronized void setMinInterval(long minInterval) {
+        this.minInterval = Math.max(0, minInterval);
+    }
+    
+    /**
+     * Updates actually posted to NotificationManager
+     */
+    public long getPostedCount() {
+        return posted.get();
+    }
+    
+    /**
+     * Updates that were deduplicated or coalesced away
+     */
+    public long getSuppressedCount() {
+        return requested.get() - posted.get();
+    }
+    
+    // MARK: - Helper Methods
+    
+    private synchronized void flushPending() {
+        flushScheduled = false;
+        if (pendingText != null) {
+            String text = pendingText;
+            pendingText = null;
+            post(text, SystemClock.elapsedRealtime());
+        }
+    }
+    
+    private void post(String text, long now) {
+        lastPostedText = text;
+        lastPostTime = now;
+        posted.incrementAndGet();
+        notificationManager.notify(notificationId, builder.setContentText(text).build());
+    }
+}
@@ -0,0 +1,175 @@
+package com.ridecare;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeArray;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.ridecare.engine.TripTileIndex;
+
+import java.util.List;
+
+/**
+ * TripIndexModule.java
+ * 
+ * React Native module for area and route queries over recorded trips.
+ * Answers come from the geohash tile index (TripTileIndexer), so no stored
+ * path is decoded; results are trip ids, newest first.
+ */
+public class TripIndexModule extends ReactContextBaseJavaModule {
+    
+    private final TripTileIndexer indexer;
+    
+    public TripIndexModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        indexer = TripTileIndexer.get(reactContext);
+    }
+    
+    @Override
+    public String getName() {
+        return "TripIndexModule";
+    }
+    
+    /**
+     * Trips with a point inside the box
+     */
+    @ReactMethod
+    public void findTripsInArea(
+        final double minLat,
+        final double minLng,
+        final double maxLat,
+        final double maxLng,
+        final int limit,
+        final Promise promise
+    ) {
+        indexer.query(new TripTileIndexer.Query() {
+            @Override
+            public void run(TripTileIndex index) {
+                if (index == null) {
+                    promise.reject("ERROR", "Trip index unavailable");
+                    return;
+                }
+                promise.resolve(toArray(index.findInArea(minLat, minLng, maxLat, maxLng, limit)));
+            }
+        });
+    }
+    
+    /**
+     * Trips passing within about radius meters of a point
+     */
+    @ReactMethod
+    public void findTripsNear(final double latitude, final double longitude, final double radius, final int limit, final Promise promise) {
+        indexer.query(new TripTileIndexer.Query() {
+            @Override
+            public void run(TripTileIndex index) {
+                if (index == null) {
+                    promise.reject("ERROR", "Trip index unavailable");
+                    return;
+                }
+                promise.resolve(toArray(index.findNear(latitude, longitude, radius, limit)));
+            }
+        });
+    }
+    
+    /**
+     * Other rides of the same route: trips sharing at least minOverlap
+     * (0..1, default 0.6) of their cells with tripId
+     */
+    @ReactMethod
+    public void findSimilarTrips(final String tripId, final double minOverlap, final Promise promise) {
+        indexer.query(new TripTileIndexer.Query() {
+            @Override
+            public void run(TripTileIndex index) {
+                if (index == null) {
+                    promise.reject("ERROR", "Trip index unavailable");
+                    return;
+                }
+                double overlap = minOverlap > 0 ? minOverlap : TripTileIndex.DEFAULT_MIN_OVERLAP;
+                promise.resolve(toArray(index.findSimilar(tripId, overlap)));
+            }
+        });
+    }
+    
+    /**
+     * Recorded trips along the same route as points ([{ latitude, longitude }]),
+     * e.g. a trip JS has in memory
+     */
+    @ReactMethod
+    public void findSimilarToRoute(ReadableArray points, final double minOverlap, final Promise promise) {
+        final TripTileIndex.CellCollector route = new TripTileIndex.CellCollector();
+        try {
+            for (int i = 0; i < points.size(); i++) {
+                ReadableMap point = points.getMap(i);
+                route.onPoint(point.getDouble("latitude"), point.getDouble("longitude"));
+            }
+        } catch (Exception e) {
+            promise.reject("ERROR", e.getMessage());
+            return;
+        }
+        
+        indexer.query(new TripTileIndexer.Query() {
+            @Override
+            public void run(TripTileIndex index) {
+                if (index == null) {
+                    promise.reject("ERROR", "Trip index unavailable");
+                    return;
+                }
+                double overlap = minOverlap > 0 ? minOverlap : TripTileIndex.DEFAULT_MIN_OVERLAP;
+                promise.resolve(toArray(index.findSimilar(route, overlap)));
+            }
+        });
+    }
+    
+    /**
+     * Most ridden cells: [{ geohash, latitude, longitude, trips }]
+     */
+    @ReactMethod
+    public void getHotCells(final int limit, final Promise promise) {
+        indexer.query(new TripTileIndexer.Query() {
+            @Override
+            public void run(TripTileIndex index) {
+                if (index == null) {
+                    promise.reject("ERROR", "Trip index unavailable");
+                    return;
+                }
+                TripTileIndex.HotCells hot = new TripTileIndex.HotCells();
+                index.getHotCells(limit, hot);
+                
+                WritableArray result = new WritableNativeArray();
+                for (int i = 0; i < hot.count; i++) {
+                    WritableMap cell = new WritableNativeMap();
+                    cell.putString("geohash", TripTileIndex.geohash(hot.cell[i]));
+                    cell.putDouble("latitude", TripTileIndex.centerLatitude(hot.cell[i]));
+                    cell.putDouble("longitude", TripTileIndex.centerLongitude(hot.cell[i]));
+                    cell.putInt("trips", hot.trips[i]);
+                    result.pushMap(cell);
+                }
+                promise.resolve(result);
+            }
+        });
+    }
+    
+    /**
+     * Trips were written outside LocationService (imports, sync pulls)
+     */
+    @ReactMethod
+    public void resync(Promise promise) {
+        indexer.resync();
+        promise.resolve(null);
+    }
+    
+    // MARK: - Helper Methods
+    
+    private static WritableArray toArray(List<String> tripIds) {
+        WritableArray array = new WritableNativeArray();
+        for (String id : tripIds) {
+            array.pushString(id);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,174 @@
+package com.ridecare;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import com.ridecare.engine.TripRollups;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * TripRollupCache.java
+ * 
+ * Process-wide TripRollups for the Dashboard and MaintenanceHistory. Built
+ * once from SQLite (one row per bike and local day, plus the newest trips
+ * for the recent list), then kept current as LocationService stores trips,
+ * so totals never re-read the trips table.
+ * 
+ * Loads, updates and reads run on one background thread; a read queued
+ * before the first load waits for it. The cache is rebuilt when the device
+ * time zone changes, since bucket boundaries follow the local calendar.
+ */
+public class TripRollupCache {
+    
+    private static final String TAG = "TripRollupCache";
+    
+    private static final String DAILY_TOTALS =
+        "SELECT bike_id, date(start_time / 1000, 'unixepoch', 'localtime') AS day, " +
+        "SUM(distance_km), COUNT(*), SUM(MAX(end_time - start_time, 0)) " +
+        "FROM trips GROUP BY bike_id, day";
+    
+    private static final String RECENT_TRIPS =
+        "SELECT id, bike_id, start_time, end_time, distance_km, avg_speed_kmh, max_speed_kmh " +
+        "FROM trips ORDER BY start_time DESC LIMIT ?";
+    
+    private static TripRollupCache instance;
+    
+    private final Context context;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    
+    // Owned by the executor thread
+    private TripRollups rollups;
+    private boolean loaded = false;
+    
+    private TripRollupCache(Context context) {
+        this.context = context.getApplicationContext();
+    }
+    
+    public static synchronized TripRollupCache get(Context context) {
+        if (instance == null) {
+            instance = new TripRollupCache(context);
+        }
+        return instance;
+    }
+    
+    /**
+     * Count a trip TripStore has committed. Before the first load nothing is
+     * needed: the load reads the trip from SQLite.
+     */
+    public void onTripSaved(final TripStore.Trip trip) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!loaded) return;
+                
+                rollups.add(new TripRollups.TripSummary(
+                    trip.id,
+                    trip.bikeId,
+                    trip.startTime,
+                    trip.endTime,
+                    trip.distanceKm,
+                    trip.avgSpeedKmh,
+                    trip.maxSpeedKmh
+                ));
+            }
+        });
+    }
+    
+    /**
+     * Drop everything and reload on the next read, e.g. after trips were
+     * imported or pulled from the server
+     */
+    public void invalidate() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                loaded = false;
+            }
+        });
+    }
+    
+    /**
+     * Run reader on the cache thread once the rollups are loaded; it may
+     * call getRollups()
+     */
+    public void read(final Runnable reader) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (!loaded || !rollups.getZone().equals(ZoneId.systemDefault())) {
+                    load();
+                }
+                reader.run();
+            }
+        });
+    }
+    
+    /**
+     * The loaded rollups; only valid inside read()
+     */
+    public TripRollups getRollups() {
+        return rollups;
+    }
+    
+    // MARK: - Helper Methods
+    
+    private void load() {
+        long started = System.currentTimeMillis();
+        rollups = new TripRollups(ZoneId.systemDefault());
+        loaded = true;
+        
+        SQLiteDatabase db = null;
+        try {
+            db = TripStore.openReadOnly(context);
+            if (db == null || !TripStore.hasTable(db, "trips")) return; // No trips yet
+            
+            int days = 0;
+            try (Cursor cursor = db.rawQuery(DAILY_TOTALS, null)) {
+                while (cursor.moveToNext()) {
+                    rollups.addDay(
+                        cursor.getString(0),
+                        LocalDate.parse(cursor.getString(1)).toEpochDay(),
+                        cursor.getDouble(2),
+                        cursor.getInt(3),
+                        cursor.getLong(4)
+                    );
+                    days++;
+                }
+            }
+            
+            String limit = String.valueOf(rollups.getRecentCapacity());
+            try (Cursor cursor = db.rawQuery(RECENT_TRIPS, new String[] {limit})) {
+                while (cursor.moveToNext()) {
+                    rollups.addRecent(new TripRollups.TripSummary(
+                        cursor.getString(0),
+                        cursor.getString(1),
+                        cursor.getLong(2),
+                        cursor.getLong(3),
+                        cursor.getDouble(4),
+                        getDouble(cursor, 5),
+                        getDouble(cursor, 6)
+                    ));
+                }
+            }
+            Log.d(TAG, "Loaded " + days + " bike-days in " + (System.currentTimeMillis() - started) + " ms");
+        } catch (SQLiteException e) {
+            // Empty totals are better than none; the next invalidate() retries
+            Log.w(TAG, "Cannot load trip rollups", e);
+        } finally {
+            if (db != null) {
+                db.close();
+            }
+        }
+    }
+    
+    private static double getDouble(Cursor cursor, int column) {
+        return cursor.isNull(column) ? Double.NaN : cursor.getDouble(column);
+    }
+}
@@ -0,0 +1,159 @@
+package com.ridecare;
+
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.WritableNativeArray;
+import com.facebook.react.bridge.WritableNativeMap;
+import com.ridecare.engine.TripRollups;
+
+/**
+ * TripStatsModule.java
+ * 
+ * React Native module for the trip rollup cache. Dashboard totals (today,
+ * this week, this month, per bike) and charts are answered from daily,
+ * weekly and monthly buckets, so their cost does not grow with the number
+ * of trips. A null bikeId means all bikes.
+ */
+public class TripStatsModule extends ReactContextBaseJavaModule {
+    
+    private final TripRollupCache cache;
+    
+    public TripStatsModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        cache = TripRollupCache.get(reactContext);
+    }
+    
+    @Override
+    public String getName() {
+        return "TripStatsModule";
+    }
+    
+    /**
+     * { today, week, month, lifetime: { km, rides, rideTime }, bikes: { [bikeId]: { km, rides, rideTime } } }
+     */
+    @ReactMethod
+    public void getSummary(final String bikeId, final Promise promise) {
+        cache.read(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    TripRollups rollups = cache.getRollups();
+                    TripRollups.Totals totals = new TripRollups.Totals();
+                    long now = System.currentTimeMillis();
+                    
+                    WritableMap summary = new WritableNativeMap();
+                    summary.putMap("today", toMap(rollups.total(bikeId, TripRollups.DAY, now, now, totals)));
+                    summary.putMap("week", toMap(rollups.total(bikeId, TripRollups.WEEK, now, now, totals)));
+                    summary.putMap("month", toMap(rollups.total(bikeId, TripRollups.MONTH, now, now, totals)));
+                    summary.putMap("lifetime", toMap(rollups.lifetime(bikeId, totals)));
+                    
+                    WritableMap bikes = new WritableNativeMap();
+                    for (String id : rollups.getBikeIds()) {
+                        bikes.putMap(id, toMap(rollups.lifetime(id, totals)));
+                    }
+                    summary.putMap("bikes", bikes);
+                    promise.resolve(summary);
+                } catch (Exception e) {
+                    promise.reject("ERROR", e.getMessage());
+                }
+            }
+        });
+    }
+    
+    /**
+     * Non-empty buckets ("day", "week" or "month") touching [from, to]:
+     * [{ start, km, rides, rideTime }]
+     */
+    @ReactMethod
+    public void getBuckets(final String bikeId, final String granularity, final double from, final double to, final Promise promise) {
+        final int unit;
+        try {
+            unit = granularity(granularity);
+        } catch (IllegalArgumentException e) {
+            promise.reject("ERROR", e.getMessage());
+            return;
+        }
+        
+        cache.read(new Runnable() {
+            @Override
+            public void run() {
+                TripRollups.Buckets buckets = new TripRollups.Buckets();
+                cache.getRollups().query(bikeId, unit, (long) from, (long) to, buckets);
+                
+                WritableArray result = new WritableNativeArray();
+                for (int i = 0; i < buckets.count; i++) {
+                    WritableMap bucket = new WritableNativeMap();
+                    bucket.putDouble("start", buckets.start[i]);
+                    bucket.putDouble("km", buckets.km[i]);
+                    bucket.putInt("rides", buckets.rides[i]);
+                    bucket.putDouble("rideTime", buckets.rideTime[i]);
+                    result.pushMap(bucket);
+                }
+                promise.resolve(result);
+            }
+        });
+    }
+    
+    /**
+     * Newest trips first, without paths, from the cached recent summaries
+     */
+    @ReactMethod
+    public void getRecentTrips(final String bikeId, final int limit, final Promise promise) {
+        cache.read(new Runnable() {
+            @Override
+            public void run() {
+                WritableArray result = new WritableNativeArray();
+                for (TripRollups.TripSummary trip : cache.getRollups().getRecent(bikeId, limit)) {
+                    WritableMap map = new WritableNativeMap();
+                    map.putString("id", trip.id);
+                    map.putString("bikeId", trip.bikeId);
+                    map.putDouble("startTime", trip.startTime);
+                    map.putDouble("endTime", trip.endTime);
+                    map.putDouble("distance", trip.distanceKm);
+                    putSpeed(map, "avgSpeed", trip.avgSpeedKmh);
+                    putSpeed(map, "maxSpeed", trip.maxSpeedKmh);
+                    result.pushMap(map);
+                }
+                promise.resolve(result);
+            }
+        });
+    }
+    
+    /**
+     * Trips were written outside LocationService (edits, imports, sync pulls)
+     */
+    @ReactMethod
+    public void invalidate(Promise promise) {
+        cache.invalidate();
+        promise.resolve(null);
+    }
+    
+    // MARK: - Helper Methods
+    
+    private static int granularity(String granularity) {
+        if ("day".equals(granularity)) return TripRollups.DAY;
+        if ("week".equals(granularity)) return TripRollups.WEEK;
+        if ("month".equals(granularity)) return TripRollups.MONTH;
+        throw new IllegalArgumentException("Unknown granularity: " + granularity);
+    }
+    
+    private static WritableMap toMap(TripRollups.Totals totals) {
+        WritableMap map = new WritableNativeMap();
+        map.putDouble("km", totals.km);
+        map.putInt("rides", totals.rides);
+        map.putDouble("rideTime", totals.rideTime);
+        return map;
+    }
+    
+    private static void putSpeed(WritableMap map, String key, double value) {
+        if (Double.isNaN(value)) {
+            map.putNull(key);
+        } else {
+            map.putDouble(key, value);
+        }
+    }
+}
@@ -0,0 +1,352 @@
+package com.ridecare;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDatabaseLockedException;
+import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
+import android.database.sqlite.SQLiteTableLockedException;
+import android.util.Log;
+
+import com.ridecare.engine.Json;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TripStore.java
+ * 
+ * Writes finished trips straight into the local SQLite trips table
+ * (database/schema.sql), so a ride is stored even when the JS runtime is
+ * not alive. Writes run on a single background thread; every pending trip
+ * is inserted with one prepared statement inside one transaction, together
+ * with the matching bikes.odometer_km update (skipped while the JS schema
+ * has no bikes table). A busy or locked database is retried with backoff;
+ * a row the table rejects is dropped without holding back the others.
+ */
+public class TripStore {
+    
+    private static final String TAG = "TripStore";
+    
+    // Must match the dbName of the JS SQLite adapter
+    static final String DATABASE_NAME = "ridecare.db";
+    
+    private static final String CREATE_TRIPS =
+        "CREATE TABLE IF NOT EXISTS trips (" +
+        "id TEXT PRIMARY KEY NOT NULL, " +
+        "bike_id TEXT NOT NULL, " +
+        "start_time INTEGER NOT NULL, " +
+        "end_time INTEGER NOT NULL, " +
+        "start_lat REAL, " +
+        "start_lng REAL, " +
+        "end_lat REAL, " +
+        "end_lng REAL, " +
+        "distance_km REAL NOT NULL CHECK(distance_km >= 0), " +
+        "avg_speed_kmh REAL CHECK(avg_speed_kmh >= 0), " +
+        "max_speed_kmh REAL CHECK(max_speed_kmh >= 0), " +
+        "path TEXT, " +
+        "notes TEXT, " +
+        "fuel_consumed_est REAL, " +
+        "synced INTEGER DEFAULT 0 CHECK(synced IN (0,1)), " +
+        "FOREIGN KEY (bike_id) REFERENCES bikes(id) ON DELETE CASCADE)";
+    
+    private static final String INSERT_TRIP =
+        "INSERT OR REPLACE INTO trips (id, bike_id, start_time, end_time, start_lat, start_lng, end_lat, end_lng, " +
+        "distance_km, avg_speed_kmh, max_speed_kmh, path, synced) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+    
+    private static final long MIN_RETRY_DELAY = 1000;  // 1 second
+    private static final long MAX_RETRY_DELAY = 60000; // 1 minute
+    
+    private static final String UPDATE_ODOMETER =
+        "UPDATE bikes SET odometer_km = odometer_km + ?, updated_at = ?, synced = 0 WHERE id = ?";
+    
+    /**
+     * Called on the store thread after a batch has been committed
+     */
+    public interface Listener {
+        void onTripSaved(Trip trip);
+    }
+    
+    /**
+     * One row of the trips table
+     */
+    public static class Trip {
+        public final String id;
+        public final String bikeId;
+        public final long startTime;
+        public final long endTime;
+        public final double startLat;
+        public final double startLng;
+        public final double endLat;
+        public final double endLng;
+        public final double distanceKm;
+        public final double avgSpeedKmh;
+        public final double maxSpeedKmh;
+        public final String path;
+        
+        public Trip(
+            String id,
+            String bikeId,
+            long startTime,
+            long endTime,
+            double startLat,
+            double startLng,
+            double endLat,
+            double endLng,
+            double distanceKm,
+            double avgSpeedKmh,
+            double maxSpeedKmh,
+            String path
+        ) {
+            this.id = id;
+            this.bikeId = bikeId;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.startLat = startLat;
+            this.startLng = startLng;
+            this.endLat = endLat;
+            this.endLng = endLng;
+            this.distanceKm = distanceKm;
+            this.avgSpeedKmh = avgSpeedKmh;
+            this.maxSpeedKmh = maxSpeedKmh;
+            this.path = path;
+        }
+        
+        /**
+         * The row as a JSON object keyed by column, for the sync outbox
+         */
+        public String toJson() {
+            StringBuilder json = new StringBuilder(256 + (path != null ? path.length() : 0));
+            json.append("{\"id\":");
+            Json.appendQuoted(json, id);
+            json.append(",\"bike_id\":");
+            Json.appendQuoted(json, bikeId);
+            json.append(",\"start_time\":").append(startTime);
+            json.append(",\"end_time\":").append(endTime);
+            appendNumber(json, "start_lat", startLat);
+            appendNumber(json, "start_lng", startLng);
+            appendNumber(json, "end_lat", endLat);
+            appendNumber(json, "end_lng", endLng);
+            appendNumber(json, "distance_km", distanceKm);
+            appendNumber(json, "avg_speed_kmh", avgSpeedKmh);
+            appendNumber(json, "max_speed_kmh", maxSpeedKmh);
+            json.append(",\"path\":");
+            Json.appendQuoted(json, path);
+            return json.append('}').toString();
+        }
+        
+        private static void appendNumber(StringBuilder json, String name, double value) {
+            json.append(",\"").append(name).append("\":");
+            if (Double.isNaN(value)) {
+                json.append("null"); // Trip without fixes
+            } else {
+                json.append(value);
+            }
+        }
+    }
+    
+    private final Context context;
+    private final Listener listener;
+    private final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+    private final ConcurrentLinkedQueue<Trip> pending = new ConcurrentLinkedQueue<>();
+    
+    // Owned by the executor thread
+    private SQLiteDatabase database;
+    private long retryDelay = 0; // millis; 0 while writes succeed
+    
+    private final Runnable writeTask = new Runnable() {
+        @Override
+        public void run() {
+            writePending();
+        }
+    };
+    
+    public TripStore(Context context, Listener listener) {
+        this.context = context.getApplicationContext();
+        this.listener = listener;
+        executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+    
+    /**
+     * Queue a trip for writing; returns immediately
+     */
+    public void save(Trip trip) {
+        pending.add(trip);
+        executor.execute(writeTask);
+    }
+    
+    /**
+     * Finish queued writes, then close the database
+     */
+    public void shutdown() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (database != null) {
+                    database.close();
+                    database = null;
+                }
+            }
+        });
+        executor.shutdown();
+    }
+    
+    // MARK: - Helper Methods
+    
+    private void writePending() {
+        List<Trip> batch = new ArrayList<>();
+        Trip trip;
+        while ((trip = pending.poll()) != null) {
+            batch.add(trip);
+        }
+        if (batch.isEmpty()) return; // An earlier run already took them
+        
+        List<Trip> saved = new ArrayList<>(batch.size());
+        try {
+            SQLiteDatabase db = open();
+            boolean updateOdometer = hasTable(db, "bikes"); // The JS schema may not exist yet
+            try {
+                writeRows(db, batch, updateOdometer);
+                saved.addAll(batch);
+            } catch (SQLiteException e) {
+                if (isTransient(e)) throw e;
+                
+                // A row was rejected: write them one by one so the rest still land
+                for (Trip row : batch) {
+                    try {
+                        writeRows(db, Collections.singletonList(row), updateOdometer);
+                        saved.add(row);
+                    } catch (SQLiteException rejected) {
+                        if (isTransient(rejected)) throw rejected;
+                        Log.e(TAG, "Dropping trip " + row.id + " rejected by the trips table", rejected);
+                    }
+                }
+            }
+            retryDelay = 0;
+        } catch (SQLiteException e) {
+            // Busy, locked (e.g. by the JS adapter) or not openable: keep what
+            // is not stored and retry
+            List<Trip> unsaved = new ArrayList<>(batch);
+            unsaved.removeAll(saved);
+            Log.w(TAG, "Cannot write " + unsaved.size() + " trips, retrying in " + nextRetryDelay() + " ms", e);
+            pending.addAll(unsaved);
+            executor.schedule(writeTask, retryDelay, TimeUnit.MILLISECONDS);
+        }
+        
+        for (Trip row : saved) {
+            listener.onTripSaved(row);
+        }
+    }
+    
+    /**
+     * Insert rows and credit their bikes' odometers in one transaction
+     */
+    private static void writeRows(SQLiteDatabase db, List<Trip> rows, boolean updateOdometer) {
+        db.beginTransaction();
+        try (SQLiteStatement insert = db.compileStatement(INSERT_TRIP);
+             SQLiteStatement odometer = updateOdometer ? db.compileStatement(UPDATE_ODOMETER) : null) {
+            for (Trip row : rows) {
+                bindTrip(insert, row);
+                insert.executeInsert();
+                
+                if (odometer != null) {
+                    odometer.clearBindings();
+                    odometer.bindDouble(1, row.distanceKm);
+                    odometer.bindLong(2, row.endTime);
+                    odometer.bindString(3, row.bikeId);
+                    odometer.executeUpdateDelete();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+    
+    /**
+     * A busy or locked database is worth retrying; any other failure of an
+     * insert is about the row and would fail again
+     */
+    private static boolean isTransient(SQLiteException e) {
+        return e instanceof SQLiteDatabaseLockedException || e instanceof SQLiteTableLockedException;
+    }
+    
+    private long nextRetryDelay() {
+        retryDelay = retryDelay == 0 ? MIN_RETRY_DELAY : Math.min(retryDelay * 2, MAX_RETRY_DELAY);
+        return retryDelay;
+    }
+    
+    // MARK: - Shared Database Access
+    
+    /**
+     * The database the JS adapter and TripStore write, opened read-only for
+     * the caller to close, or null before either has run
+     */
+    static SQLiteDatabase openReadOnly(Context context) {
+        File file = context.getDatabasePath(DATABASE_NAME);
+        if (!file.exists()) return null;
+        return SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READONLY);
+    }
+    
+    /**
+     * Tables come from the JS schema and may not exist yet on a fresh install
+     */
+    static boolean hasTable(SQLiteDatabase db, String table) {
+        try (Cursor cursor = db.rawQuery(
+            "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = ?",
+            new String[] {table}
+        )) {
+            return cursor.moveToFirst();
+        }
+    }
+    
+    private static void bindTrip(SQLiteStatement insert, Trip trip) {
+        insert.clearBindings();
+        insert.bindString(1, trip.id);
+        insert.bindString(2, trip.bikeId);
+        insert.bindLong(3, trip.startTime);
+        insert.bindLong(4, trip.endTime);
+        bindCoordinate(insert, 5, trip.startLat);
+        bindCoordinate(insert, 6, trip.startLng);
+        bindCoordinate(insert, 7, trip.endLat);
+        bindCoordinate(insert, 8, trip.endLng);
+        insert.bindDouble(9, trip.distanceKm);
+        insert.bindDouble(10, trip.avgSpeedKmh);
+        insert.bindDouble(11, trip.maxSpeedKmh);
+        if (trip.path != null) {
+            insert.bindString(12, trip.path);
+        } else {
+            insert.bindNull(12);
+        }
+    }
+    
+    private static void bindCoordinate(SQLiteStatement statement, int index, double value) {
+        if (Double.isNaN(value)) {
+            statement.bindNull(index); // Trip without fixes
+        } else {
+            statement.bindDouble(index, value);
+        }
+    }
+    
+    private SQLiteDatabase open() {
+        if (database == null) {
+            File file = context.getDatabasePath(DATABASE_NAME);
+            file.getParentFile().mkdirs();
+            SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(file, null);
+            try {
+                db.execSQL(CREATE_TRIPS);
+            } catch (SQLiteException e) {
+                db.close(); // Try the whole open again next time
+                throw e;
+            }
+            database = db;
+        }
+        return database;
+    }
+}
@@ -0,0 +1,182 @@
+package com.ridecare;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
+import android.util.Log;
+
+import com.ridecare.engine.TripTileIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * TripTileIndexer.java
+ * 
+ * Process-wide owner of the TripTileIndex (noBackupFilesDir/trip_tiles.idx;
+ * it is derived from the trips table and rebuilt when missing). Trips are
+ * indexed as LocationService stores them; on first use the index catches up
+ * with SQLite, reading paths only for trips it has not seen and dropping
+ * trips that were deleted.
+ * 
+ * Index writes and queries run on one background thread.
+ */
+public class TripTileIndexer {
+    
+    private static final String TAG = "TripTileIndexer";
+    private static final String INDEX_FILE = "trip_tiles.idx";
+    
+    /**
+     * Runs on the index thread; index is null if it cannot be opened
+     */
+    public interface Query {
+        void run(TripTileIndex index);
+    }
+    
+    private static TripTileIndexer instance;
+    
+    private final Context context;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    
+    // Owned by the executor thread
+    private TripTileIndex index;
+    private boolean synced = false;
+    
+    private TripTileIndexer(Context context) {
+        this.context = context.getApplicationContext();
+    }
+    
+    public static synchronized TripTileIndexer get(Context context) {
+        if (instance == null) {
+            instance = new TripTileIndexer(context);
+        }
+        return instance;
+    }
+    
+    /**
+     * Index a trip TripStore has committed
+     */
+    public void onTripSaved(final TripStore.Trip trip) {
+        if (trip.path == null) return; // No fixes, nothing to index
+        
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    TripTileIndex current = open();
+                    if (current != null) {
+                        current.add(trip.id, trip.path);
+                    }
+                } catch (IOException | IllegalArgumentException e) {
+                    Log.w(TAG, "Cannot index trip " + trip.id, e);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Catch up with the trips table again on the next query, e.g. after
+     * trips were pulled from the server
+     */
+    public void resync() {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synced = false;
+            }
+        });
+    }
+    
+    /**
+     * Run a query on the index thread once the index matches SQLite
+     */
+    public void query(final Query query) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                TripTileIndex current = open();
+                if (current != null && !synced) {
+                    syncWithDatabase(current);
+                }
+                query.run(current);
+            }
+        });
+    }
+    
+    // MARK: - Helper Methods
+    
+    private TripTileIndex open() {
+        if (index == null) {
+            File file = new File(context.getNoBackupFilesDir(), INDEX_FILE);
+            try {
+                index = TripTileIndex.open(file);
+            } catch (IOException e) {
+                // Unreadable: start over, the trips table has everything
+                Log.w(TAG, "Rebuilding the trip tile index", e);
+                file.delete();
+                try {
+                    index = TripTileIndex.open(file);
+                } catch (IOException again) {
+                    Log.w(TAG, "Cannot open the trip tile index", again);
+                    return null;
+                }
+            }
+        }
+        return index;
+    }
+    
+    /**
+     * Index trips the index has not seen and drop the ones deleted since
+     */
+    private void syncWithDatabase(TripTileIndex index) {
+        synced = true;
+        long started = System.currentTimeMillis();
+        SQLiteDatabase db = null;
+        try {
+            db = TripStore.openReadOnly(context);
+            if (db == null || !TripStore.hasTable(db, "trips")) return;
+            
+            Set<String> stored = new HashSet<>();
+            List<String> missing = new ArrayList<>();
+            try (Cursor cursor = db.rawQuery("SELECT id FROM trips WHERE path IS NOT NULL ORDER BY start_time", null)) {
+                while (cursor.moveToNext()) {
+                    String id = cursor.getString(0);
+                    stored.add(id);
+                    if (!index.contains(id)) missing.add(id);
+                }
+            }
+            
+            for (String id : index.getTripIds()) {
+                if (!stored.contains(id)) index.remove(id);
+            }
+            
+            // Paths only for new trips, one row at a time so memory stays flat
+            for (String id : missing) {
+                try (Cursor cursor = db.rawQuery("SELECT path FROM trips WHERE id = ?", new String[] {id})) {
+                    if (cursor.moveToFirst()) {
+                        index.add(id, cursor.getString(0));
+                    }
+                } catch (IllegalArgumentException e) {
+                    Log.w(TAG, "Skipping trip " + id + " with a corrupt path", e);
+                }
+            }
+            if (!missing.isEmpty()) {
+                Log.d(TAG, "Indexed " + missing.size() + " trips in " + (System.currentTimeMillis() - started) + " ms");
+            }
+        } catch (SQLiteException | IOException e) {
+            Log.w(TAG, "Cannot catch up with the trips table", e);
+            synced = false;
+        } finally {
+            if (db != null) {
+                db.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.ridecare.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReplayPipelineBenchmark.java
+ * 
+ * Whole-ride cost of ReplayPipeline (source, ring buffer and owner thread,
+ * as in LocationService) on the synthetic traces of ReplayPipelineTest.
+ * Run with -prof gc to see allocation and GC count per ride.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplayPipelineBenchmark {
+    
+    private static final long TIMEOUT = 60000;
+    
+    private TraceReplay.Trace highway;
+    private TraceReplay.Trace flappingCity;
+    
+    @Setup
+    public void setUp() {
+        highway = SyntheticTraces.highway(6, 42);
+        flappingCity = SyntheticTraces.flappingCity(60, 11);
+    }
+    
+    @Benchmark
+    public ReplayPipeline.Result highwaySixHours() throws InterruptedException {
+        return ReplayPipeline.run(highway, TIMEOUT);
+    }
+    
+    @Benchmark
+    public ReplayPipeline.Result flappingCityOneHour() throws InterruptedException {
+        return ReplayPipeline.run(flappingCity, TIMEOUT);
+    }
+}
@@ -0,0 +1,48 @@
+package com.ridecare.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * TraceReplayTool.java
+ * 
+ * Replays recorded CSV or GPX traces through the trip engine and prints the
+ * resulting stats with a rough per-fix cost. Use the JMH benchmarks for
+ * numbers worth comparing.
+ * 
+ * Usage: ./gradlew :trip-engine:replayTrace --args="<trace.csv|trace.gpx>..."
+ */
+public final class TraceReplayTool {
+    
+    private TraceReplayTool() {}
+    
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: TraceReplayTool <trace.csv|trace.gpx>...");
+            System.exit(2);
+        }
+        
+        for (String path : args) {
+            TraceReplay.Trace trace = TraceReplay.load(new File(path));
+            
+            // Warm up once so the timed pass measures steady-state cost
+            TraceReplay.run(trace);
+            long start = System.nanoTime();
+            TripRecord record = TraceReplay.run(trace);
+            long elapsed = System.nanoTime() - start;
+            
+            TripAccumulator stats = record.stats;
+            System.out.println(String.format(Locale.ROOT,
+                "%s: %d fixes, %d recorded, %.2f km, moving %d s, max %.1f km/h, %.0f ns/fix",
+                path,
+                trace.size(),
+                stats.getPointCount(),
+                stats.getDistance() / 1000,
+                stats.getMovingTime() / 1000,
+                stats.getMaxSpeed() * 3.6, // Convert to km/h
+                trace.size() > 0 ? (double) elapsed / trace.size() : 0
+            ));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.ridecare.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TrackCodecBenchmark.java
+ * 
+ * Encode/decode throughput of TrackCodec on synthetic rides of 1 Hz fixes
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrackCodecBenchmark {
+    
+    // 1 h and 6 h rides at 1 Hz
+    @Param({"3600", "21600"})
+    public int points;
+    
+    @Param({"5.0"})
+    public double toleranceMeters;
+    
+    private TrackBuffer track;
+    private int[] allIndices;
+    private String encoded;
+    
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        track = new TrackBuffer();
+        double lat = 12.9716;
+        double lng = 77.5946;
+        double heading = 0;
+        for (int i = 0; i < points; i++) {
+            heading += random.nextGaussian() * 0.05;
+            lat += Math.cos(heading) * 10 / 111320.0;
+            lng += Math.sin(heading) * 10 / 108500.0;
+            track.append(lat, lng, 10f, 5f, 1700000000000L + i * 1000L);
+        }
+        
+        allIndices = new int[points];
+        for (int i = 0; i < points; i++) allIndices[i] = i;
+        encoded = TrackCodec.encode(track, allIndices, points);
+    }
+    
+    @Benchmark
+    public int[] simplify() {
+        return TrackCodec.simplify(track, toleranceMeters);
+    }
+    
+    @Benchmark
+    public String encodeRaw() {
+        return TrackCodec.encode(track, allIndices, points);
+    }
+    
+    @Benchmark
+    public String simplifyAndEncode() {
+        return TrackCodec.encode(track, toleranceMeters);
+    }
+    
+    @Benchmark
+    public double[] decode() {
+        return TrackCodec.decode(encoded);
+    }
+}
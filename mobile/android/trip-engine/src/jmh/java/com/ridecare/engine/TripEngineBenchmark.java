@@ -0,0 +1,61 @@
+package com.ridecare.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TripEngineBenchmark.java
+ * 
+ * Per-fix cost of the trip engine over a 1 h synthetic ride at 1 Hz.
+ * Run with -prof gc to see allocation per fix.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TripEngineBenchmark {
+    
+    private static final int POINTS = 3600;
+    
+    private TraceReplay.Trace trace;
+    
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        trace = new TraceReplay.Trace();
+        double lat = 12.9716;
+        double lng = 77.5946;
+        double heading = 0;
+        for (int i = 0; i < POINTS; i++) {
+            heading += random.nextGaussian() * 0.05;
+            float speed = (float) (8 + 4 * Math.sin(i / 120.0)); // 14-43 km/h
+            lat += Math.cos(heading) * speed / 111320.0;
+            lng += Math.sin(heading) * speed / 108500.0;
+            
+            // 5 m of receiver noise on every fix
+            double noisyLat = lat + random.nextGaussian() * 5 / 111320.0;
+            double noisyLng = lng + random.nextGaussian() * 5 / 108500.0;
+            trace.add(noisyLat, noisyLng, speed, 5f, 1700000000000L + i * 1000L, FixRingBuffer.PROVIDER_GPS);
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public TripRecord processRide() {
+        return TraceReplay.run(trace);
+    }
+}
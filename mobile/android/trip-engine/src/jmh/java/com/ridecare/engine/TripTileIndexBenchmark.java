@@ -0,0 +1,94 @@
+package com.ridecare.engine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TripTileIndexBenchmark.java
+ * 
+ * Cost of a 500 m "trips near here" query over an index of short rides
+ * scattered across a city; the setup logs the index size it ran against
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TripTileIndexBenchmark {
+    
+    private static final int QUERY_POINTS = 1024; // Power of two, cycled through
+    
+    @Param({"3000"})
+    public int trips;
+    
+    private File file;
+    private TripTileIndex index;
+    private final double[] queries = new double[2 * QUERY_POINTS];
+    private int next;
+    
+    @Setup
+    public void setUp() throws IOException {
+        file = File.createTempFile("tiles", ".idx");
+        file.delete();
+        index = TripTileIndex.open(file);
+        
+        Random random = new Random(11);
+        for (int i = 0; i < trips; i++) {
+            double lat = 12.85 + random.nextDouble() * 0.25;
+            double lng = 77.45 + random.nextDouble() * 0.30;
+            index.add("trip-" + i, path(
+                lat, lng,
+                lat + (random.nextDouble() - 0.5) * 0.05, lng + (random.nextDouble() - 0.5) * 0.05,
+                lat + (random.nextDouble() - 0.5) * 0.08, lng + (random.nextDouble() - 0.5) * 0.08
+            ));
+        }
+        for (int i = 0; i < QUERY_POINTS; i++) {
+            queries[2 * i] = 12.85 + random.nextDouble() * 0.25;
+            queries[2 * i + 1] = 77.45 + random.nextDouble() * 0.30;
+        }
+        System.out.println(String.format(
+            "tile index: %d trips, %d cells, %d KiB on disk",
+            trips, index.getCellCount(), index.getFileSize() / 1024
+        ));
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException {
+        index.close();
+        file.delete();
+    }
+    
+    @Benchmark
+    public List<String> findNear() {
+        int i = next;
+        next = (next + 1) & (QUERY_POINTS - 1);
+        return index.findNear(queries[2 * i], queries[2 * i + 1], 500, 50);
+    }
+    
+    private static String path(double... latLng) {
+        TrackBuffer track = new TrackBuffer();
+        int[] all = new int[latLng.length / 2];
+        for (int i = 0; i < all.length; i++) {
+            track.append(latLng[2 * i], latLng[2 * i + 1], 0, 5, i * 1000L);
+            all[i] = i;
+        }
+        return TrackCodec.encode(track, all, all.length);
+    }
+}
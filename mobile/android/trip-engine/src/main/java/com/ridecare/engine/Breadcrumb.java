@@ -0,0 +1,45 @@
+package com.ridecare.engine;
+
+/**
+ * Breadcrumb.java
+ * 
+ * Immutable copy of the most recent points of a ride, oldest first.
+ * Published inside TripSnapshot so readers can draw the live trail
+ * without touching the full track.
+ */
+public final class Breadcrumb {
+    
+    public static final Breadcrumb EMPTY = new Breadcrumb(new double[0], new double[0], new float[0], new long[0]);
+    
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final float[] speeds; // m/s
+    private final long[] times;   // epoch millis
+    
+    Breadcrumb(double[] latitudes, double[] longitudes, float[] speeds, long[] times) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.speeds = speeds;
+        this.times = times;
+    }
+    
+    public int size() {
+        return times.length;
+    }
+    
+    public double getLatitude(int index) {
+        return latitudes[index];
+    }
+    
+    public double getLongitude(int index) {
+        return longitudes[index];
+    }
+    
+    public float getSpeed(int index) {
+        return speeds[index];
+    }
+    
+    public long getTime(int index) {
+        return times[index];
+    }
+}
@@ -0,0 +1,530 @@
+package com.ridecare.engine;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * ExportWriter.java
+ * 
+ * Streaming writer for user data exports (GDPR data portability) in CSV,
+ * JSON or GPX. Rows are written as they are read, through reusable row
+ * objects and a fixed scratch buffer, so memory stays constant however many
+ * trips are exported. GPX carries trips only (each path decoded point by
+ * point; a path that is not a valid polyline exports as a trip without
+ * points); maintenance sections are skipped in that format.
+ * 
+ * Call order: begin(), then any sections as beginTrips() / writeTrip()* /
+ * endTrips() and beginMaintenance() / writeMaintenance()* /
+ * endMaintenance(), then finish().
+ */
+public class ExportWriter implements Closeable {
+    
+    public enum Format {
+        CSV,
+        JSON,
+        GPX
+    }
+    
+    /** Marks a missing time in a row */
+    public static final long NO_TIME = Long.MIN_VALUE;
+    
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final DateTimeFormatter ISO_TIME =
+        DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+    
+    private static final String TRIP_HEADER =
+        "ID,Bike ID,Start Time,End Time,Distance (km),Duration (min),Avg Speed (km/h),Max Speed (km/h),Start Location,End Location";
+    private static final String MAINTENANCE_HEADER =
+        "ID,Bike ID,Type,Status,Date,Odometer (km),Due At (km),Cost,Notes,Receipt URLs";
+    
+    /**
+     * One trips row; filled in place by the reader for every row.
+     * Missing coordinates and speeds are NaN.
+     */
+    public static class TripRow {
+        public String id;
+        public String bikeId;
+        public long startTime;
+        public long endTime;
+        public double startLat;
+        public double startLng;
+        public double endLat;
+        public double endLng;
+        public double distanceKm;
+        public double avgSpeedKmh;
+        public double maxSpeedKmh;
+        public String path; // Encoded polyline, or null
+    }
+    
+    /**
+     * One maintenance_events row; missing numbers are NaN, missing times NO_TIME
+     */
+    public static class MaintenanceRow {
+        public String id;
+        public String bikeId;
+        public String type;
+        public boolean completed;
+        public long dateDue;
+        public long completedAt;
+        public double kmDueAt;
+        public double completedKm;
+        public double cost;
+        public String notes;
+        public String receiptUrls; // JSON array of URLs, or null
+    }
+    
+    private final Writer out;
+    private final Format format;
+    private final char[] scratch = new char[32];
+    private final TrackCodec.PointVisitor trackPoint = new TrackCodec.PointVisitor() {
+        @Override
+        public void onPoint(double latitude, double longitude) {
+            try {
+                out.write("<trkpt lat=\"");
+                writeFixed(latitude, 5);
+                out.write("\" lon=\"");
+                writeFixed(longitude, 5);
+                out.write("\"/>");
+            } catch (IOException e) {
+                throw new ExportException(e);
+            }
+        }
+    };
+    
+    // Checks a path before any of it is written
+    private static final TrackCodec.PointVisitor CHECK_POINT = new TrackCodec.PointVisitor() {
+        @Override
+        public void onPoint(double latitude, double longitude) {
+            if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+                throw new IllegalArgumentException("Not a polyline of coordinates");
+            }
+        }
+    };
+    
+    private int sections = 0;
+    private boolean firstRow;
+    private long rowCount = 0;
+    
+    public ExportWriter(Writer out, Format format) {
+        this.out = out;
+        this.format = format;
+    }
+    
+    /**
+     * Open a file for writing through a buffered channel writer
+     */
+    public static ExportWriter open(File file, Format format) throws IOException {
+        FileChannel channel = FileChannel.open(
+            file.toPath(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE
+        );
+        Writer writer = Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE);
+        return new ExportWriter(new BufferedWriter(writer, BUFFER_SIZE), format);
+    }
+    
+    public void begin(long exportedAt) throws IOException {
+        switch (format) {
+            case JSON:
+                out.write("{\"exportedAt\":");
+                writeJsonTime(exportedAt);
+                break;
+            case GPX:
+                out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+                out.write("<gpx version=\"1.1\" creator=\"RideCare\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n");
+                out.write("<metadata><time>");
+                writeTime(exportedAt);
+                out.write("</time></metadata>\n");
+                break;
+            default:
+                break;
+        }
+    }
+    
+    public void beginTrips() throws IOException {
+        beginSection("TRIPS", "trips", TRIP_HEADER);
+    }
+    
+    public void writeTrip(TripRow trip) throws IOException {
+        rowCount++;
+        switch (format) {
+            case CSV:
+                writeCsv(trip.id);
+                out.write(',');
+                writeCsv(trip.bikeId);
+                out.write(',');
+                writeTime(trip.startTime);
+                out.write(',');
+                writeTime(trip.endTime);
+                out.write(',');
+                writeFixed(trip.distanceKm, 2);
+                out.write(',');
+                writeFixed(Math.round((trip.endTime - trip.startTime) / 60000.0), 0);
+                out.write(',');
+                writeFixed(trip.avgSpeedKmh, 1);
+                out.write(',');
+                writeFixed(trip.maxSpeedKmh, 1);
+                out.write(',');
+                writeCsvLocation(trip.startLat, trip.startLng);
+                out.write(',');
+                writeCsvLocation(trip.endLat, trip.endLng);
+                out.write('\n');
+                break;
+            case JSON:
+                nextJsonRow();
+                writeJsonString("id", trip.id, true);
+                writeJsonString("bikeId", trip.bikeId, false);
+                writeJsonName("startTime");
+                writeJsonTime(trip.startTime);
+                writeJsonName("endTime");
+                writeJsonTime(trip.endTime);
+                writeJsonNumber("distanceKm", trip.distanceKm, 3);
+                writeJsonNumber("avgSpeedKmh", trip.avgSpeedKmh, 1);
+                writeJsonNumber("maxSpeedKmh", trip.maxSpeedKmh, 1);
+                writeJsonNumber("startLat", trip.startLat, 6);
+                writeJsonNumber("startLng", trip.startLng, 6);
+                writeJsonNumber("endLat", trip.endLat, 6);
+                writeJsonNumber("endLng", trip.endLng, 6);
+                writeJsonString("path", trip.path, false);
+                out.write('}');
+                break;
+            case GPX:
+                out.write("<trk><name>");
+                writeXml(trip.id);
+                out.write("</name><desc>");
+                writeTime(trip.startTime);
+                out.write(", ");
+                writeFixed(trip.distanceKm, 2);
+                out.write(" km</desc><type>");
+                writeXml(trip.bikeId);
+                out.write("</type><trkseg>");
+                if (trip.path != null && isPolyline(trip.path)) {
+                    try {
+                        TrackCodec.decode(trip.path, trackPoint);
+                    } catch (ExportException e) {
+                        throw e.getCause();
+                    }
+                }
+                out.write("</trkseg></trk>\n");
+                break;
+        }
+    }
+    
+    public void endTrips() throws IOException {
+        endSection();
+    }
+    
+    public void beginMaintenance() throws IOException {
+        beginSection("MAINTENANCE", "maintenance", MAINTENANCE_HEADER);
+    }
+    
+    public void writeMaintenance(MaintenanceRow record) throws IOException {
+        if (format == Format.GPX) return;
+        
+        rowCount++;
+        long date = record.completed ? record.completedAt : record.dateDue;
+        if (format == Format.CSV) {
+            writeCsv(record.id);
+            out.write(',');
+            writeCsv(record.bikeId);
+            out.write(',');
+            writeCsv(record.type);
+            out.write(',');
+            out.write(record.completed ? "completed" : "due");
+            out.write(',');
+            writeTime(date);
+            out.write(',');
+            writeFixed(record.completedKm, 1);
+            out.write(',');
+            writeFixed(record.kmDueAt, 1);
+            out.write(',');
+            writeFixed(record.cost, 2);
+            out.write(',');
+            writeCsv(record.notes);
+            out.write(',');
+            writeCsv(record.receiptUrls);
+            out.write('\n');
+        } else {
+            nextJsonRow();
+            writeJsonString("id", record.id, true);
+            writeJsonString("bikeId", record.bikeId, false);
+            writeJsonString("type", record.type, false);
+            out.write(",\"completed\":");
+            out.write(record.completed ? "true" : "false");
+            writeJsonName("dateDue");
+            writeJsonTime(record.dateDue);
+            writeJsonName("completedAt");
+            writeJsonTime(record.completedAt);
+            writeJsonNumber("kmDueAt", record.kmDueAt, 1);
+            writeJsonNumber("completedKm", record.completedKm, 1);
+            writeJsonNumber("cost", record.cost, 2);
+            writeJsonString("notes", record.notes, false);
+            writeJsonString("receiptUrls", record.receiptUrls, false);
+            out.write('}');
+        }
+    }
+    
+    public void endMaintenance() throws IOException {
+        endSection();
+    }
+    
+    /**
+     * Close the document and push everything to the file
+     */
+    public void finish() throws IOException {
+        switch (format) {
+            case JSON:
+                out.write("}\n");
+                break;
+            case GPX:
+                out.write("</gpx>\n");
+                break;
+            default:
+                break;
+        }
+        out.flush();
+    }
+    
+    /**
+     * Rows written so far, across sections
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+    
+    // MARK: - Helper Methods
+    
+    /**
+     * The path column may also hold compressed GeoJSON or a truncated
+     * polyline; check the whole path so a bad one does not fail halfway
+     * through a trkseg
+     */
+    private static boolean isPolyline(String path) {
+        try {
+            TrackCodec.decode(path, CHECK_POINT);
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+    
+    private void beginSection(String csvTitle, String jsonName, String csvHeader) throws IOException {
+        if (format == Format.CSV) {
+            if (sections > 0) {
+                out.write('\n');
+            }
+            out.write("# ");
+            out.write(csvTitle);
+            out.write('\n');
+            out.write(csvHeader);
+            out.write('\n');
+        } else if (format == Format.JSON) {
+            out.write(",\"");
+            out.write(jsonName);
+            out.write("\":[");
+        }
+        sections++;
+        firstRow = true;
+    }
+    
+    private void endSection() throws IOException {
+        if (format == Format.JSON) {
+            out.write(']');
+        }
+    }
+    
+    private void nextJsonRow() throws IOException {
+        if (!firstRow) {
+            out.write(',');
+        }
+        firstRow = false;
+        out.write('{');
+    }
+    
+    private void writeJsonName(String name) throws IOException {
+        out.write(",\"");
+        out.write(name);
+        out.write("\":");
+    }
+    
+    private void writeJsonString(String name, String value, boolean first) throws IOException {
+        if (!first) {
+            out.write(',');
+        }
+        out.write('"');
+        out.write(name);
+        out.write("\":");
+        if (value == null) {
+            out.write("null");
+            return;
+        }
+        
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.write('\\');
+                out.write(c);
+            } else if (c == '\n') {
+                out.write("\\n");
+            } else if (c == '\r') {
+                out.write("\\r");
+            } else if (c == '\t') {
+                out.write("\\t");
+            } else if (c < 0x20) {
+                out.write("\\u00");
+                out.write(Character.forDigit(c >> 4, 16));
+                out.write(Character.forDigit(c & 0xf, 16));
+            } else {
+                out.write(c);
+            }
+        }
+        out.write('"');
+    }
+    
+    private void writeJsonNumber(String name, double value, int decimals) throws IOException {
+        writeJsonName(name);
+        if (Double.isNaN(value)) {
+            out.write("null");
+        } else {
+            writeFixed(value, decimals);
+        }
+    }
+    
+    private void writeJsonTime(long time) throws IOException {
+        if (time == NO_TIME) {
+            out.write("null");
+            return;
+        }
+        out.write('"');
+        writeTime(time);
+        out.write('"');
+    }
+    
+    private void writeCsvLocation(double latitude, double longitude) throws IOException {
+        if (Double.isNaN(latitude) || Double.isNaN(longitude)) return;
+        
+        out.write('"');
+        writeFixed(latitude, 6);
+        out.write(',');
+        writeFixed(longitude, 6);
+        out.write('"');
+    }
+    
+    /**
+     * Quote a cell only when it contains a separator, quote or line break
+     */
+    private void writeCsv(String value) throws IOException {
+        if (value == null) return;
+        
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.write('"');
+            }
+            out.write(c);
+        }
+        out.write('"');
+    }
+    
+    private void writeXml(String value) throws IOException {
+        if (value == null) return;
+        
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '<': out.write("&lt;"); break;
+                case '>': out.write("&gt;"); break;
+                case '&': out.write("&amp;"); break;
+                case '"': out.write("&quot;"); break;
+                default: out.write(c);
+            }
+        }
+    }
+    
+    private void writeTime(long time) throws IOException {
+        if (time == NO_TIME) return;
+        ISO_TIME.formatTo(Instant.ofEpochMilli(time), out);
+    }
+    
+    /**
+     * Fixed-point decimal without String.format, through the scratch buffer;
+     * NaN writes nothing
+     */
+    private void writeFixed(double value, int decimals) throws IOException {
+        if (Double.isNaN(value)) return;
+        
+        long scale = 1;
+        for (int i = 0; i < decimals; i++) scale *= 10;
+        long scaled = Math.round(Math.abs(value) * scale);
+        
+        int end = scratch.length;
+        int position = end;
+        for (int i = 0; i < decimals; i++) {
+            scratch[--position] = (char) ('0' + scaled % 10);
+            scaled /= 10;
+        }
+        if (decimals > 0) {
+            scratch[--position] = '.';
+        }
+        do {
+            scratch[--position] = (char) ('0' + scaled % 10);
+            scaled /= 10;
+        } while (scaled > 0);
+        if (value < 0 && hasNonZeroDigit(position, end)) {
+            scratch[--position] = '-';
+        }
+        out.write(scratch, position, end - position);
+    }
+    
+    private boolean hasNonZeroDigit(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (scratch[i] > '0' && scratch[i] <= '9') return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Carries a write failure out of the polyline visitor
+     */
+    private static final class ExportException extends RuntimeException {
+        
+        private static final long serialVersionUID = 1L;
+        
+        ExportException(IOException cause) {
+            super(cause);
+        }
+        
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
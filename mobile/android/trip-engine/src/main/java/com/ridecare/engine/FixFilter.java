@@ -0,0 +1,212 @@
+package com.ridecare.engine;
+
+/**
+ * FixFilter.java
+ * 
+ * Streaming constant-velocity Kalman filter for mixed GPS and network fixes.
+ * Uses constant memory and no allocation per fix.
+ * 
+ * Each fix is first screened (stale or duplicate timestamps, unusable
+ * accuracy), then gated on its innovation against the prediction, and only
+ * then folded into the state. Reported accuracy is the measurement noise,
+ * so coarse network fixes pull the estimate far less than GPS fixes.
+ */
+public class FixFilter {
+    
+    public static final int ACCEPTED = 0;
+    public static final int REJECTED_STALE = 1;
+    public static final int REJECTED_ACCURACY = 2;
+    public static final int REJECTED_OUTLIER = 3;
+    
+    private static final float MAX_ACCURACY = 100f;        // meters
+    private static final float DEFAULT_ACCURACY = 50f;     // when a fix reports none
+    private static final double ACCELERATION_VARIANCE = 4; // (m/s^2)^2, brisk riding
+    private static final double GATE_CHI2 = 13.8;          // 2 DOF, 99.9%
+    private static final long RESET_GAP = 30000;           // re-initialize after 30 s without fixes
+    private static final int MAX_CONSECUTIVE_REJECTS = 5;  // the filter is lost, not the fixes
+    
+    // Local plane around the first fix (meters)
+    private double originLat;
+    private double originLng;
+    private double metersPerDegLat;
+    private double metersPerDegLng;
+    
+    // Per-axis state [position, velocity] and covariance [p00 p01; p01 p11]
+    private double x, vx, xp00, xp01, xp11;
+    private double y, vy, yp00, yp01, yp11;
+    
+    private boolean initialized = false;
+    private long lastTime = 0;
+    private int consecutiveRejects = 0;
+    
+    private double latitude;
+    private double longitude;
+    private float speed;
+    
+    private long acceptedCount = 0;
+    private long staleCount = 0;
+    private long accuracyCount = 0;
+    private long outlierCount = 0;
+    
+    /**
+     * Screen and filter one fix. On ACCEPTED the filtered position and speed
+     * are available from the getters until the next call.
+     */
+    public int filter(double lat, double lng, float reportedSpeed, float accuracy, long time, boolean hasSpeed) {
+        if (initialized && time <= lastTime) {
+            staleCount++;
+            return REJECTED_STALE;
+        }
+        
+        float sigma = accuracy > 0 ? accuracy : DEFAULT_ACCURACY;
+        if (sigma > MAX_ACCURACY) {
+            accuracyCount++;
+            return REJECTED_ACCURACY;
+        }
+        
+        if (!initialized || time - lastTime > RESET_GAP || consecutiveRejects >= MAX_CONSECUTIVE_REJECTS) {
+            initialize(lat, lng, sigma, time);
+            return accept(reportedSpeed, hasSpeed);
+        }
+        
+        double dt = (time - lastTime) / 1000.0;
+        double zx = (lng - originLng) * metersPerDegLng;
+        double zy = (lat - originLat) * metersPerDegLat;
+        double r = (double) sigma * sigma;
+        
+        // Predict
+        double q = ACCELERATION_VARIANCE;
+        double dt2 = dt * dt;
+        double q00 = q * dt2 * dt2 / 4;
+        double q01 = q * dt2 * dt / 2;
+        double q11 = q * dt2;
+        
+        double px = x + vx * dt;
+        double px00 = xp00 + 2 * dt * xp01 + dt2 * xp11 + q00;
+        double px01 = xp01 + dt * xp11 + q01;
+        double px11 = xp11 + q11;
+        
+        double py = y + vy * dt;
+        double py00 = yp00 + 2 * dt * yp01 + dt2 * yp11 + q00;
+        double py01 = yp01 + dt * yp11 + q01;
+        double py11 = yp11 + q11;
+        
+        // Gate on the normalized innovation
+        double ix = zx - px;
+        double iy = zy - py;
+        double sx = px00 + r;
+        double sy = py00 + r;
+        if (ix * ix / sx + iy * iy / sy > GATE_CHI2) {
+            consecutiveRejects++;
+            outlierCount++;
+            return REJECTED_OUTLIER;
+        }
+        
+        // Update
+        double kx0 = px00 / sx;
+        double kx1 = px01 / sx;
+        x = px + kx0 * ix;
+        vx = vx + kx1 * ix;
+        xp00 = (1 - kx0) * px00;
+        xp01 = (1 - kx0) * px01;
+        xp11 = px11 - kx1 * px01;
+        
+        double ky0 = py00 / sy;
+        double ky1 = py01 / sy;
+        y = py + ky0 * iy;
+        vy = vy + ky1 * iy;
+        yp00 = (1 - ky0) * py00;
+        yp01 = (1 - ky0) * py01;
+        yp11 = py11 - ky1 * py01;
+        
+        lastTime = time;
+        consecutiveRejects = 0;
+        latitude = originLat + y / metersPerDegLat;
+        longitude = originLng + x / metersPerDegLng;
+        return accept(reportedSpeed, hasSpeed);
+    }
+    
+    /**
+     * Forget the state and counters, e.g. for a new ride
+     */
+    public void reset() {
+        initialized = false;
+        lastTime = 0;
+        consecutiveRejects = 0;
+        acceptedCount = 0;
+        staleCount = 0;
+        accuracyCount = 0;
+        outlierCount = 0;
+    }
+    
+    public double getLatitude() {
+        return latitude;
+    }
+    
+    public double getLongitude() {
+        return longitude;
+    }
+    
+    /**
+     * Reported speed for fixes that carry one, filtered speed otherwise (m/s)
+     */
+    public float getSpeed() {
+        return speed;
+    }
+    
+    public long getAcceptedCount() {
+        return acceptedCount;
+    }
+    
+    public long getRejectedCount() {
+        return staleCount + accuracyCount + outlierCount;
+    }
+    
+    public long getStaleCount() {
+        return staleCount;
+    }
+    
+    public long getAccuracyRejectedCount() {
+        return accuracyCount;
+    }
+    
+    public long getOutlierCount() {
+        return outlierCount;
+    }
+    
+    // MARK: - Helper Methods
+    
+    private void initialize(double lat, double lng, float sigma, long time) {
+        if (!initialized) {
+            originLat = lat;
+            originLng = lng;
+            metersPerDegLat = Math.toRadians(GeoMath.EARTH_RADIUS_METERS);
+            metersPerDegLng = metersPerDegLat * Math.cos(Math.toRadians(lat));
+        }
+        
+        double r = (double) sigma * sigma;
+        double velocityVariance = 100; // (10 m/s)^2, speed unknown
+        x = (lng - originLng) * metersPerDegLng;
+        y = (lat - originLat) * metersPerDegLat;
+        vx = 0;
+        vy = 0;
+        xp00 = r;
+        yp00 = r;
+        xp01 = 0;
+        yp01 = 0;
+        xp11 = velocityVariance;
+        yp11 = velocityVariance;
+        
+        initialized = true;
+        lastTime = time;
+        consecutiveRejects = 0;
+        latitude = lat;
+        longitude = lng;
+    }
+    
+    private int accept(float reportedSpeed, boolean hasSpeed) {
+        speed = hasSpeed ? reportedSpeed : (float) Math.sqrt(vx * vx + vy * vy);
+        acceptedCount++;
+        return ACCEPTED;
+    }
+}
@@ -0,0 +1,114 @@
+package com.ridecare.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * FixRingBuffer.java
+ * 
+ * Bounded single-producer/single-consumer queue of location fixes.
+ * Fields are stored in preallocated primitive arrays, so handing a fix
+ * from the location looper to the processing thread allocates nothing.
+ */
+public class FixRingBuffer {
+    
+    public static final byte PROVIDER_GPS = 0;
+    public static final byte PROVIDER_NETWORK = 1;
+    public static final byte PROVIDER_OTHER = 2;
+    
+    /**
+     * Receives drained fixes on the consumer thread
+     */
+    public interface Consumer {
+        void onFix(double latitude, double longitude, float speed, float accuracy, long time, byte provider);
+    }
+    
+    private final int mask;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final float[] speeds;
+    private final float[] accuracies;
+    private final long[] times;
+    private final byte[] providers;
+    
+    // head is only written by the consumer, tail only by the producer
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    
+    public FixRingBuffer(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two, was " + capacity);
+        }
+        mask = capacity - 1;
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        speeds = new float[capacity];
+        accuracies = new float[capacity];
+        times = new long[capacity];
+        providers = new byte[capacity];
+    }
+    
+    /**
+     * Producer side. Returns false (and counts a drop) when the buffer is full.
+     */
+    public boolean offer(double latitude, double longitude, float speed, float accuracy, long time, byte provider) {
+        long t = tail.get();
+        if (t - head.get() > mask) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        
+        int slot = (int) (t & mask);
+        latitudes[slot] = latitude;
+        longitudes[slot] = longitude;
+        speeds[slot] = speed;
+        accuracies[slot] = accuracy;
+        times[slot] = time;
+        providers[slot] = provider;
+        tail.lazySet(t + 1); // publish the slot
+        return true;
+    }
+    
+    /**
+     * Consumer side. Hands up to maxFixes fixes to the consumer, oldest first,
+     * and returns how many were drained.
+     */
+    public int drain(Consumer consumer, int maxFixes) {
+        long h = head.get();
+        long available = tail.get() - h;
+        int count = (int) Math.min(available, maxFixes);
+        
+        for (int i = 0; i < count; i++) {
+            int slot = (int) ((h + i) & mask);
+            consumer.onFix(
+                latitudes[slot],
+                longitudes[slot],
+                speeds[slot],
+                accuracies[slot],
+                times[slot],
+                providers[slot]
+            );
+        }
+        head.lazySet(h + count); // release the slots
+        return count;
+    }
+    
+    public boolean isEmpty() {
+        return tail.get() == head.get();
+    }
+    
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+    
+    public int capacity() {
+        return mask + 1;
+    }
+    
+    /**
+     * Fixes rejected because the consumer fell behind
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+}
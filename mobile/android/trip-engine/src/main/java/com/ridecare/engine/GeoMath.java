@@ -0,0 +1,26 @@
+package com.ridecare.engine;
+
+/**
+ * GeoMath.java
+ * 
+ * Allocation-free geodesy helpers shared by the tracking code
+ */
+public final class GeoMath {
+    
+    public static final double EARTH_RADIUS_METERS = 6371008.8;
+    
+    private GeoMath() {}
+    
+    /**
+     * Great-circle distance between two points in meters (Haversine formula)
+     */
+    public static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double sinLat = Math.sin(dLat / 2);
+        double sinLng = Math.sin(dLng / 2);
+        double a = sinLat * sinLat +
+            Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * sinLng * sinLng;
+        return 2 * EARTH_RADIUS_METERS * Math.asin(Math.min(1.0, Math.sqrt(a)));
+    }
+}
@@ -0,0 +1,107 @@
+package com.ridecare.engine;
+
+/**
+ * GpsScheduler.java
+ * 
+ * Picks the GPS update interval from speed bands with hysteresis and a
+ * minimum dwell time, so the provider is only re-registered on a real band
+ * change instead of on every fix.
+ * 
+ * Bands match the JS LocationService: >20 km/h 1 s, 10-20 km/h 5 s,
+ * <10 km/h 30 s. Speeding up switches immediately to keep fix continuity;
+ * slowing down must clear the band edge by HYSTERESIS_KMH and the current
+ * band must have been held for MIN_DWELL.
+ */
+public class GpsScheduler {
+    
+    public enum Band {
+        LOW(30000),    // < 10 km/h
+        MEDIUM(5000),  // 10-20 km/h
+        HIGH(1000);    // > 20 km/h
+        
+        public final long intervalMillis;
+        
+        Band(long intervalMillis) {
+            this.intervalMillis = intervalMillis;
+        }
+    }
+    
+    private static final float MEDIUM_SPEED_KMH = 10f;
+    private static final float HIGH_SPEED_KMH = 20f;
+    private static final float HYSTERESIS_KMH = 3f;
+    private static final long MIN_DWELL = 20000; // 20 seconds
+    
+    private volatile Band band = Band.HIGH;
+    private long bandSince = 0;
+    private volatile int upshiftCount = 0;
+    private volatile int downshiftCount = 0;
+    
+    /**
+     * Start a new ride at the highest rate
+     */
+    public void reset(long now) {
+        band = Band.HIGH;
+        bandSince = now;
+        upshiftCount = 0;
+        downshiftCount = 0;
+    }
+    
+    /**
+     * Feed the speed of a GPS fix (m/s) at a monotonic time in millis.
+     * Returns true when the band changed and the provider must be re-registered.
+     */
+    public boolean update(float speed, long now) {
+        Band target = targetBand(speed * 3.6f);
+        if (target == band) {
+            return false;
+        }
+        
+        if (target.ordinal() > band.ordinal()) {
+            upshiftCount++;
+        } else if (now - bandSince >= MIN_DWELL) {
+            downshiftCount++;
+        } else {
+            return false;
+        }
+        
+        band = target;
+        bandSince = now;
+        return true;
+    }
+    
+    public Band getBand() {
+        return band;
+    }
+    
+    public long getIntervalMillis() {
+        return band.intervalMillis;
+    }
+    
+    public int getSwitchCount() {
+        return upshiftCount + downshiftCount;
+    }
+    
+    public int getUpshiftCount() {
+        return upshiftCount;
+    }
+    
+    public int getDownshiftCount() {
+        return downshiftCount;
+    }
+    
+    // MARK: - Helper Methods
+    
+    private Band targetBand(float kmh) {
+        switch (band) {
+            case HIGH:
+                if (kmh > HIGH_SPEED_KMH - HYSTERESIS_KMH) return Band.HIGH;
+                return kmh > MEDIUM_SPEED_KMH - HYSTERESIS_KMH ? Band.MEDIUM : Band.LOW;
+            case MEDIUM:
+                if (kmh > HIGH_SPEED_KMH) return Band.HIGH;
+                return kmh > MEDIUM_SPEED_KMH - HYSTERESIS_KMH ? Band.MEDIUM : Band.LOW;
+            default:
+                if (kmh > HIGH_SPEED_KMH) return Band.HIGH;
+                return kmh > MEDIUM_SPEED_KMH ? Band.MEDIUM : Band.LOW;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.ridecare.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * HttpSyncEndpoint.java
+ * 
+ * SyncOutbox endpoint that POSTs each batch as gzip-compressed JSON to the
+ * batch sync API (POST /api/sync in api/openapi.yaml) with the user's
+ * Firebase ID token. Compression matters on reconnect bursts: batches of
+ * similar rows shrink several times, so the radio is up for less time.
+ */
+public class HttpSyncEndpoint implements SyncOutbox.Endpoint {
+    
+    private static final int CONNECT_TIMEOUT = 15000; // 15 seconds
+    private static final int READ_TIMEOUT = 30000;    // 30 seconds
+    
+    private final URL url;
+    private volatile String token;
+    
+    public HttpSyncEndpoint(URL url) {
+        this.url = url;
+    }
+    
+    public URL getUrl() {
+        return url;
+    }
+    
+    /**
+     * Bearer token for the next uploads; JS refreshes it when it expires
+     */
+    public void setToken(String token) {
+        this.token = token;
+    }
+    
+    @Override
+    public int upload(byte[] payload) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT);
+        connection.setReadTimeout(READ_TIMEOUT);
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json; charset=utf-8");
+        connection.setRequestProperty("Content-Encoding", "gzip");
+        String current = token;
+        if (current != null) {
+            connection.setRequestProperty("Authorization", "Bearer " + current);
+        }
+        
+        try (OutputStream out = new GZIPOutputStream(connection.getOutputStream())) {
+            out.write(payload);
+        }
+        
+        int status = connection.getResponseCode();
+        drain(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+        return status;
+    }
+    
+    // MARK: - Helper Methods
+    
+    /**
+     * Read the body to the end so the connection can be reused
+     */
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) return;
+        
+        try (InputStream body = in) {
+            byte[] buffer = new byte[4096];
+            while (body.read(buffer) >= 0) {
+                // Discard
+            }
+        }
+    }
+}
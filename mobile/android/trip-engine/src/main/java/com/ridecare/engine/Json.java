@@ -0,0 +1,41 @@
+package com.ridecare.engine;
+
+/**
+ * Json.java
+ * 
+ * Minimal JSON text helpers for payloads built by hand
+ */
+public final class Json {
+    
+    private Json() {}
+    
+    /**
+     * Append value as a quoted JSON string, or null
+     */
+    public static StringBuilder appendQuoted(StringBuilder out, CharSequence value) {
+        if (value == null) {
+            return out.append("null");
+        }
+        
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        out.append("\\u00")
+                            .append(Character.forDigit(c >> 4, 16))
+                            .append(Character.forDigit(c & 0xf, 16));
+                    } else {
+                        out.append(c);
+                    }
+            }
+        }
+        return out.append('"');
+    }
+}
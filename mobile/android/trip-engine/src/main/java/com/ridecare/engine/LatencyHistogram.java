@@ -0,0 +1,111 @@
+package com.ridecare.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram.java
+ * 
+ * Fixed-size log-linear histogram in the style of HdrHistogram: values below
+ * SUB_BUCKETS are counted exactly, above that every power of two is split
+ * into SUB_BUCKETS linear slots, so any recorded value is reported within
+ * about 3%. Recording is one array increment and never allocates or locks;
+ * readers may see a record half-applied, which is fine for monitoring.
+ */
+public class LatencyHistogram {
+    
+    private static final int PRECISION_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << PRECISION_BITS;
+    
+    private final long highestTrackable;
+    private final AtomicLongArray counts;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    
+    /**
+     * Values above highestTrackable are clamped to it
+     */
+    public LatencyHistogram(long highestTrackable) {
+        if (highestTrackable < SUB_BUCKETS) {
+            throw new IllegalArgumentException("Highest trackable value must be at least " + SUB_BUCKETS);
+        }
+        this.highestTrackable = highestTrackable;
+        this.counts = new AtomicLongArray(index(highestTrackable) + 1);
+    }
+    
+    /**
+     * Record one value; negative values count as zero
+     */
+    public void record(long value) {
+        value = Math.max(0, Math.min(value, highestTrackable));
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        
+        long currentMax;
+        while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+            // Lost a race with another recorder; retry against its maximum
+        }
+    }
+    
+    public long getCount() {
+        return count.get();
+    }
+    
+    public long getMax() {
+        return max.get();
+    }
+    
+    public double getMean() {
+        long n = count.get();
+        return n > 0 ? (double) sum.get() / n : 0;
+    }
+    
+    /**
+     * Highest value equivalent to the given percentile (0-100), or 0 when empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = count.get();
+        if (total == 0) return 0;
+        
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(highestEquivalent(i), max.get());
+            }
+        }
+        return max.get();
+    }
+    
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+    
+    // MARK: - Helper Methods
+    
+    static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - PRECISION_BITS;
+        int sub = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+    }
+    
+    static long highestEquivalent(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+}
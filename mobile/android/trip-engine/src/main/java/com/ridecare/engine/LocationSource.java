@@ -0,0 +1,30 @@
+package com.ridecare.engine;
+
+/**
+ * LocationSource.java
+ * 
+ * Where fixes come from: the platform LocationManager on a device, or a
+ * recorded trace replayed on a plain JVM (ReplayLocationSource). Mirrors the
+ * LocationManager calls the trip service makes, using FixRingBuffer
+ * provider codes.
+ */
+public interface LocationSource {
+    
+    interface Sink {
+        /**
+         * Called on the source's delivery thread; must return quickly
+         */
+        void onLocation(double latitude, double longitude, float speed, float accuracy, long time, byte provider);
+    }
+    
+    /**
+     * Deliver fixes of a provider about every intervalMillis. Requesting the
+     * same provider again replaces its interval.
+     */
+    void requestUpdates(byte provider, long intervalMillis, Sink sink) throws SecurityException;
+    
+    /**
+     * Stop delivering fixes of every provider
+     */
+    void removeUpdates();
+}
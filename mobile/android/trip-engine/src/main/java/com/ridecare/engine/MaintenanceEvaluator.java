@@ -0,0 +1,368 @@
+package com.ridecare.engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MaintenanceEvaluator.java
+ * 
+ * Native counterpart of MaintenanceEngine.ts. Rules are compiled into flat
+ * condition arrays and the last completion of every (bike, rule) pair is
+ * kept in an index, so "what is due" for a bike costs O(rules) regardless
+ * of how long the maintenance history is. Statuses, thresholds and
+ * priority boosts follow MaintenanceEngine.ts. Conditions chain left to
+ * right: each condition's logic joins it to the next one (OR when unset,
+ * matching the maintenance_rules.logic default).
+ * 
+ * Thread-safe: JS reads results while the trip processor advances odometers.
+ */
+public class MaintenanceEvaluator {
+    
+    public static final int CONDITION_ODOMETER = 0;
+    public static final int CONDITION_TIME = 1;
+    
+    public static final int OPERATOR_GTE = 0;
+    public static final int OPERATOR_LTE = 1;
+    public static final int OPERATOR_EQ = 2;
+    
+    public static final int LOGIC_NONE = 0;
+    public static final int LOGIC_OR = 1;
+    public static final int LOGIC_AND = 2;
+    
+    public static final int STATUS_UPCOMING = 1;
+    public static final int STATUS_DUE = 2;
+    public static final int STATUS_OVERDUE = 3;
+    
+    private static final double UPCOMING_KM = 500;
+    private static final long UPCOMING_DAYS = 7;
+    private static final double OVERDUE_KM = 500;
+    private static final long OVERDUE_DAYS = 7;
+    private static final double URGENT_KM = 100;
+    private static final long URGENT_DAYS = 2;
+    private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    
+    // Compiled rules: conditions of rule r are [conditionStart[r], conditionStart[r + 1])
+    private final List<String> ruleIds = new ArrayList<>();
+    private final Map<String, Integer> ruleIndex = new HashMap<>();
+    private int[] rulePriority = new int[8];
+    private int[] conditionStart = new int[8 + 1];
+    private int[] conditionType = new int[16];
+    private int[] conditionOperator = new int[16];
+    private double[] conditionValue = new double[16];
+    private int[] conditionLogic = new int[16];
+    private int conditionCount = 0;
+    
+    // Per-bike state; completion index is [bike * ruleCapacity + rule]
+    private final Map<String, Integer> bikeIndex = new HashMap<>();
+    private double[] odometer = new double[4];
+    private int ruleCapacity = 8;
+    private double[] lastOdometer = new double[4 * 8];
+    private long[] lastCompletedAt = new long[4 * 8]; // epoch millis, 0 = never
+    
+    /**
+     * Due items of one bike, most urgent first. Reused between calls.
+     */
+    public static final class Result {
+        public int count;
+        public int[] rule = new int[0];
+        public int[] status = new int[0];
+        public int[] priority = new int[0];
+        public double[] kmUntilDue = new double[0];   // NaN if the rule has no odometer condition
+        public double[] daysUntilDue = new double[0]; // NaN if the rule has no time condition
+        public long[] lastCompletedAt = new long[0];  // 0 if never completed
+        public double[] lastOdometer = new double[0];
+        
+        void ensureCapacity(int capacity) {
+            if (rule.length >= capacity) return;
+            rule = new int[capacity];
+            status = new int[capacity];
+            priority = new int[capacity];
+            kmUntilDue = new double[capacity];
+            daysUntilDue = new double[capacity];
+            lastCompletedAt = new long[capacity];
+            lastOdometer = new double[capacity];
+        }
+    }
+    
+    // MARK: - Rules
+    
+    /**
+     * Start a new rule; its conditions follow through addCondition().
+     * Returns the rule index.
+     */
+    public synchronized int addRule(String ruleId, int priority) {
+        if (ruleIndex.containsKey(ruleId)) {
+            throw new IllegalArgumentException("Duplicate maintenance rule " + ruleId);
+        }
+        
+        int rule = ruleIds.size();
+        if (rule == ruleCapacity) {
+            growRuleCapacity();
+        }
+        if (rule == rulePriority.length) {
+            rulePriority = Arrays.copyOf(rulePriority, rule * 2);
+            conditionStart = Arrays.copyOf(conditionStart, rule * 2 + 1);
+        }
+        
+        ruleIds.add(ruleId);
+        ruleIndex.put(ruleId, rule);
+        rulePriority[rule] = priority;
+        conditionStart[rule] = conditionCount;
+        conditionStart[rule + 1] = conditionCount;
+        return rule;
+    }
+    
+    /**
+     * Append a condition to the most recently added rule
+     */
+    public synchronized void addCondition(int type, int operator, double value, int logic) {
+        if (ruleIds.isEmpty()) {
+            throw new IllegalStateException("addRule() must be called before addCondition()");
+        }
+        
+        if (conditionCount == conditionType.length) {
+            int capacity = conditionCount * 2;
+            conditionType = Arrays.copyOf(conditionType, capacity);
+            conditionOperator = Arrays.copyOf(conditionOperator, capacity);
+            conditionValue = Arrays.copyOf(conditionValue, capacity);
+            conditionLogic = Arrays.copyOf(conditionLogic, capacity);
+        }
+        conditionType[conditionCount] = type;
+        conditionOperator[conditionCount] = operator;
+        conditionValue[conditionCount] = value;
+        conditionLogic[conditionCount] = logic;
+        conditionCount++;
+        conditionStart[ruleIds.size()] = conditionCount;
+    }
+    
+    /**
+     * Drop all rules and their completion history
+     */
+    public synchronized void clearRules() {
+        ruleIds.clear();
+        ruleIndex.clear();
+        conditionCount = 0;
+        conditionStart[0] = 0;
+        Arrays.fill(lastOdometer, 0);
+        Arrays.fill(lastCompletedAt, 0);
+    }
+    
+    public synchronized int getRuleCount() {
+        return ruleIds.size();
+    }
+    
+    public synchronized String getRuleId(int rule) {
+        return ruleIds.get(rule);
+    }
+    
+    // MARK: - Bikes
+    
+    public synchronized void setOdometer(String bikeId, double odometerKm) {
+        int bike = bike(bikeId); // May grow odometer, so index after the call
+        odometer[bike] = odometerKm;
+    }
+    
+    /**
+     * Advance a bike's odometer by a ridden distance
+     */
+    public synchronized void addDistance(String bikeId, double km) {
+        int bike = bike(bikeId);
+        odometer[bike] += km;
+    }
+    
+    public synchronized double getOdometer(String bikeId) {
+        Integer index = bikeIndex.get(bikeId);
+        return index != null ? odometer[index] : 0;
+    }
+    
+    /**
+     * Record a completed maintenance event. Only the latest completion per
+     * (bike, rule) is kept, so events may arrive in any order.
+     */
+    public synchronized void recordCompletion(String bikeId, String ruleId, double odometerKm, long completedAt) {
+        Integer rule = ruleIndex.get(ruleId);
+        if (rule == null) return; // Events of removed rules no longer matter
+        
+        int slot = bike(bikeId) * ruleCapacity + rule;
+        if (completedAt >= lastCompletedAt[slot]) {
+            lastCompletedAt[slot] = completedAt;
+            lastOdometer[slot] = odometerKm;
+        }
+    }
+    
+    // MARK: - Evaluation
+    
+    /**
+     * Evaluate every rule for one bike. Returns the number of due or
+     * upcoming items written to out.
+     */
+    public synchronized int evaluate(String bikeId, long now, Result out) {
+        int rules = ruleIds.size();
+        out.ensureCapacity(rules);
+        out.count = 0;
+        
+        Integer index = bikeIndex.get(bikeId);
+        double current = index != null ? odometer[index] : 0;
+        int base = index != null ? index * ruleCapacity : -1;
+        
+        for (int r = 0; r < rules; r++) {
+            double baseOdometer = base >= 0 ? lastOdometer[base + r] : 0;
+            long baseDate = base >= 0 ? lastCompletedAt[base + r] : 0;
+            evaluateRule(r, current, baseOdometer, baseDate, now, out);
+        }
+        
+        sortByUrgency(out);
+        return out.count;
+    }
+    
+    // MARK: - Helper Methods
+    
+    private void evaluateRule(int r, double current, double baseOdometer, long baseDate, long now, Result out) {
+        boolean isDue = false;
+        boolean isUpcoming = false;
+        double kmUntilDue = Double.NaN;
+        double daysUntilDue = Double.NaN;
+        
+        int logic = LOGIC_NONE; // How the previous condition joins this one
+        int end = conditionStart[r + 1];
+        for (int c = conditionStart[r]; c < end; c++) {
+            boolean conditionMet;
+            if (conditionType[c] == CONDITION_ODOMETER) {
+                double since = current - baseOdometer;
+                kmUntilDue = conditionValue[c] - since;
+                conditionMet = compare(since, conditionOperator[c], conditionValue[c]);
+                if (!conditionMet && kmUntilDue <= UPCOMING_KM) {
+                    isUpcoming = true;
+                }
+            } else {
+                long since = (now - baseDate) / DAY_MILLIS; // Whole days, like date-fns differenceInDays
+                daysUntilDue = conditionValue[c] - since;
+                conditionMet = compare(since, conditionOperator[c], conditionValue[c]);
+                if (!conditionMet && daysUntilDue <= UPCOMING_DAYS) {
+                    isUpcoming = true;
+                }
+            }
+            
+            if (c == conditionStart[r]) {
+                isDue = conditionMet;
+            } else if (logic == LOGIC_AND) {
+                isDue = isDue && conditionMet;
+            } else {
+                isDue = isDue || conditionMet;
+            }
+            logic = conditionLogic[c];
+        }
+        
+        int status;
+        if (isDue) {
+            boolean isOverdue = kmUntilDue < -OVERDUE_KM || daysUntilDue < -OVERDUE_DAYS; // NaN compares false
+            status = isOverdue ? STATUS_OVERDUE : STATUS_DUE;
+        } else if (isUpcoming) {
+            status = STATUS_UPCOMING;
+        } else {
+            return; // Not due or upcoming
+        }
+        
+        int priority = rulePriority[r];
+        if (status == STATUS_OVERDUE) priority = Math.min(100, priority + 20);
+        if (kmUntilDue <= URGENT_KM) priority = Math.min(100, priority + 10);
+        if (daysUntilDue <= URGENT_DAYS) priority = Math.min(100, priority + 10);
+        
+        int i = out.count++;
+        out.rule[i] = r;
+        out.status[i] = status;
+        out.priority[i] = priority;
+        out.kmUntilDue[i] = kmUntilDue;
+        out.daysUntilDue[i] = daysUntilDue;
+        out.lastCompletedAt[i] = baseDate;
+        out.lastOdometer[i] = baseOdometer;
+    }
+    
+    private static boolean compare(double actual, int operator, double expected) {
+        switch (operator) {
+            case OPERATOR_GTE:
+                return actual >= expected;
+            case OPERATOR_LTE:
+                return actual <= expected;
+            case OPERATOR_EQ:
+                return actual == expected;
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * Overdue first, then by priority; stable like Array.prototype.sort.
+     * Insertion sort: a bike has a handful of rules.
+     */
+    private static void sortByUrgency(Result out) {
+        for (int i = 1; i < out.count; i++) {
+            int j = i;
+            while (j > 0 && moreUrgent(out, j, j - 1)) {
+                swap(out, j, j - 1);
+                j--;
+            }
+        }
+    }
+    
+    private static boolean moreUrgent(Result out, int a, int b) {
+        boolean overdueA = out.status[a] == STATUS_OVERDUE;
+        boolean overdueB = out.status[b] == STATUS_OVERDUE;
+        if (overdueA != overdueB) return overdueA;
+        return out.priority[a] > out.priority[b];
+    }
+    
+    private static void swap(Result out, int a, int b) {
+        swap(out.rule, a, b);
+        swap(out.status, a, b);
+        swap(out.priority, a, b);
+        swap(out.kmUntilDue, a, b);
+        swap(out.daysUntilDue, a, b);
+        swap(out.lastOdometer, a, b);
+        long completedAt = out.lastCompletedAt[a];
+        out.lastCompletedAt[a] = out.lastCompletedAt[b];
+        out.lastCompletedAt[b] = completedAt;
+    }
+    
+    private static void swap(int[] values, int a, int b) {
+        int value = values[a];
+        values[a] = values[b];
+        values[b] = value;
+    }
+    
+    private static void swap(double[] values, int a, int b) {
+        double value = values[a];
+        values[a] = values[b];
+        values[b] = value;
+    }
+    
+    private int bike(String bikeId) {
+        Integer index = bikeIndex.get(bikeId);
+        if (index != null) return index;
+        
+        int bike = bikeIndex.size();
+        if (bike == odometer.length) {
+            odometer = Arrays.copyOf(odometer, bike * 2);
+            lastOdometer = Arrays.copyOf(lastOdometer, bike * 2 * ruleCapacity);
+            lastCompletedAt = Arrays.copyOf(lastCompletedAt, bike * 2 * ruleCapacity);
+        }
+        bikeIndex.put(bikeId, bike);
+        return bike;
+    }
+    
+    private void growRuleCapacity() {
+        int capacity = ruleCapacity * 2;
+        double[] odometers = new double[odometer.length * capacity];
+        long[] completions = new long[odometer.length * capacity];
+        for (int b = 0; b < bikeIndex.size(); b++) {
+            System.arraycopy(lastOdometer, b * ruleCapacity, odometers, b * capacity, ruleCapacity);
+            System.arraycopy(lastCompletedAt, b * ruleCapacity, completions, b * capacity, ruleCapacity);
+        }
+        lastOdometer = odometers;
+        lastCompletedAt = completions;
+        ruleCapacity = capacity;
+    }
+}
@@ -0,0 +1,315 @@
+package com.ridecare.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MotionDetector.java
+ * 
+ * Auto-start state machine. GPS stays off while IDLE; only cheap motion
+ * sources run. A motion hint moves to SUSPECT, a sustained hint to
+ * CONFIRMING (GPS on), and sustained riding speed to TRACKING, where the
+ * trip engine takes over and the motion sources are stopped.
+ * 
+ *   IDLE -> SUSPECT -> CONFIRMING -> TRACKING -> (trip ends) -> IDLE
+ *             |            |
+ *             +-> IDLE     +-> IDLE (timeout: counted as a false start)
+ * 
+ * Not thread-safe; owned by the trip processing thread. Time is the
+ * caller's monotonic clock.
+ */
+public class MotionDetector {
+    
+    public enum State {
+        IDLE,
+        SUSPECT,
+        CONFIRMING,
+        TRACKING
+    }
+    
+    /**
+     * Side effects the platform adapter carries out
+     */
+    public interface Listener {
+        /** Turn the GPS on (CONFIRMING) or off (back to IDLE) */
+        void onGpsRequested(boolean enabled);
+        
+        /** Riding confirmed; the adapter should start a trip */
+        void onRideConfirmed();
+        
+        /** SUSPECT and CONFIRMING need tick() calls to expire */
+        void onStateChanged(State state);
+    }
+    
+    /**
+     * Point-in-time copy of the detector metrics for other threads
+     */
+    public static final class Stats {
+        public final State state;
+        public final int confirmedCount;
+        public final int falseStartCount;
+        public final double falseStartRate;
+        public final long averageDecisionLatency; // millis
+        public final long maxDecisionLatency;     // millis
+        public final long gpsOnTime;              // millis
+        
+        Stats(MotionDetector detector) {
+            this.state = detector.state;
+            this.confirmedCount = detector.confirmedCount;
+            this.falseStartCount = detector.falseStartCount;
+            this.falseStartRate = detector.getFalseStartRate();
+            this.averageDecisionLatency = detector.getAverageDecisionLatency();
+            this.maxDecisionLatency = detector.maxDecisionLatency;
+            this.gpsOnTime = detector.totalGpsOnTime;
+        }
+    }
+    
+    // Configuration
+    public static final float MOTION_CONFIDENCE = 0.6f;  // Hint strong enough to suspect riding
+    public static final float STILL_CONFIDENCE = 0.2f;   // Hint that the phone is at rest
+    public static final long SUSPECT_DWELL = 10000;      // 10 seconds of motion before GPS
+    public static final long SIGNAL_TIMEOUT = 60000;     // Give up a suspicion without fresh hints
+    public static final float RIDING_SPEED = 10f / 3.6f; // 10 km/h in m/s
+    public static final long CONFIRM_DURATION = 30000;   // 30 seconds above riding speed
+    public static final long CONFIRM_TIMEOUT = 120000;   // 2 minutes of GPS before giving up
+    
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+    
+    private final Listener listener;
+    private final List<MotionSource> sources = new ArrayList<>();
+    private final MotionSource.Sink sink = new MotionSource.Sink() {
+        @Override
+        public void onMotion(float confidence, long now) {
+            onMotionSignal(confidence, now);
+        }
+    };
+    
+    private boolean enabled = false;
+    private State state = State.IDLE;
+    private long suspectSince = NOT_STARTED;
+    private long lastMotionTime = NOT_STARTED;
+    private long confirmingSince = NOT_STARTED;
+    private long ridingSince = NOT_STARTED;
+    
+    // Metrics
+    private int confirmedCount = 0;
+    private int falseStartCount = 0;
+    private long totalDecisionLatency = 0;
+    private long maxDecisionLatency = 0;
+    private long totalGpsOnTime = 0;
+    
+    public MotionDetector(Listener listener) {
+        this.listener = listener;
+    }
+    
+    public void addSource(MotionSource source) {
+        sources.add(source);
+        if (enabled && state != State.TRACKING) {
+            source.start(sink);
+        }
+    }
+    
+    /**
+     * Start or stop auto-start detection
+     */
+    public void setEnabled(boolean enable, long now) {
+        if (enable == enabled) return;
+        
+        enabled = enable;
+        if (state == State.TRACKING) return; // Sources restart when the trip ends
+        
+        if (enable) {
+            startSources();
+        } else {
+            stopSources();
+            toIdle(now);
+        }
+    }
+    
+    public void onMotionSignal(float confidence, long now) {
+        if (!enabled) return;
+        
+        switch (state) {
+            case IDLE:
+                if (confidence >= MOTION_CONFIDENCE) {
+                    suspectSince = now;
+                    lastMotionTime = now;
+                    setState(State.SUSPECT);
+                }
+                break;
+            case SUSPECT:
+                if (confidence <= STILL_CONFIDENCE) {
+                    toIdle(now); // Picked up and put down again, no GPS spent
+                } else if (confidence >= MOTION_CONFIDENCE) {
+                    lastMotionTime = now;
+                    if (now - suspectSince >= SUSPECT_DWELL) {
+                        confirmingSince = now;
+                        ridingSince = NOT_STARTED;
+                        setState(State.CONFIRMING);
+                        listener.onGpsRequested(true);
+                    }
+                }
+                break;
+            case CONFIRMING:
+                if (confidence >= MOTION_CONFIDENCE) {
+                    lastMotionTime = now;
+                }
+                break;
+            case TRACKING:
+                break;
+        }
+    }
+    
+    /**
+     * A GPS fix while not tracking (speed in m/s)
+     */
+    public void onFix(float speed, long now) {
+        if (state != State.CONFIRMING) return;
+        
+        if (speed > RIDING_SPEED) {
+            if (ridingSince == NOT_STARTED) {
+                ridingSince = now;
+            } else if (now - ridingSince > CONFIRM_DURATION) {
+                confirm(now);
+                return;
+            }
+        } else {
+            ridingSince = NOT_STARTED;
+        }
+        tick(now);
+    }
+    
+    /**
+     * Expire stale suspicions and confirmations; call periodically while
+     * not IDLE (see getState())
+     */
+    public void tick(long now) {
+        if (state == State.SUSPECT && now - lastMotionTime > SIGNAL_TIMEOUT) {
+            toIdle(now);
+        } else if (state == State.CONFIRMING && now - confirmingSince > CONFIRM_TIMEOUT) {
+            falseStartCount++;
+            toIdle(now);
+        }
+    }
+    
+    /**
+     * A trip was started manually; suspend detection until it ends
+     */
+    public void onTripStarted(long now) {
+        if (state == State.TRACKING) return;
+        
+        if (state == State.CONFIRMING) {
+            totalGpsOnTime += now - confirmingSince;
+        }
+        setState(State.TRACKING);
+        stopSources();
+    }
+    
+    /**
+     * The trip ended (manually or by auto-stop); resume detection
+     */
+    public void onTripEnded(long now) {
+        if (state != State.TRACKING) return;
+        
+        suspectSince = NOT_STARTED;
+        setState(State.IDLE);
+        if (enabled) {
+            startSources();
+        }
+    }
+    
+    public State getState() {
+        return state;
+    }
+    
+    public Stats stats() {
+        return new Stats(this);
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public int getConfirmedCount() {
+        return confirmedCount;
+    }
+    
+    /**
+     * GPS sessions that timed out without confirming a ride
+     */
+    public int getFalseStartCount() {
+        return falseStartCount;
+    }
+    
+    /**
+     * Share of GPS sessions that were false starts (0 when none ran)
+     */
+    public double getFalseStartRate() {
+        int sessions = confirmedCount + falseStartCount;
+        return sessions > 0 ? (double) falseStartCount / sessions : 0;
+    }
+    
+    /**
+     * Mean time from the first motion hint to a confirmed ride
+     */
+    public long getAverageDecisionLatency() {
+        return confirmedCount > 0 ? totalDecisionLatency / confirmedCount : 0;
+    }
+    
+    public long getMaxDecisionLatency() {
+        return maxDecisionLatency;
+    }
+    
+    /**
+     * GPS time spent confirming, excluding trips
+     */
+    public long getGpsOnTime() {
+        return totalGpsOnTime;
+    }
+    
+    // MARK: - Helper Methods
+    
+    private void confirm(long now) {
+        long latency = now - suspectSince;
+        confirmedCount++;
+        totalDecisionLatency += latency;
+        maxDecisionLatency = Math.max(maxDecisionLatency, latency);
+        
+        // GPS stays on: the trip takes it over
+        totalGpsOnTime += now - confirmingSince;
+        setState(State.TRACKING);
+        stopSources();
+        listener.onRideConfirmed();
+    }
+    
+    private void toIdle(long now) {
+        if (state == State.CONFIRMING) {
+            totalGpsOnTime += now - confirmingSince;
+            listener.onGpsRequested(false);
+        }
+        suspectSince = NOT_STARTED;
+        lastMotionTime = NOT_STARTED;
+        confirmingSince = NOT_STARTED;
+        ridingSince = NOT_STARTED;
+        setState(State.IDLE);
+    }
+    
+    private void setState(State next) {
+        if (next == state) return;
+        
+        state = next;
+        listener.onStateChanged(next);
+    }
+    
+    private void startSources() {
+        for (MotionSource source : sources) {
+            source.start(sink);
+        }
+    }
+    
+    private void stopSources() {
+        for (MotionSource source : sources) {
+            source.stop();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.ridecare.engine;
+
+/**
+ * MotionSource.java
+ * 
+ * A cheap, low-power hint that the phone is moving with the rider
+ * (accelerometer, activity recognition, ...). Feeds MotionDetector while
+ * GPS is off.
+ */
+public interface MotionSource {
+    
+    interface Sink {
+        /**
+         * confidence: 0 = still, 1 = certainly riding; now: monotonic millis
+         */
+        void onMotion(float confidence, long now);
+    }
+    
+    void start(Sink sink);
+    
+    void stop();
+}
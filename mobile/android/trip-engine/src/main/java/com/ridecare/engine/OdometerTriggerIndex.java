@@ -0,0 +1,76 @@
+package com.ridecare.engine;
+
+/**
+ * OdometerTriggerIndex.java
+ * 
+ * Upcoming odometer thresholds (e.g. maintenance_events.km_due_at) of one
+ * bike, sorted ascending. Callers compare the odometer against
+ * getNextThreshold() on every fix and only poll() once it is reached, so
+ * the per-fix cost is a single comparison.
+ */
+public class OdometerTriggerIndex {
+    
+    private final double[] thresholds; // km, ascending
+    private final int[] sources;        // Index of each threshold in the constructor's array
+    private int next = 0;
+    
+    /**
+     * Build the index; NaN entries (no km trigger) are skipped
+     */
+    public OdometerTriggerIndex(double[] kmDueAt) {
+        int count = 0;
+        for (double km : kmDueAt) {
+            if (!Double.isNaN(km)) count++;
+        }
+        
+        thresholds = new double[count];
+        sources = new int[count];
+        int n = 0;
+        for (int i = 0; i < kmDueAt.length; i++) {
+            if (Double.isNaN(kmDueAt[i])) continue;
+            
+            // Insertion sort: a bike has a handful of pending events
+            int j = n++;
+            while (j > 0 && thresholds[j - 1] > kmDueAt[i]) {
+                thresholds[j] = thresholds[j - 1];
+                sources[j] = sources[j - 1];
+                j--;
+            }
+            thresholds[j] = kmDueAt[i];
+            sources[j] = i;
+        }
+    }
+    
+    /**
+     * Next threshold in km, or +Infinity once all have fired
+     */
+    public double getNextThreshold() {
+        return next < thresholds.length ? thresholds[next] : Double.POSITIVE_INFINITY;
+    }
+    
+    /**
+     * Consume the next threshold if the odometer has reached it.
+     * Returns its index in the constructor's array, or -1.
+     */
+    public int poll(double odometerKm) {
+        if (odometerKm < getNextThreshold()) return -1;
+        return sources[next++];
+    }
+    
+    /**
+     * Drop thresholds the odometer has already passed without firing them
+     * (already overdue when loaded; those are reminded through other paths)
+     */
+    public int skipTo(double odometerKm) {
+        int skipped = 0;
+        while (next < thresholds.length && thresholds[next] <= odometerKm) {
+            next++;
+            skipped++;
+        }
+        return skipped;
+    }
+    
+    public int getRemainingCount() {
+        return thresholds.length - next;
+    }
+}
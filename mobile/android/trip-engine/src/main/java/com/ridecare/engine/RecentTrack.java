@@ -0,0 +1,86 @@
+package com.ridecare.engine;
+
+/**
+ * RecentTrack.java
+ * 
+ * Fixed-capacity ring of the last points of a ride. Appending overwrites
+ * the oldest point, so memory and the cost of toBreadcrumb() stay constant
+ * however long the ride is. Owned by the engine's thread.
+ */
+public class RecentTrack {
+    
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final float[] speeds;
+    private final long[] times;
+    
+    private int next = 0; // Slot the next point goes into
+    private int size = 0;
+    
+    public RecentTrack(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive, was " + capacity);
+        }
+        latitudes = new double[capacity];
+        longitudes = new double[capacity];
+        speeds = new float[capacity];
+        times = new long[capacity];
+    }
+    
+    public void append(double latitude, double longitude, float speed, long time) {
+        latitudes[next] = latitude;
+        longitudes[next] = longitude;
+        speeds[next] = speed;
+        times[next] = time;
+        next = (next + 1) % times.length;
+        size = Math.min(size + 1, times.length);
+    }
+    
+    /**
+     * Refill from the tail of a track (e.g. after resuming from a journal)
+     */
+    public void fill(TrackBuffer track) {
+        clear();
+        for (int i = Math.max(0, track.size() - times.length); i < track.size(); i++) {
+            append(track.getLatitude(i), track.getLongitude(i), track.getSpeed(i), track.getTime(i));
+        }
+    }
+    
+    public void clear() {
+        next = 0;
+        size = 0;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public int capacity() {
+        return times.length;
+    }
+    
+    /**
+     * Copy of the newest maxPoints points, oldest first
+     */
+    public Breadcrumb toBreadcrumb(int maxPoints) {
+        int count = Math.min(size, maxPoints);
+        if (count <= 0) {
+            return Breadcrumb.EMPTY;
+        }
+        
+        double[] lat = new double[count];
+        double[] lng = new double[count];
+        float[] spd = new float[count];
+        long[] time = new long[count];
+        int capacity = times.length;
+        int first = (next - count + capacity) % capacity;
+        for (int i = 0; i < count; i++) {
+            int slot = (first + i) % capacity;
+            lat[i] = latitudes[slot];
+            lng[i] = longitudes[slot];
+            spd[i] = speeds[slot];
+            time[i] = times[slot];
+        }
+        return new Breadcrumb(lat, lng, spd, time);
+    }
+}
@@ -0,0 +1,167 @@
+package com.ridecare.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ReplayLocationSource.java
+ * 
+ * LocationSource that plays a recorded trace back on its own thread, at
+ * real speed or any multiple of it (POSITIVE_INFINITY: as fast as the sink
+ * accepts fixes). Like the platform, it only delivers providers that were
+ * requested and thins them to the requested interval, so GPS band changes
+ * affect a replay the way they affect a ride. The trace keeps playing
+ * while no provider is requested, as the world would.
+ */
+public class ReplayLocationSource implements LocationSource {
+    
+    private static final long INTERVAL_SLACK = 200; // Recorded 1 Hz fixes jitter around 1000 ms
+    
+    private final TraceReplay.Trace trace;
+    private final double speedMultiplier;
+    private final CountDownLatch finished = new CountDownLatch(1);
+    
+    // Guarded by this
+    private final long[] intervals = new long[FixRingBuffer.PROVIDER_OTHER + 1];
+    private final long[] lastDelivered = new long[FixRingBuffer.PROVIDER_OTHER + 1];
+    private Sink sink;
+    private Thread thread;
+    
+    private volatile boolean closed = false;
+    private volatile long replayTime;
+    private volatile int delivered = 0;
+    
+    public ReplayLocationSource(TraceReplay.Trace trace, double speedMultiplier) {
+        if (!(speedMultiplier > 0)) {
+            throw new IllegalArgumentException("Speed multiplier must be positive, was " + speedMultiplier);
+        }
+        this.trace = trace;
+        this.speedMultiplier = speedMultiplier;
+        Arrays.fill(intervals, -1);
+        Arrays.fill(lastDelivered, Long.MIN_VALUE);
+        replayTime = trace.size() > 0 ? trace.getFixes().getTime(0) : 0;
+    }
+    
+    /**
+     * The first request starts the replay
+     */
+    @Override
+    public synchronized void requestUpdates(byte provider, long intervalMillis, Sink sink) {
+        intervals[provider] = Math.max(0, intervalMillis);
+        this.sink = sink;
+        if (thread == null) {
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    play();
+                }
+            }, "ReplayLocationSource");
+            thread.start();
+        }
+    }
+    
+    @Override
+    public synchronized void removeUpdates() {
+        Arrays.fill(intervals, -1);
+    }
+    
+    /**
+     * Stop the replay thread early
+     */
+    public void close() {
+        closed = true;
+        Thread current;
+        synchronized (this) {
+            current = thread;
+        }
+        if (current != null) {
+            current.interrupt();
+        }
+    }
+    
+    /**
+     * Wait until the whole trace was played; returns false on timeout
+     */
+    public boolean awaitEnd(long timeoutMillis) throws InterruptedException {
+        return finished.await(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Recorded time of the fix being played, usable as the replay's clock
+     */
+    public long getReplayTime() {
+        return replayTime;
+    }
+    
+    public int getDeliveredCount() {
+        return delivered;
+    }
+    
+    // MARK: - Helper Methods
+    
+    private void play() {
+        try {
+            TrackBuffer fixes = trace.getFixes();
+            long startNanos = System.nanoTime();
+            long startTime = fixes.size() > 0 ? fixes.getTime(0) : 0;
+            
+            for (int i = 0; i < fixes.size() && !closed; i++) {
+                long time = fixes.getTime(i);
+                if (!waitUntil(startNanos, time - startTime)) {
+                    return;
+                }
+                replayTime = time;
+                
+                Sink target = take(trace.getProvider(i), time);
+                if (target != null) {
+                    delivered++;
+                    target.onLocation(
+                        fixes.getLatitude(i),
+                        fixes.getLongitude(i),
+                        fixes.getSpeed(i),
+                        fixes.getAccuracy(i),
+                        time,
+                        trace.getProvider(i)
+                    );
+                }
+            }
+        } finally {
+            finished.countDown();
+        }
+    }
+    
+    /**
+     * The sink if this fix is due for a requested provider, otherwise null
+     */
+    private synchronized Sink take(byte provider, long time) {
+        long interval = intervals[provider];
+        if (interval < 0) return null;
+        
+        if (lastDelivered[provider] != Long.MIN_VALUE
+            && time - lastDelivered[provider] + INTERVAL_SLACK < interval) {
+            return null;
+        }
+        lastDelivered[provider] = time;
+        return sink;
+    }
+    
+    /**
+     * Sleep until the scaled trace offset is reached; false if interrupted
+     */
+    private boolean waitUntil(long startNanos, long traceOffsetMillis) {
+        if (speedMultiplier == Double.POSITIVE_INFINITY) return true;
+        
+        long dueNanos = startNanos + (long) (traceOffsetMillis * 1000000 / speedMultiplier);
+        long waitNanos;
+        while ((waitNanos = dueNanos - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+}
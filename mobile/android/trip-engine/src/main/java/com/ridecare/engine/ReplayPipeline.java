@@ -0,0 +1,120 @@
+package com.ridecare.engine;
+
+/**
+ * ReplayPipeline.java
+ * 
+ * Replays a trace through the same pipeline LocationService runs: source ->
+ * FixRingBuffer -> one owner thread running TripEngine and publishing
+ * snapshots. Unlike TraceReplay.run, fixes go through ReplayLocationSource,
+ * so the GPS schedule decides which of them reach the engine.
+ */
+public final class ReplayPipeline implements LocationSource.Sink, TripEngine.Listener {
+    
+    private static final int DRAIN_BATCH_SIZE = 64;
+    private static final long NETWORK_INTERVAL = 5000;
+    
+    /**
+     * Outcome of one replay
+     */
+    public static final class Result {
+        public final TripRecord record;
+        public final int delivered; // Fixes the source passed on
+        public final long rejected; // Fixes the engine's filter dropped
+        
+        Result(TripRecord record, int delivered, long rejected) {
+            this.record = record;
+            this.delivered = delivered;
+            this.rejected = rejected;
+        }
+    }
+    
+    private final TraceReplay.Trace trace;
+    private final ReplayLocationSource source;
+    private final FixRingBuffer buffer = new FixRingBuffer(256);
+    private final TripEngine engine = new TripEngine(this);
+    private TripRecord record;
+    
+    private ReplayPipeline(TraceReplay.Trace trace) {
+        this.trace = trace;
+        source = new ReplayLocationSource(trace, Double.POSITIVE_INFINITY);
+    }
+    
+    /**
+     * Replay as fast as the owner thread keeps up; throws if it has not
+     * finished within timeoutMillis
+     */
+    public static Result run(TraceReplay.Trace trace, long timeoutMillis) throws InterruptedException {
+        final ReplayPipeline pipeline = new ReplayPipeline(trace);
+        Thread owner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pipeline.record = pipeline.process();
+            }
+        }, "TripProcessing");
+        owner.start();
+        owner.join(timeoutMillis);
+        if (owner.isAlive()) {
+            pipeline.source.close();
+            owner.interrupt();
+            throw new IllegalStateException("Replay did not finish within " + timeoutMillis + " ms");
+        }
+        
+        return new Result(
+            pipeline.record,
+            pipeline.source.getDeliveredCount(),
+            pipeline.engine.getFilter().getRejectedCount()
+        );
+    }
+    
+    private TripRecord process() {
+        long startTime = trace.size() > 0 ? trace.getFixes().getTime(0) : 0;
+        engine.startTrip(startTime, startTime);
+        source.requestUpdates(FixRingBuffer.PROVIDER_GPS, engine.getScheduler().getIntervalMillis(), this);
+        source.requestUpdates(FixRingBuffer.PROVIDER_NETWORK, NETWORK_INTERVAL, this);
+        
+        FixRingBuffer.Consumer consumer = new FixRingBuffer.Consumer() {
+            @Override
+            public void onFix(double latitude, double longitude, float speed, float accuracy, long time, byte provider) {
+                engine.onFix(latitude, longitude, speed, accuracy, time, provider, source.getReplayTime());
+            }
+        };
+        
+        try {
+            while (!source.awaitEnd(0) || !buffer.isEmpty()) {
+                if (buffer.drain(consumer, DRAIN_BATCH_SIZE) > 0) {
+                    engine.publish();
+                } else {
+                    Thread.yield();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        source.close();
+        return engine.finishTrip(source.getReplayTime());
+    }
+    
+    /**
+     * Replay thread: waits until the owner has processed the fix, so a
+     * GPS interval change applies to the very next fix as it would at
+     * real speed, and nothing is dropped
+     */
+    @Override
+    public void onLocation(double latitude, double longitude, float speed, float accuracy, long time, byte provider) {
+        buffer.offer(latitude, longitude, speed, accuracy, time, provider);
+        while (!buffer.isEmpty() && !Thread.currentThread().isInterrupted()) {
+            Thread.yield();
+        }
+    }
+    
+    @Override
+    public void onFixRecorded(double latitude, double longitude, float speed, float accuracy, long time) {}
+    
+    @Override
+    public void onGpsIntervalChanged(long intervalMillis) {
+        source.requestUpdates(FixRingBuffer.PROVIDER_GPS, intervalMillis, this);
+    }
+    
+    @Override
+    public void onAutoStop() {}
+}
@@ -0,0 +1,241 @@
+package com.ridecare.engine;
+
+import java.util.Arrays;
+
+/**
+ * RideSegmenter.java
+ * 
+ * Streaming split of a ride into moving, paused and gap segments, fed one
+ * recorded point at a time. Segments are stored as index ranges into the
+ * trip's TrackBuffer (adjacent segments share their boundary point), so a
+ * long tour keeps its structure without copying any points.
+ * 
+ * A pause starts at the first point below the moving speed once the rider
+ * has stayed slow for PAUSE_DWELL; it ends at the first fast point. A gap
+ * is a step that is both long in time and long in distance, such as a
+ * tunnel: its straight-line distance is either counted (interpolated) or
+ * excluded, and it is always excluded when the implied speed is implausible.
+ */
+public class RideSegmenter {
+    
+    public static final byte MOVING = 0;
+    public static final byte PAUSED = 1;
+    public static final byte GAP = 2;
+    
+    public enum GapPolicy {
+        INTERPOLATE, // Count the straight line across the gap
+        EXCLUDE      // Count nothing for the gap
+    }
+    
+    public static final long PAUSE_DWELL = 60000;           // 1 minute below moving speed
+    public static final long GAP_TIME = 60000;              // 1 minute without a fix...
+    public static final double GAP_DISTANCE = 200;          // ...and 200 meters moved
+    public static final float MAX_GAP_SPEED = 200f / 3.6f;  // 200 km/h in m/s
+    
+    /** Returned by add() when the step is an excluded gap */
+    public static final double EXCLUDED = -1;
+    
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+    
+    private final GapPolicy gapPolicy;
+    
+    // Closed segments, plus the open one at index count - 1
+    private byte[] types = new byte[16];
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private long[] startTimes = new long[16];
+    private long[] endTimes = new long[16];
+    private double[] distances = new double[16]; // meters counted
+    private int count = 0;
+    
+    private int lastIndex = -1;
+    private double lastLatitude;
+    private double lastLongitude;
+    private long lastTime;
+    
+    // Candidate pause inside the open moving segment
+    private long slowSince = NOT_STARTED;
+    private int slowIndex;
+    private double slowDistance;
+    
+    private double excludedDistance = 0;
+    
+    public RideSegmenter(GapPolicy gapPolicy) {
+        this.gapPolicy = gapPolicy;
+    }
+    
+    /**
+     * Feed the point just appended to the track at index. Returns the meters
+     * the step from the previous point counts for (0 for the first point),
+     * or EXCLUDED when the step is a gap whose distance is not counted.
+     */
+    public double add(int index, double latitude, double longitude, float speed, long time) {
+        if (lastIndex < 0) {
+            open(MOVING, index, time);
+            remember(index, latitude, longitude, time);
+            return 0;
+        }
+        
+        double step = GeoMath.distanceMeters(lastLatitude, lastLongitude, latitude, longitude);
+        long elapsed = time - lastTime;
+        
+        if (elapsed >= GAP_TIME && step >= GAP_DISTANCE) {
+            boolean excluded = gapPolicy == GapPolicy.EXCLUDE || step * 1000 / elapsed > MAX_GAP_SPEED;
+            split(GAP, lastIndex, lastTime);
+            distances[count - 1] = excluded ? 0 : step;
+            close(index, time);
+            if (excluded) {
+                excludedDistance += step;
+            }
+            
+            open(MOVING, index, time);
+            slowSince = NOT_STARTED;
+            remember(index, latitude, longitude, time);
+            return excluded ? EXCLUDED : step;
+        }
+        
+        distances[count - 1] += step;
+        boolean slow = speed < TripAccumulator.MOVING_SPEED_THRESHOLD;
+        
+        if (types[count - 1] == MOVING) {
+            if (!slow) {
+                slowSince = NOT_STARTED;
+            } else if (slowSince == NOT_STARTED) {
+                slowSince = time;
+                slowIndex = index;
+                slowDistance = 0;
+            } else {
+                slowDistance += step;
+                if (time - slowSince >= PAUSE_DWELL) {
+                    // The pause began at the first slow point
+                    distances[count - 1] -= slowDistance;
+                    split(PAUSED, slowIndex, slowSince);
+                    distances[count - 1] = slowDistance;
+                    slowSince = NOT_STARTED;
+                }
+            }
+        } else if (!slow) {
+            // Moving again: the step away from the stop belongs to the new segment
+            distances[count - 1] -= step;
+            split(MOVING, lastIndex, lastTime);
+            distances[count - 1] = step;
+        }
+        
+        remember(index, latitude, longitude, time);
+        return step;
+    }
+    
+    public void reset() {
+        count = 0;
+        lastIndex = -1;
+        slowSince = NOT_STARTED;
+        excludedDistance = 0;
+    }
+    
+    public int getSegmentCount() {
+        return count;
+    }
+    
+    public byte getType(int segment) {
+        checkSegment(segment);
+        return types[segment];
+    }
+    
+    /** First track index of the segment */
+    public int getStartIndex(int segment) {
+        checkSegment(segment);
+        return starts[segment];
+    }
+    
+    /** Last track index of the segment (inclusive; shared with the next segment) */
+    public int getEndIndex(int segment) {
+        checkSegment(segment);
+        return segment == count - 1 ? lastIndex : ends[segment];
+    }
+    
+    public long getStartTime(int segment) {
+        checkSegment(segment);
+        return startTimes[segment];
+    }
+    
+    public long getEndTime(int segment) {
+        checkSegment(segment);
+        return segment == count - 1 ? lastTime : endTimes[segment];
+    }
+    
+    /** Meters counted for the segment (0 for an excluded gap) */
+    public double getDistance(int segment) {
+        checkSegment(segment);
+        return distances[segment];
+    }
+    
+    /**
+     * Total time of all segments of a type, in millis
+     */
+    public long getTotalTime(byte type) {
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            if (types[i] == type) {
+                total += getEndTime(i) - startTimes[i];
+            }
+        }
+        return total;
+    }
+    
+    /**
+     * Straight-line meters of gaps that were not counted
+     */
+    public double getExcludedDistance() {
+        return excludedDistance;
+    }
+    
+    // MARK: - Helper Methods
+    
+    private void open(byte type, int index, long time) {
+        if (count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            startTimes = Arrays.copyOf(startTimes, capacity);
+            endTimes = Arrays.copyOf(endTimes, capacity);
+            distances = Arrays.copyOf(distances, capacity);
+        }
+        types[count] = type;
+        starts[count] = index;
+        startTimes[count] = time;
+        distances[count] = 0;
+        count++;
+    }
+    
+    /**
+     * End the open segment at index and open one of the given type there.
+     * An open segment without any step is retyped instead of left empty.
+     */
+    private void split(byte type, int index, long time) {
+        if (starts[count - 1] == index) {
+            types[count - 1] = type;
+            return;
+        }
+        close(index, time);
+        open(type, index, time);
+    }
+    
+    private void close(int index, long time) {
+        ends[count - 1] = index;
+        endTimes[count - 1] = time;
+    }
+    
+    private void remember(int index, double latitude, double longitude, long time) {
+        lastIndex = index;
+        lastLatitude = latitude;
+        lastLongitude = longitude;
+        lastTime = time;
+    }
+    
+    private void checkSegment(int segment) {
+        if (segment < 0 || segment >= count) {
+            throw new IndexOutOfBoundsException("Segment " + segment + " of " + count);
+        }
+    }
+}
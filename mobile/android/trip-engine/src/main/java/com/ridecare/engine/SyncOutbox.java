@@ -0,0 +1,555 @@
+package com.ridecare.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * SyncOutbox.java
+ * 
+ * Persistent queue of local writes waiting to be uploaded. Writes to the
+ * same record coalesce into one pending entry (the newest data wins and the
+ * record keeps its place in the queue), pending entries are packed into
+ * size-bounded batch payloads, and failed uploads are retried with jittered
+ * exponential backoff.
+ * 
+ * The outbox is an append-only log of checksummed records: a put for every
+ * write and an ack for every entry that was uploaded. Replaying it restores
+ * the pending entries after a restart; a torn tail from a crash is cut off.
+ * The log is rewritten with only the pending entries once acks dominate it.
+ * 
+ * Not thread-safe; the owner serializes all calls on one thread.
+ */
+public class SyncOutbox implements Closeable {
+    
+    public static final byte OP_SET = 1;
+    public static final byte OP_DELETE = 2;
+    
+    /**
+     * Where batches go; returns the HTTP status of the upload
+     */
+    public interface Endpoint {
+        int upload(byte[] payload) throws IOException;
+    }
+    
+    /**
+     * One pending write. data is the record as a JSON object (null for a delete).
+     */
+    public static final class Entry {
+        public final String collection;
+        public final String id;
+        public final byte op;
+        public final String data;
+        public final long updatedAt;
+        final long version;
+        
+        Entry(String collection, String id, byte op, String data, long updatedAt, long version) {
+            this.collection = collection;
+            this.id = id;
+            this.op = op;
+            this.data = data;
+            this.updatedAt = updatedAt;
+            this.version = version;
+        }
+    }
+    
+    /**
+     * Entries of one upload and their encoded payload
+     */
+    public static final class Batch {
+        public final List<Entry> entries;
+        public final byte[] payload;
+        
+        Batch(List<Entry> entries, byte[] payload) {
+            this.entries = entries;
+            this.payload = payload;
+        }
+    }
+    
+    public static final int DEFAULT_MAX_BATCH_BYTES = 256 * 1024;
+    public static final int DEFAULT_MAX_BATCH_RECORDS = 500;
+    public static final long BASE_BACKOFF = 2000;       // 2 seconds
+    public static final long MAX_BACKOFF = 900000;      // 15 minutes
+    
+    private static final int MAGIC = 0x52435342; // "RCSB"
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_ACK = 2;
+    private static final long COMPACT_MIN_BYTES = 64 * 1024;
+    
+    private final File file;
+    private final Random random;
+    private final LinkedHashMap<String, Entry> pending = new LinkedHashMap<>();
+    private DataOutputStream log;
+    private long logBytes;
+    private long nextVersion = 1;
+    
+    private int maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    private int maxBatchRecords = DEFAULT_MAX_BATCH_RECORDS;
+    private int batchLimit = DEFAULT_MAX_BATCH_RECORDS; // Shrinks while isolating a rejected record
+    private int failures = 0;
+    private long retryAt = 0;
+    
+    // Counters for the bridge
+    private long enqueued = 0;
+    private long coalesced = 0;
+    private long uploaded = 0;
+    private long batches = 0;
+    private long failedUploads = 0;
+    private long rejected = 0;
+    private long lastSuccessTime = 0;
+    
+    private SyncOutbox(File file, Random random) {
+        this.file = file;
+        this.random = random;
+    }
+    
+    /**
+     * Open the outbox at file, replaying what is still pending
+     */
+    public static SyncOutbox open(File file) throws IOException {
+        return open(file, new Random());
+    }
+    
+    /**
+     * Open with a given source of backoff jitter (for tests)
+     */
+    public static SyncOutbox open(File file, Random random) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        
+        SyncOutbox outbox = new SyncOutbox(file, random);
+        long valid = outbox.replay();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() != valid) {
+                raf.setLength(valid); // Drop a torn tail
+            }
+        }
+        outbox.logBytes = valid;
+        outbox.openLog(valid == 0);
+        return outbox;
+    }
+    
+    /**
+     * Queue a write of one record, replacing any pending write of it
+     */
+    public void enqueue(String collection, String id, byte op, String data, long updatedAt) throws IOException {
+        if (op != OP_SET && op != OP_DELETE) {
+            throw new IllegalArgumentException("Unknown op " + op);
+        }
+        if (op == OP_SET && data == null) {
+            throw new IllegalArgumentException("A set needs data");
+        }
+        
+        Entry entry = new Entry(collection, id, op, op == OP_DELETE ? null : data, updatedAt, nextVersion++);
+        writePut(entry);
+        if (put(entry)) {
+            coalesced++;
+        }
+        enqueued++;
+    }
+    
+    /**
+     * Pending entries from the head of the queue, up to the record limit
+     * and payload size; always at least one entry, or null when empty
+     */
+    public Batch nextBatch() {
+        if (pending.isEmpty()) return null;
+        
+        List<Entry> entries = new ArrayList<>();
+        StringBuilder json = new StringBuilder(Math.min(maxBatchBytes, 64 * 1024));
+        json.append("{\"writes\":[");
+        int bytes = json.length() + 2;
+        
+        StringBuilder write = new StringBuilder(256);
+        for (Entry entry : pending.values()) {
+            if (entries.size() >= batchLimit) break;
+            
+            write.setLength(0);
+            appendWrite(write, entry);
+            int size = utf8Length(write) + (entries.isEmpty() ? 0 : 1);
+            if (!entries.isEmpty() && bytes + size > maxBatchBytes) break;
+            
+            if (!entries.isEmpty()) {
+                json.append(',');
+            }
+            json.append(write);
+            bytes += size;
+            entries.add(entry);
+        }
+        json.append("]}");
+        return new Batch(Collections.unmodifiableList(entries), json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * The batch was stored remotely. Entries written again while it was in
+     * flight stay pending with their newer data.
+     */
+    public void acknowledge(Batch batch) throws IOException {
+        for (Entry entry : batch.entries) {
+            String key = key(entry.collection, entry.id);
+            Entry current = pending.get(key);
+            if (current != null && current.version == entry.version) {
+                pending.remove(key);
+            }
+            writeAck(entry);
+        }
+        log.flush();
+        compactIfNeeded();
+    }
+    
+    /**
+     * Upload batches until the outbox is empty or an upload fails. Does
+     * nothing before getRetryAt(). Entries that were stored are added to
+     * acknowledged. Returns the number of entries uploaded.
+     */
+    public int flush(Endpoint endpoint, long now, List<Entry> acknowledged) throws IOException {
+        if (now < retryAt) return 0;
+        
+        int count = 0;
+        Batch batch;
+        while ((batch = nextBatch()) != null) {
+            int status;
+            try {
+                status = endpoint.upload(batch.payload);
+            } catch (IOException e) {
+                status = -1; // Network failure
+            }
+            
+            if (status >= 200 && status < 300) {
+                acknowledge(batch);
+                acknowledged.addAll(batch.entries);
+                count += batch.entries.size();
+                uploaded += batch.entries.size();
+                batches++;
+                failures = 0;
+                retryAt = 0;
+                lastSuccessTime = now;
+                // Grow back after isolating a rejected record
+                batchLimit = Math.min(maxBatchRecords, batchLimit * 2);
+            } else if (isRetryable(status)) {
+                failedUploads++;
+                scheduleRetry(now);
+                break;
+            } else if (batch.entries.size() > 1) {
+                // The server refused the batch; halve it until the bad record is alone
+                batchLimit = Math.max(1, batch.entries.size() / 2);
+            } else {
+                // A single record the server will never accept: drop it so it cannot block the queue
+                rejected++;
+                acknowledge(batch);
+            }
+        }
+        return count;
+    }
+    
+    /**
+     * Drop every pending write (e.g. on logout)
+     */
+    public void clear() throws IOException {
+        pending.clear();
+        close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+        }
+        openLog(true);
+        resetBackoff();
+    }
+    
+    public void setBatchLimits(int maxBytes, int maxRecords) {
+        maxBatchBytes = maxBytes;
+        maxBatchRecords = maxRecords;
+        batchLimit = maxRecords;
+    }
+    
+    /**
+     * Forget the backoff, e.g. when connectivity returns
+     */
+    public void resetBackoff() {
+        failures = 0;
+        retryAt = 0;
+    }
+    
+    public int getPendingCount() {
+        return pending.size();
+    }
+    
+    /**
+     * Whether a write of the record is still waiting (e.g. before marking it synced)
+     */
+    public boolean isPending(String collection, String id) {
+        return pending.containsKey(key(collection, id));
+    }
+    
+    /** Earliest time the next flush may upload; 0 when not backing off */
+    public long getRetryAt() {
+        return retryAt;
+    }
+    
+    public int getConsecutiveFailures() {
+        return failures;
+    }
+    
+    public long getEnqueuedCount() {
+        return enqueued;
+    }
+    
+    public long getCoalescedCount() {
+        return coalesced;
+    }
+    
+    public long getUploadedCount() {
+        return uploaded;
+    }
+    
+    public long getBatchCount() {
+        return batches;
+    }
+    
+    public long getFailedUploadCount() {
+        return failedUploads;
+    }
+    
+    public long getRejectedCount() {
+        return rejected;
+    }
+    
+    public long getLastSuccessTime() {
+        return lastSuccessTime;
+    }
+    
+    public long getLogBytes() {
+        return logBytes;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+    
+    // MARK: - Helper Methods
+    
+    private static boolean isRetryable(int status) {
+        // Network errors, expired tokens, a missing or misrouted endpoint,
+        // throttling and server errors: none of them is about the records
+        return status < 0 || status == 401 || status == 404 || status == 405
+            || status == 408 || status == 429 || status >= 500;
+    }
+    
+    private void scheduleRetry(long now) {
+        long delay = Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(failures, 20));
+        failures++;
+        // Jitter keeps devices that lost the same network from retrying in lockstep
+        retryAt = now + delay / 2 + (long) (random.nextDouble() * (delay / 2));
+    }
+    
+    /**
+     * Returns true if the entry replaced a pending write of the same record
+     */
+    private boolean put(Entry entry) {
+        String key = key(entry.collection, entry.id);
+        // Replacing the value of an existing key keeps its queue position
+        return pending.put(key, entry) != null;
+    }
+    
+    private static String key(String collection, String id) {
+        return collection + '/' + id;
+    }
+    
+    private static void appendWrite(StringBuilder out, Entry entry) {
+        out.append("{\"collection\":");
+        Json.appendQuoted(out, entry.collection);
+        out.append(",\"id\":");
+        Json.appendQuoted(out, entry.id);
+        out.append(",\"op\":\"").append(entry.op == OP_SET ? "set" : "delete").append('"');
+        out.append(",\"updatedAt\":").append(entry.updatedAt);
+        if (entry.data != null) {
+            out.append(",\"data\":").append(entry.data); // Already a JSON object
+        }
+        out.append('}');
+    }
+    
+    private static int utf8Length(CharSequence text) {
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+    
+    // MARK: - Log
+    
+    /**
+     * Replay the log into pending; returns the length of its valid prefix
+     */
+    private long replay() throws IOException {
+        if (!file.exists() || file.length() == 0) return 0;
+        
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a sync outbox: " + file);
+            }
+            valid = 4;
+            
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                byte[] body;
+                try {
+                    length = in.readInt();
+                    if (length <= 0 || length > 64 * 1024 * 1024) break;
+                    body = new byte[length];
+                    in.readFully(body);
+                    crc.reset();
+                    crc.update(body, 0, length);
+                    if (in.readInt() != (int) crc.getValue()) break;
+                } catch (EOFException e) {
+                    break;
+                }
+                
+                applyRecord(body);
+                valid += 8 + length;
+            }
+        } catch (EOFException e) {
+            return 0; // Not even a header
+        }
+        return valid;
+    }
+    
+    private void applyRecord(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        byte type = in.readByte();
+        long version = in.readLong();
+        String collection = in.readUTF();
+        String id = in.readUTF();
+        nextVersion = Math.max(nextVersion, version + 1);
+        
+        if (type == RECORD_PUT) {
+            byte op = in.readByte();
+            long updatedAt = in.readLong();
+            String data = null;
+            int dataLength = in.readInt();
+            if (dataLength >= 0) {
+                byte[] bytes = new byte[dataLength];
+                in.readFully(bytes);
+                data = new String(bytes, StandardCharsets.UTF_8);
+            }
+            put(new Entry(collection, id, op, data, updatedAt, version));
+        } else if (type == RECORD_ACK) {
+            String key = key(collection, id);
+            Entry current = pending.get(key);
+            if (current != null && current.version == version) {
+                pending.remove(key);
+            }
+        }
+    }
+    
+    private void openLog(boolean writeHeader) throws IOException {
+        log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        if (writeHeader) {
+            log.writeInt(MAGIC);
+            log.flush();
+            logBytes = 4;
+        }
+    }
+    
+    private void writePut(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + (entry.data != null ? entry.data.length() : 0));
+        DataOutputStream body = new DataOutputStream(bytes);
+        body.writeByte(RECORD_PUT);
+        body.writeLong(entry.version);
+        body.writeUTF(entry.collection);
+        body.writeUTF(entry.id);
+        body.writeByte(entry.op);
+        body.writeLong(entry.updatedAt);
+        if (entry.data == null) {
+            body.writeInt(-1);
+        } else {
+            byte[] data = entry.data.getBytes(StandardCharsets.UTF_8); // writeUTF is limited to 64 KB
+            body.writeInt(data.length);
+            body.write(data);
+        }
+        writeRecord(bytes.toByteArray());
+        log.flush(); // Survives a process kill; the OS writes it back
+    }
+    
+    private void writeAck(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream body = new DataOutputStream(bytes);
+        body.writeByte(RECORD_ACK);
+        body.writeLong(entry.version);
+        body.writeUTF(entry.collection);
+        body.writeUTF(entry.id);
+        writeRecord(bytes.toByteArray());
+    }
+    
+    private void writeRecord(byte[] body) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        log.writeInt(body.length);
+        log.write(body);
+        log.writeInt((int) crc.getValue());
+        logBytes += 8 + body.length;
+    }
+    
+    /**
+     * Rewrite the log with only the pending entries once it is mostly acks
+     */
+    private void compactIfNeeded() throws IOException {
+        if (logBytes < COMPACT_MIN_BYTES) return;
+        
+        long live = 0;
+        for (Entry entry : pending.values()) {
+            live += 40 + entry.collection.length() + entry.id.length() + (entry.data != null ? entry.data.length() : 0);
+        }
+        if (logBytes < live * 2 + COMPACT_MIN_BYTES) return;
+        
+        close();
+        File temp = new File(file.getPath() + ".tmp");
+        log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        log.writeInt(MAGIC);
+        logBytes = 4;
+        for (Entry entry : pending.values()) {
+            writePut(entry);
+        }
+        log.flush();
+        close();
+        
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+        openLog(false);
+    }
+}
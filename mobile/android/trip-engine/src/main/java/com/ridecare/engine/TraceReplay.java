@@ -0,0 +1,267 @@
+package com.ridecare.engine;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+
+/**
+ * TraceReplay.java
+ * 
+ * Loads recorded CSV or GPX traces and replays them through the trip engine
+ * on a plain JVM. CSV columns: time,latitude,longitude,speed,accuracy with an
+ * optional provider column (gps/network). The command-line runner is
+ * TraceReplayTool in src/jmh.
+ */
+public final class TraceReplay {
+    
+    private static final float GPX_UERE_METERS = 5f;     // Accuracy estimate per unit of HDOP
+    private static final float GPX_DEFAULT_ACCURACY = 10f; // When a GPX point has no HDOP
+    
+    private TraceReplay() {}
+    
+    /**
+     * A loaded trace: the raw fixes plus their provider codes
+     */
+    public static final class Trace {
+        private final TrackBuffer fixes = new TrackBuffer();
+        private byte[] providers = new byte[1024];
+        
+        void add(double latitude, double longitude, float speed, float accuracy, long time, byte provider) {
+            int index = fixes.size();
+            if (index == providers.length) {
+                providers = Arrays.copyOf(providers, index * 2);
+            }
+            providers[index] = provider;
+            fixes.append(latitude, longitude, speed, accuracy, time);
+        }
+        
+        public int size() {
+            return fixes.size();
+        }
+        
+        public TrackBuffer getFixes() {
+            return fixes;
+        }
+        
+        public byte getProvider(int index) {
+            return providers[index];
+        }
+        
+        /**
+         * Feed every fix to the consumer in recorded order
+         */
+        public void replay(FixRingBuffer.Consumer consumer) {
+            for (int i = 0; i < fixes.size(); i++) {
+                consumer.onFix(
+                    fixes.getLatitude(i),
+                    fixes.getLongitude(i),
+                    fixes.getSpeed(i),
+                    fixes.getAccuracy(i),
+                    fixes.getTime(i),
+                    providers[i]
+                );
+            }
+        }
+    }
+    
+    /**
+     * Load a trace file, choosing the format by extension
+     */
+    public static Trace load(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            if (file.getName().toLowerCase(Locale.ROOT).endsWith(".gpx")) {
+                return readGpx(in);
+            }
+            return readCsv(in);
+        }
+    }
+    
+    /**
+     * Load a trace from the classpath (test resources)
+     */
+    public static Trace loadResource(String resource) throws IOException {
+        InputStream in = TraceReplay.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("Missing trace resource " + resource);
+        }
+        try {
+            if (resource.toLowerCase(Locale.ROOT).endsWith(".gpx")) {
+                return readGpx(in);
+            }
+            return readCsv(in);
+        } finally {
+            in.close();
+        }
+    }
+    
+    public static Trace readCsv(InputStream in) throws IOException {
+        Trace trace = new Trace();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        String line = reader.readLine(); // header
+        if (line == null) return trace;
+        
+        int lineNumber = 1;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isEmpty()) continue;
+            
+            String[] cols = line.split(",");
+            try {
+                trace.add(
+                    Double.parseDouble(cols[1]),
+                    Double.parseDouble(cols[2]),
+                    Float.parseFloat(cols[3]),
+                    Float.parseFloat(cols[4]),
+                    Long.parseLong(cols[0]),
+                    cols.length > 5 ? providerCode(cols[5]) : FixRingBuffer.PROVIDER_GPS
+                );
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                throw new IOException("Malformed trace line " + lineNumber + ": " + line, e);
+            }
+        }
+        return trace;
+    }
+    
+    /**
+     * Read every trkpt of a GPX 1.0/1.1 file. Speed comes from a <speed>
+     * element (plain or in extensions) or is derived from the previous point.
+     */
+    public static Trace readGpx(InputStream in) throws IOException {
+        final Trace trace = new Trace();
+        try {
+            SAXParserFactory factory = SAXParserFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.newSAXParser().parse(in, new DefaultHandler() {
+                private final StringBuilder text = new StringBuilder();
+                private boolean inPoint;
+                private double latitude;
+                private double longitude;
+                private long time;
+                private float speed;
+                private float hdop;
+                
+                @Override
+                public void startElement(String uri, String localName, String qName, Attributes attributes) {
+                    text.setLength(0);
+                    if ("trkpt".equals(localName)) {
+                        inPoint = true;
+                        latitude = Double.parseDouble(attributes.getValue("lat"));
+                        longitude = Double.parseDouble(attributes.getValue("lon"));
+                        time = 0;
+                        speed = Float.NaN;
+                        hdop = Float.NaN;
+                    }
+                }
+                
+                @Override
+                public void characters(char[] ch, int start, int length) {
+                    text.append(ch, start, length);
+                }
+                
+                @Override
+                public void endElement(String uri, String localName, String qName) throws SAXException {
+                    if (!inPoint) return;
+                    
+                    String value = text.toString().trim();
+                    try {
+                        if ("time".equals(localName)) {
+                            time = Instant.parse(value).toEpochMilli();
+                        } else if ("speed".equals(localName)) {
+                            speed = Float.parseFloat(value);
+                        } else if ("hdop".equals(localName)) {
+                            hdop = Float.parseFloat(value);
+                        } else if ("trkpt".equals(localName)) {
+                            inPoint = false;
+                            addPoint();
+                        }
+                    } catch (NumberFormatException | DateTimeParseException e) {
+                        throw new SAXException("Malformed GPX " + localName + ": " + value, e);
+                    }
+                }
+                
+                private void addPoint() {
+                    if (Float.isNaN(speed)) {
+                        speed = derivedSpeed();
+                    }
+                    float accuracy = Float.isNaN(hdop) ? GPX_DEFAULT_ACCURACY : hdop * GPX_UERE_METERS;
+                    trace.add(latitude, longitude, speed, accuracy, time, FixRingBuffer.PROVIDER_GPS);
+                }
+                
+                private float derivedSpeed() {
+                    int last = trace.size() - 1;
+                    if (last < 0) return 0;
+                    
+                    TrackBuffer fixes = trace.getFixes();
+                    long dt = time - fixes.getTime(last);
+                    if (dt <= 0) return fixes.getSpeed(last);
+                    double meters = GeoMath.distanceMeters(
+                        fixes.getLatitude(last), fixes.getLongitude(last), latitude, longitude
+                    );
+                    return (float) (meters / (dt / 1000.0));
+                }
+            });
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Cannot parse GPX trace", e);
+        }
+        return trace;
+    }
+    
+    /**
+     * Replay a trace through a fresh engine, using fix time as the clock
+     */
+    public static TripRecord run(Trace trace) {
+        TripEngine engine = new TripEngine(new NoOpListener());
+        if (trace.size() == 0) {
+            return engine.finishTrip(0);
+        }
+        
+        TrackBuffer fixes = trace.getFixes();
+        engine.startTrip(fixes.getTime(0), fixes.getTime(0));
+        for (int i = 0; i < fixes.size(); i++) {
+            engine.onFix(
+                fixes.getLatitude(i),
+                fixes.getLongitude(i),
+                fixes.getSpeed(i),
+                fixes.getAccuracy(i),
+                fixes.getTime(i),
+                trace.getProvider(i),
+                fixes.getTime(i)
+            );
+        }
+        return engine.finishTrip(fixes.getTime(fixes.size() - 1));
+    }
+    
+    // MARK: - Helper Methods
+    
+    private static byte providerCode(String provider) {
+        if ("gps".equals(provider)) return FixRingBuffer.PROVIDER_GPS;
+        if ("network".equals(provider)) return FixRingBuffer.PROVIDER_NETWORK;
+        return FixRingBuffer.PROVIDER_OTHER;
+    }
+    
+    private static final class NoOpListener implements TripEngine.Listener {
+        @Override
+        public void onFixRecorded(double latitude, double longitude, float speed, float accuracy, long time) {}
+        
+        @Override
+        public void onGpsIntervalChanged(long intervalMillis) {}
+        
+        @Override
+        public void onAutoStop() {}
+    }
+}
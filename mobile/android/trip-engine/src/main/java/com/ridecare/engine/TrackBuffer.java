@@ -0,0 +1,115 @@
+package com.ridecare.engine;
+
+import java.util.Arrays;
+
+/**
+ * TrackBuffer.java
+ * 
+ * Columnar store for the fixes of a single ride.
+ * Each field lives in its own primitive array, split into fixed-size chunks,
+ * so appending a fix never boxes, never copies earlier points and only
+ * allocates once every CHUNK_SIZE points.
+ */
+public class TrackBuffer {
+    
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT; // 1024 points per chunk
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    
+    private double[][] latitudes = new double[4][];
+    private double[][] longitudes = new double[4][];
+    private float[][] speeds = new float[4][];     // m/s
+    private float[][] accuracies = new float[4][]; // meters
+    private long[][] times = new long[4][];        // epoch millis
+    
+    private int chunkCount = 0;
+    private int size = 0;
+    
+    public TrackBuffer() {
+        addChunk();
+    }
+    
+    /**
+     * Append a fix to the end of the track
+     */
+    public void append(double latitude, double longitude, float speed, float accuracy, long time) {
+        int chunk = size >>> CHUNK_SHIFT;
+        if (chunk == chunkCount) {
+            addChunk();
+        }
+        
+        int offset = size & CHUNK_MASK;
+        latitudes[chunk][offset] = latitude;
+        longitudes[chunk][offset] = longitude;
+        speeds[chunk][offset] = speed;
+        accuracies[chunk][offset] = accuracy;
+        times[chunk][offset] = time;
+        size++;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public double getLatitude(int index) {
+        checkIndex(index);
+        return latitudes[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+    
+    public double getLongitude(int index) {
+        checkIndex(index);
+        return longitudes[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+    
+    public float getSpeed(int index) {
+        checkIndex(index);
+        return speeds[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+    
+    public float getAccuracy(int index) {
+        checkIndex(index);
+        return accuracies[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+    
+    public long getTime(int index) {
+        checkIndex(index);
+        return times[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+    
+    /**
+     * Drop all points but keep the allocated chunks for reuse
+     */
+    public void clear() {
+        size = 0;
+    }
+    
+    // MARK: - Helper Methods
+    
+    private void addChunk() {
+        if (chunkCount == latitudes.length) {
+            int capacity = chunkCount * 2;
+            latitudes = Arrays.copyOf(latitudes, capacity);
+            longitudes = Arrays.copyOf(longitudes, capacity);
+            speeds = Arrays.copyOf(speeds, capacity);
+            accuracies = Arrays.copyOf(accuracies, capacity);
+            times = Arrays.copyOf(times, capacity);
+        }
+        
+        latitudes[chunkCount] = new double[CHUNK_SIZE];
+        longitudes[chunkCount] = new double[CHUNK_SIZE];
+        speeds[chunkCount] = new float[CHUNK_SIZE];
+        accuracies[chunkCount] = new float[CHUNK_SIZE];
+        times[chunkCount] = new long[CHUNK_SIZE];
+        chunkCount++;
+    }
+    
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.ridecare.engine;
+
+import java.util.Arrays;
+
+/**
+ * TrackCodec.java
+ * 
+ * On-device track compression for the trips.path column:
+ * - Douglas-Peucker simplification with a tolerance in meters
+ * - Delta + zigzag-varint encoding in the encoded polyline format
+ *   (precision 1e5), readable by any polyline decoder
+ */
+public final class TrackCodec {
+    
+    private static final double PRECISION = 1e5;
+    
+    private TrackCodec() {}
+    
+    /**
+     * Simplify and encode a track in one call
+     */
+    public static String encode(TrackBuffer track, double toleranceMeters) {
+        int[] keep = simplify(track, toleranceMeters);
+        return encode(track, keep, keep.length);
+    }
+    
+    /**
+     * Douglas-Peucker simplification.
+     * Returns the indices of the points to keep, in track order. Runs
+     * iteratively with a primitive stack, so long tracks cannot overflow.
+     */
+    public static int[] simplify(TrackBuffer track, double toleranceMeters) {
+        int size = track.size();
+        if (size <= 2) {
+            int[] all = new int[size];
+            for (int i = 0; i < size; i++) all[i] = i;
+            return all;
+        }
+        
+        // Project once to a local equirectangular plane (meters)
+        double[] x = new double[size];
+        double[] y = new double[size];
+        double originLat = track.getLatitude(0);
+        double originLng = track.getLongitude(0);
+        double metersPerDegLat = Math.toRadians(GeoMath.EARTH_RADIUS_METERS);
+        double metersPerDegLng = metersPerDegLat * Math.cos(Math.toRadians(originLat));
+        for (int i = 0; i < size; i++) {
+            x[i] = (track.getLongitude(i) - originLng) * metersPerDegLng;
+            y[i] = (track.getLatitude(i) - originLat) * metersPerDegLat;
+        }
+        
+        boolean[] keep = new boolean[size];
+        keep[0] = true;
+        keep[size - 1] = true;
+        int kept = 2;
+        
+        double toleranceSq = toleranceMeters * toleranceMeters;
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = size - 1;
+        
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            
+            double maxDistSq = 0;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                double distSq = segmentDistanceSq(x[i], y[i], x[first], y[first], x[last], y[last]);
+                if (distSq > maxDistSq) {
+                    maxDistSq = distSq;
+                    index = i;
+                }
+            }
+            
+            if (index != -1 && maxDistSq > toleranceSq) {
+                keep[index] = true;
+                kept++;
+                if (top + 4 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[top++] = first;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = last;
+            }
+        }
+        
+        int[] indices = new int[kept];
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (keep[i]) indices[n++] = i;
+        }
+        return indices;
+    }
+    
+    /**
+     * Encode the given points of a track as a polyline
+     */
+    public static String encode(TrackBuffer track, int[] indices, int count) {
+        // Typical fixes need 6-8 characters per point
+        StringBuilder out = new StringBuilder(count * 8);
+        long prevLat = 0;
+        long prevLng = 0;
+        for (int i = 0; i < count; i++) {
+            long lat = Math.round(track.getLatitude(indices[i]) * PRECISION);
+            long lng = Math.round(track.getLongitude(indices[i]) * PRECISION);
+            writeValue(out, lat - prevLat);
+            writeValue(out, lng - prevLng);
+            prevLat = lat;
+            prevLng = lng;
+        }
+        return out.toString();
+    }
+    
+    /**
+     * Decode a polyline into interleaved [lat0, lng0, lat1, lng1, ...]
+     */
+    public static double[] decode(String encoded) {
+        // Every value ends with a character below the continuation bit
+        int values = 0;
+        for (int i = 0; i < encoded.length(); i++) {
+            int b = digit(encoded, i);
+            if (b < 0x20) values++;
+        }
+        if (values % 2 != 0) {
+            throw new IllegalArgumentException("Truncated polyline");
+        }
+        
+        double[] coords = new double[values];
+        int index = 0;
+        long lat = 0;
+        long lng = 0;
+        for (int n = 0; n < values; n += 2) {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = encoded.charAt(index++) - 63;
+                value |= (long) (b & 0x1f) << shift;
+                shift += 5;
+            } while (b >= 0x20);
+            lat += (value >>> 1) ^ -(value & 1);
+            
+            value = 0;
+            shift = 0;
+            do {
+                b = encoded.charAt(index++) - 63;
+                value |= (long) (b & 0x1f) << shift;
+                shift += 5;
+            } while (b >= 0x20);
+            lng += (value >>> 1) ^ -(value & 1);
+            
+            coords[n] = lat / PRECISION;
+            coords[n + 1] = lng / PRECISION;
+        }
+        return coords;
+    }
+    
+    /**
+     * Receives decoded points one at a time
+     */
+    public interface PointVisitor {
+        void onPoint(double latitude, double longitude);
+    }
+    
+    /**
+     * Decode a polyline without materializing it, so paths of any length
+     * can be streamed (e.g. into an export). Returns the number of points.
+     */
+    public static int decode(CharSequence encoded, PointVisitor visitor) {
+        int length = encoded.length();
+        int index = 0;
+        int points = 0;
+        long lat = 0;
+        long lng = 0;
+        while (index < length) {
+            long value = 0;
+            int shift = 0;
+            int b;
+            do {
+                if (index >= length) throw new IllegalArgumentException("Truncated polyline");
+                b = digit(encoded, index++);
+                value |= (long) (b & 0x1f) << shift;
+                shift += 5;
+            } while (b >= 0x20);
+            lat += (value >>> 1) ^ -(value & 1);
+            
+            value = 0;
+            shift = 0;
+            do {
+                if (index >= length) throw new IllegalArgumentException("Truncated polyline");
+                b = digit(encoded, index++);
+                value |= (long) (b & 0x1f) << shift;
+                shift += 5;
+            } while (b >= 0x20);
+            lng += (value >>> 1) ^ -(value & 1);
+            
+            visitor.onPoint(lat / PRECISION, lng / PRECISION);
+            points++;
+        }
+        return points;
+    }
+    
+    // MARK: - Helper Methods
+    
+    /**
+     * 6-bit chunk of the character at index; polylines use only '?' to '~',
+     * so anything else (JSON, base64) is rejected rather than decoded to noise
+     */
+    private static int digit(CharSequence encoded, int index) {
+        int b = encoded.charAt(index) - 63;
+        if (b < 0 || b > 0x3f) {
+            throw new IllegalArgumentException("Not a polyline: character " + (int) encoded.charAt(index) + " at " + index);
+        }
+        return b;
+    }
+    
+    private static void writeValue(StringBuilder out, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while (zigzag >= 0x20) {
+            out.append((char) ((0x20 | (zigzag & 0x1f)) + 63));
+            zigzag >>>= 5;
+        }
+        out.append((char) (zigzag + 63));
+    }
+    
+    private static double segmentDistanceSq(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : ((px - ax) * dx + (py - ay) * dy) / lengthSq;
+        if (t < 0) t = 0;
+        else if (t > 1) t = 1;
+        
+        double cx = ax + t * dx - px;
+        double cy = ay + t * dy - py;
+        return cx * cx + cy * cy;
+    }
+}
@@ -0,0 +1,285 @@
+package com.ridecare.engine;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * TrackJournal.java
+ * 
+ * Append-only, memory-mapped journal of the fixes of the ride in progress.
+ * 
+ * The file is a 128 byte header followed by fixed-size 32 byte records.
+ * Records are written straight into a mapped segment, so a fix survives a
+ * process kill without a syscall; the segment is only forced to disk every
+ * SYNC_INTERVAL of ride time, or when a new segment is mapped. The header
+ * also carries the id of the bike being ridden, so a resumed trip is
+ * stored for the right bike.
+ */
+public class TrackJournal implements Closeable {
+    
+    private static final int MAGIC = 0x52435452; // "RCTR"
+    private static final int VERSION = 2;
+    
+    static final int HEADER_SIZE = 128;     // magic(4) version(4) startTime(8) bikeIdLength(2) bikeId
+    static final int RECORD_SIZE = 32;      // lat(8) lng(8) speed(4) accuracy(4) time(8)
+    public static final int MAX_BIKE_ID_BYTES = HEADER_SIZE - 18; // UTF-8
+    private static final int BIKE_ID_OFFSET = 16;
+    
+    private static final int SEGMENT_RECORDS = 2048; // 64 KB per mapped segment
+    private static final long SYNC_INTERVAL = 30000; // fsync at most every 30 seconds of ride time
+    
+    private final File file;
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long startTime;
+    private String bikeId;
+    
+    private MappedByteBuffer segment;
+    private long segmentStart;
+    private int recordCount;
+    private long lastSyncTime;
+    private boolean dirty = false;
+    
+    private TrackJournal(
+        File file,
+        RandomAccessFile raf,
+        long startTime,
+        String bikeId,
+        int recordCount
+    ) throws IOException {
+        this.file = file;
+        this.raf = raf;
+        this.channel = raf.getChannel();
+        this.startTime = startTime;
+        this.bikeId = bikeId;
+        this.recordCount = recordCount;
+        this.lastSyncTime = startTime;
+        mapSegment();
+    }
+    
+    /**
+     * Start a new journal, replacing any previous one at the same path.
+     * bikeId may be null when no bike is selected yet.
+     */
+    public static TrackJournal create(File file, long startTime, String bikeId) throws IOException {
+        byte[] encodedBikeId = encodeBikeId(bikeId);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(startTime);
+            header.putShort((short) encodedBikeId.length).put(encodedBikeId);
+            header.position(HEADER_SIZE).flip();
+            raf.getChannel().write(header, 0);
+            raf.getChannel().force(true);
+            return new TrackJournal(file, raf, startTime, bikeId, 0);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Reopen an interrupted journal, replaying every complete record into the
+     * given track, and continue appending after the last one. Statistics and
+     * segments are re-derived from the track (TripEngine.resumeTrip).
+     */
+    public static TrackJournal resume(File file, TrackBuffer track) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Journal header is truncated");
+            }
+            
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a track journal: " + file);
+            }
+            long startTime = header.getLong();
+            String bikeId = decodeBikeId(header);
+            
+            // Trailing space is zero-filled by the mapping; the first record
+            // without a timestamp marks the end of the journal
+            int count = 0;
+            long available = (size - HEADER_SIZE) / RECORD_SIZE;
+            if (available > 0) {
+                ByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, available * RECORD_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+                while (count < available) {
+                    int base = count * RECORD_SIZE;
+                    long time = records.getLong(base + 24);
+                    if (time == 0) break;
+                    
+                    double latitude = records.getDouble(base);
+                    double longitude = records.getDouble(base + 8);
+                    float speed = records.getFloat(base + 16);
+                    float accuracy = records.getFloat(base + 20);
+                    track.append(latitude, longitude, speed, accuracy, time);
+                    count++;
+                }
+            }
+            
+            return new TrackJournal(file, raf, startTime, bikeId, count);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Append one fix; only touches the mapped segment
+     */
+    public void append(double latitude, double longitude, float speed, float accuracy, long time) throws IOException {
+        if (!segment.hasRemaining()) {
+            segment.force();
+            segmentStart += (long) SEGMENT_RECORDS * RECORD_SIZE;
+            mapSegment();
+        }
+        
+        segment.putDouble(latitude);
+        segment.putDouble(longitude);
+        segment.putFloat(speed);
+        segment.putFloat(accuracy);
+        segment.putLong(time);
+        recordCount++;
+        dirty = true;
+        
+        if (time - lastSyncTime >= SYNC_INTERVAL) {
+            sync(time);
+        }
+    }
+    
+    public long getStartTime() {
+        return startTime;
+    }
+    
+    public int getRecordCount() {
+        return recordCount;
+    }
+    
+    /**
+     * Bike the ride is recorded for; null if none was selected
+     */
+    public String getBikeId() {
+        return bikeId;
+    }
+    
+    /**
+     * The rider switched bikes mid-ride; rewrites the header in place
+     */
+    public void setBikeId(String bikeId) throws IOException {
+        byte[] encoded = encodeBikeId(bikeId);
+        ByteBuffer slot = ByteBuffer.allocate(HEADER_SIZE - BIKE_ID_OFFSET).order(ByteOrder.LITTLE_ENDIAN);
+        slot.putShort((short) encoded.length).put(encoded);
+        slot.position(slot.capacity()).flip();
+        channel.write(slot, BIKE_ID_OFFSET);
+        channel.force(false);
+        this.bikeId = bikeId;
+    }
+    
+    /**
+     * Force outstanding records to disk
+     */
+    public void sync(long now) {
+        if (dirty) {
+            segment.force();
+            dirty = false;
+        }
+        lastSyncTime = now;
+    }
+    
+    /**
+     * Trim the preallocated tail, move the journal to its final location and
+     * close it. The result is a compact trip file with the same layout.
+     */
+    public File seal(File tripFile) throws IOException {
+        segment.force();
+        channel.truncate(HEADER_SIZE + (long) recordCount * RECORD_SIZE);
+        channel.force(true);
+        close();
+        
+        File parent = tripFile.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        if (!file.renameTo(tripFile)) {
+            throw new IOException("Cannot move journal to " + tripFile);
+        }
+        return tripFile;
+    }
+    
+    /**
+     * Flush and close without sealing, so the journal can be resumed later
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            if (dirty) {
+                segment.force();
+                dirty = false;
+            }
+            raf.close();
+        }
+    }
+    
+    /**
+     * Delete an abandoned journal
+     */
+    public static boolean discard(File file) {
+        return !file.exists() || file.delete();
+    }
+    
+    // MARK: - Helper Methods
+    
+    private static byte[] encodeBikeId(String bikeId) {
+        if (bikeId == null) return new byte[0];
+        
+        byte[] encoded = bikeId.getBytes(StandardCharsets.UTF_8);
+        if (encoded.length == 0 || encoded.length > MAX_BIKE_ID_BYTES) {
+            throw new IllegalArgumentException("Bike id must be 1 to " + MAX_BIKE_ID_BYTES + " bytes: " + bikeId);
+        }
+        return encoded;
+    }
+    
+    private static String decodeBikeId(ByteBuffer header) throws IOException {
+        int length = header.getShort();
+        if (length < 0 || length > MAX_BIKE_ID_BYTES) {
+            throw new IOException("Corrupt bike id in journal header");
+        }
+        if (length == 0) return null;
+        
+        byte[] encoded = new byte[length];
+        header.get(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+    
+    private void mapSegment() throws IOException {
+        long position = HEADER_SIZE + (long) recordCount * RECORD_SIZE;
+        if (segment == null) {
+            segmentStart = position;
+        }
+        segment = channel.map(
+            FileChannel.MapMode.READ_WRITE,
+            segmentStart,
+            (long) SEGMENT_RECORDS * RECORD_SIZE
+        );
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segment.position((int) (position - segmentStart));
+    }
+}
@@ -0,0 +1,196 @@
+package com.ridecare.engine;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TrackingMetrics.java
+ * 
+ * Counters and latency histograms for trip recording, meant to explain
+ * battery drain and dropped points in the field. Every recorder is a single
+ * atomic update, so the location looper, the processing thread and the
+ * bridge can all record without coordinating; toJson() reads a best-effort
+ * view at any time.
+ * 
+ * Battery proxies are the things that keep the phone awake: location
+ * callbacks, processing wake-ups, GPS re-registrations and notification posts.
+ */
+public class TrackingMetrics {
+    
+    private static final long MAX_INTERVAL_MILLIS = 3600000;     // 1 hour
+    private static final long MAX_PROCESSING_MICROS = 10000000;  // 10 seconds
+    private static final long MAX_PAYLOAD_BYTES = 16 * 1024 * 1024;
+    
+    private final LatencyHistogram fixInterval = new LatencyHistogram(MAX_INTERVAL_MILLIS);
+    private final LatencyHistogram handoffDelay = new LatencyHistogram(MAX_PROCESSING_MICROS);
+    private final LatencyHistogram processingTime = new LatencyHistogram(MAX_PROCESSING_MICROS);
+    private final LatencyHistogram bridgePayload = new LatencyHistogram(MAX_PAYLOAD_BYTES);
+    
+    private final AtomicLong fixesReceived = new AtomicLong();
+    private final AtomicLong providerSwitches = new AtomicLong();
+    private final AtomicLong rejectedFixes = new AtomicLong();
+    private final AtomicLong droppedFixes = new AtomicLong();
+    private final AtomicLong wakeups = new AtomicLong();
+    private final AtomicLong gpsRegistrations = new AtomicLong();
+    private final AtomicLong notificationsPosted = new AtomicLong();
+    private final AtomicLong notificationsSuppressed = new AtomicLong();
+    private final AtomicLong bridgeBytes = new AtomicLong();
+    
+    private final long createdAt;
+    
+    // Written only by the location looper
+    private long lastFixArrival = Long.MIN_VALUE;
+    private byte lastProvider = -1;
+    
+    public TrackingMetrics(long now) {
+        this.createdAt = now;
+    }
+    
+    /**
+     * A fix arrived from the platform (location looper only)
+     */
+    public void recordFixArrival(byte provider, long now) {
+        fixesReceived.incrementAndGet();
+        if (lastFixArrival != Long.MIN_VALUE) {
+            fixInterval.record(now - lastFixArrival);
+        }
+        if (lastProvider >= 0 && provider != lastProvider) {
+            providerSwitches.incrementAndGet();
+        }
+        lastFixArrival = now;
+        lastProvider = provider;
+    }
+    
+    /**
+     * Time from handing fixes to the processing thread until it picked them up
+     */
+    public void recordHandoff(long nanos) {
+        wakeups.incrementAndGet();
+        handoffDelay.record(nanos / 1000);
+    }
+    
+    /**
+     * Time spent processing one fix
+     */
+    public void recordProcessing(long nanos) {
+        processingTime.record(nanos / 1000);
+    }
+    
+    /**
+     * Size of one payload sent over the React Native bridge
+     */
+    public void recordBridgePayload(long bytes) {
+        bridgePayload.record(bytes);
+        bridgeBytes.addAndGet(bytes);
+    }
+    
+    public void countRejectedFix() {
+        rejectedFixes.incrementAndGet();
+    }
+    
+    public void countGpsRegistration() {
+        gpsRegistrations.incrementAndGet();
+    }
+    
+    /**
+     * Counters owned by other components (ring buffer, notification
+     * publisher) are copied in before reporting
+     */
+    public void updateExternalCounts(long dropped, long posted, long suppressed) {
+        droppedFixes.set(dropped);
+        notificationsPosted.set(posted);
+        notificationsSuppressed.set(suppressed);
+    }
+    
+    public LatencyHistogram getFixInterval() {
+        return fixInterval;
+    }
+    
+    public LatencyHistogram getHandoffDelay() {
+        return handoffDelay;
+    }
+    
+    public LatencyHistogram getProcessingTime() {
+        return processingTime;
+    }
+    
+    public LatencyHistogram getBridgePayload() {
+        return bridgePayload;
+    }
+    
+    public long getFixesReceived() {
+        return fixesReceived.get();
+    }
+    
+    public long getProviderSwitches() {
+        return providerSwitches.get();
+    }
+    
+    public long getRejectedFixes() {
+        return rejectedFixes.get();
+    }
+    
+    public long getDroppedFixes() {
+        return droppedFixes.get();
+    }
+    
+    public long getWakeups() {
+        return wakeups.get();
+    }
+    
+    public long getGpsRegistrations() {
+        return gpsRegistrations.get();
+    }
+    
+    public long getNotificationsPosted() {
+        return notificationsPosted.get();
+    }
+    
+    public long getNotificationsSuppressed() {
+        return notificationsSuppressed.get();
+    }
+    
+    public long getBridgeBytes() {
+        return bridgeBytes.get();
+    }
+    
+    /**
+     * Current values as one JSON object, for the periodic dump
+     */
+    public String toJson(long now) {
+        StringBuilder json = new StringBuilder(1024);
+        json.append('{');
+        appendField(json, "uptimeMillis", now - createdAt).append(',');
+        appendField(json, "fixesReceived", fixesReceived.get()).append(',');
+        appendField(json, "providerSwitches", providerSwitches.get()).append(',');
+        appendField(json, "rejectedFixes", rejectedFixes.get()).append(',');
+        appendField(json, "droppedFixes", droppedFixes.get()).append(',');
+        appendField(json, "wakeups", wakeups.get()).append(',');
+        appendField(json, "gpsRegistrations", gpsRegistrations.get()).append(',');
+        appendField(json, "notificationsPosted", notificationsPosted.get()).append(',');
+        appendField(json, "notificationsSuppressed", notificationsSuppressed.get()).append(',');
+        appendField(json, "bridgeBytes", bridgeBytes.get()).append(',');
+        appendHistogram(json, "fixIntervalMillis", fixInterval).append(',');
+        appendHistogram(json, "handoffMicros", handoffDelay).append(',');
+        appendHistogram(json, "processingMicros", processingTime).append(',');
+        appendHistogram(json, "bridgePayloadBytes", bridgePayload);
+        return json.append('}').toString();
+    }
+    
+    // MARK: - Helper Methods
+    
+    private static StringBuilder appendField(StringBuilder json, String name, long value) {
+        return json.append('"').append(name).append("\":").append(value);
+    }
+    
+    private static StringBuilder appendHistogram(StringBuilder json, String name, LatencyHistogram histogram) {
+        json.append('"').append(name).append("\":{");
+        appendField(json, "count", histogram.getCount()).append(',');
+        json.append("\"mean\":").append(String.format(Locale.US, "%.1f", histogram.getMean())).append(',');
+        appendField(json, "p50", histogram.getValueAtPercentile(50)).append(',');
+        appendField(json, "p90", histogram.getValueAtPercentile(90)).append(',');
+        appendField(json, "p99", histogram.getValueAtPercentile(99)).append(',');
+        appendField(json, "max", histogram.getMax());
+        return json.append('}');
+    }
+}
@@ -0,0 +1,136 @@
+package com.ridecare.engine;
+
+/**
+ * TripAccumulator.java
+ * 
+ * Running trip statistics updated in constant time per fix, so the
+ * notification and the trip summary never have to rescan the track.
+ */
+public class TripAccumulator {
+    
+    // Below this speed a fix does not count towards moving time (same as auto-stop)
+    public static final float MOVING_SPEED_THRESHOLD = 1.0f; // 3.6 km/h in m/s
+    
+    private int pointCount = 0;
+    private double distance = 0;   // meters
+    private float maxSpeed = 0;    // m/s
+    private long movingTime = 0;   // millis
+    private long firstTime = 0;
+    private long lastTime = 0;
+    
+    private double lastLatitude;
+    private double lastLongitude;
+    
+    private double minLatitude = Double.NaN;
+    private double maxLatitude = Double.NaN;
+    private double minLongitude = Double.NaN;
+    private double maxLongitude = Double.NaN;
+    
+    /**
+     * Fold one fix into the running statistics
+     */
+    public void add(double latitude, double longitude, float speed, long time) {
+        double step = pointCount > 0
+            ? GeoMath.distanceMeters(lastLatitude, lastLongitude, latitude, longitude)
+            : 0;
+        add(latitude, longitude, speed, time, step);
+    }
+    
+    /**
+     * Fold one fix whose distance from the previous fix is already known.
+     * A negative step (an excluded GPS gap) adds neither distance nor moving time.
+     */
+    public void add(double latitude, double longitude, float speed, long time, double step) {
+        if (pointCount == 0) {
+            firstTime = time;
+            minLatitude = maxLatitude = latitude;
+            minLongitude = maxLongitude = longitude;
+        } else {
+            long elapsed = time - lastTime;
+            if (step >= 0) {
+                distance += step;
+                if (elapsed > 0 && speed >= MOVING_SPEED_THRESHOLD) {
+                    movingTime += elapsed;
+                }
+            }
+            
+            if (latitude < minLatitude) minLatitude = latitude;
+            if (latitude > maxLatitude) maxLatitude = latitude;
+            if (longitude < minLongitude) minLongitude = longitude;
+            if (longitude > maxLongitude) maxLongitude = longitude;
+        }
+        
+        if (speed > maxSpeed) maxSpeed = speed;
+        
+        lastLatitude = latitude;
+        lastLongitude = longitude;
+        lastTime = time;
+        pointCount++;
+    }
+    
+    public void reset() {
+        pointCount = 0;
+        distance = 0;
+        maxSpeed = 0;
+        movingTime = 0;
+        firstTime = 0;
+        lastTime = 0;
+        minLatitude = maxLatitude = Double.NaN;
+        minLongitude = maxLongitude = Double.NaN;
+    }
+    
+    public int getPointCount() {
+        return pointCount;
+    }
+    
+    /**
+     * Total distance in meters
+     */
+    public double getDistance() {
+        return distance;
+    }
+    
+    /**
+     * Maximum reported speed in m/s
+     */
+    public float getMaxSpeed() {
+        return maxSpeed;
+    }
+    
+    /**
+     * Average speed over moving time in m/s
+     */
+    public double getAverageSpeed() {
+        return movingTime > 0 ? distance / (movingTime / 1000.0) : 0;
+    }
+    
+    /**
+     * Time spent above MOVING_SPEED_THRESHOLD in millis
+     */
+    public long getMovingTime() {
+        return movingTime;
+    }
+    
+    /**
+     * Time between the first and the latest fix in millis
+     */
+    public long getElapsedTime() {
+        return pointCount > 0 ? lastTime - firstTime : 0;
+    }
+    
+    public double getMinLatitude() {
+        return minLatitude;
+    }
+    
+    public double getMaxLatitude() {
+        return maxLatitude;
+    }
+    
+    public double getMinLongitude() {
+        return minLongitude;
+    }
+    
+    public double getMaxLongitude() {
+        return maxLongitude;
+    }
+}
@@ -0,0 +1,280 @@
+package com.ridecare.engine;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * TripEngine.java
+ * 
+ * Platform-independent trip recording logic: fix filtering, track and
+ * statistics, ride segmentation, GPS interval selection and auto-stop. Auto-start lives in
+ * MotionDetector.
+ * 
+ * The engine never reads a clock; every call takes the caller's monotonic
+ * time, so recorded traces replay deterministically on a plain JVM.
+ * 
+ * Single writer: every method except getPublished() must be called from
+ * the one thread that owns the engine. That thread calls publish() after
+ * each batch; other threads only read the published TripSnapshot, so they
+ * never block the GPS path or observe a half-applied fix.
+ */
+public class TripEngine {
+    
+    /**
+     * Side effects the platform adapter carries out
+     */
+    public interface Listener {
+        /** A fix passed the filter and was added to the track */
+        void onFixRecorded(double latitude, double longitude, float speed, float accuracy, long time);
+        
+        /** The GPS band changed; re-register the GPS provider at this interval */
+        void onGpsIntervalChanged(long intervalMillis);
+        
+        /** Stationary for too long while tracking; the adapter should finish the trip */
+        void onAutoStop();
+    }
+    
+    // Configuration
+    public static final long AUTO_STOP_DURATION = 600000; // 10 minutes
+    public static final float STATIONARY_SPEED = 1.0f; // 3.6 km/h in m/s
+    public static final int RECENT_POINTS = 60; // Breadcrumb length in snapshots
+    
+    private static final long NOT_STARTED = Long.MIN_VALUE; // Callers' clocks may start at 0
+    
+    private final Listener listener;
+    private final FixFilter filter = new FixFilter();
+    private final GpsScheduler scheduler = new GpsScheduler();
+    
+    private TrackBuffer track = new TrackBuffer();
+    private TripAccumulator stats = new TripAccumulator();
+    private RideSegmenter segments = new RideSegmenter(RideSegmenter.GapPolicy.INTERPOLATE);
+    private RideSegmenter.GapPolicy gapPolicy = RideSegmenter.GapPolicy.INTERPOLATE;
+    private boolean autoStopEnabled = true;
+    private final RecentTrack recent = new RecentTrack(RECENT_POINTS);
+    private Breadcrumb breadcrumb = Breadcrumb.EMPTY;
+    private int breadcrumbTrackSize = -1; // Track size the breadcrumb was copied at
+    private boolean tracking = false;
+    private long startTime;
+    private float lastSpeed;
+    private long lastFixTime;
+    
+    private long stationaryStartTime = NOT_STARTED;
+    
+    private final AtomicReference<TripSnapshot> published = new AtomicReference<>(TripSnapshot.IDLE);
+    
+    public TripEngine(Listener listener) {
+        this.listener = listener;
+    }
+    
+    /**
+     * Begin a new trip
+     */
+    public void startTrip(long startTime, long now) {
+        track.clear();
+        stats.reset();
+        segments.reset();
+        recent.clear();
+        beginTracking(startTime, now);
+    }
+    
+    /**
+     * Continue a trip whose points were already replayed into getTrack()
+     * (e.g. from a TrackJournal). Segments and statistics are re-derived
+     * from the track, so gaps the policy excludes stay out of the distance.
+     */
+    public void resumeTrip(long startTime, long now) {
+        recent.fill(track);
+        segments.reset();
+        stats.reset();
+        for (int i = 0; i < track.size(); i++) {
+            double latitude = track.getLatitude(i);
+            double longitude = track.getLongitude(i);
+            float speed = track.getSpeed(i);
+            long time = track.getTime(i);
+            stats.add(latitude, longitude, speed, time, segments.add(i, latitude, longitude, speed, time));
+        }
+        beginTracking(startTime, now);
+    }
+    
+    /**
+     * End the trip and hand its track and statistics to the caller
+     */
+    public TripRecord finishTrip(long endTime) {
+        TripRecord record = new TripRecord(startTime, endTime, track, stats, segments);
+        
+        // The record now owns the finished track, stats and segments
+        track = new TrackBuffer();
+        stats = new TripAccumulator();
+        segments = new RideSegmenter(gapPolicy);
+        tracking = false;
+        stationaryStartTime = NOT_STARTED;
+        recent.clear();
+        lastSpeed = 0;
+        lastFixTime = 0;
+        published.set(TripSnapshot.IDLE);
+        return record;
+    }
+    
+    /**
+     * Process one fix. Returns true if it was recorded into the track.
+     */
+    public boolean onFix(
+        double latitude,
+        double longitude,
+        float speed,
+        float accuracy,
+        long time,
+        byte provider,
+        long now
+    ) {
+        if (!tracking) {
+            return false;
+        }
+        
+        // Drop stale, inaccurate and outlying fixes before they reach the track
+        boolean hasSpeed = provider == FixRingBuffer.PROVIDER_GPS;
+        if (filter.filter(latitude, longitude, speed, accuracy, time, hasSpeed) != FixFilter.ACCEPTED) {
+            return false;
+        }
+        latitude = filter.getLatitude();
+        longitude = filter.getLongitude();
+        speed = filter.getSpeed();
+        lastSpeed = speed;
+        lastFixTime = time;
+        
+        track.append(latitude, longitude, speed, accuracy, time);
+        double step = segments.add(track.size() - 1, latitude, longitude, speed, time);
+        stats.add(latitude, longitude, speed, time, step);
+        recent.append(latitude, longitude, speed, time);
+        listener.onFixRecorded(latitude, longitude, speed, accuracy, time);
+        
+        // Adjust update interval on real speed band changes (network fixes carry no usable speed)
+        if (hasSpeed && scheduler.update(speed, now)) {
+            listener.onGpsIntervalChanged(scheduler.getIntervalMillis());
+        }
+        
+        checkAutoStop(speed, now);
+        return true;
+    }
+    
+    /**
+     * Immutable view of the current state for other threads
+     */
+    public TripSnapshot snapshot() {
+        if (!tracking) {
+            return TripSnapshot.IDLE;
+        }
+        return new TripSnapshot(
+            true,
+            startTime,
+            track.size(),
+            stats.getDistance(),
+            lastSpeed,
+            stats.getMaxSpeed(),
+            lastFixTime,
+            filter.getRejectedCount(),
+            stats.getMovingTime(),
+            stats.getAverageSpeed(),
+            currentBreadcrumb()
+        );
+    }
+    
+    /**
+     * Make the current state visible to other threads; returns what was published
+     */
+    public TripSnapshot publish() {
+        TripSnapshot current = snapshot();
+        published.set(current);
+        return current;
+    }
+    
+    /**
+     * Latest published state; safe to call from any thread
+     */
+    public TripSnapshot getPublished() {
+        return published.get();
+    }
+    
+    /**
+     * How the distance across GPS gaps is counted; applies from the next trip
+     */
+    public void setGapPolicy(RideSegmenter.GapPolicy policy) {
+        gapPolicy = policy;
+        if (!tracking) {
+            segments = new RideSegmenter(policy);
+        }
+    }
+    
+    /**
+     * With auto-stop off, long stops become paused segments of one trip
+     * (e.g. a multi-day tour) instead of ending it
+     */
+    public void setAutoStopEnabled(boolean enabled) {
+        autoStopEnabled = enabled;
+        stationaryStartTime = NOT_STARTED;
+    }
+    
+    public boolean isTracking() {
+        return tracking;
+    }
+    
+    public long getStartTime() {
+        return startTime;
+    }
+    
+    public TrackBuffer getTrack() {
+        return track;
+    }
+    
+    public TripAccumulator getStats() {
+        return stats;
+    }
+    
+    public RideSegmenter getSegments() {
+        return segments;
+    }
+    
+    public FixFilter getFilter() {
+        return filter;
+    }
+    
+    public GpsScheduler getScheduler() {
+        return scheduler;
+    }
+    
+    // MARK: - Helper Methods
+    
+    /**
+     * Copy the recent points only when new ones were recorded
+     */
+    private Breadcrumb currentBreadcrumb() {
+        if (track.size() != breadcrumbTrackSize) {
+            breadcrumb = recent.toBreadcrumb(RECENT_POINTS);
+            breadcrumbTrackSize = track.size();
+        }
+        return breadcrumb;
+    }
+    
+    private void beginTracking(long startTime, long now) {
+        this.startTime = startTime;
+        tracking = true;
+        breadcrumbTrackSize = -1; // Force a fresh copy for the new trip
+        stationaryStartTime = NOT_STARTED;
+        filter.reset();
+        scheduler.reset(now);
+    }
+    
+    private void checkAutoStop(float speed, long now) {
+        if (!autoStopEnabled) return;
+        
+        if (speed < STATIONARY_SPEED) {
+            if (stationaryStartTime == NOT_STARTED) {
+                stationaryStartTime = now;
+            } else if (now - stationaryStartTime > AUTO_STOP_DURATION) {
+                stationaryStartTime = NOT_STARTED;
+                listener.onAutoStop();
+            }
+        } else {
+            stationaryStartTime = NOT_STARTED;
+        }
+    }
+}
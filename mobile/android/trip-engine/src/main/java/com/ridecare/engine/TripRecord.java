@@ -0,0 +1,33 @@
+package com.ridecare.engine;
+
+/**
+ * TripRecord.java
+ * 
+ * A finished trip as produced by TripEngine.finishTrip()
+ */
+public final class TripRecord {
+    
+    public final long startTime; // epoch millis
+    public final long endTime;   // epoch millis
+    public final TrackBuffer track;
+    public final TripAccumulator stats;
+    public final RideSegmenter segments; // Index ranges into track
+    
+    public TripRecord(
+        long startTime,
+        long endTime,
+        TrackBuffer track,
+        TripAccumulator stats,
+        RideSegmenter segments
+    ) {
+        this.startTime = startTime;
+        this.endTime = endTime;
+        this.track = track;
+        this.stats = stats;
+        this.segments = segments;
+    }
+    
+    public long getDuration() {
+        return endTime - startTime;
+    }
+}
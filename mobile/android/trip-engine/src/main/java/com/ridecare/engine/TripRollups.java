@@ -0,0 +1,409 @@
+package com.ridecare.engine;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TripRollups.java
+ * 
+ * Pre-aggregated trip totals per bike in daily, weekly (Monday-based) and
+ * monthly buckets of the local calendar, plus a bounded LRU of recent trip
+ * summaries. Each series is stored column-wise (sorted bucket keys with
+ * parallel km/ride/time arrays), so "km this week" or a 30-day chart is a
+ * binary search and a scan over buckets, never over trips.
+ * 
+ * Trips are added incrementally as they are stored; a trip counts for the
+ * bucket its start time falls in. A full history is loaded with addDay()
+ * (one row per bike and local day) and addRecent().
+ */
+public class TripRollups {
+    
+    public static final int DAY = 0;
+    public static final int WEEK = 1;
+    public static final int MONTH = 2;
+    
+    public static final int DEFAULT_RECENT_CAPACITY = 50;
+    
+    /**
+     * One trip without its path
+     */
+    public static final class TripSummary {
+        public final String id;
+        public final String bikeId;
+        public final long startTime;
+        public final long endTime;
+        public final double distanceKm;
+        public final double avgSpeedKmh;
+        public final double maxSpeedKmh;
+        
+        public TripSummary(
+            String id,
+            String bikeId,
+            long startTime,
+            long endTime,
+            double distanceKm,
+            double avgSpeedKmh,
+            double maxSpeedKmh
+        ) {
+            this.id = id;
+            this.bikeId = bikeId;
+            this.startTime = startTime;
+            this.endTime = endTime;
+            this.distanceKm = distanceKm;
+            this.avgSpeedKmh = avgSpeedKmh;
+            this.maxSpeedKmh = maxSpeedKmh;
+        }
+    }
+    
+    /**
+     * Reusable query output, one entry per non-empty bucket in time order
+     */
+    public static final class Buckets {
+        public int count;
+        public long[] start = new long[0]; // Bucket start, epoch millis
+        public double[] km = new double[0];
+        public int[] rides = new int[0];
+        public long[] rideTime = new long[0]; // millis
+        
+        void ensureCapacity(int capacity) {
+            if (start.length >= capacity) return;
+            start = new long[capacity];
+            km = new double[capacity];
+            rides = new int[capacity];
+            rideTime = new long[capacity];
+        }
+    }
+    
+    /**
+     * Reusable sum over a range of buckets
+     */
+    public static final class Totals {
+        public double km;
+        public int rides;
+        public long rideTime; // millis
+    }
+    
+    private final ZoneId zone;
+    private final int recentCapacity;
+    
+    // Keyed by bike id; the null key holds the sum over all bikes
+    private final Map<String, Series[]> series = new HashMap<>();
+    
+    private final LinkedHashMap<String, TripSummary> recent;
+    
+    public TripRollups(ZoneId zone) {
+        this(zone, DEFAULT_RECENT_CAPACITY);
+    }
+    
+    public TripRollups(ZoneId zone, final int recentCapacity) {
+        this.zone = zone;
+        this.recentCapacity = recentCapacity;
+        this.recent = new LinkedHashMap<String, TripSummary>(recentCapacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TripSummary> eldest) {
+                return size() > recentCapacity;
+            }
+        };
+    }
+    
+    // MARK: - Updates
+    
+    /**
+     * Count a stored trip. A trip whose id is still among the recent
+     * summaries replaces its earlier version instead of counting twice.
+     */
+    public synchronized void add(TripSummary trip) {
+        TripSummary previous = recent.remove(trip.id);
+        if (previous != null) {
+            accumulate(previous, -1);
+        }
+        accumulate(trip, 1);
+        recent.put(trip.id, trip);
+    }
+    
+    /**
+     * Uncount a deleted trip; only possible while it is a recent summary.
+     * Returns false if the caller has to rebuild instead.
+     */
+    public synchronized boolean remove(String tripId) {
+        TripSummary previous = recent.remove(tripId);
+        if (previous == null) return false;
+        
+        accumulate(previous, -1);
+        return true;
+    }
+    
+    /**
+     * Bulk load: the trips of one bike that started on a local day
+     * (LocalDate.toEpochDay())
+     */
+    public synchronized void addDay(String bikeId, long epochDay, double km, int rides, long rideTime) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        addToSeries(bikeId, date, km, rides, rideTime);
+        addToSeries(null, date, km, rides, rideTime);
+    }
+    
+    /**
+     * Bulk load: remember a trip already counted through addDay()
+     */
+    public synchronized void addRecent(TripSummary trip) {
+        recent.put(trip.id, trip);
+    }
+    
+    public synchronized void clear() {
+        series.clear();
+        recent.clear();
+    }
+    
+    // MARK: - Queries
+    
+    /**
+     * Non-empty buckets of a bike (null for all bikes) from the bucket
+     * containing from through the one containing to. Returns out.count.
+     */
+    public synchronized int query(String bikeId, int granularity, long from, long to, Buckets out) {
+        out.count = 0;
+        Series[] bike = series.get(bikeId);
+        if (bike == null) return 0;
+        
+        Series s = bike[granularity];
+        int first = firstIndex(s, granularity, from);
+        int last = endIndex(s, granularity, to);
+        out.ensureCapacity(last - first);
+        for (int i = first; i < last; i++) {
+            int n = out.count++;
+            out.start[n] = bucketStart(granularity, s.keys[i]);
+            out.km[n] = s.km[i];
+            out.rides[n] = s.rides[i];
+            out.rideTime[n] = s.rideTime[i];
+        }
+        return out.count;
+    }
+    
+    /**
+     * Sum of the same buckets query() returns
+     */
+    public synchronized Totals total(String bikeId, int granularity, long from, long to, Totals out) {
+        out.km = 0;
+        out.rides = 0;
+        out.rideTime = 0;
+        Series[] bike = series.get(bikeId);
+        if (bike == null) return out;
+        
+        Series s = bike[granularity];
+        int last = endIndex(s, granularity, to);
+        for (int i = firstIndex(s, granularity, from); i < last; i++) {
+            out.km += s.km[i];
+            out.rides += s.rides[i];
+            out.rideTime += s.rideTime[i];
+        }
+        return out;
+    }
+    
+    /**
+     * All-time totals of a bike (null for all bikes), summed over its months
+     */
+    public synchronized Totals lifetime(String bikeId, Totals out) {
+        return total(bikeId, MONTH, Long.MIN_VALUE, Long.MAX_VALUE, out);
+    }
+    
+    /**
+     * Bikes with at least one trip
+     */
+    public synchronized List<String> getBikeIds() {
+        List<String> ids = new ArrayList<>(series.size());
+        for (String id : series.keySet()) {
+            if (id != null) ids.add(id);
+        }
+        return ids;
+    }
+    
+    /**
+     * Most recent trips first, of one bike or all (null), at most limit
+     */
+    public synchronized List<TripSummary> getRecent(String bikeId, int limit) {
+        List<TripSummary> trips = new ArrayList<>(recent.size());
+        for (TripSummary trip : recent.values()) {
+            if (bikeId == null || bikeId.equals(trip.bikeId)) trips.add(trip);
+        }
+        Collections.sort(trips, new Comparator<TripSummary>() {
+            @Override
+            public int compare(TripSummary a, TripSummary b) {
+                return Long.compare(b.startTime, a.startTime);
+            }
+        });
+        return trips.size() > limit ? trips.subList(0, limit) : trips;
+    }
+    
+    /**
+     * A recent trip by id (refreshing it in the LRU), or null
+     */
+    public synchronized TripSummary getRecentTrip(String tripId) {
+        return recent.get(tripId);
+    }
+    
+    public ZoneId getZone() {
+        return zone;
+    }
+    
+    public int getRecentCapacity() {
+        return recentCapacity;
+    }
+    
+    /**
+     * Start of the local bucket containing time, epoch millis
+     */
+    public long bucketStart(int granularity, long time) {
+        return bucketStart(granularity, key(granularity, time));
+    }
+    
+    // MARK: - Helper Methods
+    
+    private void accumulate(TripSummary trip, int sign) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay(trip.startTime));
+        double km = sign * trip.distanceKm;
+        long rideTime = sign * Math.max(0, trip.endTime - trip.startTime);
+        addToSeries(trip.bikeId, date, km, sign, rideTime);
+        addToSeries(null, date, km, sign, rideTime);
+    }
+    
+    private void addToSeries(String bikeId, LocalDate date, double km, int rides, long rideTime) {
+        Series[] bike = series.get(bikeId);
+        if (bike == null) {
+            bike = new Series[] {new Series(), new Series(), new Series()};
+            series.put(bikeId, bike);
+        }
+        bike[DAY].add(dayKey(date), km, rides, rideTime);
+        bike[WEEK].add(weekKey(date), km, rides, rideTime);
+        bike[MONTH].add(monthKey(date), km, rides, rideTime);
+    }
+    
+    /**
+     * Range bounds; Long.MIN_VALUE and Long.MAX_VALUE leave that end open
+     */
+    private int firstIndex(Series s, int granularity, long from) {
+        return from == Long.MIN_VALUE ? 0 : s.lowerBound(key(granularity, from));
+    }
+    
+    private int endIndex(Series s, int granularity, long to) {
+        return to == Long.MAX_VALUE ? s.count : s.lowerBound(key(granularity, to) + 1);
+    }
+    
+    private long epochDay(long time) {
+        return Instant.ofEpochMilli(time).atZone(zone).toLocalDate().toEpochDay();
+    }
+    
+    private int key(int granularity, long time) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay(time));
+        switch (granularity) {
+            case DAY:
+                return dayKey(date);
+            case WEEK:
+                return weekKey(date);
+            case MONTH:
+                return monthKey(date);
+            default:
+                throw new IllegalArgumentException("Unknown granularity " + granularity);
+        }
+    }
+    
+    private static int dayKey(LocalDate date) {
+        return (int) date.toEpochDay();
+    }
+    
+    private static int weekKey(LocalDate date) {
+        return (int) date.minusDays(date.getDayOfWeek().getValue() - DayOfWeek.MONDAY.getValue()).toEpochDay();
+    }
+    
+    private static int monthKey(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+    
+    private long bucketStart(int granularity, int key) {
+        LocalDate date = granularity == MONTH
+            ? LocalDate.of(Math.floorDiv(key, 12), Math.floorMod(key, 12) + 1, 1)
+            : LocalDate.ofEpochDay(key);
+        return date.atStartOfDay(zone).toInstant().toEpochMilli();
+    }
+    
+    /**
+     * Buckets of one granularity, sorted by key
+     */
+    private static final class Series {
+        int count;
+        int[] keys = new int[16];
+        double[] km = new double[16];
+        int[] rides = new int[16];
+        long[] rideTime = new long[16];
+        
+        void add(int key, double addKm, int addRides, long addRideTime) {
+            // Trips arrive in time order, so this is almost always the last bucket
+            int i = count > 0 && keys[count - 1] == key ? count - 1 : lowerBound(key);
+            if (i == count || keys[i] != key) {
+                insert(i, key);
+            }
+            km[i] += addKm;
+            rides[i] += addRides;
+            rideTime[i] += addRideTime;
+            if (rides[i] <= 0) {
+                delete(i); // Last trip of the bucket was removed
+            }
+        }
+        
+        /**
+         * Index of the first bucket with a key >= key
+         */
+        int lowerBound(int key) {
+            int low = 0;
+            int high = count;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] < key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+        
+        private void insert(int i, int key) {
+            if (count == keys.length) {
+                int capacity = count * 2;
+                keys = Arrays.copyOf(keys, capacity);
+                km = Arrays.copyOf(km, capacity);
+                rides = Arrays.copyOf(rides, capacity);
+                rideTime = Arrays.copyOf(rideTime, capacity);
+            }
+            int tail = count - i;
+            System.arraycopy(keys, i, keys, i + 1, tail);
+            System.arraycopy(km, i, km, i + 1, tail);
+            System.arraycopy(rides, i, rides, i + 1, tail);
+            System.arraycopy(rideTime, i, rideTime, i + 1, tail);
+            keys[i] = key;
+            km[i] = 0;
+            rides[i] = 0;
+            rideTime[i] = 0;
+            count++;
+        }
+        
+        private void delete(int i) {
+            int tail = count - i - 1;
+            System.arraycopy(keys, i + 1, keys, i, tail);
+            System.arraycopy(km, i + 1, km, i, tail);
+            System.arraycopy(rides, i + 1, rides, i, tail);
+            System.arraycopy(rideTime, i + 1, rideTime, i, tail);
+            count--;
+        }
+    }
+}
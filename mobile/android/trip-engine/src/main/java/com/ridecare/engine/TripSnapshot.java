@@ -0,0 +1,51 @@
+package com.ridecare.engine;
+
+/**
+ * TripSnapshot.java
+ * 
+ * Immutable view of the ride in progress, published by the processing
+ * thread after each batch so UI-facing readers never touch live state.
+ * Its size is bounded by the breadcrumb, not by the length of the ride.
+ */
+public final class TripSnapshot {
+    
+    public static final TripSnapshot IDLE = new TripSnapshot(false, 0, 0, 0, 0, 0, 0, 0, 0, 0, Breadcrumb.EMPTY);
+    
+    public final boolean isTracking;
+    public final long startTime;    // epoch millis
+    public final int pointCount;
+    public final double distance;   // meters
+    public final float currentSpeed; // m/s
+    public final float maxSpeed;    // m/s
+    public final long lastFixTime;  // epoch millis
+    public final long rejectedFixCount;
+    public final long movingTime;      // millis
+    public final double averageSpeed;  // m/s while moving
+    public final Breadcrumb breadcrumb; // last points, oldest first
+    
+    public TripSnapshot(
+        boolean isTracking,
+        long startTime,
+        int pointCount,
+        double distance,
+        float currentSpeed,
+        float maxSpeed,
+        long lastFixTime,
+        long rejectedFixCount,
+        long movingTime,
+        double averageSpeed,
+        Breadcrumb breadcrumb
+    ) {
+        this.isTracking = isTracking;
+        this.startTime = startTime;
+        this.pointCount = pointCount;
+        this.distance = distance;
+        this.currentSpeed = currentSpeed;
+        this.maxSpeed = maxSpeed;
+        this.lastFixTime = lastFixTime;
+        this.rejectedFixCount = rejectedFixCount;
+        this.movingTime = movingTime;
+        this.averageSpeed = averageSpeed;
+        this.breadcrumb = breadcrumb;
+    }
+}
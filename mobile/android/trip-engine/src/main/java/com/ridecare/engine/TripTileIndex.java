@@ -0,0 +1,708 @@
+package com.ridecare.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.zip.CRC32;
+
+/**
+ * TripTileIndex.java
+ * 
+ * Spatial index of recorded trips: every geohash cell of precision 7
+ * (about 150 x 150 m) a trip passed through maps to a posting list of trip
+ * ordinals. "Trips through this area" looks up the cells covering the area
+ * and unions their postings; "how often have I ridden this route" counts,
+ * through the postings of one trip's cells, the trips sharing most of them.
+ * Neither decodes a stored path.
+ * 
+ * Cells are 35-bit geohashes held as longs. Postings are int arrays in
+ * ordinal (insertion) order, so results come out newest first without a
+ * sort. Removed trips are tombstoned and skipped until the next compaction.
+ * 
+ * The index is persisted as an append-only log of checksummed records (the
+ * sorted cells of an added trip, delta-varint encoded, or a removal) and
+ * rebuilt in memory by replaying it; a torn tail from a crash is cut off.
+ * 
+ * Not thread-safe; the owner serializes all calls on one thread.
+ */
+public class TripTileIndex implements Closeable {
+    
+    public static final int PRECISION = 7; // Geohash characters
+    public static final int MAX_COVER_CELLS = 4096;
+    public static final double DEFAULT_MIN_OVERLAP = 0.6;
+    
+    private static final int LAT_BITS = 17;
+    private static final int LNG_BITS = 18;
+    private static final int CELL_BITS = LAT_BITS + LNG_BITS;
+    private static final int MAX_GAP_CELLS = 64; // Longer jumps are signal loss, not a straight ride
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+    
+    private static final int MAGIC = 0x52435449; // "RCTI"
+    private static final byte RECORD_ADD = 1;
+    private static final byte RECORD_REMOVE = 2;
+    private static final long COMPACT_MIN_BYTES = 64 * 1024;
+    private static final long EMPTY = -1;
+    
+    /**
+     * Collects the cells of a track point by point, filling in the cells
+     * crossed between fixes that are more than one cell apart. Reusable
+     * through reset().
+     */
+    public static final class CellCollector implements TrackCodec.PointVisitor {
+        private long[] cells = new long[64];
+        private int count = 0;
+        private int lastLatQ = -1;
+        private int lastLngQ = -1;
+        
+        @Override
+        public void onPoint(double latitude, double longitude) {
+            if (Double.isNaN(latitude) || Double.isNaN(longitude)) return;
+            
+            int latQ = quantizeLat(latitude);
+            int lngQ = quantizeLng(longitude);
+            if (lastLatQ >= 0) {
+                int steps = Math.max(Math.abs(latQ - lastLatQ), Math.abs(lngQ - lastLngQ));
+                if (steps > 1 && steps <= MAX_GAP_CELLS) {
+                    for (int i = 1; i < steps; i++) {
+                        append(interleave(
+                            lastLatQ + (latQ - lastLatQ) * i / steps,
+                            lastLngQ + (lngQ - lastLngQ) * i / steps
+                        ));
+                    }
+                }
+            }
+            append(interleave(latQ, lngQ));
+            lastLatQ = latQ;
+            lastLngQ = lngQ;
+        }
+        
+        public void reset() {
+            count = 0;
+            lastLatQ = -1;
+            lastLngQ = -1;
+        }
+        
+        /**
+         * The distinct cells so far, sorted
+         */
+        public long[] toCells() {
+            long[] sorted = Arrays.copyOf(cells, count);
+            Arrays.sort(sorted);
+            int unique = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (i == 0 || sorted[i] != sorted[unique - 1]) {
+                    sorted[unique++] = sorted[i];
+                }
+            }
+            return unique == sorted.length ? sorted : Arrays.copyOf(sorted, unique);
+        }
+        
+        private void append(long cell) {
+            if (count > 0 && cells[count - 1] == cell) return; // Still in the same cell
+            if (count == cells.length) {
+                cells = Arrays.copyOf(cells, count * 2);
+            }
+            cells[count++] = cell;
+        }
+    }
+    
+    /**
+     * Reusable output of getHotCells(), most visited first
+     */
+    public static final class HotCells {
+        public int count;
+        public long[] cell = new long[0];
+        public int[] trips = new int[0];
+        
+        void ensureCapacity(int capacity) {
+            if (cell.length >= capacity) return;
+            cell = new long[capacity];
+            trips = new int[capacity];
+        }
+    }
+    
+    private final File file;
+    private DataOutputStream log;
+    private long logBytes;
+    
+    // Trips by ordinal; the id is null once removed
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<String> tripIds = new ArrayList<>();
+    private final List<long[]> tripCells = new ArrayList<>();
+    private int liveTrips = 0;
+    private long liveCellRefs = 0;
+    private long deadCellRefs = 0;
+    
+    // Cell -> slot, open addressing with linear probing
+    private long[] tableKeys;
+    private int[] tableSlots;
+    
+    // Per slot: the cell, its posting list and how many live trips it holds
+    private int slots = 0;
+    private long[] slotCell = new long[256];
+    private int[][] postings = new int[256][];
+    private int[] postingSize = new int[256];
+    private int[] liveCount = new int[256];
+    
+    private TripTileIndex(File file) {
+        this.file = file;
+        clearMemory();
+    }
+    
+    /**
+     * Open the index at file, replaying its log
+     */
+    public static TripTileIndex open(File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        
+        TripTileIndex index = new TripTileIndex(file);
+        long valid = index.replay();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() != valid) {
+                raf.setLength(valid); // Drop a torn tail
+            }
+        }
+        index.logBytes = valid;
+        index.openLog(valid == 0);
+        return index;
+    }
+    
+    // MARK: - Updates
+    
+    /**
+     * Index a trip from its encoded path (trips.path); replaces an earlier
+     * version of the same trip. Returns the number of cells.
+     */
+    public int add(String tripId, CharSequence encodedPath) throws IOException {
+        CellCollector collector = new CellCollector();
+        if (encodedPath != null) {
+            TrackCodec.decode(encodedPath, collector);
+        }
+        return add(tripId, collector);
+    }
+    
+    /**
+     * Index a trip from points collected while it was recorded
+     */
+    public int add(String tripId, CellCollector collector) throws IOException {
+        long[] cells = collector.toCells();
+        writeAdd(tripId, cells);
+        index(tripId, cells);
+        log.flush();
+        compactIfNeeded();
+        return cells.length;
+    }
+    
+    /**
+     * Returns false if the trip was not indexed
+     */
+    public boolean remove(String tripId) throws IOException {
+        if (!unindex(tripId)) return false;
+        
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        DataOutputStream body = new DataOutputStream(bytes);
+        body.writeByte(RECORD_REMOVE);
+        body.writeUTF(tripId);
+        writeRecord(bytes.toByteArray());
+        log.flush();
+        compactIfNeeded();
+        return true;
+    }
+    
+    public boolean contains(String tripId) {
+        return ordinals.containsKey(tripId);
+    }
+    
+    // MARK: - Queries
+    
+    /**
+     * Trips with a point inside the box, newest first, at most limit
+     */
+    public List<String> findInArea(double minLat, double minLng, double maxLat, double maxLng, int limit) {
+        int minLatQ = quantizeLat(minLat);
+        int maxLatQ = quantizeLat(maxLat);
+        int minLngQ = quantizeLng(minLng);
+        int maxLngQ = quantizeLng(maxLng);
+        BitSet trips = new BitSet(tripIds.size());
+        
+        long cover = (long) (maxLatQ - minLatQ + 1) * (maxLngQ - minLngQ + 1);
+        if (cover <= MAX_COVER_CELLS) {
+            for (int latQ = minLatQ; latQ <= maxLatQ; latQ++) {
+                for (int lngQ = minLngQ; lngQ <= maxLngQ; lngQ++) {
+                    int slot = find(interleave(latQ, lngQ));
+                    if (slot >= 0) mark(slot, trips);
+                }
+            }
+        } else {
+            // A large area: testing every indexed cell is cheaper than covering it
+            for (int slot = 0; slot < slots; slot++) {
+                if (liveCount[slot] == 0) continue;
+                
+                int latQ = latQ(slotCell[slot]);
+                int lngQ = lngQ(slotCell[slot]);
+                if (latQ >= minLatQ && latQ <= maxLatQ && lngQ >= minLngQ && lngQ <= maxLngQ) {
+                    mark(slot, trips);
+                }
+            }
+        }
+        
+        List<String> result = new ArrayList<>(Math.min(limit, trips.cardinality()));
+        for (int o = trips.length() - 1; o >= 0 && result.size() < limit; o = trips.previousSetBit(o - 1)) {
+            result.add(tripIds.get(o));
+        }
+        return result;
+    }
+    
+    /**
+     * Trips passing within roughly radiusMeters of a point (the enclosing box)
+     */
+    public List<String> findNear(double latitude, double longitude, double radiusMeters, int limit) {
+        double dLat = Math.toDegrees(radiusMeters / GeoMath.EARTH_RADIUS_METERS);
+        double dLng = dLat / Math.max(0.01, Math.cos(Math.toRadians(latitude)));
+        return findInArea(latitude - dLat, longitude - dLng, latitude + dLat, longitude + dLng, limit);
+    }
+    
+    /**
+     * Other trips sharing at least minOverlap of their cells with tripId
+     * (Jaccard similarity), newest first: rides of the same route
+     */
+    public List<String> findSimilar(String tripId, double minOverlap) {
+        Integer self = ordinals.get(tripId);
+        if (self == null) return new ArrayList<>();
+        return findSimilar(tripCells.get(self), self, minOverlap);
+    }
+    
+    /**
+     * Indexed trips similar to a route that was not indexed (or not under a
+     * known id), e.g. one shown from JS
+     */
+    public List<String> findSimilar(CellCollector route, double minOverlap) {
+        return findSimilar(route.toCells(), -1, minOverlap);
+    }
+    
+    /**
+     * The cells the most trips passed through, most visited first
+     */
+    public int getHotCells(int limit, HotCells out) {
+        PriorityQueue<Integer> top = new PriorityQueue<>(limit + 1, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Integer.compare(liveCount[a], liveCount[b]);
+            }
+        });
+        for (int slot = 0; slot < slots; slot++) {
+            if (liveCount[slot] == 0) continue;
+            
+            top.add(slot);
+            if (top.size() > limit) top.poll();
+        }
+        
+        out.count = top.size();
+        out.ensureCapacity(out.count);
+        for (int i = out.count - 1; i >= 0; i--) {
+            int slot = top.poll();
+            out.cell[i] = slotCell[slot];
+            out.trips[i] = liveCount[slot];
+        }
+        return out.count;
+    }
+    
+    /**
+     * Ids of all indexed trips, oldest first
+     */
+    public List<String> getTripIds() {
+        List<String> ids = new ArrayList<>(liveTrips);
+        for (String id : tripIds) {
+            if (id != null) ids.add(id);
+        }
+        return ids;
+    }
+    
+    public int getTripCount() {
+        return liveTrips;
+    }
+    
+    public int getCellCount() {
+        return slots;
+    }
+    
+    public long getFileSize() {
+        return logBytes;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+    }
+    
+    // MARK: - Cells
+    
+    /**
+     * The cell containing a point
+     */
+    public static long cellOf(double latitude, double longitude) {
+        return interleave(quantizeLat(latitude), quantizeLng(longitude));
+    }
+    
+    /**
+     * The cell as a geohash string
+     */
+    public static String geohash(long cell) {
+        char[] hash = new char[PRECISION];
+        for (int i = 0; i < PRECISION; i++) {
+            hash[i] = BASE32.charAt((int) (cell >>> (CELL_BITS - 5 * (i + 1))) & 31);
+        }
+        return new String(hash);
+    }
+    
+    public static double centerLatitude(long cell) {
+        return (latQ(cell) + 0.5) * 180.0 / (1 << LAT_BITS) - 90;
+    }
+    
+    public static double centerLongitude(long cell) {
+        return (lngQ(cell) + 0.5) * 360.0 / (1 << LNG_BITS) - 180;
+    }
+    
+    // MARK: - Helper Methods
+    
+    private static int quantizeLat(double latitude) {
+        int q = (int) Math.floor((latitude + 90) / 180 * (1 << LAT_BITS));
+        return Math.max(0, Math.min((1 << LAT_BITS) - 1, q));
+    }
+    
+    private static int quantizeLng(double longitude) {
+        int q = (int) Math.floor((longitude + 180) / 360 * (1 << LNG_BITS));
+        return Math.max(0, Math.min((1 << LNG_BITS) - 1, q));
+    }
+    
+    /**
+     * Geohash bit order: longitude and latitude bits alternate, longitude first
+     */
+    private static long interleave(int latQ, int lngQ) {
+        long cell = 0;
+        for (int i = 0; i < CELL_BITS; i++) {
+            int bit = (i & 1) == 0
+                ? (lngQ >>> (LNG_BITS - 1 - (i >> 1))) & 1
+                : (latQ >>> (LAT_BITS - 1 - (i >> 1))) & 1;
+            cell = (cell << 1) | bit;
+        }
+        return cell;
+    }
+    
+    private static int latQ(long cell) {
+        int q = 0;
+        for (int i = 1; i < CELL_BITS; i += 2) {
+            q = (q << 1) | (int) ((cell >>> (CELL_BITS - 1 - i)) & 1);
+        }
+        return q;
+    }
+    
+    private static int lngQ(long cell) {
+        int q = 0;
+        for (int i = 0; i < CELL_BITS; i += 2) {
+            q = (q << 1) | (int) ((cell >>> (CELL_BITS - 1 - i)) & 1);
+        }
+        return q;
+    }
+    
+    private List<String> findSimilar(long[] cells, int self, double minOverlap) {
+        List<String> result = new ArrayList<>();
+        int[] shared = new int[tripIds.size()];
+        for (long cell : cells) {
+            int slot = find(cell);
+            if (slot < 0) continue;
+            for (int i = 0; i < postingSize[slot]; i++) {
+                shared[postings[slot][i]]++;
+            }
+        }
+        
+        for (int o = shared.length - 1; o >= 0; o--) {
+            if (o == self || shared[o] == 0 || tripIds.get(o) == null) continue;
+            
+            int union = cells.length + tripCells.get(o).length - shared[o];
+            if (shared[o] >= minOverlap * union) {
+                result.add(tripIds.get(o));
+            }
+        }
+        return result;
+    }
+    
+    private void mark(int slot, BitSet trips) {
+        int[] posting = postings[slot];
+        for (int i = 0; i < postingSize[slot]; i++) {
+            if (tripIds.get(posting[i]) != null) trips.set(posting[i]);
+        }
+    }
+    
+    private void index(String tripId, long[] cells) {
+        unindex(tripId); // A re-saved trip
+        
+        int ordinal = tripIds.size();
+        ordinals.put(tripId, ordinal);
+        tripIds.add(tripId);
+        tripCells.add(cells);
+        liveTrips++;
+        liveCellRefs += cells.length;
+        
+        for (long cell : cells) {
+            int slot = findOrInsert(cell);
+            if (postingSize[slot] == postings[slot].length) {
+                postings[slot] = Arrays.copyOf(postings[slot], postingSize[slot] * 2);
+            }
+            postings[slot][postingSize[slot]++] = ordinal;
+            liveCount[slot]++;
+        }
+    }
+    
+    private boolean unindex(String tripId) {
+        Integer ordinal = ordinals.remove(tripId);
+        if (ordinal == null) return false;
+        
+        long[] cells = tripCells.get(ordinal);
+        for (long cell : cells) {
+            liveCount[find(cell)]--;
+        }
+        tripIds.set(ordinal, null);
+        liveTrips--;
+        liveCellRefs -= cells.length;
+        deadCellRefs += cells.length;
+        return true;
+    }
+    
+    private int find(long cell) {
+        int mask = tableKeys.length - 1;
+        for (int i = hash(cell) & mask; ; i = (i + 1) & mask) {
+            if (tableKeys[i] == cell) return tableSlots[i];
+            if (tableKeys[i] == EMPTY) return -1;
+        }
+    }
+    
+    private int findOrInsert(long cell) {
+        int mask = tableKeys.length - 1;
+        int i = hash(cell) & mask;
+        for (; tableKeys[i] != EMPTY; i = (i + 1) & mask) {
+            if (tableKeys[i] == cell) return tableSlots[i];
+        }
+        
+        int slot = slots++;
+        if (slot == slotCell.length) {
+            int capacity = slot * 2;
+            slotCell = Arrays.copyOf(slotCell, capacity);
+            postings = Arrays.copyOf(postings, capacity);
+            postingSize = Arrays.copyOf(postingSize, capacity);
+            liveCount = Arrays.copyOf(liveCount, capacity);
+        }
+        slotCell[slot] = cell;
+        postings[slot] = new int[4];
+        postingSize[slot] = 0;
+        liveCount[slot] = 0;
+        tableKeys[i] = cell;
+        tableSlots[i] = slot;
+        
+        if (slots * 2 > tableKeys.length) {
+            rehash(tableKeys.length * 2);
+        }
+        return slot;
+    }
+    
+    private void rehash(int capacity) {
+        tableKeys = new long[capacity];
+        tableSlots = new int[capacity];
+        Arrays.fill(tableKeys, EMPTY);
+        int mask = capacity - 1;
+        for (int slot = 0; slot < slots; slot++) {
+            int i = hash(slotCell[slot]) & mask;
+            while (tableKeys[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            tableKeys[i] = slotCell[slot];
+            tableSlots[i] = slot;
+        }
+    }
+    
+    private static int hash(long cell) {
+        long h = cell * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+    
+    private void clearMemory() {
+        ordinals.clear();
+        tripIds.clear();
+        tripCells.clear();
+        liveTrips = 0;
+        liveCellRefs = 0;
+        deadCellRefs = 0;
+        slots = 0;
+        tableKeys = new long[1024];
+        tableSlots = new int[1024];
+        Arrays.fill(tableKeys, EMPTY);
+    }
+    
+    // MARK: - Log
+    
+    /**
+     * Replay the log into memory; returns the length of its valid prefix
+     */
+    private long replay() throws IOException {
+        if (!file.exists() || file.length() == 0) return 0;
+        
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a trip tile index: " + file);
+            }
+            valid = 4;
+            
+            CRC32 crc = new CRC32();
+            while (true) {
+                int length;
+                byte[] body;
+                try {
+                    length = in.readInt();
+                    if (length <= 0 || length > 64 * 1024 * 1024) break;
+                    body = new byte[length];
+                    in.readFully(body);
+                    crc.reset();
+                    crc.update(body, 0, length);
+                    if (in.readInt() != (int) crc.getValue()) break;
+                } catch (EOFException e) {
+                    break;
+                }
+                
+                applyRecord(body);
+                valid += 8 + length;
+            }
+        } catch (EOFException e) {
+            return 0; // Not even a header
+        }
+        return valid;
+    }
+    
+    private void applyRecord(byte[] body) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+        byte type = in.readByte();
+        String tripId = in.readUTF();
+        
+        if (type == RECORD_ADD) {
+            long[] cells = new long[in.readInt()];
+            long cell = 0;
+            for (int i = 0; i < cells.length; i++) {
+                cell += readVarint(in);
+                cells[i] = cell;
+            }
+            index(tripId, cells);
+        } else if (type == RECORD_REMOVE) {
+            unindex(tripId);
+        }
+    }
+    
+    private void openLog(boolean writeHeader) throws IOException {
+        log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        if (writeHeader) {
+            log.writeInt(MAGIC);
+            log.flush();
+            logBytes = 4;
+        }
+    }
+    
+    private void writeAdd(String tripId, long[] cells) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + cells.length * 3);
+        DataOutputStream body = new DataOutputStream(bytes);
+        body.writeByte(RECORD_ADD);
+        body.writeUTF(tripId);
+        body.writeInt(cells.length);
+        long previous = 0;
+        for (long cell : cells) {
+            writeVarint(body, cell - previous); // Sorted, so neighbours are close
+            previous = cell;
+        }
+        writeRecord(bytes.toByteArray());
+    }
+    
+    private void writeRecord(byte[] body) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        log.writeInt(body.length);
+        log.write(body);
+        log.writeInt((int) crc.getValue());
+        logBytes += 8 + body.length;
+    }
+    
+    private static void writeVarint(DataOutputStream out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+    
+    private static long readVarint(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.readByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+    
+    /**
+     * Rewrite the log with only the live trips once removed and replaced
+     * ones dominate it; ordinals are renumbered densely
+     */
+    private void compactIfNeeded() throws IOException {
+        if (logBytes < COMPACT_MIN_BYTES || deadCellRefs <= liveCellRefs) return;
+        
+        List<String> ids = new ArrayList<>(liveTrips);
+        List<long[]> cells = new ArrayList<>(liveTrips);
+        for (int o = 0; o < tripIds.size(); o++) {
+            if (tripIds.get(o) == null) continue;
+            ids.add(tripIds.get(o));
+            cells.add(tripCells.get(o));
+        }
+        
+        close();
+        File temp = new File(file.getPath() + ".tmp");
+        log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+        log.writeInt(MAGIC);
+        logBytes = 4;
+        clearMemory();
+        for (int i = 0; i < ids.size(); i++) {
+            writeAdd(ids.get(i), cells.get(i));
+            index(ids.get(i), cells.get(i));
+        }
+        log.flush();
+        close();
+        
+        if (!temp.renameTo(file)) {
+            throw new IOException("Cannot replace " + file);
+        }
+        openLog(false);
+    }
+}
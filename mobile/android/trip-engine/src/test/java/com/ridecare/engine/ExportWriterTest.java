@@ -0,0 +1,176 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * ExportWriterTest.java
+ * 
+ * Output shape of each export format and escaping of user text
+ */
+public class ExportWriterTest {
+    
+    private static final long EXPORTED_AT = 1700000000000L; // 2023-11-14T22:13:20Z
+    
+    @Test
+    public void csvQuotesOnlyCellsThatNeedIt() throws IOException {
+        StringWriter out = new StringWriter();
+        ExportWriter writer = new ExportWriter(out, ExportWriter.Format.CSV);
+        writer.begin(EXPORTED_AT);
+        writer.beginTrips();
+        writer.writeTrip(trip("t1", null));
+        writer.endTrips();
+        writer.beginMaintenance();
+        writer.writeMaintenance(service("Chain \"lubed\", cleaned"));
+        writer.endMaintenance();
+        writer.finish();
+        
+        String[] lines = out.toString().split("\n");
+        assertEquals("# TRIPS", lines[0]);
+        assertEquals("t1,bike-1,2023-11-14T22:13:20.000Z,2023-11-14T22:43:20.000Z,12.35,30,24.7,42.1,"
+            + "\"12.971600,77.594600\",\"12.935200,-77.624500\"", lines[2]);
+        assertEquals("", lines[3]);
+        assertEquals("# MAINTENANCE", lines[4]);
+        assertEquals("m1,bike-1,oil_change,completed,2023-11-14T22:13:20.000Z,5120.0,,450.00,"
+            + "\"Chain \"\"lubed\"\", cleaned\",", lines[6]);
+        assertEquals(2, writer.getRowCount());
+    }
+    
+    @Test
+    public void jsonEscapesTextAndWritesNulls() throws IOException {
+        StringWriter out = new StringWriter();
+        ExportWriter writer = new ExportWriter(out, ExportWriter.Format.JSON);
+        writer.begin(EXPORTED_AT);
+        writer.beginTrips();
+        writer.writeTrip(trip("t1", "_p~iF~ps|U"));
+        writer.writeTrip(trip("t2", null));
+        writer.endTrips();
+        writer.beginMaintenance();
+        writer.writeMaintenance(service("line\nbreak \\ \"q\""));
+        writer.endMaintenance();
+        writer.finish();
+        
+        String json = out.toString();
+        assertTrue(json, json.startsWith("{\"exportedAt\":\"2023-11-14T22:13:20.000Z\",\"trips\":[{\"id\":\"t1\""));
+        assertTrue(json, json.contains("\"path\":\"_p~iF~ps|U\"},{\"id\":\"t2\""));
+        assertTrue(json, json.contains("\"path\":null}],\"maintenance\":[{"));
+        assertTrue(json, json.contains("\"dateDue\":null"));
+        assertTrue(json, json.contains("\"kmDueAt\":null"));
+        assertTrue(json, json.contains("\"notes\":\"line\\nbreak \\\\ \\\"q\\\"\""));
+        assertTrue(json, json.endsWith("}]}\n"));
+    }
+    
+    @Test
+    public void gpxStreamsDecodedPathsAndSkipsMaintenance() throws IOException {
+        TrackBuffer track = new TrackBuffer();
+        track.append(38.5, -120.2, 0f, 0f, 1);
+        track.append(40.7, -120.95, 0f, 0f, 2);
+        track.append(43.252, -126.453, 0f, 0f, 3);
+        String path = TrackCodec.encode(track, new int[] {0, 1, 2}, 3);
+        
+        File file = File.createTempFile("export", ".gpx");
+        try {
+            try (ExportWriter writer = ExportWriter.open(file, ExportWriter.Format.GPX)) {
+                writer.begin(EXPORTED_AT);
+                writer.beginTrips();
+                writer.writeTrip(trip("t<1>", path));
+                writer.endTrips();
+                writer.beginMaintenance();
+                writer.writeMaintenance(service("ignored"));
+                writer.endMaintenance();
+                writer.finish();
+                assertEquals(1, writer.getRowCount());
+            }
+            
+            String gpx = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            assertTrue(gpx, gpx.contains("<name>t&lt;1&gt;</name>"));
+            assertTrue(gpx, gpx.contains("<trkseg><trkpt lat=\"38.50000\" lon=\"-120.20000\"/>"
+                + "<trkpt lat=\"40.70000\" lon=\"-120.95000\"/>"
+                + "<trkpt lat=\"43.25200\" lon=\"-126.45300\"/></trkseg>"));
+            assertTrue(gpx, !gpx.contains("ignored"));
+            assertTrue(gpx, gpx.endsWith("</gpx>\n"));
+        } finally {
+            file.delete();
+        }
+    }
+    
+    @Test
+    public void gpxWritesTripsWithBadPathsWithoutPoints() throws IOException {
+        StringWriter out = new StringWriter();
+        ExportWriter writer = new ExportWriter(out, ExportWriter.Format.GPX);
+        writer.begin(EXPORTED_AT);
+        writer.beginTrips();
+        writer.writeTrip(trip("truncated", "_p~iF~ps|U_ulLnnqC_mqNvxq`@_"));
+        writer.writeTrip(trip("geojson", "H4sIAAAAAAAA/6tWKkktLlGyUkpKLFKqBQA="));
+        writer.writeTrip(trip("good", "_p~iF~ps|U"));
+        writer.endTrips();
+        writer.finish();
+        
+        String gpx = out.toString();
+        assertEquals(3, writer.getRowCount());
+        assertTrue(gpx, gpx.contains("<name>truncated</name>"));
+        assertTrue(gpx, gpx.contains("<type>bike-1</type><trkseg></trkseg>"));
+        assertTrue(gpx, gpx.contains("<name>geojson</name>"));
+        assertEquals(gpx, 1, gpx.split("<trkpt ", -1).length - 1);
+        assertTrue(gpx, gpx.endsWith("</gpx>\n"));
+    }
+    
+    @Test
+    public void streamingDecodeMatchesArrayDecode() throws IOException {
+        TrackBuffer track = TraceReplay.loadResource("tracks/bangalore_city_commute.csv").getFixes();
+        String path = TrackCodec.encode(track, 5.0);
+        final double[] expected = TrackCodec.decode(path);
+        final int[] index = {0};
+        
+        int points = TrackCodec.decode(path, new TrackCodec.PointVisitor() {
+            @Override
+            public void onPoint(double latitude, double longitude) {
+                assertEquals(expected[index[0]++], latitude, 0);
+                assertEquals(expected[index[0]++], longitude, 0);
+            }
+        });
+        assertEquals(expected.length / 2, points);
+    }
+    
+    // MARK: - Helper Methods
+    
+    private static ExportWriter.TripRow trip(String id, String path) {
+        ExportWriter.TripRow trip = new ExportWriter.TripRow();
+        trip.id = id;
+        trip.bikeId = "bike-1";
+        trip.startTime = EXPORTED_AT;
+        trip.endTime = EXPORTED_AT + 30 * 60000;
+        trip.startLat = 12.9716;
+        trip.startLng = 77.5946;
+        trip.endLat = 12.9352;
+        trip.endLng = -77.6245; // Exercises the sign
+        trip.distanceKm = 12.345;
+        trip.avgSpeedKmh = 24.69;
+        trip.maxSpeedKmh = 42.06;
+        trip.path = path;
+        return trip;
+    }
+    
+    private static ExportWriter.MaintenanceRow service(String notes) {
+        ExportWriter.MaintenanceRow record = new ExportWriter.MaintenanceRow();
+        record.id = "m1";
+        record.bikeId = "bike-1";
+        record.type = "oil_change";
+        record.completed = true;
+        record.dateDue = ExportWriter.NO_TIME;
+        record.completedAt = EXPORTED_AT;
+        record.kmDueAt = Double.NaN;
+        record.completedKm = 5120;
+        record.cost = 450;
+        record.notes = notes;
+        return record;
+    }
+}
@@ -0,0 +1,56 @@
+package com.ridecare.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * FakeLocationFeed.java
+ * 
+ * Producer thread body that pushes a straight, steady ride into a
+ * FixRingBuffer as fast as it can, remembering which fixes the buffer took.
+ */
+final class FakeLocationFeed implements Runnable {
+    
+    static final long START_TIME = 1700000000000L;
+    static final float SPEED = 8f; // m/s, well above the stationary threshold
+    private static final double METERS_PER_DEG_LAT = 111320;
+    
+    private final FixRingBuffer buffer;
+    private final long[] offeredTimes;
+    private final AtomicInteger offeredCount = new AtomicInteger();
+    
+    FakeLocationFeed(FixRingBuffer buffer, int fixCount) {
+        this.buffer = buffer;
+        this.offeredTimes = new long[fixCount];
+    }
+    
+    @Override
+    public void run() {
+        for (int i = 0; i < offeredTimes.length; i++) {
+            long time = START_TIME + i * 1000L;
+            double latitude = 52.0 + i * SPEED / METERS_PER_DEG_LAT;
+            if (buffer.offer(latitude, 13.0, SPEED, 5f, time, FixRingBuffer.PROVIDER_GPS)) {
+                int n = offeredCount.get();
+                offeredTimes[n] = time;
+                offeredCount.set(n + 1); // Publishes the time written above
+            }
+            if ((i & 15) == 0) {
+                Thread.yield(); // Let the consumer interleave at varying points
+            }
+        }
+    }
+    
+    /**
+     * Fixes the buffer accepted so far
+     */
+    int getOfferedCount() {
+        return offeredCount.get();
+    }
+    
+    long getOfferedTime(int index) {
+        return offeredTimes[index];
+    }
+    
+    int getFixCount() {
+        return offeredTimes.length;
+    }
+}
@@ -0,0 +1,36 @@
+package com.ridecare.engine;
+
+/**
+ * FakeMotionSource.java
+ * 
+ * Scripted motion source for tests: emit() delivers a hint only while the
+ * detector has the source started, like a real sensor would
+ */
+class FakeMotionSource implements MotionSource {
+    
+    private Sink sink;
+    int startCount;
+    int stopCount;
+    
+    @Override
+    public void start(Sink sink) {
+        this.sink = sink;
+        startCount++;
+    }
+    
+    @Override
+    public void stop() {
+        sink = null;
+        stopCount++;
+    }
+    
+    boolean isRunning() {
+        return sink != null;
+    }
+    
+    void emit(float confidence, long now) {
+        if (sink != null) {
+            sink.onMotion(confidence, now);
+        }
+    }
+}
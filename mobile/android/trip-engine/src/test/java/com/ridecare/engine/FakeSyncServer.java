@@ -0,0 +1,109 @@
+package com.ridecare.engine;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * FakeSyncServer.java
+ * 
+ * Local HTTP stand-in for the batch sync API. Records every request body
+ * (un-gzipped) and answers with scripted statuses, then 200.
+ */
+class FakeSyncServer implements AutoCloseable {
+    
+    /** Answers 400 to any batch containing this text */
+    private volatile String poison;
+    
+    private final HttpServer server;
+    private final Queue<Integer> statuses = new LinkedList<>();
+    private final List<String> bodies = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> tokens = Collections.synchronizedList(new ArrayList<String>());
+    
+    FakeSyncServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/api/sync", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream in = exchange.getRequestBody();
+                if ("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                    in = new GZIPInputStream(in);
+                }
+                String body = readAll(in);
+                bodies.add(body);
+                tokens.add(exchange.getRequestHeaders().getFirst("Authorization"));
+                
+                int status;
+                synchronized (statuses) {
+                    Integer next = statuses.poll();
+                    status = next != null ? next : 200;
+                }
+                if (poison != null && body.contains(poison)) {
+                    status = 400;
+                }
+                
+                byte[] response = "{\"success\":true}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(status, response.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(response);
+                }
+            }
+        });
+        server.start();
+    }
+    
+    URL getUrl() throws IOException {
+        return new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/api/sync");
+    }
+    
+    /**
+     * Statuses for the next requests, in order
+     */
+    void respondWith(Integer... next) {
+        synchronized (statuses) {
+            Collections.addAll(statuses, next);
+        }
+    }
+    
+    void rejectBatchesContaining(String text) {
+        poison = text;
+    }
+    
+    List<String> getBodies() {
+        return bodies;
+    }
+    
+    List<String> getTokens() {
+        return tokens;
+    }
+    
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+    
+    private static String readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
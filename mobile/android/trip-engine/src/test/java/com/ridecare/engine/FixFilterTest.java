@@ -0,0 +1,102 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * FixFilterTest.java
+ * 
+ * Replays a recorded GPS + network trace through the fix filter
+ */
+public class FixFilterTest {
+    
+    // Route length of the mixed-provider trace, measured on the ridden path
+    private static final double MIXED_TRACE_ROUTE_METERS = 7511;
+    
+    @Test
+    public void filteredDistanceTracksRouteOnMixedProviders() throws IOException {
+        FixFilter filter = new FixFilter();
+        TripAccumulator raw = new TripAccumulator();
+        TripAccumulator filtered = new TripAccumulator();
+        int duplicates = 0;
+        long previousTime = 0;
+        
+        InputStream in = getClass().getClassLoader().getResourceAsStream("tracks/koramangala_gps_network_mix.csv");
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line = reader.readLine(); // header: time,latitude,longitude,speed,accuracy,provider
+            while ((line = reader.readLine()) != null) {
+                String[] cols = line.split(",");
+                long time = Long.parseLong(cols[0]);
+                double latitude = Double.parseDouble(cols[1]);
+                double longitude = Double.parseDouble(cols[2]);
+                float speed = Float.parseFloat(cols[3]);
+                float accuracy = Float.parseFloat(cols[4]);
+                boolean gps = "gps".equals(cols[5]);
+                if (time == previousTime) duplicates++;
+                previousTime = time;
+                
+                raw.add(latitude, longitude, speed, time);
+                if (filter.filter(latitude, longitude, speed, accuracy, time, gps) == FixFilter.ACCEPTED) {
+                    filtered.add(filter.getLatitude(), filter.getLongitude(), filter.getSpeed(), time);
+                }
+            }
+        }
+        
+        // Unfiltered network jitter inflates the odometer several times over
+        assertTrue("raw distance " + raw.getDistance(), raw.getDistance() > 2 * MIXED_TRACE_ROUTE_METERS);
+        assertEquals("filtered distance", MIXED_TRACE_ROUTE_METERS, filtered.getDistance(),
+            0.08 * MIXED_TRACE_ROUTE_METERS);
+        
+        assertEquals(duplicates, filter.getStaleCount());
+        assertTrue(filter.getAccuracyRejectedCount() > 0);
+        assertTrue(filter.getOutlierCount() > 0);
+        assertEquals(filter.getAcceptedCount() + filter.getRejectedCount(), raw.getPointCount());
+    }
+    
+    @Test
+    public void rejectsStaleAndDuplicateTimestamps() {
+        FixFilter filter = new FixFilter();
+        assertEquals(FixFilter.ACCEPTED, filter.filter(12.97, 77.59, 5f, 5f, 2000, true));
+        assertEquals(FixFilter.REJECTED_STALE, filter.filter(12.97, 77.59, 5f, 5f, 2000, true));
+        assertEquals(FixFilter.REJECTED_STALE, filter.filter(12.97, 77.59, 5f, 5f, 1000, true));
+        assertEquals(2, filter.getStaleCount());
+    }
+    
+    @Test
+    public void rejectsJumpThatAccuracyCannotExplain() {
+        FixFilter filter = new FixFilter();
+        double lat = 12.97;
+        for (int i = 0; i < 10; i++) {
+            lat += 10 / 111320.0; // 10 m/s north
+            assertEquals(FixFilter.ACCEPTED, filter.filter(lat, 77.59, 10f, 5f, i * 1000L, true));
+        }
+        
+        // 300 m sideways in one second while claiming 5 m accuracy
+        assertEquals(FixFilter.REJECTED_OUTLIER, filter.filter(lat, 77.59 + 300 / 108500.0, 10f, 5f, 10000, true));
+        assertEquals(FixFilter.ACCEPTED, filter.filter(lat + 20 / 111320.0, 77.59, 10f, 5f, 11000, true));
+    }
+    
+    @Test
+    public void recoversAfterSustainedRejections() {
+        FixFilter filter = new FixFilter();
+        filter.filter(12.97, 77.59, 0f, 5f, 0, true);
+        filter.filter(12.97, 77.59, 0f, 5f, 1000, true);
+        
+        // The rider really is somewhere else (e.g. a bad first fix); re-lock after a few rejects
+        double farLat = 12.98;
+        int verdict = FixFilter.REJECTED_OUTLIER;
+        for (int i = 2; i < 10 && verdict != FixFilter.ACCEPTED; i++) {
+            verdict = filter.filter(farLat, 77.59, 0f, 5f, i * 1000L, true);
+        }
+        assertEquals(FixFilter.ACCEPTED, verdict);
+        assertEquals(farLat, filter.getLatitude(), 1e-9);
+    }
+}
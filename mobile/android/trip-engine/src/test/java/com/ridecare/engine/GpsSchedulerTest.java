@@ -0,0 +1,58 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * GpsSchedulerTest.java
+ * 
+ * Band switching, hysteresis and dwell behaviour of the GPS scheduler
+ */
+public class GpsSchedulerTest {
+    
+    private static float kmh(float value) {
+        return value / 3.6f;
+    }
+    
+    @Test
+    public void jitterAroundBandEdgeDoesNotReRegister() {
+        GpsScheduler scheduler = new GpsScheduler();
+        scheduler.reset(0);
+        
+        // 18-22 km/h oscillation stays inside the HIGH band's hysteresis
+        for (int i = 0; i < 600; i++) {
+            assertFalse(scheduler.update(kmh(i % 2 == 0 ? 18f : 22f), i * 1000L));
+        }
+        assertEquals(GpsScheduler.Band.HIGH, scheduler.getBand());
+        assertEquals(0, scheduler.getSwitchCount());
+    }
+    
+    @Test
+    public void slowingDownWaitsForMinimumDwell() {
+        GpsScheduler scheduler = new GpsScheduler();
+        scheduler.reset(0);
+        
+        assertFalse(scheduler.update(kmh(5f), 5000));
+        assertTrue(scheduler.update(kmh(5f), 20000));
+        assertEquals(GpsScheduler.Band.LOW, scheduler.getBand());
+        assertEquals(30000, scheduler.getIntervalMillis());
+        assertEquals(1, scheduler.getDownshiftCount());
+    }
+    
+    @Test
+    public void speedingUpSwitchesImmediately() {
+        GpsScheduler scheduler = new GpsScheduler();
+        scheduler.reset(0);
+        scheduler.update(kmh(5f), 30000);
+        
+        assertTrue(scheduler.update(kmh(15f), 31000));
+        assertEquals(GpsScheduler.Band.MEDIUM, scheduler.getBand());
+        assertTrue(scheduler.update(kmh(40f), 32000));
+        assertEquals(GpsScheduler.Band.HIGH, scheduler.getBand());
+        assertEquals(2, scheduler.getUpshiftCount());
+        assertEquals(3, scheduler.getSwitchCount());
+    }
+}
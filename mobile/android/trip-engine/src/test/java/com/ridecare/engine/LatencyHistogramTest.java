@@ -0,0 +1,84 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * LatencyHistogramTest.java
+ * 
+ * Bucket precision, percentiles and concurrent recording
+ */
+public class LatencyHistogramTest {
+    
+    @Test
+    public void reportsPercentilesWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram(3600000);
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1000, histogram.getMax());
+        assertEquals(500.5, histogram.getMean(), 1e-9);
+        assertWithin(500, histogram.getValueAtPercentile(50));
+        assertWithin(990, histogram.getValueAtPercentile(99));
+        assertEquals(1000, histogram.getValueAtPercentile(100));
+    }
+    
+    @Test
+    public void smallValuesAreExactAndLargeOnesClamped() {
+        LatencyHistogram histogram = new LatencyHistogram(1000);
+        histogram.record(-5);
+        histogram.record(7);
+        histogram.record(5000);
+        
+        assertEquals(0, histogram.getValueAtPercentile(10));
+        assertEquals(7, histogram.getValueAtPercentile(50));
+        assertEquals(1000, histogram.getMax());
+        
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getValueAtPercentile(50));
+    }
+    
+    @Test
+    public void bucketsCoverEveryValueOnce() {
+        for (long value = 0; value < 100000; value++) {
+            int index = LatencyHistogram.index(value);
+            assertTrue(value <= LatencyHistogram.highestEquivalent(index));
+            if (index > 0) {
+                assertTrue(value > LatencyHistogram.highestEquivalent(index - 1));
+            }
+        }
+    }
+    
+    @Test
+    public void concurrentRecordsAreNotLost() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram(1000000);
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 50000; i++) {
+                        histogram.record(i + offset);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        assertEquals(200000, histogram.getCount());
+        assertEquals(50002, histogram.getMax());
+    }
+    
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected ~" + expected + " but was " + actual, Math.abs(actual - expected) <= expected * 0.04);
+    }
+}
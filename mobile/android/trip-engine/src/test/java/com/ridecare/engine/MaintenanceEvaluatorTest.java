@@ -0,0 +1,133 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * MaintenanceEvaluatorTest.java
+ * 
+ * Due/upcoming/overdue evaluation against the MaintenanceEngine.ts rules
+ */
+public class MaintenanceEvaluatorTest {
+    
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final long NOW = 1700000000000L;
+    
+    private static MaintenanceEvaluator defaultRules() {
+        MaintenanceEvaluator evaluator = new MaintenanceEvaluator();
+        evaluator.addRule("rule_oil_change", 90);
+        evaluator.addCondition(MaintenanceEvaluator.CONDITION_ODOMETER, MaintenanceEvaluator.OPERATOR_GTE, 3000,
+            MaintenanceEvaluator.LOGIC_OR);
+        evaluator.addCondition(MaintenanceEvaluator.CONDITION_TIME, MaintenanceEvaluator.OPERATOR_GTE, 90,
+            MaintenanceEvaluator.LOGIC_NONE);
+        evaluator.addRule("rule_service_6k", 95);
+        evaluator.addCondition(MaintenanceEvaluator.CONDITION_ODOMETER, MaintenanceEvaluator.OPERATOR_GTE, 6000,
+            MaintenanceEvaluator.LOGIC_NONE);
+        evaluator.addRule("rule_battery_check", 50);
+        evaluator.addCondition(MaintenanceEvaluator.CONDITION_TIME, MaintenanceEvaluator.OPERATOR_GTE, 365,
+            MaintenanceEvaluator.LOGIC_NONE);
+        return evaluator;
+    }
+    
+    private static int find(MaintenanceEvaluator evaluator, MaintenanceEvaluator.Result result, String ruleId) {
+        for (int i = 0; i < result.count; i++) {
+            if (evaluator.getRuleId(result.rule[i]).equals(ruleId)) return i;
+        }
+        return -1;
+    }
+    
+    @Test
+    public void oilChangeMovesFromUpcomingToOverdueAsOdometerAdvances() {
+        MaintenanceEvaluator evaluator = defaultRules();
+        evaluator.setOdometer("bike1", 5000);
+        evaluator.recordCompletion("bike1", "rule_oil_change", 3500, NOW - 30 * DAY);
+        MaintenanceEvaluator.Result result = new MaintenanceEvaluator.Result();
+        
+        evaluator.evaluate("bike1", NOW, result);
+        assertEquals(-1, find(evaluator, result, "rule_oil_change")); // 1500 km and 60 days left
+        
+        evaluator.addDistance("bike1", 1300);
+        evaluator.evaluate("bike1", NOW, result);
+        int oil = find(evaluator, result, "rule_oil_change");
+        assertEquals(MaintenanceEvaluator.STATUS_UPCOMING, result.status[oil]);
+        assertEquals(200, result.kmUntilDue[oil], 1e-9);
+        assertEquals(60, result.daysUntilDue[oil], 0);
+        
+        evaluator.addDistance("bike1", 200);
+        evaluator.evaluate("bike1", NOW, result);
+        oil = find(evaluator, result, "rule_oil_change");
+        assertEquals(MaintenanceEvaluator.STATUS_DUE, result.status[oil]);
+        assertEquals(100, result.priority[oil]); // 90 + 10 for being within 100 km
+        
+        evaluator.addDistance("bike1", 600);
+        evaluator.evaluate("bike1", NOW, result);
+        oil = find(evaluator, result, "rule_oil_change");
+        assertEquals(MaintenanceEvaluator.STATUS_OVERDUE, result.status[oil]);
+        assertEquals(0, oil); // Overdue sorts first
+    }
+    
+    @Test
+    public void latestCompletionWinsRegardlessOfOrder() {
+        MaintenanceEvaluator evaluator = defaultRules();
+        evaluator.setOdometer("bike1", 12000);
+        evaluator.recordCompletion("bike1", "rule_service_6k", 11800, NOW - 10 * DAY);
+        evaluator.recordCompletion("bike1", "rule_service_6k", 5900, NOW - 200 * DAY);
+        MaintenanceEvaluator.Result result = new MaintenanceEvaluator.Result();
+        
+        evaluator.evaluate("bike1", NOW, result);
+        assertEquals(-1, find(evaluator, result, "rule_service_6k"));
+    }
+    
+    @Test
+    public void timeOnlyRuleHasNoKmAndBikesAreIndependent() {
+        MaintenanceEvaluator evaluator = defaultRules();
+        evaluator.recordCompletion("bike1", "rule_battery_check", 0, NOW - 360 * DAY);
+        evaluator.recordCompletion("bike2", "rule_battery_check", 0, NOW - 10 * DAY);
+        MaintenanceEvaluator.Result result = new MaintenanceEvaluator.Result();
+        
+        evaluator.evaluate("bike1", NOW, result);
+        int battery = find(evaluator, result, "rule_battery_check");
+        assertEquals(MaintenanceEvaluator.STATUS_UPCOMING, result.status[battery]);
+        assertEquals(5, result.daysUntilDue[battery], 0);
+        assertTrue(Double.isNaN(result.kmUntilDue[battery]));
+        
+        evaluator.evaluate("bike2", NOW, result);
+        assertEquals(-1, find(evaluator, result, "rule_battery_check"));
+    }
+    
+    @Test
+    public void sortsOverdueFirstThenByPriority() {
+        MaintenanceEvaluator evaluator = defaultRules();
+        evaluator.setOdometer("bike1", 10000);
+        MaintenanceEvaluator.Result result = new MaintenanceEvaluator.Result();
+        
+        // Never serviced: everything is overdue
+        assertEquals(3, evaluator.evaluate("bike1", NOW, result));
+        for (int i = 1; i < result.count; i++) {
+            assertEquals(MaintenanceEvaluator.STATUS_OVERDUE, result.status[i]);
+            assertTrue(result.priority[i - 1] >= result.priority[i]);
+        }
+    }
+    
+    @Test
+    public void growsPastInitialRuleAndBikeCapacity() {
+        MaintenanceEvaluator evaluator = new MaintenanceEvaluator();
+        for (int b = 0; b < 10; b++) {
+            evaluator.setOdometer("bike" + b, 100 * b);
+        }
+        for (int r = 0; r < 20; r++) {
+            evaluator.addRule("rule" + r, r);
+            evaluator.addCondition(MaintenanceEvaluator.CONDITION_ODOMETER, MaintenanceEvaluator.OPERATOR_GTE,
+                1000, MaintenanceEvaluator.LOGIC_NONE);
+            evaluator.recordCompletion("bike9", "rule" + r, 900, NOW - r);
+        }
+        MaintenanceEvaluator.Result result = new MaintenanceEvaluator.Result();
+        
+        // bike9 serviced at 900 km: 1000 km left on every rule
+        assertEquals(0, evaluator.evaluate("bike9", NOW, result));
+        assertEquals(20, evaluator.evaluate("bike8", NOW, result)); // 200 km left, upcoming
+        assertEquals(900, evaluator.getOdometer("bike9"), 0);
+    }
+}
@@ -0,0 +1,140 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * MotionDetectorTest.java
+ * 
+ * Auto-start state machine driven by a fake motion source and GPS speeds
+ */
+public class MotionDetectorTest {
+    
+    private static class RecordingListener implements MotionDetector.Listener {
+        boolean gpsOn;
+        int gpsRequests;
+        int confirmations;
+        MotionDetector.State lastState = MotionDetector.State.IDLE;
+        
+        @Override
+        public void onGpsRequested(boolean enabled) {
+            gpsOn = enabled;
+            gpsRequests++;
+        }
+        
+        @Override
+        public void onRideConfirmed() {
+            confirmations++;
+        }
+        
+        @Override
+        public void onStateChanged(MotionDetector.State state) {
+            lastState = state;
+        }
+    }
+    
+    private final RecordingListener listener = new RecordingListener();
+    private final FakeMotionSource source = new FakeMotionSource();
+    private final MotionDetector detector = new MotionDetector(listener);
+    
+    private void enable() {
+        detector.addSource(source);
+        detector.setEnabled(true, 0);
+    }
+    
+    /** Motion hints every 5 s from start to end (inclusive) */
+    private void moving(long start, long end) {
+        for (long t = start; t <= end; t += 5000) {
+            source.emit(0.9f, t);
+        }
+    }
+    
+    @Test
+    public void gpsStaysOffUntilMotionIsSustained() {
+        enable();
+        assertTrue(source.isRunning());
+        
+        moving(0, 5000);
+        assertEquals(MotionDetector.State.SUSPECT, detector.getState());
+        assertFalse(listener.gpsOn);
+        
+        // Put down again: back to IDLE without ever touching GPS
+        source.emit(0.1f, 6000);
+        assertEquals(MotionDetector.State.IDLE, detector.getState());
+        assertEquals(0, listener.gpsRequests);
+    }
+    
+    @Test
+    public void confirmsRideAfterSustainedSpeed() {
+        enable();
+        moving(0, 10000);
+        assertEquals(MotionDetector.State.CONFIRMING, detector.getState());
+        assertEquals(MotionDetector.State.CONFIRMING, listener.lastState);
+        assertTrue(listener.gpsOn);
+        
+        for (long t = 11000; t <= 41000; t += 1000) {
+            detector.onFix(6f, t);
+        }
+        assertEquals(0, listener.confirmations);
+        detector.onFix(6f, 42000);
+        
+        assertEquals(1, listener.confirmations);
+        assertEquals(MotionDetector.State.TRACKING, detector.getState());
+        assertFalse("motion sources rest during the trip", source.isRunning());
+        assertEquals(42000, detector.getAverageDecisionLatency());
+        assertEquals(0, detector.getFalseStartRate(), 0);
+        
+        detector.onTripEnded(3600000);
+        assertEquals(MotionDetector.State.IDLE, detector.getState());
+        assertTrue(source.isRunning());
+    }
+    
+    @Test
+    public void gpsSessionWithoutRidingIsAFalseStart() {
+        enable();
+        moving(0, 10000);
+        assertTrue(listener.gpsOn);
+        
+        // Walking around with the phone: motion, but never riding speed
+        for (long t = 11000; t <= 131000; t += 1000) {
+            detector.onFix(1.4f, t);
+        }
+        
+        assertEquals(MotionDetector.State.IDLE, detector.getState());
+        assertFalse(listener.gpsOn);
+        assertEquals(1, detector.getFalseStartCount());
+        assertEquals(1.0, detector.getFalseStartRate(), 0);
+        assertEquals(120000 + 1000, detector.getGpsOnTime());
+    }
+    
+    @Test
+    public void suspicionExpiresWithoutFreshHints() {
+        enable();
+        source.emit(0.9f, 0);
+        
+        detector.tick(MotionDetector.SIGNAL_TIMEOUT);
+        assertEquals(MotionDetector.State.SUSPECT, detector.getState());
+        detector.tick(MotionDetector.SIGNAL_TIMEOUT + 1);
+        assertEquals(MotionDetector.State.IDLE, detector.getState());
+    }
+    
+    @Test
+    public void manualTripSuspendsDetection() {
+        enable();
+        moving(0, 10000);
+        
+        detector.onTripStarted(12000);
+        assertEquals(MotionDetector.State.TRACKING, detector.getState());
+        assertFalse(source.isRunning());
+        assertEquals(2000, detector.getGpsOnTime());
+        
+        // Disabling mid-trip keeps the sources off after the trip
+        detector.setEnabled(false, 20000);
+        detector.onTripEnded(30000);
+        assertFalse(source.isRunning());
+        assertEquals(0, detector.getConfirmedCount());
+    }
+}
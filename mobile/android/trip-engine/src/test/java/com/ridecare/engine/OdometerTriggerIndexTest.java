@@ -0,0 +1,41 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * OdometerTriggerIndexTest.java
+ * 
+ * Ordering and firing of odometer thresholds
+ */
+public class OdometerTriggerIndexTest {
+    
+    @Test
+    public void firesThresholdsInOdometerOrderOnce() {
+        OdometerTriggerIndex index = new OdometerTriggerIndex(new double[] {15000, Double.NaN, 12500, 12500.5});
+        assertEquals(3, index.getRemainingCount());
+        assertEquals(12500, index.getNextThreshold(), 0);
+        
+        assertEquals(-1, index.poll(12499.9));
+        
+        // One fix can cross several thresholds
+        assertEquals(2, index.poll(12501));
+        assertEquals(3, index.poll(12501));
+        assertEquals(-1, index.poll(12501));
+        assertEquals(15000, index.getNextThreshold(), 0);
+        
+        assertEquals(0, index.poll(15000));
+        assertEquals(Double.POSITIVE_INFINITY, index.getNextThreshold(), 0);
+        assertEquals(-1, index.poll(Double.MAX_VALUE));
+    }
+    
+    @Test
+    public void skipsThresholdsAlreadyPassedWhenLoaded() {
+        OdometerTriggerIndex index = new OdometerTriggerIndex(new double[] {9000, 12000, 11000});
+        
+        assertEquals(1, index.skipTo(10000));
+        assertEquals(11000, index.getNextThreshold(), 0);
+        assertEquals(2, index.getRemainingCount());
+    }
+}
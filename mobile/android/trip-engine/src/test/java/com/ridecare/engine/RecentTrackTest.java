@@ -0,0 +1,52 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+/**
+ * RecentTrackTest.java
+ * 
+ * Ring wrap-around and breadcrumb copies
+ */
+public class RecentTrackTest {
+    
+    @Test
+    public void keepsTheNewestPointsOldestFirst() {
+        RecentTrack recent = new RecentTrack(4);
+        assertSame(Breadcrumb.EMPTY, recent.toBreadcrumb(4));
+        
+        for (int i = 0; i < 10; i++) {
+            recent.append(50 + i, 8, i, 1000L * i);
+        }
+        assertEquals(4, recent.size());
+        
+        Breadcrumb all = recent.toBreadcrumb(10);
+        assertEquals(4, all.size());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(1000L * (6 + i), all.getTime(i));
+            assertEquals(56 + i, all.getLatitude(i), 0);
+        }
+        
+        Breadcrumb lastTwo = recent.toBreadcrumb(2);
+        assertEquals(8000, lastTwo.getTime(0));
+        assertEquals(9000, lastTwo.getTime(1));
+    }
+    
+    @Test
+    public void fillsFromTheTailOfATrack() {
+        TrackBuffer track = new TrackBuffer();
+        for (int i = 0; i < 5; i++) {
+            track.append(50, 8 + i, 3, 5, 1000L * i);
+        }
+        
+        RecentTrack recent = new RecentTrack(3);
+        recent.fill(track);
+        
+        Breadcrumb breadcrumb = recent.toBreadcrumb(3);
+        assertEquals(3, breadcrumb.size());
+        assertEquals(2000, breadcrumb.getTime(0));
+        assertEquals(12, breadcrumb.getLongitude(2), 0);
+    }
+}
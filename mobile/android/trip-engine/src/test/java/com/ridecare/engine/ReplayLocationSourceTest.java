@@ -0,0 +1,93 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ReplayLocationSourceTest.java
+ * 
+ * Pacing, provider selection and interval thinning of trace replay
+ */
+public class ReplayLocationSourceTest {
+    
+    @Test
+    public void replaysAtAMultipleOfRealTime() throws InterruptedException {
+        TraceReplay.Trace trace = steadyTrace(11); // 10 seconds
+        ReplayLocationSource source = new ReplayLocationSource(trace, 20);
+        RecordingSink sink = new RecordingSink();
+        
+        long start = System.nanoTime();
+        source.requestUpdates(FixRingBuffer.PROVIDER_GPS, 1000, sink);
+        assertTrue(source.awaitEnd(5000));
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        
+        assertEquals(11, sink.times.size());
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis >= 450 && elapsedMillis < 2000);
+    }
+    
+    @Test
+    public void thinsToTheRequestedIntervalAndProvider() throws InterruptedException {
+        TraceReplay.Trace trace = SyntheticTraces.flappingCity(1, 7);
+        ReplayLocationSource source = new ReplayLocationSource(trace, Double.POSITIVE_INFINITY);
+        RecordingSink sink = new RecordingSink();
+        
+        source.requestUpdates(FixRingBuffer.PROVIDER_GPS, 5000, sink);
+        assertTrue(source.awaitEnd(5000));
+        
+        // GPS is present 20 s of every 30 s: 4 fixes each 30 s at a 5 s interval
+        assertEquals(8, sink.times.size());
+        for (int i = 0; i < sink.providers.size(); i++) {
+            assertEquals(FixRingBuffer.PROVIDER_GPS, (byte) sink.providers.get(i));
+            if (i > 0) {
+                assertTrue(sink.times.get(i) - sink.times.get(i - 1) >= 5000);
+            }
+        }
+    }
+    
+    @Test
+    public void deliversNothingAfterRemoveUpdates() throws InterruptedException {
+        TraceReplay.Trace trace = steadyTrace(100);
+        ReplayLocationSource source = new ReplayLocationSource(trace, Double.POSITIVE_INFINITY);
+        final ReplayLocationSource[] self = {source};
+        RecordingSink sink = new RecordingSink() {
+            @Override
+            public void onLocation(double latitude, double longitude, float speed, float accuracy, long time, byte provider) {
+                super.onLocation(latitude, longitude, speed, accuracy, time, provider);
+                if (times.size() == 10) {
+                    self[0].removeUpdates();
+                }
+            }
+        };
+        
+        source.requestUpdates(FixRingBuffer.PROVIDER_GPS, 0, sink);
+        assertTrue(source.awaitEnd(5000));
+        assertEquals(10, sink.times.size());
+        assertEquals(SyntheticTraces.START_TIME + 99000, source.getReplayTime());
+    }
+    
+    // MARK: - Helper Methods
+    
+    private static TraceReplay.Trace steadyTrace(int fixes) {
+        TraceReplay.Trace trace = new TraceReplay.Trace();
+        for (int i = 0; i < fixes; i++) {
+            trace.add(48 + i * 1e-4, 11, 10f, 5f, SyntheticTraces.START_TIME + i * 1000L, FixRingBuffer.PROVIDER_GPS);
+        }
+        return trace;
+    }
+    
+    private static class RecordingSink implements LocationSource.Sink {
+        final List<Long> times = new ArrayList<>();
+        final List<Byte> providers = new ArrayList<>();
+        
+        @Override
+        public void onLocation(double latitude, double longitude, float speed, float accuracy, long time, byte provider) {
+            times.add(time);
+            providers.add(provider);
+        }
+    }
+}
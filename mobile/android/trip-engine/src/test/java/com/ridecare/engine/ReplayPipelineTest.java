@@ -0,0 +1,40 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * ReplayPipelineTest.java
+ * 
+ * Long synthetic traces replayed through ReplayPipeline, the pipeline
+ * LocationService runs: every fix delivered reaches the track or the filter,
+ * and the GPS schedule thins what the source delivers. Time, allocation and
+ * GC per fix are measured by ReplayPipelineBenchmark.
+ */
+public class ReplayPipelineTest {
+    
+    private static final long TIMEOUT = 60000;
+    
+    @Test
+    public void sixHourHighwayRideKeepsEveryFix() throws InterruptedException {
+        TraceReplay.Trace trace = SyntheticTraces.highway(6, 42);
+        ReplayPipeline.Result result = ReplayPipeline.run(trace, TIMEOUT);
+        
+        assertEquals(trace.size(), result.delivered);
+        assertEquals(trace.size(), result.record.track.size() + result.rejected);
+        assertTrue("rejected " + result.rejected, result.rejected < trace.size() / 1000);
+    }
+    
+    @Test
+    public void flappingProvidersFollowTheGpsSchedule() throws InterruptedException {
+        TraceReplay.Trace trace = SyntheticTraces.flappingCity(60, 11);
+        ReplayPipeline.Result result = ReplayPipeline.run(trace, TIMEOUT);
+        
+        // Network fixes are requested every 5 s, GPS at the scheduler's band
+        assertTrue(result.delivered < trace.size());
+        assertTrue(result.record.track.size() > 0);
+        assertTrue(result.record.stats.getDistance() > 10000);
+    }
+}
@@ -0,0 +1,158 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * RideSegmenterTest.java
+ * 
+ * Pauses, gaps and distance accounting of the streaming segmenter
+ */
+public class RideSegmenterTest {
+    
+    private static final double METERS_PER_DEG_LAT = 111195; // GeoMath's earth radius
+    
+    @Test
+    public void splitsAFuelStopIntoAPausedSegment() {
+        RideSegmenter segments = new RideSegmenter(RideSegmenter.GapPolicy.INTERPOLATE);
+        Feed feed = new Feed(segments);
+        
+        feed.ride(60, 10);   // 0..59: one minute at 10 m/s
+        feed.stand(120);     // 60..179: two minutes standing
+        feed.ride(30, 10);   // 180..209
+        
+        assertEquals(3, segments.getSegmentCount());
+        assertSegment(segments, 0, RideSegmenter.MOVING, 0, 60);
+        assertSegment(segments, 1, RideSegmenter.PAUSED, 60, 179);
+        assertSegment(segments, 2, RideSegmenter.MOVING, 179, 209);
+        assertEquals(119000, segments.getTotalTime(RideSegmenter.PAUSED));
+        assertEquals(0, segments.getDistance(1), 1e-6);
+        assertEquals(590, segments.getDistance(0), 1);
+    }
+    
+    @Test
+    public void shortStopsStayInTheMovingSegment() {
+        RideSegmenter segments = new RideSegmenter(RideSegmenter.GapPolicy.INTERPOLATE);
+        Feed feed = new Feed(segments);
+        
+        feed.ride(60, 10);
+        feed.stand(30); // Traffic light, shorter than PAUSE_DWELL
+        feed.ride(60, 10);
+        
+        assertEquals(1, segments.getSegmentCount());
+        assertEquals(149, segments.getEndIndex(0));
+    }
+    
+    @Test
+    public void tunnelGapIsInterpolatedOrExcluded() {
+        for (RideSegmenter.GapPolicy policy : RideSegmenter.GapPolicy.values()) {
+            RideSegmenter segments = new RideSegmenter(policy);
+            Feed feed = new Feed(segments);
+            
+            feed.ride(10, 15);
+            double step = feed.jump(120, 1500); // 2 minutes, 1.5 km underground
+            feed.ride(10, 15);
+            
+            assertEquals(3, segments.getSegmentCount());
+            assertSegment(segments, 1, RideSegmenter.GAP, 9, 10);
+            if (policy == RideSegmenter.GapPolicy.INTERPOLATE) {
+                assertEquals(1500, step, 1);
+                assertEquals(1500, segments.getDistance(1), 1);
+                assertEquals(0, segments.getExcludedDistance(), 0);
+            } else {
+                assertEquals(RideSegmenter.EXCLUDED, step, 0);
+                assertEquals(0, segments.getDistance(1), 0);
+                assertEquals(1500, segments.getExcludedDistance(), 1);
+            }
+        }
+    }
+    
+    @Test
+    public void implausibleGapIsAlwaysExcluded() {
+        RideSegmenter segments = new RideSegmenter(RideSegmenter.GapPolicy.INTERPOLATE);
+        Feed feed = new Feed(segments);
+        
+        feed.ride(5, 10);
+        assertEquals(RideSegmenter.EXCLUDED, feed.jump(60, 20000), 0); // 1200 km/h
+        assertEquals(20000, segments.getExcludedDistance(), 10);
+    }
+    
+    @Test
+    public void excludedGapDoesNotReachTripDistance() {
+        TripEngine engine = new TripEngine(new TripEngine.Listener() {
+            @Override
+            public void onFixRecorded(double latitude, double longitude, float speed, float accuracy, long time) {}
+            
+            @Override
+            public void onGpsIntervalChanged(long intervalMillis) {}
+            
+            @Override
+            public void onAutoStop() {}
+        });
+        engine.setGapPolicy(RideSegmenter.GapPolicy.EXCLUDE);
+        engine.startTrip(0, 0);
+        
+        double latitude = 48;
+        long time = 0;
+        for (int i = 0; i < 3; i++) {
+            engine.onFix(latitude, 11, 10, 5, time, FixRingBuffer.PROVIDER_GPS, time);
+            latitude += 10 / METERS_PER_DEG_LAT;
+            time += 1000;
+        }
+        // Tunnel: the filter re-initializes after the gap, the segmenter excludes it
+        latitude += 2000 / METERS_PER_DEG_LAT;
+        time += 120000;
+        engine.onFix(latitude, 11, 10, 5, time, FixRingBuffer.PROVIDER_GPS, time);
+        
+        TripRecord record = engine.finishTrip(time);
+        assertEquals(20, record.stats.getDistance(), 3); // Not 2 km
+        assertEquals(3, record.segments.getSegmentCount());
+    }
+    
+    // MARK: - Helper Methods
+    
+    private static void assertSegment(RideSegmenter segments, int segment, byte type, int start, int end) {
+        assertEquals("type of " + segment, type, segments.getType(segment));
+        assertEquals("start of " + segment, start, segments.getStartIndex(segment));
+        assertEquals("end of " + segment, end, segments.getEndIndex(segment));
+    }
+    
+    /**
+     * Northbound ride with one point per second
+     */
+    private static class Feed {
+        private final RideSegmenter segments;
+        private int index = 0;
+        private double latitude = 48;
+        private long time = 0;
+        
+        Feed(RideSegmenter segments) {
+            this.segments = segments;
+        }
+        
+        void ride(int seconds, float speed) {
+            for (int i = 0; i < seconds; i++) {
+                add(speed, speed / METERS_PER_DEG_LAT, 1000);
+            }
+        }
+        
+        void stand(int seconds) {
+            for (int i = 0; i < seconds; i++) {
+                add(0, 0, 1000);
+            }
+        }
+        
+        double jump(int seconds, double meters) {
+            return add(10, meters / METERS_PER_DEG_LAT, seconds * 1000L);
+        }
+        
+        private double add(float speed, double deltaLatitude, long deltaTime) {
+            if (index > 0) {
+                latitude += deltaLatitude;
+                time += deltaTime;
+            }
+            return segments.add(index++, latitude, 11, speed, time);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * SyncOutboxTest.java
+ * 
+ * Coalescing, batching, retries and persistence of the sync outbox, against
+ * a local fake of the batch sync API
+ */
+public class SyncOutboxTest {
+    
+    private File file;
+    private FakeSyncServer server;
+    private HttpSyncEndpoint endpoint;
+    
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("outbox", ".log");
+        file.delete();
+        server = new FakeSyncServer();
+        endpoint = new HttpSyncEndpoint(server.getUrl());
+        endpoint.setToken("token-1");
+    }
+    
+    @After
+    public void tearDown() {
+        server.close();
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+    
+    @Test
+    public void repeatedUpdatesCoalesceIntoOneWrite() throws IOException {
+        try (SyncOutbox outbox = SyncOutbox.open(file, new Random(1))) {
+            for (int i = 0; i < 100; i++) {
+                outbox.enqueue("bikes", "b1", SyncOutbox.OP_SET, "{\"odometer_km\":" + i + "}", i);
+            }
+            outbox.enqueue("trips", "t1", SyncOutbox.OP_SET, "{\"distance_km\":3.5}", 100);
+            outbox.enqueue("trips", "t1", SyncOutbox.OP_DELETE, null, 101);
+            
+            assertEquals(2, outbox.getPendingCount());
+            assertEquals(100, outbox.getCoalescedCount());
+            
+            List<SyncOutbox.Entry> acknowledged = new ArrayList<>();
+            assertEquals(2, outbox.flush(endpoint, 0, acknowledged));
+            assertEquals(1, server.getBodies().size());
+            String body = server.getBodies().get(0);
+            assertTrue(body, body.startsWith("{\"writes\":[{\"collection\":\"bikes\",\"id\":\"b1\",\"op\":\"set\""));
+            assertTrue(body, body.contains("\"data\":{\"odometer_km\":99}"));
+            assertTrue(body, body.contains("\"id\":\"t1\",\"op\":\"delete\",\"updatedAt\":101}"));
+            assertEquals("Bearer token-1", server.getTokens().get(0));
+            assertEquals(0, outbox.getPendingCount());
+        }
+    }
+    
+    @Test
+    public void burstIsSplitIntoSizeBoundedBatches() throws IOException {
+        try (SyncOutbox outbox = SyncOutbox.open(file, new Random(1))) {
+            outbox.setBatchLimits(16 * 1024, 500);
+            for (int i = 0; i < 1000; i++) {
+                outbox.enqueue("trips", "trip-" + i, SyncOutbox.OP_SET, "{\"distance_km\":" + i + ",\"path\":\"_p~iF~ps|U\"}", i);
+            }
+            
+            List<SyncOutbox.Entry> acknowledged = new ArrayList<>();
+            assertEquals(1000, outbox.flush(endpoint, 0, acknowledged));
+            
+            assertTrue(server.getBodies().size() > 1);
+            for (String body : server.getBodies()) {
+                assertTrue(body.length() <= 16 * 1024);
+            }
+            // Queue order is kept across batches
+            for (int i = 0; i < 1000; i++) {
+                assertEquals("trip-" + i, acknowledged.get(i).id);
+            }
+            assertEquals(server.getBodies().size(), outbox.getBatchCount());
+        }
+    }
+    
+    @Test
+    public void failedUploadsBackOffAndRetry() throws IOException {
+        try (SyncOutbox outbox = SyncOutbox.open(file, new Random(1))) {
+            outbox.enqueue("bikes", "b1", SyncOutbox.OP_SET, "{}", 1);
+            server.respondWith(503, 503);
+            List<SyncOutbox.Entry> acknowledged = new ArrayList<>();
+            
+            assertEquals(0, outbox.flush(endpoint, 1000, acknowledged));
+            long firstRetry = outbox.getRetryAt();
+            assertTrue(firstRetry >= 1000 + SyncOutbox.BASE_BACKOFF / 2);
+            assertTrue(firstRetry <= 1000 + SyncOutbox.BASE_BACKOFF);
+            
+            // Nothing is sent before the retry time
+            assertEquals(0, outbox.flush(endpoint, firstRetry - 1, acknowledged));
+            assertEquals(1, server.getBodies().size());
+            
+            assertEquals(0, outbox.flush(endpoint, firstRetry, acknowledged));
+            long secondDelay = outbox.getRetryAt() - firstRetry;
+            assertTrue(secondDelay >= SyncOutbox.BASE_BACKOFF);
+            assertEquals(2, outbox.getConsecutiveFailures());
+            
+            assertEquals(1, outbox.flush(endpoint, outbox.getRetryAt(), acknowledged));
+            assertEquals(0, outbox.getRetryAt());
+            assertEquals(0, outbox.getConsecutiveFailures());
+            assertEquals(2, outbox.getFailedUploadCount());
+        }
+    }
+    
+    @Test
+    public void missingEndpointBacksOffWithoutDroppingRecords() throws IOException {
+        try (SyncOutbox outbox = SyncOutbox.open(file, new Random(1))) {
+            for (int i = 0; i < 4; i++) {
+                outbox.enqueue("trips", "t" + i, SyncOutbox.OP_SET, "{\"n\":" + i + "}", i);
+            }
+            server.respondWith(404, 405);
+            List<SyncOutbox.Entry> acknowledged = new ArrayList<>();
+            
+            // A wrong URL or a function not deployed yet says nothing about the records
+            assertEquals(0, outbox.flush(endpoint, 1000, acknowledged));
+            assertEquals(1, server.getBodies().size());
+            assertTrue(outbox.getRetryAt() > 1000);
+            assertEquals(0, outbox.flush(endpoint, outbox.getRetryAt(), acknowledged));
+            assertEquals(2, outbox.getConsecutiveFailures());
+            assertEquals(0, outbox.getRejectedCount());
+            assertEquals(4, outbox.getPendingCount());
+            
+            assertEquals(4, outbox.flush(endpoint, outbox.getRetryAt(), acknowledged));
+            assertEquals(3, server.getBodies().size()); // Never split
+        }
+    }
+    
+    @Test
+    public void rejectedRecordIsIsolatedAndDropped() throws IOException {
+        try (SyncOutbox outbox = SyncOutbox.open(file, new Random(1))) {
+            for (int i = 0; i < 8; i++) {
+                String data = i == 5 ? "{\"bad\":true}" : "{\"n\":" + i + "}";
+                outbox.enqueue("maintenance_events", "m" + i, SyncOutbox.OP_SET, data, i);
+            }
+            server.rejectBatchesContaining("\"bad\"");
+            
+            List<SyncOutbox.Entry> acknowledged = new ArrayList<>();
+            assertEquals(7, outbox.flush(endpoint, 0, acknowledged));
+            assertEquals(1, outbox.getRejectedCount());
+            assertEquals(0, outbox.getPendingCount());
+            for (SyncOutbox.Entry entry : acknowledged) {
+                assertFalse("m5".equals(entry.id));
+            }
+        }
+    }
+    
+    @Test
+    public void updateDuringUploadStaysPending() throws IOException {
+        try (SyncOutbox outbox = SyncOutbox.open(file, new Random(1))) {
+            outbox.enqueue("bikes", "b1", SyncOutbox.OP_SET, "{\"odometer_km\":1}", 1);
+            SyncOutbox.Batch inFlight = outbox.nextBatch();
+            outbox.enqueue("bikes", "b1", SyncOutbox.OP_SET, "{\"odometer_km\":2}", 2);
+            
+            outbox.acknowledge(inFlight);
+            assertEquals(1, outbox.getPendingCount());
+            assertTrue(new String(outbox.nextBatch().payload, "UTF-8").contains("\"odometer_km\":2"));
+        }
+    }
+    
+    @Test
+    public void pendingWritesSurviveReopenAndTornTail() throws IOException {
+        try (SyncOutbox outbox = SyncOutbox.open(file, new Random(1))) {
+            outbox.enqueue("bikes", "b1", SyncOutbox.OP_SET, "{\"n\":1}", 1);
+            outbox.enqueue("bikes", "b2", SyncOutbox.OP_SET, "{\"n\":2}", 2);
+            outbox.enqueue("bikes", "b3", SyncOutbox.OP_SET, "{\"n\":3}", 3);
+            outbox.setBatchLimits(SyncOutbox.DEFAULT_MAX_BATCH_BYTES, 1);
+            outbox.acknowledge(outbox.nextBatch());
+        }
+        
+        // A crash in the middle of an append leaves a partial record behind
+        long intact = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(intact);
+            raf.write(new byte[] {0, 0, 0, 40, 1, 2, 3});
+        }
+        
+        try (SyncOutbox outbox = SyncOutbox.open(file, new Random(1))) {
+            assertEquals(intact, file.length());
+            assertEquals(2, outbox.getPendingCount());
+            outbox.enqueue("bikes", "b2", SyncOutbox.OP_SET, "{\"n\":22}", 4);
+            assertEquals(2, outbox.getPendingCount());
+            
+            List<SyncOutbox.Entry> acknowledged = new ArrayList<>();
+            assertEquals(2, outbox.flush(endpoint, 0, acknowledged));
+            assertEquals("b2", acknowledged.get(0).id);
+            assertEquals("{\"n\":22}", acknowledged.get(0).data);
+        }
+        
+        try (SyncOutbox outbox = SyncOutbox.open(file, new Random(1))) {
+            assertEquals(0, outbox.getPendingCount());
+        }
+    }
+    
+    @Test
+    public void clearDropsPendingWrites() throws IOException {
+        try (SyncOutbox outbox = SyncOutbox.open(file, new Random(1))) {
+            outbox.enqueue("bikes", "b1", SyncOutbox.OP_SET, "{}", 1);
+            outbox.clear();
+            assertEquals(0, outbox.getPendingCount());
+            outbox.enqueue("bikes", "b2", SyncOutbox.OP_SET, "{}", 2);
+        }
+        
+        try (SyncOutbox outbox = SyncOutbox.open(file, new Random(1))) {
+            assertEquals(1, outbox.getPendingCount());
+            assertTrue(outbox.isPending("bikes", "b2"));
+        }
+    }
+    
+    @Test
+    public void acknowledgedLogIsCompacted() throws IOException {
+        StringBuilder data = new StringBuilder("{\"path\":\"");
+        for (int i = 0; i < 1000; i++) data.append('x');
+        data.append("\"}");
+        
+        try (SyncOutbox outbox = SyncOutbox.open(file, new Random(1))) {
+            for (int round = 0; round < 20; round++) {
+                for (int i = 0; i < 10; i++) {
+                    outbox.enqueue("trips", "r" + round + "-" + i, SyncOutbox.OP_SET, data.toString(), i);
+                }
+                outbox.flush(endpoint, 0, new ArrayList<SyncOutbox.Entry>());
+            }
+            outbox.enqueue("trips", "last", SyncOutbox.OP_SET, data.toString(), 0);
+            assertTrue("log is " + file.length() + " bytes", file.length() < 100 * 1024);
+        }
+        
+        try (SyncOutbox outbox = SyncOutbox.open(file, new Random(1))) {
+            assertEquals(1, outbox.getPendingCount());
+            assertEquals("last", outbox.nextBatch().entries.get(0).id);
+        }
+    }
+}
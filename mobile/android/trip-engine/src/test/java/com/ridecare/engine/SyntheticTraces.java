@@ -0,0 +1,83 @@
+package com.ridecare.engine;
+
+import java.util.Random;
+
+/**
+ * SyntheticTraces.java
+ * 
+ * Generated rides for replay tests that are too long to keep as files
+ */
+final class SyntheticTraces {
+    
+    static final long START_TIME = 1700000000000L;
+    private static final double METERS_PER_DEG_LAT = 111320;
+    
+    private SyntheticTraces() {}
+    
+    /**
+     * Steady highway ride at 1 Hz, 80-110 km/h with 5 m of receiver noise
+     */
+    static TraceReplay.Trace highway(int hours, long seed) {
+        Random random = new Random(seed);
+        TraceReplay.Trace trace = new TraceReplay.Trace();
+        double lat = 17.3850;
+        double lng = 78.4867;
+        double heading = 0.3;
+        for (int i = 0; i < hours * 3600; i++) {
+            heading += random.nextGaussian() * 0.002;
+            float speed = (float) ((95 + 15 * Math.sin(i / 600.0)) / 3.6);
+            lat += Math.cos(heading) * speed / METERS_PER_DEG_LAT;
+            lng += Math.sin(heading) * speed / (METERS_PER_DEG_LAT * Math.cos(Math.toRadians(lat)));
+            trace.add(
+                lat + random.nextGaussian() * 5 / METERS_PER_DEG_LAT,
+                lng + random.nextGaussian() * 5 / METERS_PER_DEG_LAT,
+                speed,
+                5f,
+                START_TIME + i * 1000L,
+                FixRingBuffer.PROVIDER_GPS
+            );
+        }
+        return trace;
+    }
+    
+    /**
+     * City ride at 1 Hz where GPS drops out for 10 s of every 30 s and
+     * coarse network fixes arrive every 5 s throughout
+     */
+    static TraceReplay.Trace flappingCity(int minutes, long seed) {
+        Random random = new Random(seed);
+        TraceReplay.Trace trace = new TraceReplay.Trace();
+        double lat = 12.9716;
+        double lng = 77.5946;
+        double heading = 0;
+        for (int i = 0; i < minutes * 60; i++) {
+            heading += random.nextGaussian() * 0.08;
+            float speed = (float) Math.max(0, 7 + 4 * Math.sin(i / 45.0) + random.nextGaussian());
+            lat += Math.cos(heading) * speed / METERS_PER_DEG_LAT;
+            lng += Math.sin(heading) * speed / METERS_PER_DEG_LAT;
+            long time = START_TIME + i * 1000L;
+            
+            if (i % 30 < 20) {
+                trace.add(
+                    lat + random.nextGaussian() * 5 / METERS_PER_DEG_LAT,
+                    lng + random.nextGaussian() * 5 / METERS_PER_DEG_LAT,
+                    speed,
+                    5f,
+                    time,
+                    FixRingBuffer.PROVIDER_GPS
+                );
+            }
+            if (i % 5 == 0) {
+                trace.add(
+                    lat + random.nextGaussian() * 40 / METERS_PER_DEG_LAT,
+                    lng + random.nextGaussian() * 40 / METERS_PER_DEG_LAT,
+                    0f,
+                    40f,
+                    time + 1,
+                    FixRingBuffer.PROVIDER_NETWORK
+                );
+            }
+        }
+        return trace;
+    }
+}
@@ -0,0 +1,68 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * TrackCodecTest.java
+ * 
+ * Round-trip and compression checks for the polyline codec
+ */
+public class TrackCodecTest {
+    
+    @Test
+    public void encodesReferencePolyline() {
+        TrackBuffer track = new TrackBuffer();
+        track.append(38.5, -120.2, 0f, 0f, 1);
+        track.append(40.7, -120.95, 0f, 0f, 2);
+        track.append(43.252, -126.453, 0f, 0f, 3);
+        
+        String encoded = TrackCodec.encode(track, new int[] {0, 1, 2}, 3);
+        assertEquals("_p~iF~ps|U_ulLnnqC_mqNvxq`@", encoded);
+        
+        double[] decoded = TrackCodec.decode(encoded);
+        assertEquals(6, decoded.length);
+        assertEquals(43.252, decoded[4], 1e-9);
+        assertEquals(-126.453, decoded[5], 1e-9);
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTextThatIsNotAPolyline() {
+        TrackCodec.decode("{\"type\":\"LineString\",\"coordinates\":[[77.59,12.97]]}");
+    }
+    
+    @Test
+    public void roundTripsRecordedTrackWithinPrecision() throws IOException {
+        TrackBuffer track = TraceReplay.loadResource("tracks/nh44_highway_ride.csv").getFixes();
+        int[] all = new int[track.size()];
+        for (int i = 0; i < all.length; i++) all[i] = i;
+        
+        double[] decoded = TrackCodec.decode(TrackCodec.encode(track, all, all.length));
+        assertEquals(track.size() * 2, decoded.length);
+        for (int i = 0; i < track.size(); i++) {
+            assertEquals(track.getLatitude(i), decoded[i * 2], 0.6e-5);
+            assertEquals(track.getLongitude(i), decoded[i * 2 + 1], 0.6e-5);
+        }
+    }
+    
+    @Test
+    public void simplificationKeepsEndpointsAndShrinksPath() throws IOException {
+        TrackBuffer track = TraceReplay.loadResource("tracks/bangalore_city_commute.csv").getFixes();
+        int[] keep = TrackCodec.simplify(track, 5.0);
+        
+        assertEquals(0, keep[0]);
+        assertEquals(track.size() - 1, keep[keep.length - 1]);
+        for (int i = 1; i < keep.length; i++) {
+            assertTrue(keep[i] > keep[i - 1]);
+        }
+        
+        // Raw fixes are 32 bytes each in the trip journal
+        String path = TrackCodec.encode(track, 5.0);
+        assertTrue("path should be at least 10x smaller, was " + path.length() + " chars",
+            path.length() * 10 < track.size() * 32);
+    }
+}
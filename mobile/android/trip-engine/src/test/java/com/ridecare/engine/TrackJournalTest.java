@@ -0,0 +1,183 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+
+/**
+ * TrackJournalTest.java
+ * 
+ * Journal layout across reopen: resume after a kill, torn tails, segment
+ * boundaries, the bike id header, version 1 files and sealing into a trip file
+ */
+public class TrackJournalTest {
+    
+    private File file;
+    private File sealed;
+    
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("journal", ".trk");
+        sealed = new File(file.getParentFile(), file.getName() + ".sealed");
+    }
+    
+    @After
+    public void tearDown() {
+        file.delete();
+        sealed.delete();
+    }
+    
+    private static void appendFixes(TrackJournal journal, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            journal.append(12.9 + i * 1e-5, 77.5 + i * 1e-5, i % 20, 5, 1000 + i * 1000L);
+        }
+    }
+    
+    @Test
+    public void resumeReplaysRecordsAndKeepsAppending() throws IOException {
+        TrackJournal journal = TrackJournal.create(file, 42, "bike-1");
+        appendFixes(journal, 0, 100);
+        journal.close(); // Killed mid-ride
+        
+        TrackBuffer track = new TrackBuffer();
+        journal = TrackJournal.resume(file, track);
+        assertEquals(42, journal.getStartTime());
+        assertEquals("bike-1", journal.getBikeId());
+        assertEquals(100, journal.getRecordCount());
+        assertEquals(100, track.size());
+        assertEquals(12.9 + 99 * 1e-5, track.getLatitude(99), 1e-12);
+        assertEquals(19f, track.getSpeed(99), 0);
+        assertEquals(100000, track.getTime(99));
+        
+        appendFixes(journal, 100, 150);
+        journal.close();
+        
+        track.clear();
+        TrackJournal.resume(file, track).close();
+        assertEquals(150, track.size());
+        assertEquals(150000, track.getTime(149));
+    }
+    
+    @Test
+    public void recordsSpanningSegmentsSurviveResume() throws IOException {
+        TrackJournal journal = TrackJournal.create(file, 1, null);
+        appendFixes(journal, 0, 5000); // More than two mapped segments
+        journal.close();
+        
+        TrackBuffer track = new TrackBuffer();
+        TrackJournal.resume(file, track).close();
+        assertEquals(5000, track.size());
+        for (int i = 0; i < track.size(); i++) {
+            assertEquals(1000 + i * 1000L, track.getTime(i));
+        }
+    }
+    
+    @Test
+    public void tornTailIsIgnored() throws IOException {
+        TrackJournal journal = TrackJournal.create(file, 1, null);
+        appendFixes(journal, 0, 10);
+        journal.close();
+        
+        // A record cut off before its timestamp, then a partial record
+        long end = TrackJournal.HEADER_SIZE + 10L * TrackJournal.RECORD_SIZE;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(end);
+            raf.writeLong(Double.doubleToLongBits(13.0));
+            raf.setLength(end + TrackJournal.RECORD_SIZE + 7);
+        }
+        
+        TrackBuffer track = new TrackBuffer();
+        journal = TrackJournal.resume(file, track);
+        assertEquals(10, track.size());
+        
+        // Appending continues over the torn record
+        journal.append(13.1, 77.6, 3, 5, 99000);
+        journal.close();
+        track.clear();
+        TrackJournal.resume(file, track).close();
+        assertEquals(11, track.size());
+        assertEquals(13.1, track.getLatitude(10), 0);
+    }
+    
+    @Test
+    public void sealTrimsAndMovesTheJournal() throws IOException {
+        TrackJournal journal = TrackJournal.create(file, 7, "bike-1");
+        appendFixes(journal, 0, 25);
+        assertEquals(sealed, journal.seal(sealed));
+        
+        assertFalse(file.exists());
+        assertEquals(TrackJournal.HEADER_SIZE + 25L * TrackJournal.RECORD_SIZE, sealed.length());
+        
+        TrackBuffer track = new TrackBuffer();
+        journal = TrackJournal.resume(sealed, track);
+        assertEquals(7, journal.getStartTime());
+        assertEquals("bike-1", journal.getBikeId());
+        assertEquals(25, track.size());
+        journal.close();
+    }
+    
+    @Test
+    public void bikeIdFollowsASwitchMidRide() throws IOException {
+        TrackJournal journal = TrackJournal.create(file, 1, null);
+        appendFixes(journal, 0, 10);
+        journal.setBikeId("\u092c\u093e\u0907\u0915-2"); // Non-ASCII ids are stored as UTF-8
+        appendFixes(journal, 10, 20);
+        journal.close();
+        
+        TrackBuffer track = new TrackBuffer();
+        journal = TrackJournal.resume(file, track);
+        assertEquals("\u092c\u093e\u0907\u0915-2", journal.getBikeId());
+        assertEquals(20, track.size());
+        
+        journal.setBikeId(null);
+        journal.close();
+        journal = TrackJournal.resume(file, new TrackBuffer());
+        assertEquals(null, journal.getBikeId());
+        journal.close();
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOversizedBikeIds() throws IOException {
+        char[] id = new char[TrackJournal.MAX_BIKE_ID_BYTES + 1];
+        Arrays.fill(id, 'b');
+        TrackJournal.create(file, 1, new String(id));
+    }
+    
+    @Test
+    public void rejectsForeignAndTruncatedFiles() throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            raf.write(new byte[] {1, 2, 3});
+        }
+        expectUnreadable();
+        
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(0);
+            raf.write(new byte[TrackJournal.HEADER_SIZE + TrackJournal.RECORD_SIZE]);
+        }
+        expectUnreadable();
+        
+        assertTrue(TrackJournal.discard(file));
+        assertFalse(file.exists());
+        assertTrue(TrackJournal.discard(file)); // Already gone
+    }
+    
+    private void expectUnreadable() {
+        try {
+            TrackJournal.resume(file, new TrackBuffer()).close();
+            fail("Resumed " + file);
+        } catch (IOException expected) {
+            // The caller discards the journal
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+/**
+ * TripAccumulatorTest.java
+ * 
+ * Checks the running trip statistics against a full rescan of recorded tracks
+ */
+public class TripAccumulatorTest {
+    
+    private static final String[] RECORDED_TRACKS = {
+        "tracks/bangalore_city_commute.csv",
+        "tracks/nh44_highway_ride.csv",
+    };
+    
+    @Test
+    public void matchesFullRescanOnRecordedTracks() throws IOException {
+        for (String name : RECORDED_TRACKS) {
+            TrackBuffer track = TraceReplay.loadResource(name).getFixes();
+            TripAccumulator stats = new TripAccumulator();
+            for (int i = 0; i < track.size(); i++) {
+                stats.add(track.getLatitude(i), track.getLongitude(i), track.getSpeed(i), track.getTime(i));
+            }
+            
+            // Full rescan, the way LocationService used to compute it
+            double distance = 0;
+            long movingTime = 0;
+            float maxSpeed = 0;
+            double minLat = track.getLatitude(0), maxLat = minLat;
+            double minLng = track.getLongitude(0), maxLng = minLng;
+            for (int i = 0; i < track.size(); i++) {
+                maxSpeed = Math.max(maxSpeed, track.getSpeed(i));
+                minLat = Math.min(minLat, track.getLatitude(i));
+                maxLat = Math.max(maxLat, track.getLatitude(i));
+                minLng = Math.min(minLng, track.getLongitude(i));
+                maxLng = Math.max(maxLng, track.getLongitude(i));
+                if (i == 0) continue;
+                distance += GeoMath.distanceMeters(
+                    track.getLatitude(i - 1), track.getLongitude(i - 1),
+                    track.getLatitude(i), track.getLongitude(i)
+                );
+                if (track.getSpeed(i) >= TripAccumulator.MOVING_SPEED_THRESHOLD) {
+                    movingTime += track.getTime(i) - track.getTime(i - 1);
+                }
+            }
+            
+            assertTrue(name + " should have a usable distance", distance > 1000);
+            assertEquals(name + " point count", track.size(), stats.getPointCount());
+            assertEquals(name + " distance", distance, stats.getDistance(), 1e-6);
+            assertEquals(name + " moving time", movingTime, stats.getMovingTime());
+            assertEquals(name + " max speed", maxSpeed, stats.getMaxSpeed(), 0);
+            assertEquals(name + " avg speed", distance / (movingTime / 1000.0), stats.getAverageSpeed(), 1e-9);
+            assertEquals(name + " elapsed", track.getTime(track.size() - 1) - track.getTime(0), stats.getElapsedTime());
+            assertEquals(name + " min lat", minLat, stats.getMinLatitude(), 0);
+            assertEquals(name + " max lat", maxLat, stats.getMaxLatitude(), 0);
+            assertEquals(name + " min lng", minLng, stats.getMinLongitude(), 0);
+            assertEquals(name + " max lng", maxLng, stats.getMaxLongitude(), 0);
+        }
+    }
+    
+    @Test
+    public void singleFixHasNoDistance() {
+        TripAccumulator stats = new TripAccumulator();
+        stats.add(12.9716, 77.5946, 5f, 1000);
+        
+        assertEquals(0, stats.getDistance(), 0);
+        assertEquals(0, stats.getMovingTime());
+        assertEquals(0, stats.getAverageSpeed(), 0);
+        assertEquals(12.9716, stats.getMinLatitude(), 0);
+        assertEquals(77.5946, stats.getMaxLongitude(), 0);
+    }
+    
+    @Test
+    public void resetClearsAllStatistics() {
+        TripAccumulator stats = new TripAccumulator();
+        stats.add(12.9716, 77.5946, 5f, 1000);
+        stats.add(12.9726, 77.5956, 6f, 2000);
+        stats.reset();
+        
+        assertEquals(0, stats.getPointCount());
+        assertEquals(0, stats.getDistance(), 0);
+        assertEquals(0, stats.getMaxSpeed(), 0);
+        assertEquals(0, stats.getElapsedTime());
+        assertTrue(Double.isNaN(stats.getMinLatitude()));
+    }
+}
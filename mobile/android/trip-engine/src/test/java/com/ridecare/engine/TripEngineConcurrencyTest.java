@@ -0,0 +1,173 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * TripEngineConcurrencyTest.java
+ * 
+ * Stress test of the single-writer model used by LocationService: a fake
+ * feed produces into a FixRingBuffer, one owner thread drains it into the
+ * engine and publishes snapshots, and reader threads poll the snapshot.
+ */
+public class TripEngineConcurrencyTest {
+    
+    private static final int FIX_COUNT = 20000;
+    private static final int READER_COUNT = 3;
+    private static final long TIMEOUT = 30000;
+    
+    @Test
+    public void everyAcceptedFixIsRecordedExactlyOnce() throws InterruptedException {
+        FixRingBuffer buffer = new FixRingBuffer(64); // Small, so the feed also overruns it
+        FakeLocationFeed feed = new FakeLocationFeed(buffer, FIX_COUNT);
+        TripEngine engine = new TripEngine(new NoOpListener());
+        
+        TripRecord record = run(engine, buffer, feed, Integer.MAX_VALUE);
+        
+        assertEquals(FIX_COUNT, feed.getOfferedCount() + buffer.getDroppedCount());
+        assertEquals(0, engine.getFilter().getRejectedCount());
+        assertRecordedInOrder(record.track, feed, feed.getOfferedCount());
+    }
+    
+    @Test
+    public void stopOnTheOwnerThreadEndsTheTripCleanly() throws InterruptedException {
+        FixRingBuffer buffer = new FixRingBuffer(64);
+        FakeLocationFeed feed = new FakeLocationFeed(buffer, FIX_COUNT);
+        TripEngine engine = new TripEngine(new NoOpListener());
+        
+        // Stop mid-feed, as auto-stop or stopTracking() would
+        TripRecord record = run(engine, buffer, feed, FIX_COUNT / 4);
+        
+        assertTrue(record.track.size() >= FIX_COUNT / 4);
+        assertRecordedInOrder(record.track, feed, record.track.size());
+        assertTrue(engine.getTrack().isEmpty()); // Later fixes did not leak into a new trip
+        assertSame(TripSnapshot.IDLE, engine.getPublished());
+    }
+    
+    // MARK: - Helper Methods
+    
+    /**
+     * Feed, drain and read concurrently; the owner finishes the trip once
+     * stopAfter points are recorded or the feed is exhausted
+     */
+    private static TripRecord run(
+        final TripEngine engine,
+        final FixRingBuffer buffer,
+        final FakeLocationFeed feed,
+        final int stopAfter
+    ) throws InterruptedException {
+        final AtomicBoolean feeding = new AtomicBoolean(true);
+        final AtomicBoolean owning = new AtomicBoolean(true);
+        final AtomicReference<String> failure = new AtomicReference<>();
+        final AtomicReference<TripRecord> result = new AtomicReference<>();
+        
+        engine.startTrip(FakeLocationFeed.START_TIME, FakeLocationFeed.START_TIME);
+        
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                feed.run();
+                feeding.set(false);
+            }
+        });
+        
+        Thread owner = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                FixRingBuffer.Consumer consumer = new FixRingBuffer.Consumer() {
+                    @Override
+                    public void onFix(double latitude, double longitude, float speed, float accuracy, long time, byte provider) {
+                        engine.onFix(latitude, longitude, speed, accuracy, time, provider, time);
+                    }
+                };
+                
+                boolean wasFeeding;
+                do {
+                    wasFeeding = feeding.get();
+                    buffer.drain(consumer, 16);
+                    engine.publish();
+                    if (engine.isTracking() && engine.getTrack().size() >= stopAfter) {
+                        result.set(engine.finishTrip(engine.getTrack().getTime(engine.getTrack().size() - 1)));
+                    }
+                    Thread.yield();
+                } while (wasFeeding || !buffer.isEmpty());
+                
+                if (engine.isTracking()) {
+                    result.set(engine.finishTrip(FakeLocationFeed.START_TIME + FIX_COUNT * 1000L));
+                }
+                owning.set(false);
+            }
+        });
+        
+        Thread[] readers = new Thread[READER_COUNT];
+        for (int r = 0; r < readers.length; r++) {
+            readers[r] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int lastCount = 0;
+                    long lastTime = 0;
+                    boolean ended = false;
+                    while (owning.get()) {
+                        TripSnapshot snapshot = engine.getPublished();
+                        int offered = feed.getOfferedCount(); // Read after the snapshot
+                        
+                        if (!snapshot.isTracking) {
+                            ended |= lastCount > 0;
+                            continue;
+                        }
+                        if (ended) {
+                            failure.compareAndSet(null, "Tracking again after the trip ended");
+                        } else if (snapshot.pointCount < lastCount || snapshot.lastFixTime < lastTime) {
+                            failure.compareAndSet(null, "Snapshot went backwards at " + snapshot.pointCount);
+                        } else if (snapshot.pointCount > offered) {
+                            failure.compareAndSet(null, "Snapshot has " + snapshot.pointCount + " of " + offered + " fixes");
+                        }
+                        lastCount = snapshot.pointCount;
+                        lastTime = snapshot.lastFixTime;
+                    }
+                }
+            });
+        }
+        
+        for (Thread reader : readers) {
+            reader.start();
+        }
+        owner.start();
+        producer.start();
+        
+        producer.join(TIMEOUT);
+        owner.join(TIMEOUT);
+        for (Thread reader : readers) {
+            reader.join(TIMEOUT);
+        }
+        assertFalse("Owner thread did not finish", owner.isAlive());
+        assertNull(failure.get(), failure.get());
+        return result.get();
+    }
+    
+    private static void assertRecordedInOrder(TrackBuffer track, FakeLocationFeed feed, int expectedCount) {
+        assertEquals(expectedCount, track.size());
+        for (int i = 0; i < track.size(); i++) {
+            assertEquals("Point " + i, feed.getOfferedTime(i), track.getTime(i));
+        }
+    }
+    
+    private static class NoOpListener implements TripEngine.Listener {
+        @Override
+        public void onFixRecorded(double latitude, double longitude, float speed, float accuracy, long time) {}
+        
+        @Override
+        public void onGpsIntervalChanged(long intervalMillis) {}
+        
+        @Override
+        public void onAutoStop() {}
+    }
+}
@@ -0,0 +1,180 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * TripEngineTest.java
+ * 
+ * Drives the trip engine with recorded and synthetic traces, no device needed
+ */
+public class TripEngineTest {
+    
+    // Route length of the mixed-provider trace, measured on the ridden path
+    private static final double MIXED_TRACE_ROUTE_METERS = 7511;
+    
+    private static class RecordingListener implements TripEngine.Listener {
+        int recorded;
+        int intervalChanges;
+        int autoStops;
+        
+        @Override
+        public void onFixRecorded(double latitude, double longitude, float speed, float accuracy, long time) {
+            recorded++;
+        }
+        
+        @Override
+        public void onGpsIntervalChanged(long intervalMillis) {
+            intervalChanges++;
+        }
+        
+        @Override
+        public void onAutoStop() {
+            autoStops++;
+        }
+    }
+    
+    @Test
+    public void replaysMixedProviderTraceEndToEnd() throws IOException {
+        TraceReplay.Trace trace = TraceReplay.loadResource("tracks/koramangala_gps_network_mix.csv");
+        final RecordingListener listener = new RecordingListener();
+        final TripEngine engine = new TripEngine(listener);
+        
+        long start = trace.getFixes().getTime(0);
+        engine.startTrip(start, start);
+        trace.replay(new FixRingBuffer.Consumer() {
+            @Override
+            public void onFix(double latitude, double longitude, float speed, float accuracy, long time, byte provider) {
+                engine.onFix(latitude, longitude, speed, accuracy, time, provider, time);
+            }
+        });
+        
+        TripSnapshot snapshot = engine.snapshot();
+        assertTrue(snapshot.isTracking);
+        assertEquals(listener.recorded, snapshot.pointCount);
+        assertEquals(engine.getFilter().getRejectedCount(), snapshot.rejectedFixCount);
+        
+        // The breadcrumb ends at the newest recorded point
+        Breadcrumb breadcrumb = snapshot.breadcrumb;
+        TrackBuffer track = engine.getTrack();
+        assertEquals(Math.min(TripEngine.RECENT_POINTS, track.size()), breadcrumb.size());
+        assertEquals(track.getTime(track.size() - 1), breadcrumb.getTime(breadcrumb.size() - 1));
+        assertEquals(track.getLatitude(track.size() - 1), breadcrumb.getLatitude(breadcrumb.size() - 1), 0);
+        assertTrue(snapshot.movingTime > 0);
+        
+        TripRecord record = engine.finishTrip(trace.getFixes().getTime(trace.size() - 1));
+        assertEquals(listener.recorded, record.track.size());
+        assertEquals("distance", MIXED_TRACE_ROUTE_METERS, record.stats.getDistance(),
+            0.08 * MIXED_TRACE_ROUTE_METERS);
+        assertEquals(TripSnapshot.IDLE, engine.snapshot());
+        assertEquals(0, engine.getTrack().size());
+    }
+    
+    @Test
+    public void ignoresFixesWhileIdle() {
+        RecordingListener listener = new RecordingListener();
+        TripEngine engine = new TripEngine(listener);
+        
+        assertFalse(engine.onFix(12.97, 77.59, 5f, 5f, 1000, FixRingBuffer.PROVIDER_GPS, 1000));
+        assertEquals(0, listener.recorded);
+        assertEquals(TripSnapshot.IDLE, engine.snapshot());
+    }
+    
+    @Test
+    public void autoStopsAfterTenStationaryMinutes() {
+        RecordingListener listener = new RecordingListener();
+        TripEngine engine = new TripEngine(listener);
+        engine.startTrip(0, 0);
+        
+        for (long t = 0; t <= 600000; t += 1000) {
+            assertTrue(engine.onFix(12.97, 77.59, 0f, 5f, t, FixRingBuffer.PROVIDER_GPS, t));
+        }
+        assertEquals(0, listener.autoStops);
+        
+        engine.onFix(12.97, 77.59, 0f, 5f, 601000, FixRingBuffer.PROVIDER_GPS, 601000);
+        assertEquals(1, listener.autoStops);
+        assertEquals(listener.recorded, engine.getTrack().size());
+    }
+    
+    @Test
+    public void resumedTripKeepsExcludedGapsOutOfTheDistance() throws IOException {
+        File file = File.createTempFile("journal", ".trk");
+        try {
+            final TrackJournal journal = TrackJournal.create(file, 1000, "bike-1");
+            TripEngine engine = new TripEngine(new RecordingListener() {
+                @Override
+                public void onFixRecorded(double latitude, double longitude, float speed, float accuracy, long time) {
+                    try {
+                        journal.append(latitude, longitude, speed, accuracy, time);
+                    } catch (IOException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            });
+            engine.setGapPolicy(RideSegmenter.GapPolicy.EXCLUDE);
+            engine.startTrip(1000, 1000);
+            
+            // 15 m/s north, then a two minute tunnel of 1.8 km, then on again
+            double latitude = 12.90;
+            long time = 1000; // Journal records need a non-zero time
+            for (int i = 0; i < 30; i++, time += 1000) {
+                engine.onFix(latitude += 15 / 111195.0, 77.59, 15f, 5f, time, FixRingBuffer.PROVIDER_GPS, time);
+            }
+            time += 120000;
+            latitude += 1800 / 111195.0;
+            for (int i = 0; i < 30; i++, time += 1000) {
+                engine.onFix(latitude += 15 / 111195.0, 77.59, 15f, 5f, time, FixRingBuffer.PROVIDER_GPS, time);
+            }
+            journal.close(); // Process killed mid-ride
+            
+            double excluded = engine.getSegments().getExcludedDistance();
+            double distance = engine.getStats().getDistance();
+            assertTrue(excluded > 1000);
+            
+            TripEngine resumed = new TripEngine(new RecordingListener());
+            resumed.setGapPolicy(RideSegmenter.GapPolicy.EXCLUDE);
+            TrackJournal.resume(file, resumed.getTrack()).close();
+            resumed.resumeTrip(1000, time);
+            
+            assertEquals(engine.getTrack().size(), resumed.getTrack().size());
+            assertEquals(excluded, resumed.getSegments().getExcludedDistance(), 1e-6);
+            assertEquals(distance, resumed.getStats().getDistance(), 1e-6);
+            assertEquals(engine.getStats().getMovingTime(), resumed.getStats().getMovingTime());
+        } finally {
+            file.delete();
+        }
+    }
+    
+    @Test
+    public void readsGpxTrackPoints() throws IOException {
+        String gpx =
+            "<?xml version=\"1.0\"?>\n" +
+            "<gpx version=\"1.1\" xmlns=\"http://www.topografix.com/GPX/1/1\">\n" +
+            "<trk><trkseg>\n" +
+            "<trkpt lat=\"12.9716\" lon=\"77.5946\"><time>2023-11-14T22:13:20Z</time><hdop>1.2</hdop></trkpt>\n" +
+            "<trkpt lat=\"12.9717\" lon=\"77.5946\"><time>2023-11-14T22:13:21Z</time></trkpt>\n" +
+            "<trkpt lat=\"12.9718\" lon=\"77.5946\"><time>2023-11-14T22:13:22Z</time>" +
+            "<extensions><speed>9.5</speed></extensions></trkpt>\n" +
+            "</trkseg></trk>\n" +
+            "</gpx>\n";
+        TraceReplay.Trace trace = TraceReplay.readGpx(new ByteArrayInputStream(gpx.getBytes(StandardCharsets.UTF_8)));
+        TrackBuffer fixes = trace.getFixes();
+        
+        assertEquals(3, trace.size());
+        assertEquals(1700000000000L, fixes.getTime(0));
+        assertEquals(6f, fixes.getAccuracy(0), 1e-6);
+        assertEquals(FixRingBuffer.PROVIDER_GPS, trace.getProvider(2));
+        
+        // Second point has no speed: derived from ~11 m in one second
+        assertEquals(11.1f, fixes.getSpeed(1), 0.1f);
+        assertEquals(9.5f, fixes.getSpeed(2), 0);
+    }
+}
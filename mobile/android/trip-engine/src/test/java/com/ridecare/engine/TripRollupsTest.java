@@ -0,0 +1,178 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * TripRollupsTest.java
+ * 
+ * Daily/weekly/monthly rollups against a straight sum over the trips, and the
+ * recent-trip LRU
+ */
+public class TripRollupsTest {
+    
+    private static final ZoneId ZONE = ZoneId.of("Europe/Berlin");
+    private static final double EPSILON = 1e-9;
+    
+    private static long at(int year, int month, int day, int hour) {
+        return ZonedDateTime.of(year, month, day, hour, 0, 0, 0, ZONE).toInstant().toEpochMilli();
+    }
+    
+    private static TripRollups.TripSummary trip(String id, String bikeId, long start, double km) {
+        return new TripRollups.TripSummary(id, bikeId, start, start + 30 * 60 * 1000, km, 20, 40);
+    }
+    
+    @Test
+    public void tripsLandInLocalCalendarBuckets() {
+        TripRollups rollups = new TripRollups(ZONE);
+        // Wednesday 2024-03-27, Sunday 2024-03-31 (DST starts), Monday 2024-04-01
+        rollups.add(trip("t1", "bike-1", at(2024, 3, 27, 8), 10));
+        rollups.add(trip("t2", "bike-1", at(2024, 3, 31, 23), 5));
+        rollups.add(trip("t3", "bike-1", at(2024, 4, 1, 0), 2));
+        rollups.add(trip("t4", "bike-2", at(2024, 4, 1, 9), 7));
+        
+        TripRollups.Buckets weeks = new TripRollups.Buckets();
+        assertEquals(2, rollups.query("bike-1", TripRollups.WEEK, at(2024, 3, 1, 0), at(2024, 4, 30, 0), weeks));
+        assertEquals(at(2024, 3, 25, 0), weeks.start[0]);
+        assertEquals(15, weeks.km[0], EPSILON);
+        assertEquals(2, weeks.rides[0]);
+        assertEquals(at(2024, 4, 1, 0), weeks.start[1]);
+        assertEquals(2, weeks.km[1], EPSILON);
+        
+        TripRollups.Totals totals = new TripRollups.Totals();
+        rollups.total("bike-1", TripRollups.MONTH, at(2024, 3, 15, 0), at(2024, 3, 15, 0), totals);
+        assertEquals(15, totals.km, EPSILON);
+        assertEquals(2, totals.rides);
+        assertEquals(60 * 60 * 1000, totals.rideTime);
+        
+        // All bikes together
+        rollups.total(null, TripRollups.DAY, at(2024, 4, 1, 12), at(2024, 4, 1, 12), totals);
+        assertEquals(9, totals.km, EPSILON);
+        assertEquals(2, totals.rides);
+        
+        rollups.lifetime("bike-2", totals);
+        assertEquals(7, totals.km, EPSILON);
+        assertEquals(2, rollups.getBikeIds().size());
+    }
+    
+    @Test
+    public void bucketsMatchSumOverTrips() {
+        TripRollups rollups = new TripRollups(ZONE);
+        Random random = new Random(7);
+        long start = at(2023, 1, 1, 0);
+        long[] starts = new long[2000];
+        double[] km = new double[2000];
+        for (int i = 0; i < starts.length; i++) {
+            // Out of order on purpose: backfilled trips insert into the middle
+            starts[i] = start + (long) (random.nextDouble() * 400L * 24 * 60 * 60 * 1000);
+            km[i] = random.nextDouble() * 50;
+            rollups.add(trip("t" + i, i % 3 == 0 ? "bike-1" : "bike-2", starts[i], km[i]));
+        }
+        
+        long from = at(2023, 6, 5, 0);  // A Monday
+        long to = at(2023, 8, 27, 12);  // A Sunday
+        double expected = 0;
+        int rides = 0;
+        for (int i = 0; i < starts.length; i++) {
+            if (i % 3 == 0 && starts[i] >= from && starts[i] < at(2023, 8, 28, 0)) {
+                expected += km[i];
+                rides++;
+            }
+        }
+        
+        TripRollups.Totals totals = new TripRollups.Totals();
+        for (int granularity : new int[] {TripRollups.DAY, TripRollups.WEEK}) {
+            rollups.total("bike-1", granularity, from, to, totals);
+            assertEquals(expected, totals.km, 1e-6);
+            assertEquals(rides, totals.rides);
+        }
+        
+        TripRollups.Buckets days = new TripRollups.Buckets();
+        rollups.query("bike-1", TripRollups.DAY, from, to, days);
+        for (int i = 1; i < days.count; i++) {
+            assertTrue(days.start[i] > days.start[i - 1]);
+        }
+        assertEquals(LocalDate.of(2023, 8, 27).atStartOfDay(ZONE).toInstant().toEpochMilli(),
+            rollups.bucketStart(TripRollups.DAY, to));
+    }
+    
+    @Test
+    public void resavedTripReplacesItsEarlierVersion() {
+        TripRollups rollups = new TripRollups(ZONE);
+        rollups.add(trip("t1", "bike-1", at(2024, 5, 6, 8), 10));
+        rollups.add(trip("t1", "bike-1", at(2024, 5, 6, 8), 12));
+        
+        TripRollups.Totals totals = new TripRollups.Totals();
+        rollups.lifetime("bike-1", totals);
+        assertEquals(12, totals.km, EPSILON);
+        assertEquals(1, totals.rides);
+        
+        assertTrue(rollups.remove("t1"));
+        rollups.lifetime("bike-1", totals);
+        assertEquals(0, totals.rides);
+        assertEquals(0, rollups.query("bike-1", TripRollups.DAY, Long.MIN_VALUE, Long.MAX_VALUE,
+            new TripRollups.Buckets()));
+        assertFalse(rollups.remove("t1"));
+    }
+    
+    @Test
+    public void recentTripsAreBoundedAndNewestFirst() {
+        TripRollups rollups = new TripRollups(ZONE, 3);
+        for (int i = 0; i < 5; i++) {
+            rollups.add(trip("t" + i, "bike-1", at(2024, 5, 1 + i, 8), 1));
+        }
+        
+        List<TripRollups.TripSummary> recent = rollups.getRecent(null, 10);
+        assertEquals(3, recent.size());
+        assertEquals("t4", recent.get(0).id);
+        assertEquals("t2", recent.get(2).id);
+        assertNull(rollups.getRecentTrip("t0"));
+        assertEquals(2, rollups.getRecent("bike-1", 2).size());
+        
+        // Evicted summaries still count in the rollups
+        TripRollups.Totals totals = new TripRollups.Totals();
+        assertEquals(5, rollups.lifetime("bike-1", totals).rides);
+    }
+    
+    @Test
+    public void bulkLoadMatchesIncrementalAdds() {
+        TripRollups incremental = new TripRollups(ZONE);
+        incremental.add(trip("t1", "bike-1", at(2024, 2, 28, 8), 4));
+        incremental.add(trip("t2", "bike-1", at(2024, 2, 28, 18), 6));
+        incremental.add(trip("t3", "bike-1", at(2024, 3, 1, 8), 3));
+        
+        TripRollups bulk = new TripRollups(ZONE);
+        long thirtyMinutes = 30 * 60 * 1000;
+        bulk.addDay("bike-1", LocalDate.of(2024, 2, 28).toEpochDay(), 10, 2, 2 * thirtyMinutes);
+        bulk.addDay("bike-1", LocalDate.of(2024, 3, 1).toEpochDay(), 3, 1, thirtyMinutes);
+        bulk.addRecent(trip("t3", "bike-1", at(2024, 3, 1, 8), 3));
+        
+        TripRollups.Buckets expected = new TripRollups.Buckets();
+        TripRollups.Buckets actual = new TripRollups.Buckets();
+        for (int granularity : new int[] {TripRollups.DAY, TripRollups.WEEK, TripRollups.MONTH}) {
+            incremental.query("bike-1", granularity, Long.MIN_VALUE, Long.MAX_VALUE, expected);
+            bulk.query("bike-1", granularity, Long.MIN_VALUE, Long.MAX_VALUE, actual);
+            assertEquals(expected.count, actual.count);
+            for (int i = 0; i < expected.count; i++) {
+                assertEquals(expected.start[i], actual.start[i]);
+                assertEquals(expected.km[i], actual.km[i], EPSILON);
+                assertEquals(expected.rides[i], actual.rides[i]);
+                assertEquals(expected.rideTime[i], actual.rideTime[i]);
+            }
+        }
+        
+        // A re-save of a bulk-loaded recent trip does not double count
+        bulk.add(trip("t3", "bike-1", at(2024, 3, 1, 8), 3));
+        assertEquals(3, bulk.lifetime("bike-1", new TripRollups.Totals()).rides);
+    }
+}
@@ -0,0 +1,194 @@
+package com.ridecare.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * TripTileIndexTest.java
+ * 
+ * Area and same-route queries over the geohash tile index, its log across
+ * reopen, torn tails and compaction, and queries over thousands of trips
+ */
+public class TripTileIndexTest {
+    
+    private File file;
+    
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("tiles", ".idx");
+        file.delete();
+    }
+    
+    @After
+    public void tearDown() {
+        file.delete();
+        new File(file.getPath() + ".tmp").delete();
+    }
+    
+    /**
+     * Encoded path through the given lat/lng pairs
+     */
+    private static String path(double... latLng) {
+        TrackBuffer track = new TrackBuffer();
+        int[] all = new int[latLng.length / 2];
+        for (int i = 0; i < all.length; i++) {
+            track.append(latLng[2 * i], latLng[2 * i + 1], 0, 5, i * 1000L);
+            all[i] = i;
+        }
+        return TrackCodec.encode(track, all, all.length);
+    }
+    
+    @Test
+    public void cellsAreGeohashes() {
+        long cell = TripTileIndex.cellOf(57.64911, 10.40744);
+        assertEquals("u4pruyd", TripTileIndex.geohash(cell));
+        assertEquals(57.64911, TripTileIndex.centerLatitude(cell), 0.001);
+        assertEquals(10.40744, TripTileIndex.centerLongitude(cell), 0.001);
+        assertEquals("tdr1v9q", TripTileIndex.geohash(TripTileIndex.cellOf(12.9716, 77.5946)));
+    }
+    
+    @Test
+    public void areaQueryFindsTripsThroughTheBox() throws IOException {
+        try (TripTileIndex index = TripTileIndex.open(file)) {
+            // Two fixes 4 km apart: the cells in between are filled in
+            index.add("commute", path(12.9300, 77.5800, 12.9660, 77.5800));
+            index.add("elsewhere", path(13.0500, 77.6500, 13.0520, 77.6520));
+            index.add("no-fixes", (CharSequence) null);
+            
+            List<String> middle = index.findInArea(12.9470, 77.5790, 12.9490, 77.5810, 10);
+            assertEquals(Arrays.asList("commute"), middle);
+            assertTrue(index.findNear(12.9480, 77.5800, 100, 10).contains("commute"));
+            assertTrue(index.findInArea(12.9470, 77.6000, 12.9490, 77.6100, 10).isEmpty());
+            
+            // A city-sized box takes the scan path; newest first
+            List<String> city = index.findInArea(12.80, 77.40, 13.20, 77.80, 10);
+            assertEquals(Arrays.asList("elsewhere", "commute"), city);
+            assertEquals(1, index.findInArea(12.80, 77.40, 13.20, 77.80, 1).size());
+        }
+    }
+    
+    @Test
+    public void repeatedRoutesAreSimilar() throws IOException {
+        Random random = new Random(3);
+        try (TripTileIndex index = TripTileIndex.open(file)) {
+            for (int i = 0; i < 20; i++) {
+                double jitter = (random.nextDouble() - 0.5) * 0.0004; // About 40 m
+                index.add("commute-" + i, path(
+                    12.9300 + jitter, 77.5800,
+                    12.9500 + jitter, 77.5850 + jitter,
+                    12.9660, 77.6000 + jitter
+                ));
+            }
+            index.add("weekend", path(12.9300, 77.5800, 12.9000, 77.5000));
+            
+            List<String> similar = index.findSimilar("commute-0", TripTileIndex.DEFAULT_MIN_OVERLAP);
+            assertEquals(19, similar.size());
+            assertEquals("commute-19", similar.get(0));
+            assertFalse(similar.contains("weekend"));
+            assertTrue(index.findSimilar("weekend", TripTileIndex.DEFAULT_MIN_OVERLAP).isEmpty());
+            
+            // The same route as shown from JS, not under an indexed id
+            TripTileIndex.CellCollector shown = new TripTileIndex.CellCollector();
+            shown.onPoint(12.9300, 77.5800);
+            shown.onPoint(12.9500, 77.5850);
+            shown.onPoint(12.9660, 77.6000);
+            assertEquals(20, index.findSimilar(shown, TripTileIndex.DEFAULT_MIN_OVERLAP).size());
+            
+            TripTileIndex.HotCells hot = new TripTileIndex.HotCells();
+            assertEquals(5, index.getHotCells(5, hot));
+            assertEquals(21, hot.trips[0]); // The shared start
+            for (int i = 1; i < hot.count; i++) {
+                assertTrue(hot.trips[i] <= hot.trips[i - 1]);
+            }
+        }
+    }
+    
+    @Test
+    public void indexSurvivesReopenRemovalAndTornTail() throws IOException {
+        String route = path(12.9300, 77.5800, 12.9400, 77.5900);
+        try (TripTileIndex index = TripTileIndex.open(file)) {
+            index.add("t1", route);
+            index.add("t2", route);
+            index.add("t3", route);
+            assertTrue(index.remove("t2"));
+            assertFalse(index.remove("t2"));
+        }
+        
+        long intact = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(intact);
+            raf.write(new byte[] {0, 0, 0, 90, 1, 2});
+        }
+        
+        try (TripTileIndex index = TripTileIndex.open(file)) {
+            assertEquals(intact, file.length());
+            assertEquals(2, index.getTripCount());
+            assertTrue(index.contains("t1"));
+            assertFalse(index.contains("t2"));
+            assertEquals(Arrays.asList("t3", "t1"), index.findNear(12.9350, 77.5850, 200, 10));
+        }
+    }
+    
+    @Test
+    public void replacedTripsAreCompactedAway() throws IOException {
+        String longRide = path(12.90, 77.50, 12.95, 77.55, 13.00, 77.60, 12.95, 77.65, 12.90, 77.70);
+        try (TripTileIndex index = TripTileIndex.open(file)) {
+            index.add("keep", path(13.05, 77.65, 13.06, 77.66));
+            for (int i = 0; i < 200; i++) {
+                index.add("resaved", longRide); // Same id written again
+            }
+            assertEquals(2, index.getTripCount());
+            assertTrue("log is " + file.length() + " bytes", file.length() < 128 * 1024);
+        }
+        
+        try (TripTileIndex index = TripTileIndex.open(file)) {
+            assertEquals(2, index.getTripCount());
+            assertEquals(Arrays.asList("resaved"), index.findNear(12.95, 77.55, 100, 10));
+            assertEquals(Arrays.asList("keep"), index.findNear(13.055, 77.655, 100, 10));
+        }
+    }
+    
+    @Test
+    public void everyTripIsFoundFromItsStartAmongThousands() throws IOException {
+        // Query cost at this size is measured by TripTileIndexBenchmark
+        Random random = new Random(11);
+        double[] starts = new double[2 * 3000];
+        try (TripTileIndex index = TripTileIndex.open(file)) {
+            for (int i = 0; i < 3000; i++) {
+                double lat = 12.85 + random.nextDouble() * 0.25;
+                double lng = 77.45 + random.nextDouble() * 0.30;
+                starts[2 * i] = lat;
+                starts[2 * i + 1] = lng;
+                index.add("trip-" + i, path(
+                    lat, lng,
+                    lat + (random.nextDouble() - 0.5) * 0.05, lng + (random.nextDouble() - 0.5) * 0.05,
+                    lat + (random.nextDouble() - 0.5) * 0.08, lng + (random.nextDouble() - 0.5) * 0.08
+                ));
+            }
+            assertEquals(3000, index.getTripCount());
+            
+            for (int i = 0; i < 3000; i += 7) {
+                List<String> near = index.findNear(starts[2 * i], starts[2 * i + 1], 500, 3000);
+                assertTrue("trip-" + i + " not near its start", near.contains("trip-" + i));
+                assertEquals(near.size(), new HashSet<>(near).size());
+                assertTrue(near.size() < 3000); // Scattered across the city, not everything
+            }
+            
+            List<String> limited = index.findNear(starts[0], starts[1], 500, 5);
+            assertTrue(limited.size() <= 5);
+        }
+    }
+}
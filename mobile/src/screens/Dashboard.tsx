@@ -20,6 +20,7 @@ import {
 import BLEService from '../services/BLEService';
 import MaintenanceEngine, { MaintenanceDue } from '../services/MaintenanceEngine';
 import LocationService from '../services/LocationService';
+import TripStatsService, { TripStatsSummary, TripSummary } from '../services/TripStatsService';
 
 interface DashboardProps {
   navigation: any;
@@ -31,6 +32,8 @@ const Dashboard: React.FC<DashboardProps> = ({ navigation }) => {
   const [maintenanceDue, setMaintenanceDue] = useState<MaintenanceDue[]>([]);
   const [loading, setLoading] = useState<boolean>(true);
   const [bleConnected, setBleConnected] = useState<boolean>(false);
+  const [tripStats, setTripStats] = useState<TripStatsSummary | null>(null);
+  const [recentTrips, setRecentTrips] = useState<TripSummary[]>([]);
 
   useEffect(() => {
     // Subscribe to BLE updates
@@ -50,6 +53,9 @@ const Dashboard: React.FC<DashboardProps> = ({ navigation }) => {
     // Load maintenance due
     loadMaintenanceDue();
 
+    // Load trip totals (pre-aggregated natively, independent of trip count)
+    loadTripStats();
+
     // Check if BLE is connected
     setBleConnected(BLEService.isConnected());
 
@@ -73,6 +79,19 @@ const Dashboard: React.FC<DashboardProps> = ({ navigation }) => {
     setMaintenanceDue(dueItems);
   };
 
+  const loadTripStats = async () => {
+    try {
+      const [summary, recent] = await Promise.all([
+        TripStatsService.getSummary(),
+        TripStatsService.getRecentTrips(3),
+      ]);
+      setTripStats(summary);
+      setRecentTrips(recent);
+    } catch (error) {
+      console.error('Failed to load trip stats:', error);
+    }
+  };
+
   const handleStartTrip = async () => {
     try {
       await LocationService.startTracking();
@@ -86,6 +105,7 @@ const Dashboard: React.FC<DashboardProps> = ({ navigation }) => {
     try {
       const trip = await LocationService.stopTracking();
       setIsTracking(false);
+      loadTripStats();
       navigation.navigate('TripDetail', { trip });
     } catch (error) {
       console.error('Failed to stop trip:', error);
@@ -160,6 +180,29 @@ const Dashboard: React.FC<DashboardProps> = ({ navigation }) => {
         </Text>
       </TouchableOpacity>
 
+      {/* Recent Trips Summary */}
+      {tripStats && (
+        <View style={styles.section}>
+          <Text style={styles.sectionTitle}>Riding</Text>
+          <View style={styles.statsRow}>
+            <View style={styles.statCard}>
+              <Text style={styles.statValue}>{tripStats.week.km.toFixed(1)} km</Text>
+              <Text style={styles.statLabel}>This week · {tripStats.week.rides} rides</Text>
+            </View>
+            <View style={styles.statCard}>
+              <Text style={styles.statValue}>{tripStats.month.km.toFixed(1)} km</Text>
+              <Text style={styles.statLabel}>This month · {tripStats.month.rides} rides</Text>
+            </View>
+          </View>
+          {recentTrips.map(trip => (
+            <View key={trip.id} style={styles.tripRow}>
+              <Text style={styles.tripDate}>{new Date(trip.startTime).toLocaleDateString()}</Text>
+              <Text style={styles.tripDistance}>{trip.distance.toFixed(1)} km</Text>
+            </View>
+          ))}
+        </View>
+      )}
+
       {/* Maintenance Due */}
       <View style={styles.section}>
         <Text style={styles.sectionTitle}>Maintenance Due</Text>
@@ -281,6 +324,51 @@ const styles = StyleSheet.create({
     color: '#212121',
     marginBottom: 12,
   },
+  statsRow: {
+    flexDirection: 'row',
+    justifyContent: 'space-between',
+    marginBottom: 12,
+  },
+  statCard: {
+    flex: 1,
+    backgroundColor: '#FFFFFF',
+    padding: 16,
+    borderRadius: 12,
+    marginHorizontal: 4,
+    elevation: 2,
+    shadowColor: '#000',
+    shadowOffset: { width: 0, height: 1 },
+    shadowOpacity: 0.1,
+    shadowRadius: 2,
+  },
+  statValue: {
+    fontSize: 20,
+    fontWeight: 'bold',
+    color: '#212121',
+  },
+  statLabel: {
+    fontSize: 12,
+    color: '#757575',
+    marginTop: 4,
+  },
+  tripRow: {
+    flexDirection: 'row',
+    justifyContent: 'space-between',
+    backgroundColor: '#FFFFFF',
+    paddingHorizontal: 16,
+    paddingVertical: 12,
+    borderRadius: 8,
+    marginBottom: 8,
+  },
+  tripDate: {
+    fontSize: 14,
+    color: '#212121',
+  },
+  tripDistance: {
+    fontSize: 14,
+    fontWeight: '600',
+    color: '#2196F3',
+  },
   maintenanceCard: {
     backgroundColor: '#FFFFFF',
     padding: 16,
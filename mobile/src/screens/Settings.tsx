@@ -15,6 +15,7 @@ import {
   Alert,
   Linking,
 } from 'react-native';
+import DataExporter, { ExportFormat } from '../utils/DataExporter';
 
 interface SettingsProps {
   navigation: any;
@@ -34,14 +35,22 @@ const Settings: React.FC<SettingsProps> = ({ navigation }) => {
         { text: 'Cancel', style: 'cancel' },
         { text: 'CSV', onPress: () => exportData('csv') },
         { text: 'JSON', onPress: () => exportData('json') },
+        { text: 'GPX', onPress: () => exportData('gpx') },
       ]
     );
   };
 
-  const exportData = (format: string) => {
-    console.log(`Exporting data as ${format}`);
-    // Implement data export (GDPR requirement)
-    Alert.alert('Export Started', `Your data will be exported as ${format.toUpperCase()}`);
+  const exportData = async (format: ExportFormat) => {
+    try {
+      await DataExporter.exportAndShare({
+        format,
+        includeTrips: true,
+        includeMaintenance: true,
+      });
+    } catch (error) {
+      console.error('Export failed:', error);
+      Alert.alert('Export Failed', 'Your data could not be exported. Please try again.');
+    }
   };
 
   const handleDeleteAllData = () => {
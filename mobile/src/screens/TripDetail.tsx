@@ -16,6 +16,7 @@ import {
   Share,
 } from 'react-native';
 import MapView, { Polyline, Marker } from 'react-native-maps';
+import TripIndexService from '../services/TripIndexService';
 
 interface Location {
   latitude: number;
@@ -48,6 +49,7 @@ const TripDetail: React.FC<TripDetailProps> = ({ route, navigation }) => {
     latitudeDelta: 0.01,
     longitudeDelta: 0.01,
   });
+  const [routeRides, setRouteRides] = useState<number>(0); // Recorded trips along this route
 
   useEffect(() => {
     if (trip.locations.length > 0) {
@@ -74,6 +76,15 @@ const TripDetail: React.FC<TripDetailProps> = ({ route, navigation }) => {
     }
   }, [trip]);
 
+  useEffect(() => {
+    if (trip.locations.length < 2) return;
+
+    // Recorded rides of this route, from the native tile index
+    TripIndexService.findSimilarToRoute(trip.locations)
+      .then(tripIds => setRouteRides(tripIds.length))
+      .catch(error => console.error('Route lookup failed:', error));
+  }, [trip]);
+
   const formatDuration = (minutes: number): string => {
     const hours = Math.floor(minutes / 60);
     const mins = minutes % 60;
@@ -196,6 +207,13 @@ const TripDetail: React.FC<TripDetailProps> = ({ route, navigation }) => {
           <Text style={styles.detailLabel}>Data Points:</Text>
           <Text style={styles.detailValue}>{trip.locations.length}</Text>
         </View>
+
+        {routeRides > 0 && (
+          <View style={styles.detailRow}>
+            <Text style={styles.detailLabel}>Route:</Text>
+            <Text style={styles.detailValue}>{routeRides} recorded rides</Text>
+          </View>
+        )}
       </View>
 
       {/* Actions */}
@@ -5,17 +5,22 @@
  * Implements last-write-wins conflict resolution with timestamp-based versioning.
  * 
  * Features:
- * - Offline queue for pending changes
+ * - Offline queue for pending changes (native SyncOutboxModule: persistent,
+ *   coalesced per record, uploaded in size-bounded batches with backoff)
  * - Network state monitoring
  * - Batch sync on reconnect
  * - Conflict resolution (last-write-wins)
  * - Incremental sync with watermarks
  */
 
+import { DeviceEventEmitter, EmitterSubscription, NativeModules } from 'react-native';
 import NetInfo from '@react-native-community/netinfo';
+import auth from '@react-native-firebase/auth';
 import firestore from '@react-native-firebase/firestore';
 import { Database } from '@nozbe/watermelondb';
 import { Q } from '@nozbe/watermelondb';
+import TripIndexService from './TripIndexService';
+import TripStatsService from './TripStatsService';
 
 export interface SyncState {
   lastSyncAt: Date | null;
@@ -26,15 +31,33 @@ export interface SyncState {
 
 type SyncListener = (state: SyncState) => void;
 
+type SyncOp = 'set' | 'delete';
+
+interface OutboxState {
+  pendingChanges: number;
+  lastSyncAt: number; // 0 until the first upload
+  retryAt: number;
+  uploaded: number;
+  batches: number;
+  coalesced: number;
+  rejected: number;
+}
+
+const { SyncOutboxModule } = NativeModules;
+
+// Batch sync endpoint (POST /api/sync in api/openapi.yaml, functions/src/sync.ts)
+const SYNC_URL = 'https://us-central1-ridecare-app.cloudfunctions.net/api/sync';
+
 class SyncService {
   private database: Database | null = null;
   private userId: string | null = null;
   private isOnline = false;
   private isSyncing = false;
   private lastSyncAt: Date | null = null;
-  private syncQueue: any[] = [];
+  private pendingChanges = 0;
   private listeners: SyncListener[] = [];
   private netInfoUnsubscribe: (() => void) | null = null;
+  private outboxSubscription: EmitterSubscription | null = null;
 
   /**
    * Initialize sync service with user and database
@@ -43,14 +66,18 @@ class SyncService {
     this.userId = userId;
     this.database = database;
 
-    // Load last sync timestamp from local storage
-    // (In production, store this in a metadata table)
-    this.lastSyncAt = null;
+    // Uploads are owned by the native outbox; mirror its state
+    this.outboxSubscription = DeviceEventEmitter.addListener('onSyncState', (state: OutboxState) =>
+      this.applyOutboxState(state)
+    );
+    this.applyOutboxState(await SyncOutboxModule.getState());
+    await this.configureOutbox();
 
     // Listen to network state
     this.netInfoUnsubscribe = NetInfo.addEventListener(state => {
       const wasOnline = this.isOnline;
       this.isOnline = state.isConnected || false;
+      SyncOutboxModule.setOnline(this.isOnline);
 
       // Trigger sync when coming online
       if (!wasOnline && this.isOnline) {
@@ -79,6 +106,10 @@ class SyncService {
       this.netInfoUnsubscribe();
       this.netInfoUnsubscribe = null;
     }
+    if (this.outboxSubscription) {
+      this.outboxSubscription.remove();
+      this.outboxSubscription = null;
+    }
   }
 
   /**
@@ -93,8 +124,10 @@ class SyncService {
     this.notifyListeners();
 
     try {
-      // Step 1: Push local changes to Firestore
+      // Step 1: Hand local changes to the native outbox and upload them
+      await this.configureOutbox();
       await this.pushLocalChanges();
+      await SyncOutboxModule.flush();
 
       // Step 2: Pull remote changes from Firestore
       await this.pullRemoteChanges();
@@ -113,45 +146,31 @@ class SyncService {
   }
 
   /**
-   * Push local changes to Firestore
+   * Queue unsynced local records in the native outbox. Repeated updates to
+   * a record coalesce there, and the upload goes out in a few batches
+   * instead of one round trip per row.
    */
   private async pushLocalChanges(): Promise<void> {
     if (!this.database || !this.userId) return;
 
-    // Get all dirty (modified) records
-    // Note: WatermelonDB tracks changes with _status field
     const collections = ['bikes', 'trips', 'maintenance_events'];
 
     for (const collectionName of collections) {
       const collection = this.database.get(collectionName);
-      
-      // Query for dirty records (created or updated locally)
-      // This is a simplified example - real implementation would track sync status
-      const dirtyRecords = await collection.query().fetch();
-
-      for (const record of dirtyRecords) {
-        const data = record._raw;
-        const docRef = firestore()
-          .collection('users')
-          .doc(this.userId)
-          .collection(collectionName)
-          .doc(data.id);
-
-        try {
-          await docRef.set(
-            {
-              ...data,
-              updatedAt: firestore.FieldValue.serverTimestamp(),
-            },
-            { merge: true }
-          );
-
-          // Mark record as synced in local DB
-          // (In production, you'd update a sync metadata table)
-        } catch (error) {
-          console.error(`Failed to push ${collectionName}/${data.id}:`, error);
-        }
-      }
+
+      // Rows written or updated locally since their last upload
+      const dirtyRecords = await collection.query(Q.where('synced', 0)).fetch();
+      if (dirtyRecords.length === 0) continue;
+
+      await SyncOutboxModule.enqueueAll(
+        dirtyRecords.map(record => ({
+          collection: collectionName,
+          id: record._raw.id,
+          op: 'set' as SyncOp,
+          data: JSON.stringify(record._raw),
+          updatedAt: record._raw.updated_at || Date.now(),
+        }))
+      );
     }
   }
 
@@ -181,6 +200,12 @@ class SyncService {
           const remoteData = doc.data();
           await this.mergeRemoteRecord(collectionName, remoteData);
         }
+
+        if (collectionName === 'trips' && !snapshot.empty) {
+          // Trip totals and the tile index are kept natively
+          await TripStatsService.invalidate();
+          await TripIndexService.resync();
+        }
       } catch (error) {
         console.error(`Failed to pull ${collectionName}:`, error);
       }
@@ -228,15 +253,23 @@ class SyncService {
   }
 
   /**
-   * Add a change to sync queue (for immediate sync attempts)
+   * Queue a change in the native outbox; it is uploaded with the next batch
+   * (the outbox debounces bursts and retries while offline)
    */
-  public queueChange(collection: string, recordId: string, action: 'create' | 'update' | 'delete'): void {
-    this.syncQueue.push({ collection, recordId, action, timestamp: new Date() });
-
-    // Attempt immediate sync if online
-    if (this.isOnline && !this.isSyncing) {
-      this.sync();
-    }
+  public async queueChange(
+    collection: string,
+    recordId: string,
+    action: 'create' | 'update' | 'delete',
+    data?: object
+  ): Promise<void> {
+    const op: SyncOp = action === 'delete' ? 'delete' : 'set';
+    await SyncOutboxModule.enqueue(
+      collection,
+      recordId,
+      op,
+      op === 'set' ? JSON.stringify(data ?? { id: recordId }) : null,
+      Date.now()
+    );
   }
 
   /**
@@ -255,7 +288,7 @@ class SyncService {
   public getState(): SyncState {
     return {
       lastSyncAt: this.lastSyncAt,
-      pendingChanges: this.syncQueue.length,
+      pendingChanges: this.pendingChanges,
       isOnline: this.isOnline,
       isSyncing: this.isSyncing,
     };
@@ -271,6 +304,25 @@ class SyncService {
     };
   }
 
+  /**
+   * Point the outbox at the sync endpoint with a fresh ID token
+   */
+  private async configureOutbox(): Promise<void> {
+    const user = auth().currentUser;
+    if (!user) return;
+
+    const token = await user.getIdToken();
+    await SyncOutboxModule.configure(SYNC_URL, token);
+  }
+
+  private applyOutboxState(state: OutboxState): void {
+    this.pendingChanges = state.pendingChanges;
+    if (state.lastSyncAt > 0) {
+      this.lastSyncAt = new Date(state.lastSyncAt);
+    }
+    this.notifyListeners();
+  }
+
   /**
    * Notify all listeners of state change
    */
@@ -289,8 +341,12 @@ class SyncService {
       await this.database!.unsafeResetDatabase();
     });
 
+    // Pending uploads belong to the user who is logging out
+    await SyncOutboxModule.clear();
+    await TripStatsService.invalidate();
+    await TripIndexService.resync();
+
     this.lastSyncAt = null;
-    this.syncQueue = [];
     this.notifyListeners();
   }
 }
@@ -0,0 +1,83 @@
+/**
+ * TripIndexService.ts
+ * 
+ * Area and route queries over recorded trips ("trips through here", "how
+ * often have I ridden this route"), answered natively (TripIndexModule) from
+ * a geohash tile index instead of decoding every stored path.
+ * 
+ * The index lives in a file of its own and adds trips as LocationService
+ * saves them. resync() makes it diff its trip ids against the trips table
+ * before the next query, which picks up trips pulled from the server and
+ * drops deleted ones.
+ */
+
+import { NativeModules } from 'react-native';
+
+const { TripIndexModule } = NativeModules;
+
+export interface RoutePoint {
+  latitude: number;
+  longitude: number;
+}
+
+export interface HotCell extends RoutePoint {
+  geohash: string; // Cell of about 150 x 150 m
+  trips: number;
+}
+
+class TripIndexService {
+  /**
+   * Ids of trips with a point inside the box, newest first
+   */
+  async findTripsInArea(
+    minLat: number,
+    minLng: number,
+    maxLat: number,
+    maxLng: number,
+    limit = 50
+  ): Promise<string[]> {
+    return TripIndexModule.findTripsInArea(minLat, minLng, maxLat, maxLng, limit);
+  }
+
+  /**
+   * Ids of trips passing within about radius meters of a point, newest first
+   */
+  async findTripsNear(point: RoutePoint, radius = 250, limit = 50): Promise<string[]> {
+    return TripIndexModule.findTripsNear(point.latitude, point.longitude, radius, limit);
+  }
+
+  /**
+   * Other recorded rides of the same route; minOverlap is the share of
+   * cells both routes must have in common (0..1)
+   */
+  async findSimilarTrips(tripId: string, minOverlap = 0.6): Promise<string[]> {
+    return TripIndexModule.findSimilarTrips(tripId, minOverlap);
+  }
+
+  /**
+   * Recorded rides of the route through these points
+   */
+  async findSimilarToRoute(points: RoutePoint[], minOverlap = 0.6): Promise<string[]> {
+    return TripIndexModule.findSimilarToRoute(
+      points.map(point => ({ latitude: point.latitude, longitude: point.longitude })),
+      minOverlap
+    );
+  }
+
+  /**
+   * The most ridden cells, most visited first (for a heatmap)
+   */
+  async getHotCells(limit = 100): Promise<HotCell[]> {
+    return TripIndexModule.getHotCells(limit);
+  }
+
+  /**
+   * Trips changed outside the native recorder; the index catches up with
+   * SQLite before the next query
+   */
+  async resync(): Promise<void> {
+    await TripIndexModule.resync();
+  }
+}
+
+export default new TripIndexService();
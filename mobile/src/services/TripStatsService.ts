@@ -0,0 +1,83 @@
+/**
+ * TripStatsService.ts
+ * 
+ * Trip totals for the Dashboard and history screens, answered natively
+ * (TripStatsModule) from daily, weekly and monthly rollups per bike instead
+ * of summing trips rows on every render.
+ * 
+ * Trips saved by the native LocationService are counted as they are
+ * stored. After trips change any other way (sync pulls, edits, deletes),
+ * call invalidate() and the totals are summed from SQLite again on the next
+ * read.
+ */
+
+import { NativeModules } from 'react-native';
+
+const { TripStatsModule } = NativeModules;
+
+export type Granularity = 'day' | 'week' | 'month';
+
+export interface TripTotals {
+  km: number;
+  rides: number;
+  rideTime: number; // ms
+}
+
+export interface TripStatsSummary {
+  today: TripTotals;
+  week: TripTotals; // Monday-based
+  month: TripTotals;
+  lifetime: TripTotals;
+  bikes: Record<string, TripTotals>; // Lifetime totals per bike
+}
+
+export interface TripBucket extends TripTotals {
+  start: number; // Bucket start, ms (local calendar)
+}
+
+export interface TripSummary {
+  id: string;
+  bikeId: string;
+  startTime: number;
+  endTime: number;
+  distance: number; // km
+  avgSpeed: number | null;
+  maxSpeed: number | null;
+}
+
+class TripStatsService {
+  /**
+   * Today / this week / this month / lifetime totals; bikeId null for all bikes
+   */
+  async getSummary(bikeId: string | null = null): Promise<TripStatsSummary> {
+    return TripStatsModule.getSummary(bikeId);
+  }
+
+  /**
+   * Non-empty buckets touching [from, to], oldest first (for charts)
+   */
+  async getBuckets(
+    granularity: Granularity,
+    from: Date,
+    to: Date,
+    bikeId: string | null = null
+  ): Promise<TripBucket[]> {
+    return TripStatsModule.getBuckets(bikeId, granularity, from.getTime(), to.getTime());
+  }
+
+  /**
+   * Newest trips first, without paths
+   */
+  async getRecentTrips(limit = 10, bikeId: string | null = null): Promise<TripSummary[]> {
+    return TripStatsModule.getRecentTrips(bikeId, limit);
+  }
+
+  /**
+   * Trips changed outside the native recorder; totals reload on the next read
+   */
+  async invalidate(): Promise<void> {
+    await TripStatsModule.invalidate();
+  }
+}
+
+export default new TripStatsService();